@@ -19,6 +19,7 @@ import android.view.View;
 import android.widget.ImageView;
 import android.widget.Toast;
 
+import com.dezzmeister.cryptopix.fileio.ImageFiles;
 import com.dezzmeister.cryptopix.main.activities.DecodeMessageActivity;
 import com.dezzmeister.cryptopix.main.activities.EncodeMessageActivity;
 import com.dezzmeister.cryptopix.main.dialogs.CorruptedImageDialog;
@@ -28,13 +29,18 @@ import com.dezzmeister.cryptopix.main.dialogs.EncodeSecretDialog;
 import com.dezzmeister.cryptopix.main.dialogs.EnterPasswordDecodeDialog;
 import com.dezzmeister.cryptopix.main.dialogs.UnsupportedAlgorithmDialog;
 import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.scan.ScanIndex;
+import com.dezzmeister.cryptopix.main.scan.ScanResult;
 import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
 import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
 import com.dezzmeister.cryptopix.main.secret.PackageHeader;
 import com.dezzmeister.cryptopix.main.secret.PackageHandler;
 import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.PayloadCache;
 import com.dezzmeister.cryptopix.main.secret.Versions;
 import com.dezzmeister.cryptopix.main.session.SessionObject;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
 import com.google.android.gms.ads.AdRequest;
 import com.google.android.gms.ads.AdView;
 import com.google.android.gms.ads.MobileAds;
@@ -42,14 +48,22 @@ import com.google.android.gms.ads.initialization.InitializationStatus;
 import com.google.android.gms.ads.initialization.OnInitializationCompleteListener;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The main app activity. Allows the user to select an image, which can be further encoded/decoded.
@@ -74,6 +88,11 @@ public class MainActivity extends AppCompatActivity {
      */
     private static final String LOCAL_IMAGE_FILENAME = "image_v1_0_0.png";
 
+    /**
+     * Name of the scan index (stored in local files), which remembers the state of images that were already opened
+     */
+    private static final String SCAN_INDEX_FILENAME = "scan_index_v1_0_0.log";
+
     /**
      * Request code to select an image in the gallery
      */
@@ -84,6 +103,22 @@ public class MainActivity extends AppCompatActivity {
      */
     private static final int REQUEST_IMAGE_CAPTURE = 2;
 
+    /**
+     * Copies imported images to local storage while they are being decoded
+     */
+    private static final ExecutorService IMPORT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * Index of images that were already classified, shared by every instance of the activity. Opened lazily.
+     */
+    private static ScanIndex scanIndex = null;
+
+    /**
+     * Recently decoded payloads, so that opening the same secret again skips decoding and loading the image.
+     * Bounded to an eighth of the heap, and cleared whenever memory is tight or decoded files are deleted.
+     */
+    private static final PayloadCache PAYLOAD_CACHE = new PayloadCache(Runtime.getRuntime().maxMemory() / 8);
+
     /**
      * The main ImageView
      */
@@ -168,16 +203,27 @@ public class MainActivity extends AppCompatActivity {
         decodedImageDir.mkdir();
 
         session = getSessionObject();
-        final Bitmap image = session.getBitmap();
-        if (image != null) {
-            mainImageView.setImageBitmap(image);
+
+        if (session.hasImage()) {
+            showPreview();
         }
 
         if (session.imageContainsSecret()) {
-            final ImageData imageData = session.getImage();
-            final long versionCode = PackageFunctions.versionCode(imageData);
-            handler = Versions.getHandler(versionCode);
-            header = handler.extractHeader(imageData);
+            // The cached header pixels are enough to restore the package header
+            final ImageData cachedHeader = session.getCachedHeaderImage();
+
+            if (cachedHeader != null) {
+                restoreHeader(cachedHeader);
+            } else {
+                session.loadImageAsync(new SessionObject.ImageCallback() {
+                    @Override
+                    public void onImageLoaded(final ImageData image) {
+                        if (image != null && header == null) {
+                            restoreHeader(image);
+                        }
+                    }
+                });
+            }
         }
 
         setFABVisibility(session);
@@ -189,6 +235,67 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Shows a downsampled preview of the session image, sized to {@link #mainImageView}. The preview is
+     * decoded once the view has been laid out; the full-resolution image is not decoded.
+     */
+    private void showPreview() {
+        mainImageView.post(new Runnable() {
+            @Override
+            public void run() {
+                int width = mainImageView.getWidth();
+                int height = mainImageView.getHeight();
+
+                if (width <= 0 || height <= 0) {
+                    width = getResources().getDisplayMetrics().widthPixels;
+                    height = getResources().getDisplayMetrics().heightPixels;
+                }
+
+                session.loadPreviewAsync(width, height, new SessionObject.PreviewCallback() {
+                    @Override
+                    public void onPreviewLoaded(final Bitmap preview) {
+                        // Don't replace an image that was selected while the preview was decoding
+                        if (preview != null && fullSizeImage == null) {
+                            mainImageView.setImageBitmap(preview);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Sets the package handler and package header from an image containing a secret. The image only needs
+     * to contain the package header pixels.
+     *
+     * @param imageData image containing a package header
+     */
+    private void restoreHeader(final ImageData imageData) {
+        final long versionCode = PackageFunctions.versionCode(imageData);
+        final PackageHandler packageHandler = Versions.getHandler(versionCode);
+
+        if (packageHandler != null) {
+            handler = packageHandler;
+
+            try {
+                header = packageHandler.extractHeader(imageData);
+            } catch (IllegalArgumentException e) {
+                // The stored pixels no longer hold a valid header; the image is classified again when opened
+                header = null;
+            }
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        // The app may be killed after this point, so write any pending session changes now
+        if (session != null) {
+            session.flush(this);
+        }
+    }
+
     /**
      * Defines the behavior when the "Encode" floating action button is clicked. This should open a new
      * activity to encode some secret data in the image.
@@ -250,20 +357,66 @@ public class MainActivity extends AppCompatActivity {
             }
         }
 
+        final PayloadCache.Key cacheKey;
+
         try {
-            final Payload decoded = handler.decode(session.getImage(), header, password);
-            final File decodedFilesDir = new File(getApplicationContext().getExternalFilesDir(null), DecodeMessageActivity.DECODED_PAYLOAD_FOLDER);
-            final File decodedFile = new File(decodedFilesDir, decoded.fileName());
+            cacheKey = PayloadCache.key(header, password);
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            final Toast toast = Toast.makeText(this, "This device does not have the necessary cryptographic algorithms!", Toast.LENGTH_LONG);
+            toast.show();
 
-            final FileOutputStream fos = new FileOutputStream(decodedFile);
-            fos.write(decoded.data());
-            fos.close();
+            return;
+        }
 
-            final Intent intent = new Intent(this, DecodeMessageActivity.class);
-            intent.putExtra(DecodeMessageActivity.DECODED_FILE_KEY, decodedFile);
-            intent.putExtra(DecodeMessageActivity.DECODED_MIMETYPE_KEY, decoded.mimeType());
+        final Payload cached = PAYLOAD_CACHE.get(cacheKey);
 
-            startActivity(intent);
+        if (cached != null) {
+            if (Trace.isEnabled(TraceLevel.DEBUG)) {
+                Trace.log(TraceLevel.DEBUG, "MainActivity", "Opening cached payload", cached.fileName());
+            }
+
+            try {
+                openDecodedPayload(cached);
+            } catch (IOException e) {
+                e.printStackTrace();
+
+                final Toast toast = Toast.makeText(this, "Unable to decode image!", Toast.LENGTH_SHORT);
+                toast.show();
+            }
+
+            return;
+        }
+
+        session.loadImageAsync(new SessionObject.ImageCallback() {
+            @Override
+            public void onImageLoaded(final ImageData image) {
+                decodeLoadedImage(image, password, cacheKey);
+            }
+        });
+    }
+
+    /**
+     * Decodes the secret in the full-resolution session image and opens the decoded file. The password
+     * must already have been checked.
+     *
+     * @param image full-resolution session image, or null if it could not be loaded
+     * @param password password, or null if the secret is not password-protected
+     * @param cacheKey key to cache the decoded payload under, or null if it can't be cached
+     */
+    private void decodeLoadedImage(final ImageData image, final String password, final PayloadCache.Key cacheKey) {
+        if (image == null) {
+            final Toast toast = Toast.makeText(this, "Unable to load image!", Toast.LENGTH_SHORT);
+            toast.show();
+
+            return;
+        }
+
+        try {
+            final Payload decoded = handler.decode(image, header, password);
+            PAYLOAD_CACHE.put(cacheKey, decoded);
+
+            openDecodedPayload(decoded);
         } catch (Exception e) {
             e.printStackTrace();
 
@@ -272,6 +425,27 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Writes a decoded payload to the decoded files folder and opens it.
+     *
+     * @param decoded decoded payload
+     * @throws IOException if the decoded file cannot be written
+     */
+    private void openDecodedPayload(final Payload decoded) throws IOException {
+        final File decodedFilesDir = new File(getApplicationContext().getExternalFilesDir(null), DecodeMessageActivity.DECODED_PAYLOAD_FOLDER);
+        final File decodedFile = new File(decodedFilesDir, decoded.fileName());
+
+        final FileOutputStream fos = new FileOutputStream(decodedFile);
+        fos.write(decoded.data());
+        fos.close();
+
+        final Intent intent = new Intent(this, DecodeMessageActivity.class);
+        intent.putExtra(DecodeMessageActivity.DECODED_FILE_KEY, decodedFile);
+        intent.putExtra(DecodeMessageActivity.DECODED_MIMETYPE_KEY, decoded.mimeType());
+
+        startActivity(intent);
+    }
+
     /**
      * Sets the visibility of the two encode/decode floating action buttons based on the state of the
      * session. The encode button should only be available if an image is selected, and the decode button
@@ -280,7 +454,7 @@ public class MainActivity extends AppCompatActivity {
      * @param session current session object
      */
     private final void setFABVisibility(final SessionObject session) {
-        if (session.getImage() != null) {
+        if (session.hasImage()) {
             if (session.imageContainsSecret()) {
                 decodeFAB.setVisibility(View.VISIBLE);
             } else {
@@ -350,6 +524,15 @@ public class MainActivity extends AppCompatActivity {
     public void deleteAppExternalData() {
         final File externalFilesDir = getApplicationContext().getExternalFilesDir(null);
         deleteAllFiles(externalFilesDir);
+        PAYLOAD_CACHE.clear();
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        super.onTrimMemory(level);
+
+        // Decoded payloads are cheap to rebuild and may be large; never keep them at the expense of the app
+        PAYLOAD_CACHE.clear();
     }
 
     @Override
@@ -424,9 +607,7 @@ public class MainActivity extends AppCompatActivity {
      * @return file handle to the local image
      */
     private File copyBitmapToLocal(final Bitmap bitmap) {
-        final File internalFiles = getApplicationContext().getFilesDir();
-        final File sessionDirectory = new File(internalFiles, SESSION_OBJECT_FOLDER);
-        final File imageLocation = new File(sessionDirectory, LOCAL_IMAGE_FILENAME);
+        final File imageLocation = getLocalImageFile();
 
         try (final FileOutputStream fos = new FileOutputStream(imageLocation)) {
             bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
@@ -440,16 +621,92 @@ public class MainActivity extends AppCompatActivity {
         return imageLocation;
     }
 
+    /**
+     * Copies the image at the given URI to the local persistent storage as-is, if it is a PNG. PNGs are
+     * lossless, so the original bytes can be kept instead of decoding and re-encoding the image.
+     *
+     * @param contentURI URI of the image
+     * @return file handle to the local image, or null if the image is not a PNG and must be re-encoded
+     * @throws IOException if the image cannot be read or copied
+     */
+    private File copyPNGToLocal(final Uri contentURI) throws IOException {
+        final InputStream contentStream = getContentResolver().openInputStream(contentURI);
+
+        if (contentStream == null) {
+            throw new FileNotFoundException("Unable to open " + contentURI);
+        }
+
+        try (final InputStream is = new BufferedInputStream(contentStream)) {
+            if (!ImageFiles.hasPNGSignature(is)) {
+                return null;
+            }
+
+            final File imageLocation = getLocalImageFile();
+            ImageFiles.copy(is, imageLocation);
+
+            return imageLocation;
+        }
+    }
+
+    /**
+     * Waits for a PNG copy started with {@link #copyPNGToLocal(Uri)} to finish.
+     *
+     * @param pngCopy pending copy
+     * @return file handle to the local image, or null if the image still needs to be saved
+     */
+    private File awaitPNGCopy(final Future<File> pngCopy) {
+        try {
+            return pngCopy.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the location of the local copy of the current image.
+     *
+     * @return file handle to the local image
+     */
+    private File getLocalImageFile() {
+        final File internalFiles = getApplicationContext().getFilesDir();
+        final File sessionDirectory = new File(internalFiles, SESSION_OBJECT_FOLDER);
+
+        return new File(sessionDirectory, LOCAL_IMAGE_FILENAME);
+    }
+
     @Override
     protected void onActivityResult(final int requestCode, final int resultCode, final Intent data) {
         switch (requestCode) {
             case REQUEST_IMAGE_GET: {
                 if (resultCode == RESULT_OK) {
                     final Uri contentURI = data.getData();
+                    File location;
 
                     try {
-                        final Bitmap bitmap = BitmapFactory.decodeStream(getContentResolver().openInputStream(contentURI));
-                        final File location = copyBitmapToLocal(bitmap);
+                        // Copy the original file while the bitmap is being decoded
+                        final Future<File> pngCopy = IMPORT_EXECUTOR.submit(new Callable<File>() {
+                            @Override
+                            public File call() throws IOException {
+                                return copyPNGToLocal(contentURI);
+                            }
+                        });
+
+                        final Bitmap bitmap;
+
+                        try (final InputStream is = getContentResolver().openInputStream(contentURI)) {
+                            bitmap = BitmapFactory.decodeStream(is);
+                        }
+
+                        location = awaitPNGCopy(pngCopy);
+
+                        if (location == null) {
+                            // Not a PNG, or the copy failed; save the decoded bitmap instead
+                            location = copyBitmapToLocal(bitmap);
+                        }
 
                         session.setBitmap(this, bitmap, location);
                     } catch (FileNotFoundException e) {
@@ -457,27 +714,33 @@ public class MainActivity extends AppCompatActivity {
                         final Toast toast = Toast.makeText(this, "File does not exist!", Toast.LENGTH_SHORT);
                         toast.show();
                         return;
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        final Toast toast = Toast.makeText(this, "Unable to open image!", Toast.LENGTH_SHORT);
+                        toast.show();
+                        return;
                     }
 
                     fullSizeImage = session.getBitmap();
                     mainImageView.setImageBitmap(session.getBitmap());
 
                     super.onActivityResult(requestCode, resultCode, data);
-                    handleNewImage(session.getImage());
+                    handleNewImage(session.getImage(), location);
 
                     return;
                 }
             }
             case REQUEST_IMAGE_CAPTURE: {
                 if (resultCode == RESULT_OK) {
+                    final File location = new File(currentPhotoPath);
                     final Bitmap bitmap = BitmapFactory.decodeFile(currentPhotoPath);
-                    session.setBitmap(this, bitmap, new File(currentPhotoPath));
+                    session.setBitmap(this, bitmap, location);
 
                     fullSizeImage = session.getBitmap();
                     mainImageView.setImageBitmap(session.getBitmap());
 
                     super.onActivityResult(requestCode, resultCode, data);
-                    handleNewImage(session.getImage());
+                    handleNewImage(session.getImage(), location);
 
                     return;
                 }
@@ -490,13 +753,31 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * Gets the image state of a new image, and sets some instance variables (package header and
-     * package handler). The image state determines the control flow of the application.
+     * package handler). The image state determines the control flow of the application. Images that
+     * were opened before are answered from the scan index instead of being hashed again.
      *
      * @param imageData new image
+     * @param location file containing the new image
      */
-    private void handleNewImage(final ImageData imageData) {
+    private void handleNewImage(final ImageData imageData, final File location) {
+        final ScanIndex index = getScanIndex();
+        final ScanResult<File> known = (index == null) ? null : index.get(location);
+
+        if (known != null && known.verified) {
+            final PackageHandler knownHandler = Versions.getHandler(known.versionCode);
+
+            this.header = known.header;
+            this.handler = (knownHandler == null) ? Versions.getHandler(Versions.THIS_VERSION) : knownHandler;
+
+            splitOnImageState(known.state, session, this.header, this.handler);
+            return;
+        }
+
         final long versionCode = PackageFunctions.versionCode(imageData);
-        System.out.println("FOOBI Version Code: " + Long.toHexString(versionCode));
+        if (Trace.isEnabled(TraceLevel.DEBUG)) {
+            Trace.log(TraceLevel.DEBUG, "MainActivity", "Version code", Long.toHexString(versionCode));
+        }
+
         final PackageHandler handler = Versions.getHandler(versionCode);
         final EncodedImageState state;
         final PackageHeader packageHeader;
@@ -508,16 +789,50 @@ public class MainActivity extends AppCompatActivity {
             this.header = null;
             this.handler = Versions.getHandler(Versions.THIS_VERSION);
         } else {
-            packageHeader = handler.extractHeader(imageData);
-            state = handler.getImageState(imageData, packageHeader);
+            PackageHeader extracted;
+            EncodedImageState extractedState;
+
+            try {
+                extracted = handler.extractHeader(imageData);
+                extractedState = handler.getImageState(imageData, extracted);
+            } catch (IllegalArgumentException e) {
+                // The version code matched, but the header is damaged or doesn't fit in the image
+                extracted = null;
+                extractedState = EncodedImageState.CORRUPTED;
+            }
+
+            packageHeader = extracted;
+            state = extractedState;
 
             this.header = packageHeader;
             this.handler = handler;
         }
 
+        if (index != null) {
+            final int[] headerPixels = (packageHeader == null) ? null : Arrays.copyOf(imageData.pixels, packageHeader.headerSize());
+            index.put(new ScanResult<File>(location, state, (handler == null) ? -1 : versionCode, packageHeader, headerPixels, true, null));
+        }
+
         splitOnImageState(state, session, this.header, this.handler);
     }
 
+    /**
+     * Returns the scan index, opening it if necessary.
+     *
+     * @return scan index, or null if it cannot be opened
+     */
+    private ScanIndex getScanIndex() {
+        if (scanIndex == null) {
+            try {
+                scanIndex = ScanIndex.open(new File(getFilesDir(), SCAN_INDEX_FILENAME));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return scanIndex;
+    }
+
     /**
      * Splits the flow of the app based on the state of the image. There are five cases:
      * <ul>
@@ -540,11 +855,11 @@ public class MainActivity extends AppCompatActivity {
         bundle.putSerializable(DialogArgs.PACKAGE_HEADER_KEY, packageHeader);
         bundle.putSerializable(DialogArgs.PACKAGE_HANDLER_KEY, packageHandler);
 
+        session.setImageState(this, state, packageHeader);
+
         switch (state) {
             case SECRET_NO_PASSWORD:
             case SECRET_PASSWORD: {
-                session.setImageContainsSecret(this, true);
-
                 final DecodeSecretDialog dialog = new DecodeSecretDialog();
                 dialog.setCancelable(false);
                 dialog.setArguments(bundle);
@@ -554,8 +869,6 @@ public class MainActivity extends AppCompatActivity {
                 break;
             }
             case CORRUPTED: {
-                session.setImageContainsSecret(this, false);
-
                 final CorruptedImageDialog dialog = new CorruptedImageDialog();
                 dialog.setCancelable(false);
                 dialog.setArguments(bundle);
@@ -564,8 +877,6 @@ public class MainActivity extends AppCompatActivity {
                 break;
             }
             case UNSUPPORTED: {
-                session.setImageContainsSecret(this, false);
-
                 final UnsupportedAlgorithmDialog dialog = new UnsupportedAlgorithmDialog();
                 dialog.setCancelable(false);
                 dialog.setArguments(bundle);
@@ -575,8 +886,6 @@ public class MainActivity extends AppCompatActivity {
             }
             default:
             case NO_SECRET: {
-                session.setImageContainsSecret(this, false);
-
                 final EncodeSecretDialog dialog = new EncodeSecretDialog();
                 dialog.setCancelable(false);
                 dialog.setArguments(bundle);
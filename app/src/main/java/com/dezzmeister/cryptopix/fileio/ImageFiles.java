@@ -0,0 +1,78 @@
+package com.dezzmeister.cryptopix.fileio;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Functions to identify and copy image files without decoding them.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ImageFiles {
+
+    /**
+     * The 8-byte signature at the start of every PNG file
+     */
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * Maximum number of bytes transferred by a single channel transfer
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * Returns true if the stream starts with the PNG signature. The stream must support
+     * {@link InputStream#mark(int)}; it is reset to where it was before the signature was read.
+     *
+     * @param in input stream supporting mark/reset
+     * @return true if the stream contains a PNG image
+     * @throws IOException if the stream cannot be read or reset
+     */
+    public static final boolean hasPNGSignature(final InputStream in) throws IOException {
+        in.mark(PNG_SIGNATURE.length);
+
+        try {
+            for (final byte expected : PNG_SIGNATURE) {
+                if (in.read() != (((int) expected) & 0xFF)) {
+                    return false;
+                }
+            }
+
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Copies the remaining bytes of a stream to a file, replacing its contents. The bytes are transferred
+     * with a {@link FileChannel}, so no intermediate copy is made in Java code.
+     *
+     * @param in input stream (not closed)
+     * @param destination file to write
+     * @return number of bytes copied
+     * @throws IOException if there is a problem reading the stream or writing the file
+     */
+    public static final long copy(final InputStream in, final File destination) throws IOException {
+        final ReadableByteChannel source = Channels.newChannel(in);
+
+        try (final FileOutputStream fos = new FileOutputStream(destination);
+             final FileChannel target = fos.getChannel()) {
+
+            long position = 0;
+            long transferred;
+
+            while ((transferred = target.transferFrom(source, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                position += transferred;
+            }
+
+            return position;
+        }
+    }
+}
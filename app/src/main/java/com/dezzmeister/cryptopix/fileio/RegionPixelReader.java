@@ -0,0 +1,109 @@
+package com.dezzmeister.cryptopix.fileio;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.images.PNGRows;
+import com.dezzmeister.cryptopix.main.scan.LeadingPixelReader;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the leading rows of an image, so that scanning a gallery never decodes a full image. PNG images are
+ * read with {@link PNGRows}; other formats use a {@link BitmapRegionDecoder}. Works with any URI the content
+ * resolver can open, including <code>file://</code> URIs.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class RegionPixelReader implements LeadingPixelReader<Uri> {
+
+    /**
+     * Opens image URIs
+     */
+    private final ContentResolver resolver;
+
+    /**
+     * Creates a reader that opens URIs with the given content resolver.
+     *
+     * @param _resolver content resolver
+     */
+    public RegionPixelReader(final ContentResolver _resolver) {
+        resolver = _resolver;
+    }
+
+    @Override
+    public ImageData readLeadingPixels(final Uri source, final int count) throws IOException {
+        final ImageData pngRows = readPNGRows(source, count);
+
+        if (pngRows != null) {
+            return pngRows;
+        }
+
+        final InputStream in = resolver.openInputStream(source);
+
+        if (in == null) {
+            throw new IOException("Unable to open " + source);
+        }
+
+        try {
+            final BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(in, false);
+
+            try {
+                final int width = decoder.getWidth();
+                final int rows = (int) Math.min(decoder.getHeight(), ((long) count + width - 1) / width);
+
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+                final Bitmap bitmap = decoder.decodeRegion(new Rect(0, 0, width, rows), options);
+
+                if (bitmap == null) {
+                    throw new IOException("Unable to decode " + source);
+                }
+
+                final int[] pixels = new int[width * rows];
+                bitmap.getPixels(pixels, 0, width, 0, 0, width, rows);
+                bitmap.recycle();
+
+                return new ImageData(pixels, width, rows);
+            } finally {
+                decoder.recycle();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the leading rows of a PNG image without inflating the rest.
+     *
+     * @param source image URI
+     * @param count minimum number of leading pixels
+     * @return leading rows, or null if the image is not a PNG image that {@link PNGRows} supports
+     * @throws IOException if the image cannot be read
+     */
+    private ImageData readPNGRows(final Uri source, final int count) throws IOException {
+        final InputStream in = resolver.openInputStream(source);
+
+        if (in == null) {
+            throw new IOException("Unable to open " + source);
+        }
+
+        try {
+            return PNGRows.readLeadingRows(new BufferedInputStream(in), count);
+        } catch (EOFException e) {
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+}
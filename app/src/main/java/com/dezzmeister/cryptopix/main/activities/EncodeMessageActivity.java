@@ -81,7 +81,8 @@ public class EncodeMessageActivity extends AppCompatActivity {
 
         final Intent intent = getIntent();
         sessionObject = (SessionObject) intent.getSerializableExtra(DialogArgs.SESSION_OBJECT_KEY);
-        sessionObject.resolveImagePath();
+        // Decode the carrier image in the background while the user picks a file
+        sessionObject.prefetchImage();
 
         packageHeader = (PackageHeader) intent.getSerializableExtra(DialogArgs.PACKAGE_HEADER_KEY);
         packageHandler = (PackageHandler) intent.getSerializableExtra(DialogArgs.PACKAGE_HANDLER_KEY);
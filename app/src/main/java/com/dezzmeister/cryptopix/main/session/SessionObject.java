@@ -4,29 +4,126 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.Toast;
 
 import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Versions;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A user session; allows the user to open an app and maintain the previous state. When the internal
- * state is modified, the session will save itself to the given location. A session can be restored
- * by calling {@link #loadFrom(Context, File)};
+ * state is modified, the session will save itself to the given location in the background (see
+ * {@link SessionPersister}). A session can be restored by calling {@link #loadFrom(Context, File)};
+ *
+ * Restoring a session does not decode the saved image. A downsampled preview can be decoded with
+ * {@link #loadPreview(int, int)}, and the full-resolution image is decoded in the background the first
+ * time it is needed (see {@link #loadImageAsync(ImageCallback)}).
+ *
+ * Sessions are persisted in a small versioned binary format (see {@link #SESSION_MAGIC}). Sessions written
+ * by older versions with Java serialization are still read, and are rewritten in the binary format.
  *
  * @author Joe Desmond
  * @since 1.0.0
  */
 public class SessionObject implements Serializable {
 
+    /**
+     * Matches the serialVersionUID computed for sessions written with Java serialization, so that they
+     * can still be read and migrated
+     */
+    private static final long serialVersionUID = 2783882164580362251L;
+
+    /**
+     * Magic number at the start of a binary session file ("CPXS")
+     */
+    private static final int SESSION_MAGIC = 0x43505853;
+
+    /**
+     * Current binary session format version
+     */
+    private static final int SESSION_FORMAT_VERSION = 1;
+
+    /**
+     * Flag bit: the image contains a secret
+     */
+    private static final int FLAG_IMAGE_HAS_SECRET = 0x01;
+
+    /**
+     * Flag bit: dark mode is enabled
+     */
+    private static final int FLAG_DARK_MODE = 0x02;
+
+    /**
+     * Flag bit: an image path follows the flags
+     */
+    private static final int FLAG_IMAGE_PATH = 0x04;
+
+    /**
+     * Flag bit: a cached image state follows the image path
+     */
+    private static final int FLAG_CACHED_STATE = 0x08;
+
+    /**
+     * Decodes saved images in the background. Images are large, so they are decoded one at a time.
+     */
+    private static final ExecutorService IMAGE_LOADER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "SessionImageLoader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Receives the full-resolution image once it has been loaded. Called on the main thread.
+     */
+    public interface ImageCallback {
+
+        /**
+         * Called when the image has been loaded.
+         *
+         * @param image the loaded image, or null if it could not be loaded
+         */
+        void onImageLoaded(final ImageData image);
+    }
+
+    /**
+     * Receives a downsampled preview of the saved image. Called on the main thread.
+     */
+    public interface PreviewCallback {
+
+        /**
+         * Called when the preview has been decoded.
+         *
+         * @param preview downsampled image, or null if it could not be decoded
+         */
+        void onPreviewLoaded(final Bitmap preview);
+    }
+
     /**
      * Location to save this session object to, or null if the session object won't persist
      */
@@ -57,6 +154,41 @@ public class SessionObject implements Serializable {
      */
     private boolean darkMode;
 
+    /**
+     * State of the image at {@link #imagePath} when it was last examined, or null if unknown
+     */
+    private EncodedImageState cachedState;
+
+    /**
+     * Leading pixels of the image containing its package header, or null if the image has no header
+     */
+    private int[] headerPixels;
+
+    /**
+     * Size of the image file when {@link #cachedState} was computed
+     */
+    private long imageFileSize = -1;
+
+    /**
+     * Modification time of the image file when {@link #cachedState} was computed
+     */
+    private long imageFileModified = -1;
+
+    /**
+     * Writes this session in the background, or null if it hasn't been needed yet
+     */
+    private transient SessionPersister persister;
+
+    /**
+     * Application context used to show a Toast if a background save fails
+     */
+    private transient Context errorContext;
+
+    /**
+     * Pending or completed background load of {@link #imageData}, or null if no load has been started
+     */
+    private transient Future<?> imageLoad;
+
     /**
      * Creates a session object that will save itself to the given location. A session will save itself
      * when its internal state is updated (for example, when a new image is set with {@link #setBitmap(Context, Bitmap, File)}.
@@ -70,13 +202,182 @@ public class SessionObject implements Serializable {
         darkMode = false;
     }
 
+    /**
+     * Decodes the full-resolution image at {@link #imagePath}. This blocks until the image has been decoded;
+     * on the main thread, prefer {@link #loadImageAsync(ImageCallback)}.
+     */
     public final void resolveImagePath() {
-        final Bitmap bitmap = BitmapFactory.decodeFile(imagePath.getAbsolutePath());
+        final File path;
+
+        synchronized (this) {
+            path = imagePath;
+        }
+
+        final Bitmap bitmap = BitmapFactory.decodeFile(path.getAbsolutePath());
         final int imageWidth = bitmap.getWidth();
         final int imageHeight = bitmap.getHeight();
         final int[] image = convert(bitmap);
-        imageData = new ImageData(image, imageWidth, imageHeight);
-        bitmapImage = bitmap;
+
+        synchronized (this) {
+            // Don't overwrite an image that was set while this one was decoding
+            if (path.equals(imagePath)) {
+                imageData = new ImageData(image, imageWidth, imageHeight);
+                bitmapImage = bitmap;
+            }
+        }
+    }
+
+    /**
+     * Decodes a downsampled version of the saved image, at least as large as the requested size. The
+     * full-resolution image is not decoded.
+     *
+     * @param reqWidth requested width (pixels)
+     * @param reqHeight requested height (pixels)
+     * @return downsampled image, or null if there is no saved image or it cannot be decoded
+     */
+    public final Bitmap loadPreview(final int reqWidth, final int reqHeight) {
+        final File path;
+
+        synchronized (this) {
+            path = imagePath;
+        }
+
+        if (path == null) {
+            return null;
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path.getAbsolutePath(), options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+
+        if (reqWidth > 0 && reqHeight > 0) {
+            while ((options.outWidth / (sampleSize * 2)) >= reqWidth && (options.outHeight / (sampleSize * 2)) >= reqHeight) {
+                sampleSize *= 2;
+            }
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+
+        return BitmapFactory.decodeFile(path.getAbsolutePath(), options);
+    }
+
+    /**
+     * Decodes a downsampled preview in the background and passes it to the callback on the main thread.
+     *
+     * @param reqWidth requested width (pixels)
+     * @param reqHeight requested height (pixels)
+     * @param callback receives the preview, or null if it cannot be decoded
+     */
+    public final void loadPreviewAsync(final int reqWidth, final int reqHeight, final PreviewCallback callback) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        IMAGE_LOADER.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap preview = loadPreview(reqWidth, reqHeight);
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onPreviewLoaded(preview);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Starts decoding the full-resolution image in the background, if it hasn't been loaded or started
+     * already.
+     */
+    public final void prefetchImage() {
+        startImageLoad();
+    }
+
+    /**
+     * Loads the full-resolution image in the background (if it isn't loaded already) and passes it to the
+     * callback on the main thread.
+     *
+     * @param callback receives the image, or null if it cannot be loaded
+     */
+    public final void loadImageAsync(final ImageCallback callback) {
+        final Future<?> load = startImageLoad();
+
+        if (load == null) {
+            callback.onImageLoaded(imageData);
+            return;
+        }
+
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        // The loader is single-threaded, so this runs after the load has finished
+        IMAGE_LOADER.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ImageData image = awaitImage(load);
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onImageLoaded(image);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Starts a background load of the full-resolution image if one is needed.
+     *
+     * @return the pending load, or null if the image is already loaded or there is no image
+     */
+    private synchronized Future<?> startImageLoad() {
+        if (imageData != null || imagePath == null) {
+            return null;
+        }
+
+        if (imageLoad == null) {
+            imageLoad = IMAGE_LOADER.submit(new Runnable() {
+                @Override
+                public void run() {
+                    resolveImagePath();
+                }
+            });
+        }
+
+        return imageLoad;
+    }
+
+    /**
+     * Waits for a background image load to finish and returns the loaded image.
+     *
+     * @param load pending load
+     * @return loaded image, or null if it could not be loaded
+     */
+    private ImageData awaitImage(final Future<?> load) {
+        try {
+            load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+
+        synchronized (this) {
+            if (imageData == null && imageLoad == load) {
+                // The load failed; allow it to be retried
+                imageLoad = null;
+            }
+
+            return imageData;
+        }
     }
 
     /**
@@ -91,10 +392,15 @@ public class SessionObject implements Serializable {
         final int imageWidth = bitmap.getWidth();
         final int imageHeight = bitmap.getHeight();
         final int[] image = convert(bitmap);
-        imageData = new ImageData(image, imageWidth, imageHeight);
 
-        bitmapImage = bitmap;
-        imagePath = bitmapLocation;
+        synchronized (this) {
+            imageData = new ImageData(image, imageWidth, imageHeight);
+            bitmapImage = bitmap;
+            imagePath = bitmapLocation;
+            imageLoad = null;
+            clearCachedState();
+        }
+
         save(context);
     }
 
@@ -105,10 +411,94 @@ public class SessionObject implements Serializable {
      * @param containsSecret true if the image contains a secret
      */
     public final void setImageContainsSecret(final Context context, final boolean containsSecret) {
-        imageHasSecret = containsSecret;
+        synchronized (this) {
+            imageHasSecret = containsSecret;
+        }
+
+        save(context);
+    }
+
+    /**
+     * Records the state of the current image, along with the pixels containing its package header. The
+     * state is cached until the image file changes, so it can be restored without decoding the image.
+     *
+     * @param context context to show error toasts when saving state
+     * @param state state of the image
+     * @param header package header of the image, or null if it has none
+     */
+    public final void setImageState(final Context context, final EncodedImageState state, final PackageHeader header) {
+        final ImageData image;
+
+        synchronized (this) {
+            image = imageData;
+        }
+
+        final int[] leadingPixels;
+
+        if (header != null && image != null && header.headerSize() <= image.pixels.length) {
+            leadingPixels = new int[header.headerSize()];
+            System.arraycopy(image.pixels, 0, leadingPixels, 0, leadingPixels.length);
+        } else {
+            leadingPixels = null;
+        }
+
+        synchronized (this) {
+            imageHasSecret = (state == EncodedImageState.SECRET_NO_PASSWORD || state == EncodedImageState.SECRET_PASSWORD);
+            cachedState = state;
+            headerPixels = leadingPixels;
+
+            if (imagePath != null) {
+                imageFileSize = imagePath.length();
+                imageFileModified = imagePath.lastModified();
+            }
+        }
+
         save(context);
     }
 
+    /**
+     * Returns the cached state of the current image, or null if the state is unknown or the image file
+     * has changed since the state was computed.
+     *
+     * @return cached image state, or null
+     */
+    public final synchronized EncodedImageState getCachedImageState() {
+        if (cachedState == null || imagePath == null) {
+            return null;
+        }
+
+        if (imagePath.length() != imageFileSize || imagePath.lastModified() != imageFileModified) {
+            return null;
+        }
+
+        return cachedState;
+    }
+
+    /**
+     * Returns an image containing only the cached package header pixels of the current image, or null
+     * if there is no valid cached header. The returned image can be passed to
+     * {@link com.dezzmeister.cryptopix.main.secret.PackageHandler#extractHeader(ImageData)}.
+     *
+     * @return cached header pixels, or null
+     */
+    public final synchronized ImageData getCachedHeaderImage() {
+        if (headerPixels == null || getCachedImageState() == null) {
+            return null;
+        }
+
+        return new ImageData(headerPixels, headerPixels.length, 1);
+    }
+
+    /**
+     * Forgets the cached image state. Must be called while holding this object's lock.
+     */
+    private void clearCachedState() {
+        cachedState = null;
+        headerPixels = null;
+        imageFileSize = -1;
+        imageFileModified = -1;
+    }
+
     /**
      * Returns true if the image contains secret data, false if not.
      *
@@ -119,7 +509,7 @@ public class SessionObject implements Serializable {
     }
 
     /**
-     * Returns the current bitmap image.
+     * Returns the current bitmap image, or null if the full-resolution image hasn't been loaded.
      *
      * @return current image as a bitmap
      */
@@ -128,12 +518,28 @@ public class SessionObject implements Serializable {
     }
 
     /**
-     * Returns the current image as an array of 4-byte ARGB pixels.
+     * Returns true if this session has an image, whether or not it has been loaded.
+     *
+     * @return true if an image is selected
+     */
+    public final synchronized boolean hasImage() {
+        return imageData != null || imagePath != null;
+    }
+
+    /**
+     * Returns the current image as an array of 4-byte ARGB pixels. If the image hasn't been loaded yet,
+     * this blocks until it has; on the main thread, prefer {@link #loadImageAsync(ImageCallback)}.
      *
-     * @return current image (pixels and dimensions)
+     * @return current image (pixels and dimensions), or null if there is no image
      */
     public final ImageData getImage() {
-        return imageData;
+        final Future<?> load = startImageLoad();
+
+        if (load == null) {
+            return imageData;
+        }
+
+        return awaitImage(load);
     }
 
     /**
@@ -164,33 +570,211 @@ public class SessionObject implements Serializable {
      * @param context used to show an error if the session cannot be updated
      */
     public void toggleDarkMode(final Context context) {
-        darkMode = !darkMode;
+        synchronized (this) {
+            darkMode = !darkMode;
+        }
+
         save(context);
     }
 
     /**
-     * Saves this session object to {@link #location}. A context is required to show a Toast
+     * Schedules a save of this session object to {@link #location}. Several calls in quick succession
+     * result in a single write on a background thread. A context is required to show a Toast
      * if a problem occurs.
      *
      * @param context context
      */
     public void save(final Context context) {
+        final SessionPersister sessionPersister = getPersister(context);
+
+        if (sessionPersister != null) {
+            sessionPersister.requestSave();
+        }
+    }
+
+    /**
+     * Writes any pending changes to {@link #location} and waits for the write to finish. This should be
+     * called when the app may be stopped.
+     *
+     * @param context context to show a Toast if a problem occurs
+     */
+    public void flush(final Context context) {
+        final SessionPersister sessionPersister = getPersister(context);
+
+        if (sessionPersister != null) {
+            sessionPersister.flush();
+        }
+    }
+
+    /**
+     * Returns the persister for this session, creating it if necessary. Returns null if this session
+     * won't persist.
+     *
+     * @param context context to show a Toast if a background save fails
+     * @return session persister, or null
+     */
+    private synchronized SessionPersister getPersister(final Context context) {
         if (location == null) {
-            return;
+            return null;
         }
 
-        try (final ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(location))) {
-            oos.writeObject(this);
-        } catch (IOException e) {
-            e.printStackTrace();
+        errorContext = context.getApplicationContext();
 
-            final Toast toast = Toast.makeText(context, "Failed to save session!", Toast.LENGTH_SHORT);
-            toast.show();
+        if (persister == null) {
+            persister = new SessionPersister(location, new SessionPersister.Source() {
+                @Override
+                public void writeTo(final OutputStream out) throws IOException {
+                    writeSession(out);
+                }
+            });
+            persister.setErrorListener(new SessionPersister.ErrorListener() {
+                @Override
+                public void onSaveFailed(final IOException e) {
+                    showSaveError();
+                }
+            });
+        }
+
+        return persister;
+    }
+
+    /**
+     * Writes this session to the given stream in the binary session format. The stream is not closed.
+     *
+     * @param out output stream
+     * @throws IOException if the session cannot be written
+     */
+    private synchronized void writeSession(final OutputStream out) throws IOException {
+        final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+
+        int flags = 0;
+        flags |= imageHasSecret ? FLAG_IMAGE_HAS_SECRET : 0;
+        flags |= darkMode ? FLAG_DARK_MODE : 0;
+        flags |= (imagePath != null) ? FLAG_IMAGE_PATH : 0;
+        flags |= (cachedState != null) ? FLAG_CACHED_STATE : 0;
+
+        dos.writeInt(SESSION_MAGIC);
+        dos.writeByte(SESSION_FORMAT_VERSION);
+        dos.writeByte(flags);
+
+        if (imagePath != null) {
+            dos.writeUTF(imagePath.getPath());
+        }
+
+        if (cachedState != null) {
+            dos.writeByte(cachedState.ordinal());
+            dos.writeLong(imageFileSize);
+            dos.writeLong(imageFileModified);
+
+            final int headerLength = (headerPixels == null) ? 0 : headerPixels.length;
+            dos.writeInt(headerLength);
+
+            for (int i = 0; i < headerLength; i++) {
+                dos.writeInt(headerPixels[i]);
+            }
+        }
+
+        dos.flush();
+    }
+
+    /**
+     * Reads the fields of this session from the given stream, which must be in the binary session format.
+     * The fields are only changed once the whole session has been read.
+     *
+     * @param in input stream
+     * @throws IOException if the stream is not a valid session
+     */
+    private synchronized void readSession(final InputStream in) throws IOException {
+        final DataInputStream dis = new DataInputStream(in);
+
+        if (dis.readInt() != SESSION_MAGIC) {
+            throw new IOException("Not a session file!");
+        }
+
+        final int version = dis.readUnsignedByte();
+        if (version != SESSION_FORMAT_VERSION) {
+            throw new IOException("Unsupported session format version: " + version);
+        }
+
+        final int flags = dis.readUnsignedByte();
+        final File readImagePath = ((flags & FLAG_IMAGE_PATH) != 0) ? new File(dis.readUTF()) : null;
+
+        EncodedImageState readState = null;
+        long readFileSize = -1;
+        long readFileModified = -1;
+        int[] readHeaderPixels = null;
+
+        if ((flags & FLAG_CACHED_STATE) != 0) {
+            final EncodedImageState[] states = EncodedImageState.values();
+            final int stateIndex = dis.readUnsignedByte();
+
+            if (stateIndex >= states.length) {
+                throw new IOException("Invalid cached image state: " + stateIndex);
+            }
+
+            readState = states[stateIndex];
+            readFileSize = dis.readLong();
+            readFileModified = dis.readLong();
+
+            // The cached pixels are one package header, so a longer one can only come from a damaged file
+            final int headerLength = dis.readInt();
+            if (headerLength < 0 || headerLength > maxHeaderSize()) {
+                throw new IOException("Invalid cached header length: " + headerLength);
+            }
+
+            readHeaderPixels = (headerLength == 0) ? null : new int[headerLength];
+            for (int i = 0; i < headerLength; i++) {
+                readHeaderPixels[i] = dis.readInt();
+            }
+        }
+
+        imageHasSecret = (flags & FLAG_IMAGE_HAS_SECRET) != 0;
+        darkMode = (flags & FLAG_DARK_MODE) != 0;
+        imagePath = readImagePath;
+        cachedState = readState;
+        imageFileSize = readFileSize;
+        imageFileModified = readFileModified;
+        headerPixels = readHeaderPixels;
+    }
+
+    /**
+     * @return largest package header of any supported version, in pixels
+     */
+    private static int maxHeaderSize() {
+        int maxHeaderSize = 0;
+        for (final PackageHandler handler : Versions.PACKAGE_HANDLERS.values()) {
+            maxHeaderSize = Math.max(maxHeaderSize, handler.maxHeaderSize());
         }
+
+        return maxHeaderSize;
     }
 
     /**
-     * Loads a serialized session object from the given path.
+     * Shows a Toast on the main thread saying that the session could not be saved.
+     */
+    private void showSaveError() {
+        final Context context;
+
+        synchronized (this) {
+            context = errorContext;
+        }
+
+        if (context == null) {
+            return;
+        }
+
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                final Toast toast = Toast.makeText(context, "Failed to save session!", Toast.LENGTH_SHORT);
+                toast.show();
+            }
+        });
+    }
+
+    /**
+     * Loads a session object from the given path. Sessions written with Java serialization by older
+     * versions are migrated to the binary format.
      *
      * @param context context to show a Toast if an error occurs
      * @param location location of the SessionObject
@@ -199,9 +783,20 @@ public class SessionObject implements Serializable {
     public static final SessionObject loadFrom(final Context context, final File location) {
         SessionObject object = new SessionObject(location);
 
-        try (final ObjectInputStream ois = new ObjectInputStream(new FileInputStream(location))) {
-            object = (SessionObject) ois.readObject();
-            object.resolveImagePath();
+        try (final BufferedInputStream in = new BufferedInputStream(new FileInputStream(location))) {
+            in.mark(2);
+            final int streamMagic = (in.read() << 8) | in.read();
+            in.reset();
+
+            if ((short) streamMagic == ObjectStreamConstants.STREAM_MAGIC) {
+                // Written by an older version with Java serialization; rewrite it in the binary format
+
+                final ObjectInputStream ois = new ObjectInputStream(in);
+                object = (SessionObject) ois.readObject();
+                object.save(context);
+            } else {
+                object.readSession(in);
+            }
         } catch (Exception e) {
             e.printStackTrace();
 
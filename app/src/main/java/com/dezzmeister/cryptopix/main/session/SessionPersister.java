@@ -0,0 +1,243 @@
+package com.dezzmeister.cryptopix.main.session;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for a session. Save requests are coalesced: after the first request, the
+ * persister waits for {@link #DEFAULT_DELAY_MILLIS} and then writes the latest state once, on a background
+ * thread. Every write goes to a temporary file next to the target, which is then renamed over the target,
+ * so a crash mid-write leaves the previous session intact.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class SessionPersister {
+
+    /**
+     * Default time to wait for further updates before writing (milliseconds)
+     */
+    public static final long DEFAULT_DELAY_MILLIS = 250;
+
+    /**
+     * Suffix of the temporary file that is renamed over the target
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Writes the current state of the session. Called on the persister's background thread.
+     */
+    public interface Source {
+
+        /**
+         * Writes a snapshot of the current state to the given stream.
+         *
+         * @param out stream to write to
+         * @throws IOException if the state cannot be written
+         */
+        void writeTo(final OutputStream out) throws IOException;
+    }
+
+    /**
+     * Notified when a background write fails. Called on the persister's background thread.
+     */
+    public interface ErrorListener {
+
+        /**
+         * Called when the session cannot be written.
+         *
+         * @param e the cause of the failure
+         */
+        void onSaveFailed(final IOException e);
+    }
+
+    /**
+     * Location of the persisted session
+     */
+    private final File location;
+
+    /**
+     * Temporary file that is written before being renamed to {@link #location}
+     */
+    private final File tempLocation;
+
+    /**
+     * Provides the state to write
+     */
+    private final Source source;
+
+    /**
+     * Time to wait for further updates before writing (milliseconds)
+     */
+    private final long delayMillis;
+
+    /**
+     * Single background thread; all writes are serialized on it
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Guards {@link #dirty} and {@link #scheduled}
+     */
+    private final Object lock = new Object();
+
+    /**
+     * True if the state has changed since the last write
+     */
+    private boolean dirty = false;
+
+    /**
+     * True if a delayed write has been scheduled and has not run yet
+     */
+    private boolean scheduled = false;
+
+    /**
+     * Receives write failures, can be null
+     */
+    private volatile ErrorListener errorListener = null;
+
+    /**
+     * Creates a persister that writes the given source to the given location, using
+     * {@link #DEFAULT_DELAY_MILLIS}.
+     *
+     * @param _location location of the persisted session
+     * @param _source provides the state to write
+     */
+    public SessionPersister(final File _location, final Source _source) {
+        this(_location, _source, DEFAULT_DELAY_MILLIS);
+    }
+
+    /**
+     * Creates a persister that writes the given source to the given location.
+     *
+     * @param _location location of the persisted session
+     * @param _source provides the state to write
+     * @param _delayMillis time to wait for further updates before writing
+     */
+    public SessionPersister(final File _location, final Source _source, final long _delayMillis) {
+        location = _location;
+        tempLocation = new File(_location.getPath() + TEMP_SUFFIX);
+        source = _source;
+        delayMillis = _delayMillis;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "SessionPersister");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sets a listener to be notified when a background write fails.
+     *
+     * @param listener error listener, or null
+     */
+    public void setErrorListener(final ErrorListener listener) {
+        errorListener = listener;
+    }
+
+    /**
+     * Marks the state as changed. A write is scheduled if one is not already pending; further
+     * requests before it runs are folded into the same write.
+     */
+    public void requestSave() {
+        synchronized (lock) {
+            dirty = true;
+
+            if (scheduled) {
+                return;
+            }
+
+            scheduled = true;
+        }
+
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    scheduled = false;
+                }
+
+                writeIfDirty();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes any pending changes immediately and waits for the write to finish. Call this when the
+     * app may be stopped (for example, in <code>onStop</code>).
+     */
+    public void flush() {
+        final Future<?> future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                writeIfDirty();
+            }
+        });
+
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the state if it has changed since the last write. Only called on {@link #executor}.
+     */
+    private void writeIfDirty() {
+        synchronized (lock) {
+            if (!dirty) {
+                return;
+            }
+
+            dirty = false;
+        }
+
+        try {
+            write();
+        } catch (IOException e) {
+            e.printStackTrace();
+
+            // Keep the change, so that the next save or flush tries again
+            synchronized (lock) {
+                dirty = true;
+            }
+
+            final ErrorListener listener = errorListener;
+            if (listener != null) {
+                listener.onSaveFailed(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the state to {@link #tempLocation} and renames it over {@link #location}.
+     *
+     * @throws IOException if the state cannot be written or the file cannot be replaced
+     */
+    private void write() throws IOException {
+        try (final FileOutputStream fos = new FileOutputStream(tempLocation)) {
+            source.writeTo(fos);
+            fos.flush();
+            fos.getFD().sync();
+        }
+
+        if (!tempLocation.renameTo(location)) {
+            tempLocation.delete();
+            throw new IOException("Unable to replace " + location);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.dezzmeister.cryptopix.benchmarks;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates deterministic carriers and payloads for the benchmarks.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class BenchmarkData {
+
+    /**
+     * Payload that doesn't compress at all
+     */
+    public static final String RANDOM = "random";
+
+    /**
+     * Payload that compresses like ordinary text
+     */
+    public static final String TEXT = "text";
+
+    /**
+     * Payload that compresses almost completely
+     */
+    public static final String ZEROS = "zeros";
+
+    private static final String TEXT_SAMPLE =
+            "Cryptopix hides a file in the two least significant bits of every channel of an image. " +
+            "Each pixel of the carrier holds one byte of the secret package, starting with the header.\n";
+
+    /**
+     * Width of generated carriers (pixels); the height is derived from the requested size
+     */
+    private static final int CARRIER_WIDTH = 1000;
+
+    /**
+     * Creates a carrier image with random ARGB pixels.
+     *
+     * @param megapixels size of the carrier, in millions of pixels
+     * @param seed random seed
+     * @return carrier image
+     */
+    public static final ImageData carrier(final int megapixels, final long seed) {
+        final int height = megapixels * (1_000_000 / CARRIER_WIDTH);
+        final int[] pixels = new int[CARRIER_WIDTH * height];
+        final Random random = new Random(seed);
+
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        return new ImageData(pixels, CARRIER_WIDTH, height);
+    }
+
+    /**
+     * Creates payload bytes with the given compressibility.
+     *
+     * @param size number of bytes
+     * @param compressibility one of {@link #RANDOM}, {@link #TEXT} or {@link #ZEROS}
+     * @param seed random seed
+     * @return payload bytes
+     */
+    public static final byte[] payload(final int size, final String compressibility, final long seed) {
+        final byte[] out = new byte[size];
+
+        switch (compressibility) {
+            case RANDOM: {
+                new Random(seed).nextBytes(out);
+                break;
+            }
+            case TEXT: {
+                final byte[] sample = TEXT_SAMPLE.getBytes(StandardCharsets.US_ASCII);
+                final Random random = new Random(seed);
+
+                for (int i = 0; i < size; i++) {
+                    out[i] = sample[i % sample.length];
+
+                    // Sprinkle in some noise so the text isn't a perfect repetition
+                    if (random.nextInt(16) == 0) {
+                        out[i] = (byte) ('a' + random.nextInt(26));
+                    }
+                }
+                break;
+            }
+            case ZEROS: {
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown compressibility: " + compressibility);
+            }
+        }
+
+        return out;
+    }
+}
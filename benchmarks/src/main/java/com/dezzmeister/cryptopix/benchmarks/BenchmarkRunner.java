@@ -0,0 +1,115 @@
+package com.dezzmeister.cryptopix.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmark suite once for each thread count, with the GC profiler attached so every result
+ * includes allocation rates (<code>gc.alloc.rate.norm</code> is bytes allocated per operation). Results
+ * are written as JSON to <code>jmh-threads-N.json</code> in the output directory.
+ *
+ * <pre>
+ * --threads 1,4          thread counts to run (default: 1 and all cores)
+ * --include REGEX        benchmarks to run (default: all)
+ * --param NAME=V1,V2     override a benchmark parameter (repeatable)
+ * --output DIR           where to write results (default: build/results/jmh)
+ * --quick                fewer, shorter iterations, for smoke tests
+ * --no-gc                don't attach the GC profiler
+ * </pre>
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class BenchmarkRunner {
+
+    public static void main(final String[] args) throws RunnerException {
+        final List<Integer> threadCounts = new ArrayList<Integer>();
+        final List<String[]> params = new ArrayList<String[]>();
+        String include = BenchmarkRunner.class.getPackage().getName() + ".*";
+        File output = new File("build/results/jmh");
+        boolean quick = false;
+        boolean gc = true;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": {
+                    for (final String count : args[++i].split(",")) {
+                        threadCounts.add(Integer.parseInt(count.trim()));
+                    }
+                    break;
+                }
+                case "--include": {
+                    include = args[++i];
+                    break;
+                }
+                case "--param": {
+                    final String[] param = args[++i].split("=", 2);
+                    params.add(new String[]{param[0], param[1]});
+                    break;
+                }
+                case "--output": {
+                    output = new File(args[++i]);
+                    break;
+                }
+                case "--quick": {
+                    quick = true;
+                    break;
+                }
+                case "--no-gc": {
+                    gc = false;
+                    break;
+                }
+                default: {
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        }
+
+        if (threadCounts.isEmpty()) {
+            threadCounts.add(1);
+
+            final int cores = Runtime.getRuntime().availableProcessors();
+            if (cores > 1) {
+                threadCounts.add(cores);
+            }
+        }
+
+        output.mkdirs();
+
+        for (final int threads : threadCounts) {
+            final ChainedOptionsBuilder builder = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .shouldFailOnError(true)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(output, "jmh-threads-" + threads + ".json").getPath());
+
+            if (gc) {
+                builder.addProfiler(GCProfiler.class);
+            }
+
+            for (final String[] param : params) {
+                builder.param(param[0], param[1].split(","));
+            }
+
+            if (quick) {
+                builder.forks(1)
+                        .warmupIterations(1)
+                        .warmupTime(TimeValue.seconds(1))
+                        .measurementIterations(2)
+                        .measurementTime(TimeValue.seconds(1));
+            }
+
+            new Runner(builder.build()).run();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.dezzmeister.cryptopix.benchmarks;
+
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PackageFunctions#compress(byte[])} and {@link PackageFunctions#decompress(byte[])}.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int sizeKB;
+
+    @Param({BenchmarkData.RANDOM, BenchmarkData.TEXT, BenchmarkData.ZEROS})
+    public String compressibility;
+
+    public byte[] data;
+
+    public byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        data = BenchmarkData.payload(sizeKB * 1024, compressibility, 1);
+        compressed = PackageFunctions.compress(data);
+    }
+
+    @Benchmark
+    public byte[] compress() throws Exception {
+        return PackageFunctions.compress(data);
+    }
+
+    @Benchmark
+    public byte[] decompress() throws Exception {
+        return PackageFunctions.decompress(compressed);
+    }
+}
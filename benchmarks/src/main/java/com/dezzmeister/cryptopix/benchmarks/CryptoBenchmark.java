@@ -0,0 +1,87 @@
+package com.dezzmeister.cryptopix.benchmarks;
+
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Measures key derivation and AES-CBC encryption/decryption as used by the package handlers.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CryptoBenchmark {
+
+    /**
+     * PBKDF2 iteration count used by Cryptopix 1.0.0
+     */
+    private static final int PBKDF2_ITERATIONS = 5000;
+
+    @Param({"16", "1024", "16384"})
+    public int sizeKB;
+
+    public byte[] password;
+
+    public byte[] salt;
+
+    public SecretKeySpec key;
+
+    public IvParameterSpec iv;
+
+    public byte[] data;
+
+    public byte[] encrypted;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        password = "correct horse battery staple".getBytes(StandardCharsets.US_ASCII);
+        salt = PackageFunctions.generateSalt();
+        key = PackageFunctions.generateKey(password, salt, PBKDF2_ITERATIONS);
+        iv = PackageFunctions.generateIV(16);
+        data = BenchmarkData.payload(sizeKB * 1024, BenchmarkData.RANDOM, 1);
+        encrypted = PackageFunctions.encrypt(data, key, iv);
+    }
+
+    @Benchmark
+    public SecretKeySpec generateKey() throws Exception {
+        return PackageFunctions.generateKey(password, salt, PBKDF2_ITERATIONS);
+    }
+
+    @Benchmark
+    public byte[] saltAndHashPassword() throws Exception {
+        return PackageFunctions.saltAndHashPassword(salt, password);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return PackageFunctions.encrypt(data, key, iv);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return PackageFunctions.decrypt(encrypted, key, iv);
+    }
+}
@@ -0,0 +1,107 @@
+package com.dezzmeister.cryptopix.benchmarks;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the complete {@link PackageHandler} operations for the current version. Packages are always
+ * compressed, as in the app's default settings, so <code>compressibility</code> controls how much the
+ * payload shrinks before encryption and embedding.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class PackageHandlerBenchmark {
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    @Param({"16", "512"})
+    public int payloadKB;
+
+    @Param({BenchmarkData.RANDOM, BenchmarkData.TEXT, BenchmarkData.ZEROS})
+    public String compressibility;
+
+    @Param({"false", "true"})
+    public boolean password;
+
+    public PackageHandler handler;
+
+    public ImageData carrier;
+
+    public Payload payload;
+
+    public EncodingOptions options;
+
+    /**
+     * The carrier with {@link #payload} already encoded
+     */
+    public ImageData encoded;
+
+    public PackageHeader header;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        handler = Versions.getHandler(Versions.THIS_VERSION);
+        carrier = BenchmarkData.carrier(megapixels, 1);
+
+        payload = handler.getEmptyPayload();
+        payload.setFileName("payload.bin");
+        payload.setMimeType("application/octet-stream");
+        payload.setData(BenchmarkData.payload(payloadKB * 1024, compressibility, 2));
+
+        options = new EncodingOptions();
+        options.versionCode = Versions.THIS_VERSION;
+        options.compress = true;
+        options.password = password ? "correct horse battery staple" : null;
+
+        encoded = handler.encodeSecret(carrier, payload, options);
+        header = handler.extractHeader(encoded);
+    }
+
+    @Benchmark
+    public ImageData encodeSecret() throws Exception {
+        return handler.encodeSecret(carrier, payload, options);
+    }
+
+    @Benchmark
+    public Payload decode() throws Exception {
+        return handler.decode(encoded, header, options.password);
+    }
+
+    @Benchmark
+    public PackageHeader extractHeader() {
+        return handler.extractHeader(encoded);
+    }
+
+    @Benchmark
+    public EncodedImageState getImageState() {
+        return handler.getImageState(encoded, header);
+    }
+}
@@ -0,0 +1,107 @@
+package com.dezzmeister.cryptopix.benchmarks;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.FeistelPermutation;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the raw pixel packing kernels, {@link PackageFunctions#writeBytes(int[], byte[], int)} and
+ * {@link PackageFunctions#extractBytes(int[], int, int)}, over a carrier filled to capacity. The scattered
+ * variants fill the same carrier in permuted block order.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class PixelCodecBenchmark {
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    /**
+     * Shared, read-only carrier
+     */
+    public ImageData carrier;
+
+    /**
+     * One secret byte per carrier pixel
+     */
+    public byte[] bytes;
+
+    /**
+     * Permutation of every pixel block in the carrier
+     */
+    public FeistelPermutation permutation;
+
+    /**
+     * Number of bytes that fill whole pixel blocks
+     */
+    public int scatteredLength;
+
+    /**
+     * A per-thread copy of the carrier for {@link #writeBytes(Target)} to modify.
+     */
+    @State(Scope.Thread)
+    public static class Target {
+        public int[] pixels;
+
+        @Setup(Level.Trial)
+        public void setup(final PixelCodecBenchmark benchmark) {
+            pixels = benchmark.carrier.pixels.clone();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        carrier = BenchmarkData.carrier(megapixels, 1);
+        bytes = BenchmarkData.payload(carrier.pixels.length, BenchmarkData.RANDOM, 2);
+
+        final int blocks = carrier.pixels.length / PackageFunctions.SCATTER_BLOCK_SIZE;
+        permutation = new FeistelPermutation(BenchmarkData.payload(FeistelPermutation.KEY_LENGTH, BenchmarkData.RANDOM, 3), blocks);
+        scatteredLength = blocks * PackageFunctions.SCATTER_BLOCK_SIZE;
+    }
+
+    @Benchmark
+    public int[] writeBytes(final Target target) {
+        PackageFunctions.writeBytes(target.pixels, bytes, 0);
+        return target.pixels;
+    }
+
+    @Benchmark
+    public byte[] extractBytes() {
+        return PackageFunctions.extractBytes(carrier.pixels, -1, 0);
+    }
+
+    @Benchmark
+    public int[] writeBytesScattered(final Target target) {
+        PackageFunctions.writeBytes(target.pixels, bytes, 0, scatteredLength, 0, permutation);
+        return target.pixels;
+    }
+
+    @Benchmark
+    public byte[] extractBytesScattered() {
+        final byte[] out = new byte[scatteredLength];
+        PackageFunctions.extractBytes(carrier.pixels, out, 0, scatteredLength, 0, permutation);
+        return out;
+    }
+}
@@ -0,0 +1,88 @@
+package com.dezzmeister.cryptopix.cli;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Results and throughput of a batch run.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class BatchReport {
+
+    /**
+     * Result for every image in the batch, in input order
+     */
+    public final List<BatchResult> results;
+
+    /**
+     * Wall-clock time taken by the batch (nanoseconds)
+     */
+    public final long elapsedNanos;
+
+    /**
+     * Number of worker threads used
+     */
+    public final int threads;
+
+    /**
+     * Creates a batch report.
+     *
+     * @param _results result for every image
+     * @param _elapsedNanos wall-clock time taken by the batch
+     * @param _threads number of worker threads used
+     */
+    public BatchReport(final List<BatchResult> _results, final long _elapsedNanos, final int _threads) {
+        results = _results;
+        elapsedNanos = _elapsedNanos;
+        threads = _threads;
+    }
+
+    /**
+     * Returns the number of images that failed.
+     *
+     * @return number of failures
+     */
+    public int failures() {
+        int failures = 0;
+
+        for (final BatchResult result : results) {
+            if (!result.succeeded()) {
+                failures++;
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * Prints any failures followed by a throughput summary.
+     *
+     * @param out stream to print to
+     */
+    public void print(final PrintStream out) {
+        long carrierBytes = 0;
+        long payloadBytes = 0;
+        int succeeded = 0;
+
+        for (final BatchResult result : results) {
+            if (result.succeeded()) {
+                carrierBytes += result.carrierBytes;
+                payloadBytes += result.payloadBytes;
+                succeeded++;
+            } else {
+                out.println("FAILED " + result.image + ": " + result.error);
+            }
+        }
+
+        final double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        final double megabyte = 1024.0 * 1024.0;
+
+        out.println(String.format(Locale.ROOT, "%d of %d images in %.3f s on %d threads", succeeded, results.size(), seconds, threads));
+        out.println(String.format(Locale.ROOT, "  %.2f images/s", succeeded / seconds));
+        out.println(String.format(Locale.ROOT, "  %.2f MB/s carrier (%.2f MB)", carrierBytes / megabyte / seconds, carrierBytes / megabyte));
+        out.println(String.format(Locale.ROOT, "  %.2f MB/s payload (%.2f MB)", payloadBytes / megabyte / seconds, payloadBytes / megabyte));
+    }
+}
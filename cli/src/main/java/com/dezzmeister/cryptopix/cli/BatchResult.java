@@ -0,0 +1,71 @@
+package com.dezzmeister.cryptopix.cli;
+
+import java.io.File;
+
+/**
+ * The outcome of processing a single image in a batch.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class BatchResult {
+
+    /**
+     * The image that was processed
+     */
+    public final File image;
+
+    /**
+     * Number of carrier bytes (4 per pixel) processed
+     */
+    public final long carrierBytes;
+
+    /**
+     * Number of payload bytes encoded or decoded
+     */
+    public final long payloadBytes;
+
+    /**
+     * The error that stopped this image from being processed, or null if it succeeded
+     */
+    public final Throwable error;
+
+    private BatchResult(final File _image, final long _carrierBytes, final long _payloadBytes, final Throwable _error) {
+        image = _image;
+        carrierBytes = _carrierBytes;
+        payloadBytes = _payloadBytes;
+        error = _error;
+    }
+
+    /**
+     * Creates a result for an image that was processed successfully.
+     *
+     * @param image processed image
+     * @param carrierBytes number of carrier bytes processed
+     * @param payloadBytes number of payload bytes encoded or decoded
+     * @return successful result
+     */
+    public static final BatchResult success(final File image, final long carrierBytes, final long payloadBytes) {
+        return new BatchResult(image, carrierBytes, payloadBytes, null);
+    }
+
+    /**
+     * Creates a result for an image that could not be processed.
+     *
+     * @param image image
+     * @param error cause of the failure
+     * @return failed result
+     */
+    public static final BatchResult failure(final File image, final Throwable error) {
+        return new BatchResult(image, 0, 0, error);
+    }
+
+    /**
+     * Returns true if the image was processed successfully.
+     *
+     * @return true if there was no error
+     */
+    public boolean succeeded() {
+        return error == null;
+    }
+}
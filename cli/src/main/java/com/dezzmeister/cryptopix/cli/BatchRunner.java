@@ -0,0 +1,81 @@
+package com.dezzmeister.cryptopix.cli;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a {@link BatchTask} over a list of images on a fixed-size thread pool and measures throughput.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class BatchRunner {
+
+    /**
+     * Number of worker threads
+     */
+    private final int threads;
+
+    /**
+     * Creates a batch runner with the given number of worker threads.
+     *
+     * @param _threads number of worker threads (at least 1)
+     */
+    public BatchRunner(final int _threads) {
+        if (_threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1!");
+        }
+
+        threads = _threads;
+    }
+
+    /**
+     * Processes every image with the given task and waits for all of them to finish. A failure in one
+     * image does not stop the others.
+     *
+     * @param images images to process
+     * @param task task to apply to each image
+     * @return report containing the result for every image
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public BatchReport run(final List<File> images, final BatchTask task) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<BatchResult>> futures = new ArrayList<Future<BatchResult>>(images.size());
+        final long start = System.nanoTime();
+
+        try {
+            for (final File image : images) {
+                futures.add(executor.submit(new Callable<BatchResult>() {
+                    @Override
+                    public BatchResult call() {
+                        try {
+                            return task.process(image);
+                        } catch (Exception e) {
+                            return BatchResult.failure(image, e);
+                        }
+                    }
+                }));
+            }
+
+            final List<BatchResult> results = new ArrayList<BatchResult>(images.size());
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(BatchResult.failure(images.get(i), e.getCause()));
+                }
+            }
+
+            return new BatchReport(results, System.nanoTime() - start, threads);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
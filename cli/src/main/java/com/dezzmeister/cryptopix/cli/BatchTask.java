@@ -0,0 +1,22 @@
+package com.dezzmeister.cryptopix.cli;
+
+import java.io.File;
+
+/**
+ * An operation applied to every image in a batch. Implementations must be safe to call from several
+ * threads at once.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface BatchTask {
+
+    /**
+     * Processes a single image.
+     *
+     * @param image image file
+     * @return result for the image
+     * @throws Exception if the image cannot be processed
+     */
+    BatchResult process(final File image) throws Exception;
+}
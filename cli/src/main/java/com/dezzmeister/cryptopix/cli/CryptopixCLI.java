@@ -0,0 +1,447 @@
+package com.dezzmeister.cryptopix.cli;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.scan.ImageScanner;
+import com.dezzmeister.cryptopix.main.scan.ScanIndex;
+import com.dezzmeister.cryptopix.main.scan.ScanListener;
+import com.dezzmeister.cryptopix.main.scan.ScanResult;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.SpanningHandler;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Command line front end for batch encoding, decoding and scanning directories of images on a normal JVM.
+ *
+ * <pre>
+ * encode --payload FILE[,FILE...] --input DIR --output DIR [--password PASSWORD] [--compress] [--threads N]
+ * decode --input DIR --output DIR [--password PASSWORD] [--entry NAME] [--threads N]
+ * encode --span --payload FILE --input DIR --output DIR [--password PASSWORD] [--compress] [--threads N]
+ * decode --span --input DIR --output DIR [--password PASSWORD] [--threads N]
+ * scan --input DIR [--threads N] [--no-verify] [--index FILE]
+ * </pre>
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class CryptopixCLI {
+
+    private static final String USAGE =
+            "Usage:\n" +
+            "  encode --payload FILE[,FILE...] --input DIR --output DIR [--password PASSWORD] [--compress] [--mime TYPE] [--threads N] [--trace]\n" +
+            "  decode --input DIR --output DIR [--password PASSWORD] [--entry NAME] [--threads N] [--trace]\n" +
+            "  encode --span --payload FILE --input DIR --output DIR [--password PASSWORD] [--compress] [--mime TYPE] [--threads N] [--trace]\n" +
+            "  decode --span --input DIR --output DIR [--password PASSWORD] [--threads N] [--trace]\n" +
+            "  scan --input DIR [--threads N] [--no-verify] [--index FILE] [--trace]\n";
+
+    /**
+     * Options that don't take a value
+     */
+    private static final List<String> FLAGS = Arrays.asList("--compress", "--trace", "--no-verify", "--span");
+
+    public static void main(final String[] args) throws Exception {
+        int status;
+
+        try {
+            status = run(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            status = 2;
+        }
+
+        System.exit(status);
+    }
+
+    /**
+     * Runs a command.
+     *
+     * @param args command line arguments
+     * @return exit status: 0 if every image succeeded, 1 if any failed
+     * @throws IllegalArgumentException if the arguments are invalid
+     * @throws Exception if the batch cannot be started
+     */
+    private static int run(final String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Missing command");
+        }
+
+        if (!args[0].equals("encode") && !args[0].equals("decode") && !args[0].equals("scan")) {
+            throw new IllegalArgumentException("Unknown command: " + args[0]);
+        }
+
+        final Map<String, String> options = parseOptions(Arrays.copyOfRange(args, 1, args.length));
+
+        if (options.containsKey("--trace")) {
+            Trace.setLevel(TraceLevel.TRACE);
+        }
+
+        final int threads = options.containsKey("--threads") ? Integer.parseInt(options.get("--threads")) : Runtime.getRuntime().availableProcessors();
+        final File input = new File(required(options, "--input"));
+
+        if (args[0].equals("scan")) {
+            final File index = options.containsKey("--index") ? new File(options.get("--index")) : null;
+            return scan(input, threads, !options.containsKey("--no-verify"), index);
+        }
+
+        final File output = new File(required(options, "--output"));
+        final String password = options.get("--password");
+
+        if (!output.isDirectory() && !output.mkdirs()) {
+            throw new IOException("Unable to create " + output);
+        }
+
+        if (options.containsKey("--span")) {
+            if (args[0].equals("encode")) {
+                final File payloadFile = new File(required(options, "--payload"));
+                final SpanningHandler handler = (SpanningHandler) Versions.getHandler(Versions.VERSION_1_2_0);
+                final Payload payload = handler.getEmptyPayload();
+                payload.setFileName(payloadFile.getName());
+                payload.setMimeType(options.containsKey("--mime") ? options.get("--mime") : "application/octet-stream");
+                payload.setData(readFile(payloadFile));
+
+                final EncodingOptions encodingOptions = new EncodingOptions();
+                encodingOptions.versionCode = Versions.VERSION_1_2_0;
+                encodingOptions.password = password;
+                encodingOptions.compress = options.containsKey("--compress");
+
+                return encodeSpanned(listImages(input), payload, encodingOptions, output, threads);
+            }
+
+            return decodeSpanned(listImages(input), password, output, threads);
+        }
+
+        final BatchTask task;
+
+        switch (args[0]) {
+            case "encode": {
+                // Several payload files are hidden as an archive, so that each can be extracted on its own
+                final String[] payloadPaths = required(options, "--payload").split(",");
+                final long versionCode = (payloadPaths.length > 1) ? Versions.VERSION_1_1_0 : Versions.THIS_VERSION;
+                final PackageHandler handler = Versions.getHandler(versionCode);
+                final List<Payload> payloads = new ArrayList<Payload>();
+
+                for (final String payloadPath : payloadPaths) {
+                    final File payloadFile = new File(payloadPath);
+                    final Payload payload = handler.getEmptyPayload();
+                    payload.setFileName(payloadFile.getName());
+                    payload.setMimeType(options.containsKey("--mime") ? options.get("--mime") : "application/octet-stream");
+                    payload.setData(readFile(payloadFile));
+                    payloads.add(payload);
+                }
+
+                final EncodingOptions encodingOptions = new EncodingOptions();
+                encodingOptions.versionCode = versionCode;
+                encodingOptions.password = password;
+                encodingOptions.compress = options.containsKey("--compress");
+
+                task = new EncodeTask(payloads, encodingOptions, output);
+                break;
+            }
+            case "decode": {
+                task = new DecodeTask(password, options.get("--entry"), output);
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown command: " + args[0]);
+            }
+        }
+
+        final BatchReport report = new BatchRunner(threads).run(listImages(input), task);
+        report.print(System.out);
+
+        return (report.failures() == 0) ? 0 : 1;
+    }
+
+    /**
+     * Splits one payload across every carrier image, one segment per carrier. Carriers are read, encoded and
+     * written in parallel.
+     *
+     * @param carrierFiles carrier images
+     * @param payload payload to split
+     * @param options encoding options (the version code must be a spanning version)
+     * @param output directory to write the segment images to
+     * @param threads number of worker threads
+     * @return exit status: always 0, failures are thrown
+     * @throws Exception if any carrier cannot be read, encoded or written
+     */
+    private static int encodeSpanned(final List<File> carrierFiles, final Payload payload, final EncodingOptions options, final File output, final int threads) throws Exception {
+        final long start = System.nanoTime();
+        final SpanningHandler handler = (SpanningHandler) Versions.getHandler(options.versionCode);
+        final List<ImageData> carriers = readImages(carrierFiles, threads);
+        final ImageData[] segments = handler.encodeSpanned(carriers, payload, options, threads);
+        final List<Callable<Void>> writes = new ArrayList<Callable<Void>>(segments.length);
+
+        for (int i = 0; i < segments.length; i++) {
+            final ImageData segment = segments[i];
+            final File file = new File(output, baseName(carrierFiles.get(i)) + ".png");
+
+            writes.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    ImageIOCodec.writePNG(segment, file);
+                    return null;
+                }
+            });
+        }
+
+        runAll(writes, threads);
+
+        System.out.printf("Split %d bytes across %d images in %.2f s on %d threads%n", payload.data().length, segments.length,
+                (System.nanoTime() - start) / 1e9, threads);
+
+        return 0;
+    }
+
+    /**
+     * Reassembles a payload from the segment images of one set, given in any order, and writes it to the
+     * output directory.
+     *
+     * @param segmentFiles segment images
+     * @param password password, or null
+     * @param output directory to write the payload to
+     * @param threads number of worker threads
+     * @return exit status: always 0, failures are thrown
+     * @throws Exception if any segment cannot be read, or the set cannot be decoded
+     */
+    private static int decodeSpanned(final List<File> segmentFiles, final String password, final File output, final int threads) throws Exception {
+        final long start = System.nanoTime();
+        final SpanningHandler handler = (SpanningHandler) Versions.getHandler(Versions.VERSION_1_2_0);
+        final Payload payload = handler.decodeSpanned(readImages(segmentFiles, threads), password, threads);
+
+        // The file name comes from the images, so strip any directories from it
+        final File payloadFile = new File(output, new File(payload.fileName()).getName());
+
+        try (final FileOutputStream fos = new FileOutputStream(payloadFile)) {
+            fos.write(payload.data());
+        }
+
+        System.out.printf("Joined %d images into %s (%d bytes) in %.2f s on %d threads%n", segmentFiles.size(), payloadFile,
+                payload.data().length, (System.nanoTime() - start) / 1e9, threads);
+
+        return 0;
+    }
+
+    private static List<ImageData> readImages(final List<File> files, final int threads) throws Exception {
+        final List<Callable<ImageData>> reads = new ArrayList<Callable<ImageData>>(files.size());
+
+        for (final File file : files) {
+            reads.add(new Callable<ImageData>() {
+                @Override
+                public ImageData call() throws IOException {
+                    return ImageIOCodec.read(file);
+                }
+            });
+        }
+
+        return runAll(reads, threads);
+    }
+
+    /**
+     * Runs tasks on a fixed-size thread pool and waits for all of them, rethrowing the first failure.
+     *
+     * @param tasks tasks to run
+     * @param threads number of worker threads
+     * @return task results, in the same order as the tasks
+     * @throws Exception the first failure of any task
+     */
+    private static <T> List<T> runAll(final List<Callable<T>> tasks, final int threads) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+
+            for (final Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+
+            final List<T> results = new ArrayList<T>(tasks.size());
+
+            for (final Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                }
+            }
+
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Classifies every image under a directory, printing one line per image as soon as it is classified,
+     * followed by a summary.
+     *
+     * @param input directory or image file
+     * @param threads number of worker threads
+     * @param verify true to check payload hashes
+     * @param indexFile persistent index of earlier results, or null
+     * @return exit status: always 0, unreadable images are reported but are not failures
+     * @throws InterruptedException if interrupted while scanning
+     * @throws IOException if the index cannot be opened
+     */
+    private static int scan(final File input, final int threads, final boolean verify, final File indexFile) throws InterruptedException, IOException {
+        final List<File> images = input.isFile() ? Arrays.asList(input) : ImageScanner.listFiles(input, new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return ImageIOCodec.isImageFile(file);
+            }
+        });
+
+        final ImageScanner<File> scanner = new ImageScanner<File>(new ImageIOPixelReader(), threads);
+        scanner.setVerify(verify);
+
+        final ScanIndex index = (indexFile != null) ? ScanIndex.open(indexFile) : null;
+        scanner.setCache(index);
+
+        final AtomicInteger secrets = new AtomicInteger();
+        final long start = System.nanoTime();
+
+        scanner.scan(images, new ScanListener<File>() {
+            @Override
+            public void onResult(final ScanResult<File> result) {
+                if (result.state == EncodedImageState.NO_SECRET && result.error == null) {
+                    return;
+                }
+
+                if (result.hasSecret()) {
+                    secrets.incrementAndGet();
+                }
+
+                final String line = String.format("%-18s %12d %-8s %s%s", result.state, result.payloadSize(),
+                        result.isPasswordProtected() ? "password" : "-", result.source,
+                        (result.error != null) ? " (" + result.error.getMessage() + ")" : "");
+
+                synchronized (System.out) {
+                    System.out.println(line);
+                }
+            }
+        });
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (index != null) {
+            index.close();
+        }
+
+        System.out.printf("Scanned %d images in %.2f s (%.1f images/s), %d with secrets%n", images.size(), seconds, images.size() / seconds, secrets.get());
+
+        return 0;
+    }
+
+    /**
+     * Parses <code>--name value</code> pairs and <code>--flag</code> switches.
+     *
+     * @param args arguments after the command
+     * @return map from option name to value (flags map to an empty string)
+     */
+    private static Map<String, String> parseOptions(final String[] args) {
+        final Map<String, String> options = new HashMap<String, String>();
+
+        for (int i = 0; i < args.length; i++) {
+            final String name = args[i];
+
+            if (!name.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + name);
+            }
+
+            if (FLAGS.contains(name)) {
+                options.put(name, "");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+        }
+
+        return options;
+    }
+
+    private static String required(final Map<String, String> options, final String name) {
+        final String value = options.get(name);
+
+        if (value == null) {
+            throw new IllegalArgumentException("Missing required option " + name);
+        }
+
+        return value;
+    }
+
+    /**
+     * Lists the images in a directory, sorted by name. A single image file can also be given.
+     *
+     * @param input directory or image file
+     * @return image files
+     * @throws IOException if the directory cannot be listed
+     */
+    private static List<File> listImages(final File input) throws IOException {
+        final List<File> images = new ArrayList<File>();
+
+        if (input.isFile()) {
+            images.add(input);
+            return images;
+        }
+
+        final File[] files = input.listFiles();
+
+        if (files == null) {
+            throw new IOException("Unable to list " + input);
+        }
+
+        Arrays.sort(files);
+
+        for (final File file : files) {
+            if (file.isFile() && ImageIOCodec.isImageFile(file)) {
+                images.add(file);
+            }
+        }
+
+        return images;
+    }
+
+    private static byte[] readFile(final File file) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final byte[] out = new byte[(int) raf.length()];
+            raf.readFully(out);
+
+            return out;
+        }
+    }
+
+    /**
+     * Returns the name of a file without its extension.
+     *
+     * @param file file
+     * @return file name without extension
+     */
+    static String baseName(final File file) {
+        final String name = file.getName();
+        final int dot = name.lastIndexOf('.');
+
+        return (dot > 0) ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,141 @@
+package com.dezzmeister.cryptopix.cli;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.ArchiveEntry;
+import com.dezzmeister.cryptopix.main.secret.ArchiveHandler;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the secret from every image, writing each payload to its own folder in an output directory.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class DecodeTask implements BatchTask {
+
+    /**
+     * Password for protected secrets, or null
+     */
+    private final String password;
+
+    /**
+     * Name of the only archive entry to extract, or null to extract every entry
+     */
+    private final String entryName;
+
+    /**
+     * Directory to write decoded payloads to
+     */
+    private final File outputDir;
+
+    /**
+     * Creates a decode task.
+     *
+     * @param _password password for protected secrets, or null
+     * @param _entryName name of the only archive entry to extract, or null to extract every entry
+     * @param _outputDir directory to write decoded payloads to
+     */
+    public DecodeTask(final String _password, final String _entryName, final File _outputDir) {
+        password = _password;
+        entryName = _entryName;
+        outputDir = _outputDir;
+    }
+
+    @Override
+    public BatchResult process(final File image) throws Exception {
+        final ImageData secret = ImageIOCodec.read(image);
+        final long versionCode = PackageFunctions.versionCode(secret);
+        final PackageHandler handler = Versions.getHandler(versionCode);
+
+        if (handler == null) {
+            throw new IOException("Image does not contain a supported secret");
+        }
+
+        final PackageHeader header = handler.extractHeader(secret);
+
+        // A single archive entry is checked against its own hash, so don't hash the whole archive for it
+        if (entryName == null || !(handler instanceof ArchiveHandler)) {
+            final EncodedImageState state = handler.getImageState(secret, header);
+
+            if (state != EncodedImageState.SECRET_NO_PASSWORD && state != EncodedImageState.SECRET_PASSWORD) {
+                throw new IOException("Image state is " + state);
+            }
+        }
+
+        if (header.isPasswordProtected()) {
+            if (password == null) {
+                throw new SecurityException("A password is required");
+            }
+
+            if (!handler.isCorrectPassword(password, header)) {
+                throw new SecurityException("Incorrect password");
+            }
+        }
+
+        final List<Payload> payloads = decode(handler, secret, header);
+        final File payloadDir = new File(outputDir, CryptopixCLI.baseName(image));
+
+        if (!payloadDir.isDirectory() && !payloadDir.mkdirs()) {
+            throw new IOException("Unable to create " + payloadDir);
+        }
+
+        long payloadBytes = 0;
+
+        for (final Payload payload : payloads) {
+            // The file name comes from the image, so strip any directories from it
+            final File payloadFile = new File(payloadDir, new File(payload.fileName()).getName());
+
+            // Stream the file out, so that it is decrypted and inflated without being held in memory
+            try (final InputStream in = payload.openStream(); final FileOutputStream fos = new FileOutputStream(payloadFile)) {
+                final byte[] buffer = new byte[1 << 16];
+                int read;
+
+                while ((read = in.read(buffer)) >= 0) {
+                    fos.write(buffer, 0, read);
+                    payloadBytes += read;
+                }
+            }
+        }
+
+        return BatchResult.success(image, 4L * secret.pixels.length, payloadBytes);
+    }
+
+    /**
+     * Decodes the files in an image. Archive entries are extracted one by one, so that only the selected
+     * entry is read when {@link #entryName} is set.
+     */
+    private List<Payload> decode(final PackageHandler handler, final ImageData secret, final PackageHeader header) throws Exception {
+        final List<Payload> payloads = new ArrayList<Payload>();
+
+        if (!(handler instanceof ArchiveHandler)) {
+            payloads.add(handler.openPayload(secret, header, password));
+            return payloads;
+        }
+
+        final ArchiveHandler archiveHandler = (ArchiveHandler) handler;
+
+        for (final ArchiveEntry entry : archiveHandler.listEntries(secret, header, password)) {
+            if (entryName == null || entryName.equals(entry.fileName)) {
+                payloads.add(archiveHandler.extractEntry(secret, header, entry, password));
+            }
+        }
+
+        if (payloads.isEmpty()) {
+            throw new IOException("Archive has no entry named " + entryName);
+        }
+
+        return payloads;
+    }
+}
@@ -0,0 +1,75 @@
+package com.dezzmeister.cryptopix.cli;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.ArchiveHandler;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Hides the same payload in every carrier image, writing the results to an output directory as PNGs.
+ * Several payload files are hidden together as an archive.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class EncodeTask implements BatchTask {
+
+    /**
+     * Payload files to hide in each image
+     */
+    private final List<Payload> payloads;
+
+    /**
+     * Options used when encoding each image
+     */
+    private final EncodingOptions options;
+
+    /**
+     * Directory to write encoded images to
+     */
+    private final File outputDir;
+
+    /**
+     * Creates an encode task.
+     *
+     * @param _payloads payload files to hide in each image
+     * @param _options encoding options (the version code must be set, and must be an archive version
+     *                 if there is more than one payload file)
+     * @param _outputDir directory to write encoded images to
+     */
+    public EncodeTask(final List<Payload> _payloads, final EncodingOptions _options, final File _outputDir) {
+        payloads = _payloads;
+        options = _options;
+        outputDir = _outputDir;
+    }
+
+    @Override
+    public BatchResult process(final File image) throws Exception {
+        final PackageHandler handler = Versions.getHandler(options.versionCode);
+        final ImageData carrier = ImageIOCodec.read(image);
+        final ImageData encoded;
+
+        if (handler instanceof ArchiveHandler) {
+            encoded = ((ArchiveHandler) handler).encodeArchive(carrier, payloads, options);
+        } else if (payloads.size() == 1) {
+            encoded = handler.encodeSecret(carrier, payloads.get(0), options);
+        } else {
+            throw new IllegalArgumentException("Version " + Long.toHexString(options.versionCode) + " holds a single file");
+        }
+
+        ImageIOCodec.writePNG(encoded, new File(outputDir, CryptopixCLI.baseName(image) + ".png"));
+
+        long payloadBytes = 0;
+
+        for (final Payload payload : payloads) {
+            payloadBytes += payload.data().length;
+        }
+
+        return BatchResult.success(image, 4L * carrier.pixels.length, payloadBytes);
+    }
+}
@@ -0,0 +1,120 @@
+package com.dezzmeister.cryptopix.cli;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Reads and writes {@link ImageData} with {@link ImageIO}. Encoded images are always written as PNG, because
+ * any lossy format would destroy the secret data.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ImageIOCodec {
+
+    /**
+     * File extensions that are treated as images when scanning a directory
+     */
+    private static final String[] IMAGE_EXTENSIONS = {".png", ".bmp", ".jpg", ".jpeg", ".gif"};
+
+    /**
+     * Returns true if the file name has an image extension.
+     *
+     * @param file file to check
+     * @return true if the file looks like an image
+     */
+    public static final boolean isImageFile(final File file) {
+        final String name = file.getName().toLowerCase(Locale.ROOT);
+
+        for (final String extension : IMAGE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads an image file as 4-byte ARGB pixels.
+     *
+     * @param file image file
+     * @return image pixels and dimensions
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public static final ImageData read(final File file) throws IOException {
+        final BufferedImage image = ImageIO.read(file);
+
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + file);
+        }
+
+        return toImageData(image);
+    }
+
+    /**
+     * Reads an image from a stream as 4-byte ARGB pixels. The stream is not closed.
+     *
+     * @param in image bytes
+     * @return image pixels and dimensions
+     * @throws IOException if the stream cannot be read or is not a supported image
+     */
+    public static final ImageData read(final InputStream in) throws IOException {
+        final BufferedImage image = ImageIO.read(in);
+
+        if (image == null) {
+            throw new IOException("Unsupported image format");
+        }
+
+        return toImageData(image);
+    }
+
+    /**
+     * Writes 4-byte ARGB pixels to a PNG file.
+     *
+     * @param imageData image pixels and dimensions
+     * @param file destination file
+     * @throws IOException if the file cannot be written
+     */
+    public static final void writePNG(final ImageData imageData, final File file) throws IOException {
+        if (!ImageIO.write(toBufferedImage(imageData), "png", file)) {
+            throw new IOException("No PNG writer available!");
+        }
+    }
+
+    /**
+     * Writes 4-byte ARGB pixels to a stream as a PNG. The stream is not closed.
+     *
+     * @param imageData image pixels and dimensions
+     * @param out destination stream
+     * @throws IOException if the stream cannot be written
+     */
+    public static final void writePNG(final ImageData imageData, final OutputStream out) throws IOException {
+        if (!ImageIO.write(toBufferedImage(imageData), "png", out)) {
+            throw new IOException("No PNG writer available!");
+        }
+    }
+
+    private static ImageData toImageData(final BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        return new ImageData(pixels, width, height);
+    }
+
+    private static BufferedImage toBufferedImage(final ImageData imageData) {
+        final BufferedImage image = new BufferedImage(imageData.width, imageData.height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, imageData.width, imageData.height, imageData.pixels, 0, imageData.width);
+
+        return image;
+    }
+}
@@ -0,0 +1,76 @@
+package com.dezzmeister.cryptopix.cli;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.images.PNGRows;
+import com.dezzmeister.cryptopix.main.scan.LeadingPixelReader;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads the leading rows of an image file. PNG images are read with {@link PNGRows}, which stops inflating
+ * as soon as the requested rows are done; other formats use an {@link ImageReader} source region, which lets
+ * the JPEG reader stop early too.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ImageIOPixelReader implements LeadingPixelReader<File> {
+
+    @Override
+    public ImageData readLeadingPixels(final File source, final int count) throws IOException {
+        try (final InputStream in = new BufferedInputStream(new FileInputStream(source))) {
+            final ImageData rows = PNGRows.readLeadingRows(in, count);
+
+            if (rows != null) {
+                return rows;
+            }
+        } catch (EOFException e) {
+            // Too short to be a PNG image; let ImageIO decide what it is
+        }
+
+        try (final ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            if (input == null) {
+                throw new IOException("Unable to open " + source);
+            }
+
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + source);
+            }
+
+            final ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(input, true, true);
+
+                final int width = reader.getWidth(0);
+                final int height = reader.getHeight(0);
+                final int rows = (int) Math.min(height, ((long) count + width - 1) / width);
+
+                final ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(0, 0, width, rows));
+
+                final BufferedImage image = reader.read(0, param);
+                final int[] pixels = image.getRGB(0, 0, width, rows, null, 0, width);
+
+                return new ImageData(pixels, width, rows);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
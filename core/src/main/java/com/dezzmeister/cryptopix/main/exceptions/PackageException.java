@@ -0,0 +1,139 @@
+package com.dezzmeister.cryptopix.main.exceptions;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * The one exception thrown by {@link com.dezzmeister.cryptopix.main.secret.AsyncPackageHandler}. It wraps the
+ * many checked exceptions of the package handlers, and sorts them into a few {@link Kind kinds}, one for each
+ * message the app shows when an encode or decode fails.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class PackageException extends RuntimeException {
+
+    /**
+     * Why an encode or decode failed
+     */
+    public enum Kind {
+
+        /**
+         * The image doesn't contain a package from a supported version (the app offers to encode one instead)
+         */
+        NO_SECRET,
+
+        /**
+         * The password is missing or wrong (the app asks for the password again)
+         */
+        WRONG_PASSWORD,
+
+        /**
+         * The package is damaged ("CorruptedImageDialog")
+         */
+        CORRUPTED,
+
+        /**
+         * The secret file doesn't fit in the carrier ("Selected file is too large!")
+         */
+        TOO_LARGE,
+
+        /**
+         * A hash or cipher is missing on this device ("UnsupportedAlgorithmDialog")
+         */
+        UNSUPPORTED,
+
+        /**
+         * Reading or writing failed, or the work was interrupted ("Unable to decode image!")
+         */
+        IO,
+
+        /**
+         * Anything else ("An unknown error occurred")
+         */
+        UNKNOWN
+    }
+
+    private final Kind kind;
+
+    /**
+     * Creates a PackageException with the given kind and message.
+     *
+     * @param _kind why the operation failed
+     * @param message message
+     */
+    public PackageException(final Kind _kind, final String message) {
+        super(message);
+        kind = _kind;
+    }
+
+    /**
+     * Creates a PackageException with the given kind and cause.
+     *
+     * @param _kind why the operation failed
+     * @param cause exception thrown by a package handler
+     */
+    public PackageException(final Kind _kind, final Throwable cause) {
+        super(cause);
+        kind = _kind;
+    }
+
+    /**
+     * @return why the operation failed
+     */
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * Wraps an exception thrown by a package handler. Completion and execution exceptions are unwrapped
+     * first, and package exceptions are returned as they are, so a failure passed down a chain of futures
+     * keeps its kind.
+     *
+     * @param e exception thrown by a package handler, or by a future
+     * @return package exception
+     */
+    public static PackageException from(final Throwable e) {
+        Throwable cause = e;
+
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        if (cause instanceof PackageException) {
+            return (PackageException) cause;
+        }
+
+        return new PackageException(kindOf(cause), cause);
+    }
+
+    private static Kind kindOf(final Throwable cause) {
+        if (cause instanceof SecurityException) {
+            return Kind.WRONG_PASSWORD;
+        } else if (cause instanceof SizeLimitExceededException) {
+            return Kind.TOO_LARGE;
+        } else if (cause instanceof NoSuchAlgorithmException || cause instanceof NoSuchPaddingException ||
+                cause instanceof InvalidKeySpecException || cause instanceof InvalidKeyException ||
+                cause instanceof InvalidAlgorithmParameterException) {
+            return Kind.UNSUPPORTED;
+        } else if (cause instanceof GeneralSecurityException || cause instanceof DataFormatException ||
+                cause instanceof IllegalArgumentException || cause instanceof IllegalStateException ||
+                cause instanceof IndexOutOfBoundsException || cause instanceof NegativeArraySizeException) {
+            // Bad padding, a bad deflate stream, or header fields that point outside the image
+            return Kind.CORRUPTED;
+        } else if (cause instanceof IOException) {
+            return Kind.IO;
+        }
+
+        return Kind.UNKNOWN;
+    }
+}
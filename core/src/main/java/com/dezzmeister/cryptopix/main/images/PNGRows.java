@@ -0,0 +1,237 @@
+package com.dezzmeister.cryptopix.main.images;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes the leading rows of a PNG image without inflating the rest of it. Platform decoders inflate the
+ * whole image even when only a region is requested, which makes classifying a large PNG as slow as opening it.
+ *
+ * Only the layouts Cryptopix writes are supported: 8-bit RGB or RGBA, not interlaced. Anything else returns
+ * null, and the caller should fall back to a full decoder.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PNGRows {
+
+    /**
+     * The 8-byte signature at the start of every PNG file
+     */
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final int IHDR = 0x49484452;
+    private static final int IDAT = 0x49444154;
+
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    /**
+     * Size of the buffer compressed image data is read into
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * Reads at least <code>count</code> leading pixels of a PNG image, as whole rows of 4-byte ARGB pixels.
+     * Reading stops as soon as enough rows have been inflated; the stream is not closed.
+     *
+     * @param in stream positioned at the start of the PNG file
+     * @param count minimum number of leading pixels
+     * @return leading rows (the height is the number of rows read), or null if the stream is not a PNG
+     *         image in a supported layout
+     * @throws IOException if the stream cannot be read or the image data is malformed
+     */
+    public static final ImageData readLeadingRows(final InputStream in, final int count) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        final byte[] signature = new byte[PNG_SIGNATURE.length];
+        data.readFully(signature);
+
+        for (int i = 0; i < signature.length; i++) {
+            if (signature[i] != PNG_SIGNATURE[i]) {
+                return null;
+            }
+        }
+
+        int width = -1;
+        int height = -1;
+        int bytesPerPixel = -1;
+
+        int length = data.readInt();
+        int type = data.readInt();
+
+        while (type != IDAT) {
+            if (type == IHDR) {
+                width = data.readInt();
+                height = data.readInt();
+                final int bitDepth = data.readUnsignedByte();
+                final int colorType = data.readUnsignedByte();
+                data.readUnsignedByte(); // compression method
+                data.readUnsignedByte(); // filter method
+                final int interlace = data.readUnsignedByte();
+
+                if (bitDepth != 8 || interlace != 0 || (colorType != COLOR_TYPE_RGB && colorType != COLOR_TYPE_RGBA)) {
+                    return null;
+                }
+
+                bytesPerPixel = (colorType == COLOR_TYPE_RGBA) ? 4 : 3;
+            } else {
+                skipFully(data, length);
+            }
+
+            skipFully(data, 4); // CRC
+            length = data.readInt();
+            type = data.readInt();
+        }
+
+        if (width <= 0 || height <= 0) {
+            throw new IOException("PNG image data before header!");
+        }
+
+        final int rows = (int) Math.min(height, ((long) count + width - 1) / width);
+        final int stride = width * bytesPerPixel;
+        final int[] pixels = new int[width * rows];
+
+        final Inflater inflater = new Inflater();
+        final byte[] input = new byte[READ_BUFFER_SIZE];
+        byte[] previous = new byte[stride + 1];
+        byte[] current = new byte[stride + 1];
+
+        try {
+            int remaining = length;
+
+            for (int row = 0; row < rows; row++) {
+                int filled = 0;
+
+                while (filled < current.length) {
+                    if (inflater.needsInput()) {
+                        while (remaining == 0) {
+                            // Move on to the next IDAT chunk
+                            skipFully(data, 4);
+                            remaining = data.readInt();
+
+                            if (data.readInt() != IDAT) {
+                                throw new IOException("PNG image data ended early!");
+                            }
+                        }
+
+                        final int read = Math.min(remaining, input.length);
+                        data.readFully(input, 0, read);
+                        inflater.setInput(input, 0, read);
+                        remaining -= read;
+                    }
+
+                    final int inflated = inflater.inflate(current, filled, current.length - filled);
+                    filled += inflated;
+
+                    if (inflated == 0 && !inflater.needsInput()) {
+                        throw new IOException("PNG image data ended early!");
+                    }
+                }
+
+                unfilter(current, previous, bytesPerPixel);
+                toARGB(current, pixels, row * width, width, bytesPerPixel);
+
+                final byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed PNG image data", e);
+        } finally {
+            inflater.end();
+        }
+
+        return new ImageData(pixels, width, rows);
+    }
+
+    /**
+     * Reverses the filter applied to a scanline. The first byte of each line is the filter type.
+     *
+     * @param line filtered scanline, including the filter type byte (modified in place)
+     * @param previous the previous unfiltered scanline, or all zeros for the first line
+     * @param bytesPerPixel bytes per complete pixel
+     * @throws IOException if the filter type is unknown
+     */
+    private static void unfilter(final byte[] line, final byte[] previous, final int bytesPerPixel) throws IOException {
+        final int filter = line[0];
+
+        switch (filter) {
+            case 0:
+                break;
+            case 1:
+                for (int i = 1 + bytesPerPixel; i < line.length; i++) {
+                    line[i] += line[i - bytesPerPixel];
+                }
+                break;
+            case 2:
+                for (int i = 1; i < line.length; i++) {
+                    line[i] += previous[i];
+                }
+                break;
+            case 3:
+                for (int i = 1; i < line.length; i++) {
+                    final int left = (i > bytesPerPixel) ? (line[i - bytesPerPixel] & 0xFF) : 0;
+                    line[i] += (left + (previous[i] & 0xFF)) >>> 1;
+                }
+                break;
+            case 4:
+                for (int i = 1; i < line.length; i++) {
+                    final int left = (i > bytesPerPixel) ? (line[i - bytesPerPixel] & 0xFF) : 0;
+                    final int up = previous[i] & 0xFF;
+                    final int upLeft = (i > bytesPerPixel) ? (previous[i - bytesPerPixel] & 0xFF) : 0;
+                    line[i] += paeth(left, up, upLeft);
+                }
+                break;
+            default:
+                throw new IOException("Unknown PNG filter type: " + filter);
+        }
+    }
+
+    private static int paeth(final int a, final int b, final int c) {
+        final int p = a + b - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+
+        if (pa <= pb && pa <= pc) {
+            return a;
+        } else if (pb <= pc) {
+            return b;
+        } else {
+            return c;
+        }
+    }
+
+    private static void toARGB(final byte[] line, final int[] pixels, final int offset, final int width, final int bytesPerPixel) {
+        int index = 1;
+
+        for (int x = 0; x < width; x++) {
+            final int red = line[index] & 0xFF;
+            final int green = line[index + 1] & 0xFF;
+            final int blue = line[index + 2] & 0xFF;
+            final int alpha = (bytesPerPixel == 4) ? (line[index + 3] & 0xFF) : 0xFF;
+
+            pixels[offset + x] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+            index += bytesPerPixel;
+        }
+    }
+
+    private static void skipFully(final DataInputStream in, final int count) throws IOException {
+        int remaining = count;
+
+        while (remaining > 0) {
+            final int skipped = in.skipBytes(remaining);
+
+            if (skipped <= 0) {
+                // skipBytes can return 0 before the end of the stream; read to be sure
+                in.readByte();
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.dezzmeister.cryptopix.main.scan;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+import com.dezzmeister.cryptopix.main.secret.Workers;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Classifies many images in parallel without decoding them. Every image is probed with only its
+ * leading pixels: first enough for the version code and the largest package header, then (if the image
+ * contains a package and verification is on) enough for the whole package. Images without a secret,
+ * which are almost all of them, cost a single row.
+ *
+ * Each image is probed on one thread: payload hashes are not split over more threads, because the scan
+ * already keeps every worker busy.
+ *
+ * @param <T> type of image source
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ImageScanner<T> {
+
+    /**
+     * Trace tag
+     */
+    private static final String TAG = "ImageScanner";
+
+    /**
+     * Reads leading pixels from each image source
+     */
+    private final LeadingPixelReader<T> reader;
+
+    /**
+     * Number of worker threads, if the scanner makes its own
+     */
+    private final int threads;
+
+    /**
+     * Executor to probe images on, or null to start {@link #threads} threads for every scan
+     */
+    private final Executor executor;
+
+    /**
+     * Number of pixels read by the first probe: enough for the version code and any known package header
+     */
+    private final int probeSize;
+
+    /**
+     * True if the payload hash of every package should be checked
+     */
+    private volatile boolean verify = true;
+
+    /**
+     * Remembers results between scans, or null
+     */
+    private volatile ScanCache<T> cache = null;
+
+    /**
+     * Creates a scanner with the given number of worker threads.
+     *
+     * @param _reader reads leading pixels from each image source
+     * @param _threads number of worker threads (at least 1)
+     */
+    public ImageScanner(final LeadingPixelReader<T> _reader, final int _threads) {
+        if (_threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1!");
+        }
+
+        reader = _reader;
+        threads = _threads;
+        executor = null;
+        probeSize = maxProbeSize();
+    }
+
+    /**
+     * Creates a scanner that probes images on the given executor.
+     *
+     * @param _reader reads leading pixels from each image source
+     * @param _executor executor to probe images on, e.g. one shared by every scan
+     */
+    public ImageScanner(final LeadingPixelReader<T> _reader, final Executor _executor) {
+        if (_executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null!");
+        }
+
+        reader = _reader;
+        threads = 0;
+        executor = _executor;
+        probeSize = maxProbeSize();
+    }
+
+    /**
+     * @return number of pixels needed for the version code and any known package header
+     */
+    private static int maxProbeSize() {
+        int maxHeaderSize = 8;
+        for (final PackageHandler handler : Versions.PACKAGE_HANDLERS.values()) {
+            maxHeaderSize = Math.max(maxHeaderSize, handler.maxHeaderSize());
+        }
+
+        return maxHeaderSize;
+    }
+
+    /**
+     * Sets whether the payload hash of every package should be checked. Verification reads every payload pixel,
+     * so it costs as much as the payload is large; without it, results only trust the package header and are
+     * marked as not {@link ScanResult#verified verified}. Verification is on by default.
+     *
+     * @param _verify true to check payload hashes
+     */
+    public void setVerify(final boolean _verify) {
+        verify = _verify;
+    }
+
+    /**
+     * Sets a cache of earlier results. Images the cache still knows are not read again, and every new result
+     * is added to it. Results that were not verified are only used while verification is off.
+     *
+     * @param _cache cache of earlier results, or null to always read every image
+     */
+    public void setCache(final ScanCache<T> _cache) {
+        cache = _cache;
+    }
+
+    /**
+     * Classifies every image source, delivering each result to the listener as soon as it is ready.
+     * Blocks until every image has been classified.
+     *
+     * @param sources images to scan
+     * @param listener receives results from the worker threads
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void scan(final Collection<T> sources, final ScanListener<T> listener) throws InterruptedException {
+        final ExecutorService owned = (executor == null) ? Executors.newFixedThreadPool(threads) : null;
+        final Executor target = (owned == null) ? executor : owned;
+        final CountDownLatch remaining = new CountDownLatch(sources.size());
+
+        try {
+            for (final T source : sources) {
+                target.execute(Workers.marked(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            listener.onResult(probe(source));
+                        } finally {
+                            remaining.countDown();
+                        }
+                    }
+                }));
+            }
+
+            remaining.await();
+        } finally {
+            if (owned != null) {
+                owned.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Classifies one image on the calling thread. If a cache is set, unchanged images are answered from
+     * the cache and new results are added to it.
+     *
+     * @param source image to classify
+     * @return scan result; never null, even if the image cannot be read
+     */
+    public ScanResult<T> probe(final T source) {
+        final ScanCache<T> cache = this.cache;
+
+        if (cache != null) {
+            final ScanResult<T> cached = cache.get(source);
+
+            if (cached != null && (cached.verified || !verify)) {
+                return cached;
+            }
+        }
+
+        final ScanResult<T> result = classify(source);
+
+        // Unreadable images may be readable next time
+        if (cache != null && result.error == null) {
+            cache.put(result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Classifies one image by reading its leading pixels.
+     *
+     * @param source image to classify
+     * @return scan result; never null, even if the image cannot be read
+     */
+    private ScanResult<T> classify(final T source) {
+        long versionCode = -1;
+        PackageHandler handler = null;
+        PackageHeader header = null;
+        int[] headerPixels = null;
+
+        try {
+            ImageData leading = reader.readLeadingPixels(source, probeSize);
+
+            if (leading.pixels.length < 8) {
+                return new ScanResult<T>(source, EncodedImageState.NO_SECRET, -1, null, null, true, null);
+            }
+
+            versionCode = PackageFunctions.versionCode(leading);
+            handler = Versions.getHandler(versionCode);
+
+            if (handler == null) {
+                return new ScanResult<T>(source, EncodedImageState.NO_SECRET, -1, null, null, true, null);
+            }
+
+            header = handler.extractHeader(leading);
+            headerPixels = Arrays.copyOf(leading.pixels, header.headerSize());
+
+            if (!verify) {
+                final EncodedImageState state = header.isPasswordProtected() ? EncodedImageState.SECRET_PASSWORD : EncodedImageState.SECRET_NO_PASSWORD;
+                return new ScanResult<T>(source, state, versionCode, header, headerPixels, false, null);
+            }
+
+            final int packageSize = header.packageSize();
+
+            if (header.payloadSize() < 0 || packageSize < 0) {
+                return new ScanResult<T>(source, EncodedImageState.CORRUPTED, versionCode, header, headerPixels, true, null);
+            }
+
+            if (packageSize > leading.pixels.length) {
+                leading = reader.readLeadingPixels(source, packageSize);
+
+                if (packageSize > leading.pixels.length) {
+                    return new ScanResult<T>(source, EncodedImageState.CORRUPTED, versionCode, header, headerPixels, true, null);
+                }
+            }
+
+            return new ScanResult<T>(source, handler.getImageState(leading, header), versionCode, header, headerPixels, true, null);
+        } catch (RuntimeException e) {
+            if (handler == null) {
+                // The image itself is unreadable
+                return new ScanResult<T>(source, EncodedImageState.NO_SECRET, -1, null, null, false, e);
+            }
+
+            // The version code matched, but the rest of the package is malformed or doesn't fit in the image
+            return new ScanResult<T>(source, EncodedImageState.CORRUPTED, versionCode, header, headerPixels, true, e);
+        } catch (IOException e) {
+            if (Trace.isEnabled(TraceLevel.WARN)) {
+                Trace.log(TraceLevel.WARN, TAG, "Unable to read " + source + ": " + e.getMessage());
+            }
+
+            return new ScanResult<T>(source, EncodedImageState.NO_SECRET, versionCode, header, headerPixels, false, e);
+        }
+    }
+
+    /**
+     * Lists every file under a directory (recursively) that is accepted by the filter. Hidden directories
+     * are skipped.
+     *
+     * @param root directory to walk
+     * @param filter accepts image files; directories are always walked
+     * @return accepted files
+     */
+    public static final List<File> listFiles(final File root, final FileFilter filter) {
+        final List<File> out = new ArrayList<File>();
+        final ArrayDeque<File> directories = new ArrayDeque<File>();
+        directories.add(root);
+
+        while (!directories.isEmpty()) {
+            final File[] children = directories.poll().listFiles();
+
+            if (children == null) {
+                continue;
+            }
+
+            for (final File child : children) {
+                if (child.isDirectory()) {
+                    if (!child.getName().startsWith(".")) {
+                        directories.add(child);
+                    }
+                } else if (filter.accept(child)) {
+                    out.add(child);
+                }
+            }
+        }
+
+        return out;
+    }
+}
@@ -0,0 +1,29 @@
+package com.dezzmeister.cryptopix.main.scan;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+
+import java.io.IOException;
+
+/**
+ * Reads the first pixels of an image without decoding the rest of it. Cryptopix packages always start at
+ * the first pixel, so a few leading rows are enough to classify an image. Implementations are platform
+ * specific (ImageIO on the desktop, <code>BitmapRegionDecoder</code> on Android).
+ *
+ * @param <T> type of image source (a file, a URI...)
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface LeadingPixelReader<T> {
+
+    /**
+     * Reads at least <code>count</code> leading pixels of an image, in row-major order. Whole rows are
+     * returned, so the result may contain more pixels than requested. If the image has fewer than
+     * <code>count</code> pixels, the whole image is returned.
+     *
+     * @param source image source
+     * @param count minimum number of leading pixels to read
+     * @return leading rows of the image; the width is the width of the image and the height is the number of rows read
+     * @throws IOException if the image cannot be read
+     */
+    ImageData readLeadingPixels(final T source, final int count) throws IOException;
+}
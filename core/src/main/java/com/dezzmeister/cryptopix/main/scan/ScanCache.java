@@ -0,0 +1,28 @@
+package com.dezzmeister.cryptopix.main.scan;
+
+/**
+ * Remembers scan results between scans, so that images which haven't changed are not probed again.
+ *
+ * @param <T> type of image source
+ * @author Joe Desmond
+ * @since 1.0.0
+ * @see ImageScanner#setCache(ScanCache)
+ */
+public interface ScanCache<T> {
+
+    /**
+     * Returns the cached result for an image, if the image hasn't changed since it was cached.
+     * Called from the scanner's worker threads.
+     *
+     * @param source image source
+     * @return cached result, or null if the image is unknown or has changed
+     */
+    ScanResult<T> get(final T source);
+
+    /**
+     * Caches a new scan result. Called from the scanner's worker threads.
+     *
+     * @param result scan result to remember
+     */
+    void put(final ScanResult<T> result);
+}
@@ -0,0 +1,531 @@
+package com.dezzmeister.cryptopix.main.scan;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent index of scan results, keyed by file identity. The index is an append-only log of records,
+ * replayed into hash tables when it is opened; the latest record for a path wins.
+ *
+ * A file is identified by its path, size and modification time. If those don't match (the file was
+ * touched, copied or moved), a quick content fingerprint of the first and last few kilobytes is
+ * compared as well, so that unchanged content is still recognized without being probed again.
+ *
+ * Every record is framed with its length and a CRC-32, so a record torn by a crash is detected and
+ * dropped when the log is replayed. The log is compacted when most of its records are stale.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ScanIndex implements ScanCache<File>, Closeable {
+
+    /**
+     * "CPXI"
+     */
+    private static final int INDEX_MAGIC = 0x43505849;
+
+    /**
+     * Version of the log format
+     */
+    private static final int INDEX_FORMAT_VERSION = 1;
+
+    /**
+     * Size of the log header (magic and version)
+     */
+    private static final int LOG_HEADER_SIZE = 8;
+
+    /**
+     * Number of bytes fingerprinted at each end of a file
+     */
+    private static final int FINGERPRINT_SPAN = 4096;
+
+    /**
+     * Records larger than this are treated as corruption
+     */
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    /**
+     * The log is compacted on open once it holds more than this many records per live entry
+     */
+    private static final int COMPACTION_RATIO = 2;
+
+    /**
+     * Logs with fewer records than this are never compacted
+     */
+    private static final int MIN_COMPACTION_RECORDS = 256;
+
+    /**
+     * Suffix of the temporary file that is renamed over the log when compacting
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Trace tag
+     */
+    private static final String TAG = "ScanIndex";
+
+    /**
+     * A cached scan result and the identity of the file it belongs to
+     */
+    private static final class Entry {
+        final String path;
+        final long size;
+        final long modified;
+        final long fingerprint;
+        final long versionCode;
+        final EncodedImageState state;
+        final boolean verified;
+        final int[] headerPixels;
+
+        Entry(final String _path, final long _size, final long _modified, final long _fingerprint, final long _versionCode,
+              final EncodedImageState _state, final boolean _verified, final int[] _headerPixels) {
+            path = _path;
+            size = _size;
+            modified = _modified;
+            fingerprint = _fingerprint;
+            versionCode = _versionCode;
+            state = _state;
+            verified = _verified;
+            headerPixels = _headerPixels;
+        }
+
+        Entry moveTo(final String newPath, final long newModified) {
+            return new Entry(newPath, size, newModified, fingerprint, versionCode, state, verified, headerPixels);
+        }
+    }
+
+    /**
+     * Location of the log
+     */
+    private final File location;
+
+    /**
+     * Latest entry for each path
+     */
+    private final Map<String, Entry> byPath = new HashMap<String, Entry>();
+
+    /**
+     * Latest entry for each content fingerprint
+     */
+    private final Map<Long, Entry> byFingerprint = new HashMap<Long, Entry>();
+
+    /**
+     * Appends records to the log
+     */
+    private DataOutputStream log;
+
+    /**
+     * Number of records in the log, including stale ones
+     */
+    private int records = 0;
+
+    private ScanIndex(final File _location) {
+        location = _location;
+    }
+
+    /**
+     * Opens an index, replaying its log if it exists. A torn record at the end of the log is dropped.
+     *
+     * @param location location of the log
+     * @return open index
+     * @throws IOException if the log cannot be read or created
+     */
+    public static final ScanIndex open(final File location) throws IOException {
+        final ScanIndex index = new ScanIndex(location);
+        index.replay();
+
+        if (index.records >= MIN_COMPACTION_RECORDS && index.records > COMPACTION_RATIO * index.byPath.size()) {
+            index.compact();
+        } else {
+            index.log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(location, true)));
+
+            if (location.length() == 0) {
+                index.log.writeInt(INDEX_MAGIC);
+                index.log.writeInt(INDEX_FORMAT_VERSION);
+                index.log.flush();
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the number of files in the index.
+     *
+     * @return number of indexed files
+     */
+    public synchronized int size() {
+        return byPath.size();
+    }
+
+    @Override
+    public ScanResult<File> get(final File source) {
+        final String path = source.getPath();
+        final long size = source.length();
+        final long modified = source.lastModified();
+        final Entry known;
+
+        synchronized (this) {
+            known = byPath.get(path);
+        }
+
+        if (known != null && known.size == size && known.modified == modified) {
+            return toResult(source, known);
+        }
+
+        final long fingerprint;
+
+        try {
+            fingerprint = fingerprint(source);
+        } catch (IOException e) {
+            return null;
+        }
+
+        final Entry moved;
+
+        synchronized (this) {
+            final Entry same = byFingerprint.get(fingerprint);
+
+            if (same == null || same.size != size) {
+                return null;
+            }
+
+            // Same content under a new path or modification time; remember the new identity too
+            moved = same.moveTo(path, modified);
+            add(moved);
+        }
+
+        return toResult(source, moved);
+    }
+
+    @Override
+    public void put(final ScanResult<File> result) {
+        final File source = result.source;
+        final long fingerprint;
+
+        try {
+            fingerprint = fingerprint(source);
+        } catch (IOException e) {
+            return;
+        }
+
+        final Entry entry = new Entry(source.getPath(), source.length(), source.lastModified(), fingerprint, result.versionCode,
+                result.state, result.verified, result.headerPixels);
+
+        synchronized (this) {
+            add(entry);
+        }
+    }
+
+    /**
+     * Adds an entry to the tables and appends it to the log. The caller must hold the lock.
+     *
+     * @param entry new entry
+     */
+    private void add(final Entry entry) {
+        byPath.put(entry.path, entry);
+        byFingerprint.put(entry.fingerprint, entry);
+
+        if (log == null) {
+            return;
+        }
+
+        try {
+            writeRecord(log, entry);
+            log.flush();
+            records++;
+        } catch (IOException e) {
+            // The entry is still cached in memory; it will be written again the next time the index is compacted
+            if (Trace.isEnabled(TraceLevel.WARN)) {
+                Trace.log(TraceLevel.WARN, TAG, "Unable to append to " + location + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with only the latest entry for each path, dropping entries for files that no longer
+     * exist. The new log is written to a temporary file and renamed over the old one.
+     *
+     * @throws IOException if the log cannot be rewritten
+     */
+    public synchronized void compact() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+
+        final List<Entry> live = new ArrayList<Entry>(byPath.size());
+
+        for (final Entry entry : byPath.values()) {
+            if (new File(entry.path).exists()) {
+                live.add(entry);
+            }
+        }
+
+        byPath.clear();
+        byFingerprint.clear();
+
+        final File tempLocation = new File(location.getPath() + TEMP_SUFFIX);
+
+        try (final FileOutputStream fos = new FileOutputStream(tempLocation)) {
+            final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos));
+            dos.writeInt(INDEX_MAGIC);
+            dos.writeInt(INDEX_FORMAT_VERSION);
+
+            for (final Entry entry : live) {
+                writeRecord(dos, entry);
+                byPath.put(entry.path, entry);
+                byFingerprint.put(entry.fingerprint, entry);
+            }
+
+            dos.flush();
+            fos.getFD().sync();
+        }
+
+        if (!tempLocation.renameTo(location)) {
+            throw new IOException("Unable to replace " + location);
+        }
+
+        records = live.size();
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(location, true)));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    /**
+     * Reads every intact record of the log into the tables, and truncates a torn record at the end.
+     *
+     * @throws IOException if the log exists but cannot be read
+     */
+    private void replay() throws IOException {
+        if (!location.exists() || location.length() == 0) {
+            return;
+        }
+
+        long goodLength = LOG_HEADER_SIZE;
+
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(location)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_FORMAT_VERSION) {
+                // Not an index we understand; start over
+                goodLength = 0;
+            } else {
+                while (true) {
+                    final byte[] body = readRecordBody(in);
+                    final Entry entry = (body == null) ? null : parseRecordBody(body);
+
+                    if (entry == null) {
+                        break;
+                    }
+
+                    byPath.put(entry.path, entry);
+                    byFingerprint.put(entry.fingerprint, entry);
+                    goodLength += 8 + body.length;
+                    records++;
+                }
+            }
+        } catch (EOFException e) {
+            goodLength = 0;
+        }
+
+        if (goodLength < location.length()) {
+            if (Trace.isEnabled(TraceLevel.WARN)) {
+                Trace.log(TraceLevel.WARN, TAG, "Dropping " + (location.length() - goodLength) + " damaged bytes from " + location);
+            }
+
+            try (final RandomAccessFile raf = new RandomAccessFile(location, "rw")) {
+                raf.setLength(goodLength);
+            }
+        }
+    }
+
+    /**
+     * Writes one framed record: body length, body, and CRC-32 of the body.
+     */
+    private static void writeRecord(final DataOutputStream out, final Entry entry) throws IOException {
+        final byte[] body = recordBody(entry);
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static byte[] recordBody(final Entry entry) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(64 + 4 * ((entry.headerPixels == null) ? 0 : entry.headerPixels.length));
+        final DataOutputStream dos = new DataOutputStream(baos);
+
+        dos.writeUTF(entry.path);
+        dos.writeLong(entry.size);
+        dos.writeLong(entry.modified);
+        dos.writeLong(entry.fingerprint);
+        dos.writeLong(entry.versionCode);
+        dos.writeByte(entry.state.ordinal());
+        dos.writeBoolean(entry.verified);
+
+        if (entry.headerPixels == null) {
+            dos.writeInt(-1);
+        } else {
+            dos.writeInt(entry.headerPixels.length);
+
+            for (final int pixel : entry.headerPixels) {
+                dos.writeInt(pixel);
+            }
+        }
+
+        dos.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Reads the body of one framed record and checks its CRC.
+     *
+     * @return the record body, or null at the end of the log or at a torn or corrupted record
+     */
+    private static byte[] readRecordBody(final DataInputStream in) throws IOException {
+        final byte[] body;
+        final int expectedCRC;
+
+        try {
+            final int length = in.readInt();
+
+            if (length <= 0 || length > MAX_RECORD_SIZE) {
+                return null;
+            }
+
+            body = new byte[length];
+            in.readFully(body);
+            expectedCRC = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+
+        if ((int) crc.getValue() != expectedCRC) {
+            return null;
+        }
+
+        return body;
+    }
+
+    /**
+     * Parses the body of a record.
+     *
+     * @return the entry, or null if the body is not a valid entry
+     */
+    private static Entry parseRecordBody(final byte[] body) throws IOException {
+        final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(body));
+        final String path = dis.readUTF();
+        final long size = dis.readLong();
+        final long modified = dis.readLong();
+        final long fingerprint = dis.readLong();
+        final long versionCode = dis.readLong();
+        final int stateOrdinal = dis.readUnsignedByte();
+        final boolean verified = dis.readBoolean();
+        final int headerLength = dis.readInt();
+
+        if (stateOrdinal >= EncodedImageState.values().length) {
+            return null;
+        }
+
+        int[] headerPixels = null;
+
+        if (headerLength >= 0) {
+            headerPixels = new int[headerLength];
+
+            for (int i = 0; i < headerLength; i++) {
+                headerPixels[i] = dis.readInt();
+            }
+        }
+
+        return new Entry(path, size, modified, fingerprint, versionCode, EncodedImageState.values()[stateOrdinal], verified, headerPixels);
+    }
+
+    /**
+     * Rebuilds a scan result from an entry, extracting the package header from the cached header pixels.
+     *
+     * @return scan result, or null if the header can no longer be extracted (the handler was removed)
+     */
+    private static ScanResult<File> toResult(final File source, final Entry entry) {
+        if (entry.headerPixels == null) {
+            return new ScanResult<File>(source, entry.state, entry.versionCode, null, null, entry.verified, null);
+        }
+
+        final PackageHandler handler = Versions.getHandler(entry.versionCode);
+
+        if (handler == null) {
+            return null;
+        }
+
+        try {
+            final PackageHeader header = handler.extractHeader(new ImageData(entry.headerPixels, entry.headerPixels.length, 1));
+
+            return new ScanResult<File>(source, entry.state, entry.versionCode, header, entry.headerPixels, entry.verified, null);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Computes a quick fingerprint of a file's content and size from its first and last few kilobytes.
+     * Image formats put their headers and compressed leading rows at the start of the file, so almost any
+     * edit to the pixels Cryptopix cares about changes the fingerprint.
+     *
+     * @param file file to fingerprint
+     * @return 64-bit fingerprint
+     * @throws IOException if the file cannot be read
+     */
+    public static final long fingerprint(final File file) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final long length = raf.length();
+            final byte[] buffer = new byte[(int) Math.min(FINGERPRINT_SPAN, length)];
+
+            final CRC32 head = new CRC32();
+            raf.readFully(buffer);
+            head.update(buffer);
+
+            final CRC32 tail = new CRC32();
+            raf.seek(length - buffer.length);
+            raf.readFully(buffer);
+            tail.update(buffer);
+
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                tail.update((int) (length >>> shift));
+            }
+
+            return (head.getValue() << 32) | tail.getValue();
+        }
+    }
+}
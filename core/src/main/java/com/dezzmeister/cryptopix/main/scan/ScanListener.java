@@ -0,0 +1,19 @@
+package com.dezzmeister.cryptopix.main.scan;
+
+/**
+ * Receives scan results from an {@link ImageScanner} as soon as each image has been classified.
+ *
+ * @param <T> type of image source
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface ScanListener<T> {
+
+    /**
+     * Called once for every scanned image. This is called from the scanner's worker threads, in no
+     * particular order, so implementations must be thread safe.
+     *
+     * @param result scan result
+     */
+    void onResult(final ScanResult<T> result);
+}
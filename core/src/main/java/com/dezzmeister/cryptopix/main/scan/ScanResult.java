@@ -0,0 +1,101 @@
+package com.dezzmeister.cryptopix.main.scan;
+
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+
+/**
+ * The classification of one scanned image.
+ *
+ * @param <T> type of image source
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ScanResult<T> {
+
+    /**
+     * The scanned image
+     */
+    public final T source;
+
+    /**
+     * State of the secret in the image. Images that could not be read are {@link EncodedImageState#NO_SECRET}
+     * and have an {@link #error}.
+     */
+    public final EncodedImageState state;
+
+    /**
+     * Cryptopix version code of the package, or -1 if the image contains no secret
+     */
+    public final long versionCode;
+
+    /**
+     * Package header, or null if the image contains no secret (or the header is unreadable)
+     */
+    public final PackageHeader header;
+
+    /**
+     * The leading pixels of the image holding the package header, or null if the image contains no secret.
+     * {@link com.dezzmeister.cryptopix.main.secret.PackageHandler#extractHeader(com.dezzmeister.cryptopix.main.images.ImageData)}
+     * can extract {@link #header} from these alone, so they are what a {@link ScanCache} stores.
+     */
+    public final int[] headerPixels;
+
+    /**
+     * True if {@link #state} was checked against the payload hash. Unverified results only trust the header.
+     */
+    public final boolean verified;
+
+    /**
+     * The exception thrown while reading the image, or null
+     */
+    public final Exception error;
+
+    /**
+     * Creates a scan result.
+     *
+     * @param _source scanned image
+     * @param _state state of the secret
+     * @param _versionCode Cryptopix version code, or -1
+     * @param _header package header, or null
+     * @param _headerPixels leading pixels holding the package header, or null
+     * @param _verified true if the state was checked against the payload hash
+     * @param _error exception thrown while reading the image, or null
+     */
+    public ScanResult(final T _source, final EncodedImageState _state, final long _versionCode, final PackageHeader _header, final int[] _headerPixels,
+                      final boolean _verified, final Exception _error) {
+        source = _source;
+        state = _state;
+        versionCode = _versionCode;
+        header = _header;
+        headerPixels = _headerPixels;
+        verified = _verified;
+        error = _error;
+    }
+
+    /**
+     * Returns true if the image contains an intact secret.
+     *
+     * @return true if the image contains a secret that can be decoded
+     */
+    public boolean hasSecret() {
+        return state == EncodedImageState.SECRET_NO_PASSWORD || state == EncodedImageState.SECRET_PASSWORD;
+    }
+
+    /**
+     * Returns the stored size of the payload, or -1 if the image contains no secret.
+     *
+     * @return payload size in bytes
+     */
+    public int payloadSize() {
+        return (header == null) ? -1 : header.payloadSize();
+    }
+
+    /**
+     * Returns true if the secret in the image is protected with a password.
+     *
+     * @return true if a password is needed to decode the secret
+     */
+    public boolean isPasswordProtected() {
+        return header != null && header.isPasswordProtected();
+    }
+}
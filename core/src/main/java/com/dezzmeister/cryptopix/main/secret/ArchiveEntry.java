@@ -0,0 +1,55 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import java.io.Serializable;
+
+/**
+ * An entry in the table of an archive package. Entries are obtained with
+ * {@link ArchiveHandler#listEntries(com.dezzmeister.cryptopix.main.images.ImageData, PackageHeader, String)}
+ * and describe where the entry's stored body lies in the image, so that it can be extracted without
+ * touching any other entry.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ArchiveEntry implements Serializable {
+
+    /**
+     * Original name of the file, including the extension
+     */
+    public String fileName = null;
+
+    /**
+     * MIME type of the file
+     */
+    public String mimeType = null;
+
+    /**
+     * Size of the file, in bytes
+     */
+    public int size = -1;
+
+    /**
+     * Size of the entry body as stored in the image (after compression and encryption), in bytes
+     */
+    public int storedSize = -1;
+
+    /**
+     * True if the entry body is compressed. Each entry is only compressed if it gets smaller.
+     */
+    public boolean compressed = false;
+
+    /**
+     * The pixel at which the stored entry body begins
+     */
+    public int offset = -1;
+
+    /**
+     * 16-byte initialization vector for the entry body (only exists if the archive has a password)
+     */
+    public byte[] initVector = null;
+
+    /**
+     * MD5 hash of the stored entry body
+     */
+    public byte[] hash = null;
+}
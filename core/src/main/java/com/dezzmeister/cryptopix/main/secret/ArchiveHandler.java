@@ -0,0 +1,64 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Implemented by package handlers whose payload is an archive of several files. The archive starts with
+ * a table of entries, so that listing an archive only reads the table and extracting one entry only reads
+ * that entry's pixels.
+ *
+ * {@link #decode(ImageData, PackageHeader, String)} returns the first entry of an archive, so that callers
+ * that only know about single-file payloads still get a file.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface ArchiveHandler extends PackageHandler {
+
+    /**
+     * Hides several files in the image as an archive. Each file is compressed (if the compression option is
+     * set and the file gets smaller) and encrypted separately. This function returns a new {@link ImageData}
+     * instance with a new pixel array, to keep the original intact.
+     *
+     * @param original original image
+     * @param entries files to hide in the image (at least one)
+     * @param options options to use when hiding data
+     * @return image containing secret data
+     */
+    ImageData encodeArchive(final ImageData original, final List<Payload> entries, final EncodingOptions options) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException;
+
+    /**
+     * Reads the table of entries of an archive. Only the table is extracted and decrypted.
+     *
+     * @param secret image containing an archive
+     * @param header package header for image
+     * @param password optional password (if the archive is password-protected)
+     * @return archive entries, in the order they were encoded
+     */
+    List<ArchiveEntry> listEntries(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException;
+
+    /**
+     * Extracts a single file from an archive, reading only the pixels of that entry.
+     *
+     * @param secret image containing an archive
+     * @param header package header for image
+     * @param entry entry to extract, as returned by {@link #listEntries(ImageData, PackageHeader, String)}
+     * @param password optional password (if the archive is password-protected)
+     * @return decoded file
+     * @throws IOException if the stored entry does not match its hash
+     */
+    Payload extractEntry(final ImageData secret, final PackageHeader header, final ArchiveEntry entry, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException;
+}
@@ -0,0 +1,197 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.PackageException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs package handlers on an executor and returns their results as {@link CompletableFuture}s. Every
+ * future fails with a {@link PackageException} (wrapped in a
+ * {@link java.util.concurrent.CompletionException} by <code>join</code> and the dependent stages), whose
+ * {@link PackageException#kind() kind} tells which message to show. {@link PackageException#from(Throwable)}
+ * unwraps it again.
+ *
+ * Handlers are looked up in {@link Versions} by the version code of each image, so images of different
+ * versions can be mixed freely. Nothing is shared between calls, so independent images are processed
+ * concurrently, up to the parallelism of the executor.
+ *
+ * <code>CompletableFuture</code> needs Android API level 24, above the app's minimum; the app keeps calling
+ * the handlers directly, and this class is meant for the CLI, servers and newer devices.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class AsyncPackageHandler {
+
+    private final Executor executor;
+
+    /**
+     * Creates an async facade that runs every operation on the given executor.
+     *
+     * @param _executor executor to run handlers on
+     */
+    public AsyncPackageHandler(final Executor _executor) {
+        if (_executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null!");
+        }
+
+        executor = _executor;
+    }
+
+    /**
+     * Finds the state of an image, as the app does when an image is opened: images without a package from a
+     * supported version have no secret, and images whose package header can't be read are corrupted.
+     *
+     * @param image image that may contain secret data
+     * @return future state of the image
+     */
+    public CompletableFuture<EncodedImageState> classify(final ImageData image) {
+        return supply(new Callable<EncodedImageState>() {
+            @Override
+            public EncodedImageState call() {
+                if (image.pixels.length < 8) {
+                    return EncodedImageState.NO_SECRET;
+                }
+
+                final PackageHandler handler = Versions.getHandler(PackageFunctions.versionCode(image));
+
+                if (handler == null) {
+                    return EncodedImageState.NO_SECRET;
+                }
+
+                final PackageHeader header;
+
+                try {
+                    header = handler.extractHeader(image);
+                } catch (IllegalArgumentException e) {
+                    return EncodedImageState.CORRUPTED;
+                }
+
+                return handler.getImageState(image, header);
+            }
+        });
+    }
+
+    /**
+     * Classifies several images concurrently.
+     *
+     * @param images images that may contain secret data
+     * @return future states, in the same order as the images
+     * @see #classify(ImageData)
+     */
+    public CompletableFuture<List<EncodedImageState>> classifyAll(final List<ImageData> images) {
+        final List<CompletableFuture<EncodedImageState>> states = new ArrayList<CompletableFuture<EncodedImageState>>(images.size());
+
+        for (final ImageData image : images) {
+            states.add(classify(image));
+        }
+
+        return CompletableFuture.allOf(states.toArray(new CompletableFuture<?>[0])).thenApply(new Function<Void, List<EncodedImageState>>() {
+            @Override
+            public List<EncodedImageState> apply(final Void ignored) {
+                final List<EncodedImageState> out = new ArrayList<EncodedImageState>(states.size());
+
+                for (final CompletableFuture<EncodedImageState> state : states) {
+                    out.add(state.join());
+                }
+
+                return out;
+            }
+        });
+    }
+
+    /**
+     * Encodes a secret file with the handler for {@link EncodingOptions#versionCode}.
+     *
+     * @param original carrier image
+     * @param payload secret file
+     * @param options encoding options
+     * @return future image with the secret file
+     */
+    public CompletableFuture<ImageData> encode(final ImageData original, final Payload payload, final EncodingOptions options) {
+        return supply(new Callable<ImageData>() {
+            @Override
+            public ImageData call() throws Exception {
+                final PackageHandler handler = Versions.getHandler(options.versionCode);
+
+                if (handler == null) {
+                    throw new PackageException(PackageException.Kind.UNSUPPORTED, "Version " + Long.toHexString(options.versionCode) + " is not supported!");
+                }
+
+                return handler.encodeSecret(original, payload, options);
+            }
+        });
+    }
+
+    /**
+     * Decodes the secret file in an image, with the handler for the image's version code.
+     *
+     * @param secret image containing secret data
+     * @param password password, or null if the secret is not password-protected
+     * @return future secret file
+     */
+    public CompletableFuture<Payload> decode(final ImageData secret, final String password) {
+        return supply(new Callable<Payload>() {
+            @Override
+            public Payload call() throws Exception {
+                final PackageHandler handler = (secret.pixels.length < 8) ? null : Versions.getHandler(PackageFunctions.versionCode(secret));
+
+                if (handler == null) {
+                    throw new PackageException(PackageException.Kind.NO_SECRET, "Image does not contain a secret!");
+                }
+
+                return decodeNow(handler, secret, handler.extractHeader(secret), password);
+            }
+        });
+    }
+
+    /**
+     * Decodes the secret file in an image whose package header was already read.
+     *
+     * @param handler package handler for the image
+     * @param secret image containing secret data
+     * @param header package header for the image
+     * @param password password, or null if the secret is not password-protected
+     * @return future secret file
+     */
+    public CompletableFuture<Payload> decode(final PackageHandler handler, final ImageData secret, final PackageHeader header, final String password) {
+        return supply(new Callable<Payload>() {
+            @Override
+            public Payload call() throws Exception {
+                return decodeNow(handler, secret, header, password);
+            }
+        });
+    }
+
+    private static Payload decodeNow(final PackageHandler handler, final ImageData secret, final PackageHeader header, final String password) throws Exception {
+        // Not every handler checks for a missing password before using it
+        if (password == null && header.isPasswordProtected()) {
+            throw new PackageException(PackageException.Kind.WRONG_PASSWORD, "A password is required!");
+        }
+
+        return handler.decode(secret, header, password);
+    }
+
+    /**
+     * Runs a task on the executor. Anything the task throws fails the future with a {@link PackageException}.
+     */
+    private <T> CompletableFuture<T> supply(final Callable<T> task) {
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            @Override
+            public T get() {
+                try {
+                    return task.call();
+                } catch (Exception e) {
+                    throw PackageException.from(e);
+                }
+            }
+        }, executor);
+    }
+}
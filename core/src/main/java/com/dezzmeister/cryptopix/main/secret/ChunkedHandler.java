@@ -0,0 +1,53 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Implemented by package handlers that store the file in fixed-size chunks, so that an encoded file can be
+ * changed in place. Only the chunks whose content changed are rewritten, along with the chunk table and the
+ * package header; an edit costs the bytes changed, not the whole payload.
+ *
+ * The methods in this interface modify the pixels of the given image in place, and return the updated
+ * package header.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface ChunkedHandler extends PackageHandler {
+
+    /**
+     * Replaces the contents of the encoded file. The new contents are compared with the old ones chunk by
+     * chunk, and only changed chunks are written.
+     *
+     * @param secret image containing secret data (will be modified)
+     * @param header package header for image
+     * @param data new file contents
+     * @param password optional password (if the secret data is password-protected)
+     * @return updated package header
+     * @throws SizeLimitExceededException if the new contents don't fit in the image
+     */
+    PackageHeader update(final ImageData secret, final PackageHeader header, final byte[] data, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException;
+
+    /**
+     * Appends data to the end of the encoded file. Only the last chunk is read, and only the last chunk and
+     * the new chunks are written.
+     *
+     * @param secret image containing secret data (will be modified)
+     * @param header package header for image
+     * @param data data to append
+     * @param password optional password (if the secret data is password-protected)
+     * @return updated package header
+     * @throws SizeLimitExceededException if the longer file doesn't fit in the image
+     */
+    PackageHeader append(final ImageData secret, final PackageHeader header, final byte[] data, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException;
+}
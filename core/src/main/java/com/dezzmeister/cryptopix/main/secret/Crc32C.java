@@ -0,0 +1,97 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli), as used by iSCSI, ext4 and SCTP. <code>java.util.zip.CRC32C</code> only exists
+ * since Java 9, which Android does not have, so this is a table-driven implementation that consumes eight
+ * bytes per step ("slicing-by-8").
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class Crc32C implements Checksum {
+
+    /**
+     * The Castagnoli polynomial, bit-reversed
+     */
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    /**
+     * <code>TABLES[k][b]</code> is the CRC of byte <code>b</code> followed by <code>k</code> zero bytes
+     */
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+
+            for (int bit = 0; bit < 8; bit++) {
+                crc = ((crc & 1) != 0) ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+
+            TABLES[0][i] = crc;
+        }
+
+        for (int k = 1; k < TABLES.length; k++) {
+            for (int i = 0; i < 256; i++) {
+                final int previous = TABLES[k - 1][i];
+                TABLES[k][i] = (previous >>> 8) ^ TABLES[0][previous & 0xFF];
+            }
+        }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    @Override
+    public void update(final int b) {
+        crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xFF];
+    }
+
+    /**
+     * Updates the checksum with every byte of an array.
+     *
+     * @param bytes bytes to add
+     */
+    public void update(final byte[] bytes) {
+        update(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void update(final byte[] bytes, final int offset, final int length) {
+        final int[] t0 = TABLES[0];
+        final int[] t1 = TABLES[1];
+        final int[] t2 = TABLES[2];
+        final int[] t3 = TABLES[3];
+        final int[] t4 = TABLES[4];
+        final int[] t5 = TABLES[5];
+        final int[] t6 = TABLES[6];
+        final int[] t7 = TABLES[7];
+
+        final int end = offset + length;
+        int c = crc;
+        int i = offset;
+
+        for (; i + 8 <= end; i += 8) {
+            c ^= (bytes[i] & 0xFF) | ((bytes[i + 1] & 0xFF) << 8) | ((bytes[i + 2] & 0xFF) << 16) | ((bytes[i + 3] & 0xFF) << 24);
+            c = t7[c & 0xFF] ^ t6[(c >>> 8) & 0xFF] ^ t5[(c >>> 16) & 0xFF] ^ t4[c >>> 24] ^
+                    t3[bytes[i + 4] & 0xFF] ^ t2[bytes[i + 5] & 0xFF] ^ t1[bytes[i + 6] & 0xFF] ^ t0[bytes[i + 7] & 0xFF];
+        }
+
+        for (; i < end; i++) {
+            c = (c >>> 8) ^ t0[(c ^ bytes[i]) & 0xFF];
+        }
+
+        crc = c;
+    }
+
+    @Override
+    public long getValue() {
+        return (~crc) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+}
@@ -0,0 +1,317 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+
+/**
+ * Builds a stored payload and writes it to a carrier in one pass, with every step on its own thread:
+ *
+ * <ol>
+ *     <li>The payload header and the file are split into {@link #BLOCK_SIZE} blocks and deflated</li>
+ *     <li>Deflated blocks are encrypted</li>
+ *     <li>Encrypted blocks are hashed with MD5, and</li>
+ *     <li>written to the carrier pixels</li>
+ * </ol>
+ *
+ * Steps are connected by bounded queues of {@link #QUEUE_CAPACITY} blocks, so a slow step holds back the ones
+ * before it instead of buffering the whole payload, and an encode takes about as long as its slowest step.
+ * The stored payload is the same as <code>encrypt(payloadHeader + compress(fileData))</code>; only the package
+ * header, which needs the payload size and hash, is left to the caller.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class EncodePipeline {
+
+    /**
+     * Number of file bytes read per block
+     */
+    public static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Number of blocks each queue holds before the step feeding it waits
+     */
+    public static final int QUEUE_CAPACITY = 8;
+
+    /**
+     * Smallest file for which pipelining pays for its threads
+     */
+    public static final int MIN_PIPELINED_SIZE = 1 << 20;
+
+    /**
+     * Marks the end of a queue. Compared by identity.
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * Overrides {@link #isWorthwhile(int)} when set: true to always pipeline, false to never. Only for tests,
+     * which have to cover both paths on any number of processors.
+     */
+    static volatile Boolean forced = null;
+
+    private EncodePipeline() {
+
+    }
+
+    /**
+     * The parts of the package header that depend on the stored payload.
+     */
+    public static final class Result {
+
+        /**
+         * Size of the stored payload, in bytes
+         */
+        public final int payloadSize;
+
+        /**
+         * MD5 hash of the stored payload
+         */
+        public final byte[] payloadHash;
+
+        Result(final int _payloadSize, final byte[] _payloadHash) {
+            payloadSize = _payloadSize;
+            payloadHash = _payloadHash;
+        }
+    }
+
+    /**
+     * Returns true if a file is large enough to encode with a pipeline, and there is more than one
+     * processor to run it on.
+     *
+     * @param fileSize size of the file to encode, in bytes
+     * @return true if the file should be encoded with {@link #run}
+     */
+    public static boolean isWorthwhile(final int fileSize) {
+        final Boolean forced = EncodePipeline.forced;
+
+        if (forced != null) {
+            return forced;
+        }
+
+        return fileSize >= MIN_PIPELINED_SIZE && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * Compresses, encrypts, hashes and writes a payload. Pixels in <code>out</code> that hold the payload are
+     * copied from <code>original</code> before the payload is written to them; no other pixels are touched.
+     *
+     * @param payloadHeader payload bytes before the file (not compressed)
+     * @param fileData file contents
+     * @param compress true to deflate the file
+     * @param cipher cipher initialized for encryption, or null to store the payload unencrypted
+     * @param original carrier pixels
+     * @param out pixels to write the payload to (will be modified)
+     * @param offset pixel to write the first payload byte to
+     * @return stored payload size and hash
+     * @throws SizeLimitExceededException if the payload doesn't fit after <code>offset</code>
+     * @throws InterruptedIOException if the calling thread is interrupted while waiting for the steps
+     */
+    public static Result run(final byte[] payloadHeader, final byte[] fileData, final boolean compress, final Cipher cipher,
+                             final int[] original, final int[] out, final int offset) throws IOException, NoSuchAlgorithmException, IllegalBlockSizeException, BadPaddingException, SizeLimitExceededException {
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+        final BlockingQueue<ByteBuffer> toDigest = new ArrayBlockingQueue<ByteBuffer>(QUEUE_CAPACITY);
+        final BlockingQueue<ByteBuffer> toPixels = new ArrayBlockingQueue<ByteBuffer>(QUEUE_CAPACITY);
+        final List<BlockingQueue<ByteBuffer>> stored = Arrays.asList(toDigest, toPixels);
+
+        final List<Callable<Void>> steps = new ArrayList<Callable<Void>>();
+
+        if (cipher == null) {
+            steps.add(readStep(payloadHeader, fileData, compress, stored));
+        } else {
+            final BlockingQueue<ByteBuffer> toCipher = new ArrayBlockingQueue<ByteBuffer>(QUEUE_CAPACITY);
+
+            steps.add(readStep(payloadHeader, fileData, compress, Arrays.asList(toCipher)));
+            steps.add(encryptStep(cipher, toCipher, stored));
+        }
+
+        final int[] written = new int[1];
+
+        steps.add(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (ByteBuffer block = toDigest.take(); block != END; block = toDigest.take()) {
+                    md5.update(block.array(), block.arrayOffset() + block.position(), block.remaining());
+                }
+
+                return null;
+            }
+        });
+
+        steps.add(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final PixelCodec codec = PixelCodecs.active();
+                int pixel = offset;
+
+                for (ByteBuffer block = toPixels.take(); block != END; block = toPixels.take()) {
+                    final int length = block.remaining();
+
+                    if ((long) pixel + length > out.length) {
+                        throw new SizeLimitExceededException("Secret package is larger than image!");
+                    }
+
+                    System.arraycopy(original, pixel, out, pixel, length);
+                    codec.pack(block.array(), block.arrayOffset() + block.position(), out, pixel, length);
+                    pixel += length;
+                }
+
+                written[0] = pixel - offset;
+
+                return null;
+            }
+        });
+
+        runAll(steps);
+
+        return new Result(written[0], md5.digest());
+    }
+
+    /**
+     * Splits the payload into blocks, deflating the file if asked to.
+     */
+    private static Callable<Void> readStep(final byte[] payloadHeader, final byte[] fileData, final boolean compress, final List<BlockingQueue<ByteBuffer>> next) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                emit(ByteBuffer.wrap(payloadHeader), next);
+
+                if (!compress) {
+                    for (int from = 0; from < fileData.length; from += BLOCK_SIZE) {
+                        emit(ByteBuffer.wrap(fileData, from, Math.min(BLOCK_SIZE, fileData.length - from)), next);
+                    }
+                } else {
+                    final Deflater deflater = new Deflater();
+
+                    try {
+                        for (int from = 0; from < fileData.length; from += BLOCK_SIZE) {
+                            deflater.setInput(fileData, from, Math.min(BLOCK_SIZE, fileData.length - from));
+
+                            while (!deflater.needsInput()) {
+                                deflate(deflater, next);
+                            }
+                        }
+
+                        deflater.finish();
+
+                        while (!deflater.finished()) {
+                            deflate(deflater, next);
+                        }
+                    } finally {
+                        deflater.end();
+                    }
+                }
+
+                emit(END, next);
+
+                return null;
+            }
+        };
+    }
+
+    private static void deflate(final Deflater deflater, final List<BlockingQueue<ByteBuffer>> next) throws InterruptedException {
+        final byte[] buffer = new byte[BLOCK_SIZE];
+        final int count = deflater.deflate(buffer);
+
+        if (count > 0) {
+            emit(ByteBuffer.wrap(buffer, 0, count), next);
+        }
+    }
+
+    /**
+     * Encrypts blocks as they arrive, and the padded last block at the end.
+     */
+    private static Callable<Void> encryptStep(final Cipher cipher, final BlockingQueue<ByteBuffer> previous, final List<BlockingQueue<ByteBuffer>> next) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (ByteBuffer block = previous.take(); block != END; block = previous.take()) {
+                    final byte[] encrypted = cipher.update(block.array(), block.arrayOffset() + block.position(), block.remaining());
+
+                    if (encrypted != null && encrypted.length > 0) {
+                        emit(ByteBuffer.wrap(encrypted), next);
+                    }
+                }
+
+                emit(ByteBuffer.wrap(cipher.doFinal()), next);
+                emit(END, next);
+
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Hands a block to every following step. Steps only read blocks, so they share them.
+     */
+    private static void emit(final ByteBuffer block, final List<BlockingQueue<ByteBuffer>> next) throws InterruptedException {
+        for (final BlockingQueue<ByteBuffer> queue : next) {
+            queue.put(block);
+        }
+    }
+
+    /**
+     * Runs every step on its own thread of the shared {@link Workers#blocking()} pool and waits for them. Steps
+     * wait on each other, so they can't share a bounded pool. The first step to fail stops the others (which
+     * may be waiting on a queue that will never move again), and its exception is rethrown.
+     */
+    private static void runAll(final List<Callable<Void>> steps) throws IOException, IllegalBlockSizeException, BadPaddingException, SizeLimitExceededException {
+        final CompletionService<Void> completion = new ExecutorCompletionService<Void>(Workers.blocking());
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>(steps.size());
+
+        try {
+            for (final Callable<Void> step : steps) {
+                futures.add(completion.submit(step));
+            }
+
+            for (int i = 0; i < steps.size(); i++) {
+                completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding the payload!");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof IllegalBlockSizeException) {
+                throw (IllegalBlockSizeException) cause;
+            } else if (cause instanceof BadPaddingException) {
+                throw (BadPaddingException) cause;
+            } else if (cause instanceof SizeLimitExceededException) {
+                throw (SizeLimitExceededException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new IOException(cause);
+        } finally {
+            for (final Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+}
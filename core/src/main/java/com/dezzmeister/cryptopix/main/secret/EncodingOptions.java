@@ -26,4 +26,10 @@ public class EncodingOptions implements Serializable {
      */
     public boolean compress = false;
 
+    /**
+     * Hash used to check that the stored payload is intact. Only versions that record the hash in the
+     * package header (1.6.0 and later) support hashes other than MD5.
+     */
+    public IntegrityHash integrityHash = IntegrityHash.MD5;
+
 }
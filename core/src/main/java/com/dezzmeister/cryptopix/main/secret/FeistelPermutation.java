@@ -0,0 +1,109 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+/**
+ * A keyed bijection of the integers <code>[0, size)</code>, computed on the fly. A balanced Feistel network
+ * permutes the smallest even power of two that is at least <code>size</code>, and indices that land outside
+ * the range are permuted again until they land inside it (cycle walking). The domain is at most four times
+ * the range, so fewer than four rounds of walking are needed on average. No index table is kept, so a
+ * permutation of every pixel (or block of pixels) in an image takes constant memory.
+ *
+ * Permutations are immutable and can be shared between threads.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class FeistelPermutation {
+
+    /**
+     * Number of Feistel rounds. Four rounds make a strong pseudorandom permutation
+     */
+    private static final int ROUNDS = 4;
+
+    /**
+     * Minimum key length, in bytes. The key is split into one 32-bit round key per round
+     */
+    public static final int KEY_LENGTH = ROUNDS * 4;
+
+    private final int size;
+
+    private final int halfBits;
+
+    private final int halfMask;
+
+    private final int[] roundKeys = new int[ROUNDS];
+
+    /**
+     * Creates a permutation of <code>[0, size)</code>.
+     *
+     * @param key at least {@link #KEY_LENGTH} random bytes
+     * @param _size number of integers to permute
+     */
+    public FeistelPermutation(final byte[] key, final int _size) {
+        if (key == null || key.length < KEY_LENGTH) {
+            throw new IllegalArgumentException("Permutation key is too short!");
+        }
+
+        if (_size < 1) {
+            throw new IllegalArgumentException("Permutation size must be at least 1!");
+        }
+
+        size = _size;
+
+        final int bits = Math.max(2, 32 - Integer.numberOfLeadingZeros(size - 1));
+        halfBits = (bits + 1) / 2;
+        halfMask = (int) ((1L << halfBits) - 1);
+
+        for (int i = 0; i < ROUNDS; i++) {
+            roundKeys[i] = PackageFunctions.intFromBytes(PackageFunctions.getSubarray(key, 4, i * 4));
+        }
+    }
+
+    /**
+     * @return number of integers permuted
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the image of an index under this permutation.
+     *
+     * @param index index in <code>[0, size)</code>
+     * @return permuted index in <code>[0, size)</code>
+     */
+    public int permute(final int index) {
+        int x = index;
+
+        do {
+            x = encipher(x);
+        } while (x < 0 || x >= size);
+
+        return x;
+    }
+
+    private int encipher(final int x) {
+        int left = (x >>> halfBits) & halfMask;
+        int right = x & halfMask;
+
+        for (int i = 0; i < ROUNDS; i++) {
+            final int next = left ^ (mix(right ^ roundKeys[i]) & halfMask);
+            left = right;
+            right = next;
+        }
+
+        return (left << halfBits) | right;
+    }
+
+    /**
+     * MurmurHash3 finalizer: every input bit affects every output bit.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+
+        return h;
+    }
+}
@@ -0,0 +1,214 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Two-level hash tree over a stored payload. The payload is split into {@link #LEAF_SIZE} leaves (the last
+ * one may be shorter), each leaf is hashed on its own, and the root is the hash of the payload size followed
+ * by every leaf hash. Leaves are independent, so they are hashed on the shared {@link Workers#compute()}
+ * pool (or only on the calling thread, if it is already running pooled work); after part of the payload
+ * changes, {@link #rehash(int, int)} only reads the leaves in the changed range.
+ *
+ * A tree keeps its {@link PackageFunctions.ByteSource}, and reads from it again on every rehash.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class HashTree {
+
+    /**
+     * Number of payload bytes in a leaf
+     */
+    public static final int LEAF_SIZE = 1 << 16;
+
+    /**
+     * Smallest number of leaves for which hashing is spread over several threads
+     */
+    private static final int MIN_PARALLEL_LEAVES = 8;
+
+    private final IntegrityHash hash;
+
+    private final PackageFunctions.ByteSource source;
+
+    private final int size;
+
+    private final int threads;
+
+    private final long[] leaves;
+
+    /**
+     * Hashes a stored payload, using every processor.
+     *
+     * @param _hash tree hash to use
+     * @param _source stored payload
+     * @param _size size of the stored payload, in bytes
+     */
+    public HashTree(final IntegrityHash _hash, final PackageFunctions.ByteSource _source, final int _size) {
+        this(_hash, _source, _size, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Hashes a stored payload.
+     *
+     * @param _hash tree hash to use
+     * @param _source stored payload
+     * @param _size size of the stored payload, in bytes
+     * @param _threads largest number of threads to hash leaves on, including the calling thread (at least 1)
+     */
+    public HashTree(final IntegrityHash _hash, final PackageFunctions.ByteSource _source, final int _size, final int _threads) {
+        if (!_hash.isTree()) {
+            throw new IllegalArgumentException(_hash + " is not a tree hash!");
+        }
+
+        if (_size < 0) {
+            throw new IllegalArgumentException("Payload size cannot be negative!");
+        }
+
+        if (_threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1!");
+        }
+
+        hash = _hash;
+        source = _source;
+        size = _size;
+        threads = _threads;
+        leaves = new long[(int) (((long) _size + LEAF_SIZE - 1) / LEAF_SIZE)];
+
+        hashLeaves(0, leaves.length);
+    }
+
+    /**
+     * Computes the tree root of a payload that is already in memory.
+     *
+     * @param hash tree hash to use
+     * @param payload stored payload
+     * @return tree root ({@link IntegrityHash#width} bytes)
+     */
+    public static byte[] root(final IntegrityHash hash, final byte[] payload) {
+        final PackageFunctions.ByteSource source = new PackageFunctions.ByteSource() {
+            @Override
+            public byte[] read(final int from, final int length) {
+                return Arrays.copyOfRange(payload, from, from + length);
+            }
+        };
+
+        return new HashTree(hash, source, payload.length).root();
+    }
+
+    /**
+     * @return number of leaves
+     */
+    public int leafCount() {
+        return leaves.length;
+    }
+
+    /**
+     * @param leaf index of a leaf
+     * @return hash of the leaf, in the low {@link IntegrityHash#width} bytes
+     */
+    public long leafHash(final int leaf) {
+        return leaves[leaf];
+    }
+
+    /**
+     * Hashes the leaves containing a range of payload bytes again, after they were changed.
+     *
+     * @param from first changed byte
+     * @param to end of the changed range (exclusive)
+     */
+    public void rehash(final int from, final int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IllegalArgumentException("Range is outside of the payload!");
+        }
+
+        if (from == to) {
+            return;
+        }
+
+        hashLeaves(from / LEAF_SIZE, (to - 1) / LEAF_SIZE + 1);
+    }
+
+    /**
+     * Combines the leaf hashes into the tree root.
+     *
+     * @return tree root ({@link IntegrityHash#width} bytes)
+     */
+    public byte[] root() {
+        final byte[] combined = new byte[4 + leaves.length * hash.width];
+        System.arraycopy(PackageFunctions.intToBytes(size), 0, combined, 0, 4);
+
+        for (int i = 0; i < leaves.length; i++) {
+            System.arraycopy(hashBytes(leaves[i]), 0, combined, 4 + i * hash.width, hash.width);
+        }
+
+        return hashBytes(hash.hash(combined, 0, combined.length));
+    }
+
+    /**
+     * Checks the tree root against the root stored in a package header.
+     *
+     * @param expected stored tree root
+     * @return true if the roots are equal
+     */
+    public boolean matches(final byte[] expected) {
+        return Arrays.equals(root(), expected);
+    }
+
+    private byte[] hashBytes(final long value) {
+        if (hash.width == 4) {
+            return PackageFunctions.intToBytes((int) value);
+        } else {
+            return PackageFunctions.longToBytes(value);
+        }
+    }
+
+    private void hashLeaf(final int leaf) {
+        final int from = leaf * LEAF_SIZE;
+        final int length = Math.min(LEAF_SIZE, size - from);
+
+        leaves[leaf] = hash.hash(source.read(from, length), 0, length);
+    }
+
+    /**
+     * Hashes leaves <code>[from, to)</code>, on the shared pool if there are enough of them. Every task
+     * hashes a contiguous run of leaves.
+     */
+    private void hashLeaves(final int from, final int to) {
+        final int count = to - from;
+        final int workers = Math.max(1, Math.min(threads, count / MIN_PARALLEL_LEAVES));
+
+        if (workers == 1) {
+            for (int leaf = from; leaf < to; leaf++) {
+                hashLeaf(leaf);
+            }
+
+            return;
+        }
+
+        final List<Runnable> tasks = new ArrayList<Runnable>(workers);
+        final int run = (count + workers - 1) / workers;
+
+        for (int i = 0; i < workers; i++) {
+            final int start = Math.min(to, from + i * run);
+            final int end = Math.min(to, start + run);
+
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    for (int leaf = start; leaf < end; leaf++) {
+                        hashLeaf(leaf);
+                    }
+                }
+            });
+        }
+
+        try {
+            Workers.runAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing the payload!");
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+
+/**
+ * Implemented by package handlers whose packages can be checked with a {@link HashTree} instead of MD5 (see
+ * {@link EncodingOptions#integrityHash}). A caller that keeps the tree of an image can check it again after
+ * changing part of the payload by rehashing only the changed range:
+ *
+ * <pre>
+ *     final HashTree tree = handler.hashTree(image, header);
+ *     // ... change stored payload bytes [from, to) ...
+ *     tree.rehash(from, to);
+ *     final boolean intact = tree.matches(header.payloadHash());
+ * </pre>
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface HashTreeHandler extends PackageHandler {
+
+    /**
+     * Hashes the stored payload of an image as a hash tree, on all processors. The tree reads the pixels of
+     * the image again when it is rehashed.
+     *
+     * @param secret image containing secret data
+     * @param header package header for image
+     * @return hash tree; its root matches {@link PackageHeader#payloadHash()} if the payload is intact
+     * @throws IllegalArgumentException if the package is not checked with a tree hash
+     */
+    HashTree hashTree(final ImageData secret, final PackageHeader header);
+}
@@ -0,0 +1,94 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+/**
+ * Hash used to check that a stored payload is intact. MD5 hashes the whole payload in one pass; the tree
+ * hashes split it into {@link HashTree#LEAF_SIZE} leaves that are hashed independently and combined into a
+ * root, so a large payload can be checked on every core and re-checked one leaf at a time.
+ *
+ * None of these hashes authenticate the payload: a password-protected payload is still only as safe as its
+ * encryption. Only packages with a compact header record this choice (see
+ * {@link Versions#VERSION_1_6_0}); every other package uses MD5.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public enum IntegrityHash {
+
+    /**
+     * MD5 of the whole stored payload (16 bytes)
+     */
+    MD5(0, 16),
+
+    /**
+     * CRC-32C of each leaf, combined with a CRC-32C (4 bytes)
+     */
+    CRC32C_TREE(1, 4),
+
+    /**
+     * xxHash64 of each leaf, combined with an xxHash64 (8 bytes)
+     */
+    XXHASH64_TREE(2, 8);
+
+    /**
+     * Code of the hash in a package header
+     */
+    public final int code;
+
+    /**
+     * Length of the hash (or of the tree root) in bytes
+     */
+    public final int width;
+
+    IntegrityHash(final int _code, final int _width) {
+        code = _code;
+        width = _width;
+    }
+
+    /**
+     * Returns true if this hash is computed over a {@link HashTree}.
+     *
+     * @return true for tree hashes
+     */
+    public boolean isTree() {
+        return this != MD5;
+    }
+
+    /**
+     * Hashes a leaf, or the combined leaf hashes, of a {@link HashTree}.
+     *
+     * @param bytes bytes to hash
+     * @param offset first byte to hash
+     * @param length number of bytes to hash
+     * @return hash, in the low {@link #width} bytes
+     */
+    long hash(final byte[] bytes, final int offset, final int length) {
+        switch (this) {
+            case CRC32C_TREE:
+                final Crc32C crc = new Crc32C();
+                crc.update(bytes, offset, length);
+
+                return crc.getValue();
+            case XXHASH64_TREE:
+                return XxHash64.hash(bytes, offset, length, 0);
+            default:
+                throw new IllegalStateException(this + " is not a tree hash!");
+        }
+    }
+
+    /**
+     * Gets the hash with the given header code.
+     *
+     * @param code code of the hash in a package header
+     * @return hash
+     * @throws IllegalArgumentException if no hash has this code
+     */
+    public static IntegrityHash fromCode(final int code) {
+        for (final IntegrityHash hash : values()) {
+            if (hash.code == code) {
+                return hash;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown payload hash code: " + code + "!");
+    }
+}
@@ -0,0 +1,165 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * An in-memory cache of PBKDF2-derived keys, so that decoding the same package again doesn't repeat key
+ * derivation. Entries are keyed by a SHA-256 digest of the password, salt and iteration count, and the
+ * least recently used key is evicted once the cache is full. Install one with
+ * {@link PackageFunctions#setKeyCache(KeyCache)}; no cache is used by default.
+ *
+ * Encoding always uses a fresh salt, so only decoding (and checking or peeking at packages) benefits. Cached
+ * keys decrypt their packages without the password; long-lived processes that install a cache should
+ * {@link #clear()} it when the keys are no longer needed.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class KeyCache {
+
+    /**
+     * Identifies a derived key. Passwords are hashed into the key, never stored.
+     */
+    private static final class Key {
+        private final byte[] digest;
+
+        private Key(final byte[] _digest) {
+            digest = _digest;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return (other instanceof Key) && Arrays.equals(digest, ((Key) other).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(digest);
+        }
+    }
+
+    /**
+     * Maximum number of cached keys
+     */
+    private final int maxKeys;
+
+    /**
+     * Cached keys, in access order (least recently used first)
+     */
+    private final LinkedHashMap<Key, SecretKeySpec> entries;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param _maxKeys maximum number of cached keys
+     */
+    public KeyCache(final int _maxKeys) {
+        if (_maxKeys < 1) {
+            throw new IllegalArgumentException("Key cache must hold at least one key!");
+        }
+
+        maxKeys = _maxKeys;
+        entries = new LinkedHashMap<Key, SecretKeySpec>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, SecretKeySpec> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+    /**
+     * Returns a cached key.
+     *
+     * @param password password bytes
+     * @param salt salt bytes
+     * @param iterationCount number of PBKDF2 iterations
+     * @return cached key, or null if the key has to be derived
+     * @throws NoSuchAlgorithmException if SHA-256 is not supported on this device
+     */
+    public SecretKeySpec get(final byte[] password, final byte[] salt, final int iterationCount) throws NoSuchAlgorithmException {
+        final Key key = key(password, salt, iterationCount);
+
+        synchronized (this) {
+            final SecretKeySpec cached = entries.get(key);
+
+            if (cached != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+
+            return cached;
+        }
+    }
+
+    /**
+     * Caches a derived key, evicting the least recently used key if the cache is full.
+     *
+     * @param password password bytes
+     * @param salt salt bytes
+     * @param iterationCount number of PBKDF2 iterations
+     * @param keySpec key derived from the password and salt
+     * @throws NoSuchAlgorithmException if SHA-256 is not supported on this device
+     */
+    public void put(final byte[] password, final byte[] salt, final int iterationCount, final SecretKeySpec keySpec) throws NoSuchAlgorithmException {
+        final Key key = key(password, salt, iterationCount);
+
+        synchronized (this) {
+            entries.put(key, keySpec);
+        }
+    }
+
+    /**
+     * Removes every cached key.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of cached keys.
+     *
+     * @return number of cached keys
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups that found a cached key.
+     *
+     * @return cache hits
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that had to derive the key.
+     *
+     * @return cache misses
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    private static Key key(final byte[] password, final byte[] salt, final int iterationCount) throws NoSuchAlgorithmException {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(PackageFunctions.intToBytes(iterationCount));
+        digest.update(PackageFunctions.intToBytes(salt.length));
+        digest.update(salt);
+        digest.update(password);
+
+        return new Key(digest.digest());
+    }
+}
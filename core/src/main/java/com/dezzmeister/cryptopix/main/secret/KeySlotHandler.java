@@ -0,0 +1,72 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Implemented by package handlers that encrypt the payload with a random data key, and store that key
+ * wrapped once per password in a fixed number of key slots in the package header. Any password in a slot
+ * decodes the package, and adding, removing or changing a password only rewrites the header pixels: the
+ * payload is never decrypted or re-encrypted.
+ *
+ * The methods in this interface modify the header pixels of the given image in place, and return the
+ * updated package header.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface KeySlotHandler extends PackageHandler {
+
+    /**
+     * Returns the number of key slots in a password-protected package header, which is the largest number
+     * of passwords a package can have.
+     *
+     * @return number of key slots
+     */
+    int keySlotCapacity();
+
+    /**
+     * Adds a password to a password-protected package.
+     *
+     * @param secret image containing secret data (the header pixels will be modified)
+     * @param header package header for image
+     * @param password any password of the package
+     * @param newPassword password to add
+     * @return updated package header
+     * @throws SecurityException if <code>password</code> is not a password of the package
+     * @throws SizeLimitExceededException if every key slot is in use
+     */
+    PackageHeader addPassword(final ImageData secret, final PackageHeader header, final String password, final String newPassword) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException;
+
+    /**
+     * Replaces one password of a password-protected package with another.
+     *
+     * @param secret image containing secret data (the header pixels will be modified)
+     * @param header package header for image
+     * @param oldPassword password to replace
+     * @param newPassword new password
+     * @return updated package header
+     * @throws SecurityException if <code>oldPassword</code> is not a password of the package
+     */
+    PackageHeader changePassword(final ImageData secret, final PackageHeader header, final String oldPassword, final String newPassword) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException;
+
+    /**
+     * Removes a password from a password-protected package. The last password cannot be removed.
+     *
+     * @param secret image containing secret data (the header pixels will be modified)
+     * @param header package header for image
+     * @param password password to remove
+     * @return updated package header
+     * @throws SecurityException if <code>password</code> is not a password of the package
+     */
+    PackageHeader removePassword(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException;
+}
@@ -25,8 +25,6 @@ import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
-import at.favre.lib.crypto.bcrypt.BCrypt;
-
 /**
  * Contains functions to extract/hide secret data. Package handlers can use these functions; new functions
  * may be added to support newer encoding techniques.
@@ -36,6 +34,11 @@ import at.favre.lib.crypto.bcrypt.BCrypt;
  */
 public class PackageFunctions {
 
+    /**
+     * Cache consulted by {@link #generateKey(byte[], byte[], int)}, or null
+     */
+    private static volatile KeyCache keyCache = null;
+
     /**
      * Sequentially packs a list of byte-array fields into a single byte array. Can be used to construct
      * secret packages from several individual binary fields.
@@ -186,7 +189,8 @@ public class PackageFunctions {
     }
 
     /**
-     * Generates a {@link SecretKeySpec} using PBKDF2 with the given iteration count.
+     * Generates a {@link SecretKeySpec} using PBKDF2 with the given iteration count. If a {@link KeyCache} is
+     * installed, keys are looked up in it first.
      *
      * @param password password bytes
      * @param salt salt bytes
@@ -196,6 +200,35 @@ public class PackageFunctions {
      * @throws InvalidKeySpecException if the key spec cannot be generated
      */
     public static final SecretKeySpec generateKey(final byte[] password, final byte[] salt, final int iterationCount) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        final KeyCache cache = keyCache;
+
+        if (cache == null) {
+            return deriveKey(password, salt, iterationCount);
+        }
+
+        final SecretKeySpec cached = cache.get(password, salt, iterationCount);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        final SecretKeySpec keySpec = deriveKey(password, salt, iterationCount);
+        cache.put(password, salt, iterationCount, keySpec);
+
+        return keySpec;
+    }
+
+    /**
+     * Sets the cache of derived keys used by {@link #generateKey(byte[], byte[], int)}. The cache is shared by
+     * every handler.
+     *
+     * @param cache key cache, or null to derive every key
+     */
+    public static final void setKeyCache(final KeyCache cache) {
+        keyCache = cache;
+    }
+
+    private static SecretKeySpec deriveKey(final byte[] password, final byte[] salt, final int iterationCount) throws NoSuchAlgorithmException, InvalidKeySpecException {
         final char[] passwordChars = new char[password.length];
 
         for (int i = 0; i < password.length; i++) {
@@ -269,28 +302,15 @@ public class PackageFunctions {
     }
 
     /**
-     * Writes the given secret bytes to the pixel array, starting at the given offset. Does NOT perform
-     * bounds checking.
+     * Writes the given secret bytes to the pixel array, starting at the given offset, with the
+     * {@link PixelCodecs#active() active pixel codec}. Does NOT perform bounds checking.
      *
      * @param pixels 4-byte ARGB pixel array (will be modified)
      * @param bytes secret bytes
      * @param offset starting offset
      */
     public static final void writeBytes(int[] pixels, final byte[] bytes, final int offset) {
-        for (int i = 0; i < bytes.length; i++) {
-            final int index = i + offset;
-            final int secret = ((int) bytes[i]) & 0xFF;
-
-            final int alpha = (secret & 0xC0) << 18;
-            final int red = (secret & 0x30) << 12;
-            final int green = (secret & 0x0C) << 6;
-            final int blue = secret & 0x03;
-
-            int pixel = pixels[index] & 0xFCFCFCFC;
-            pixel |= (alpha | red | green | blue);
-
-            pixels[index] = pixel;
-        }
+        PixelCodecs.active().pack(bytes, 0, pixels, offset, bytes.length);
     }
 
     public static final String bts(final byte[] bytes) {
@@ -324,8 +344,8 @@ public class PackageFunctions {
     }
 
     /**
-     * Extract the hidden bytes from an array of ARGB pixels containing secret data. This function
-     * will not perform any bounds checks.
+     * Extract the hidden bytes from an array of ARGB pixels containing secret data, with the
+     * {@link PixelCodecs#active() active pixel codec}. This function will not perform any bounds checks.
      *
      * @param argbPixels 4-byte ARGB pixel array
      * @param numBytes number of bytes to extract, or negative to extract all remaining bytes
@@ -338,24 +358,196 @@ public class PackageFunctions {
         }
 
         final byte[] out = new byte[numBytes];
-        final int alphaMask = 0x03000000;
-        final int redMask = 0x00030000;
-        final int greenMask = 0x00000300;
-        final int blueMask = 0x00000003;
-
-        for (int i = offset; i < offset + numBytes; i++) {
-            final int pixel = argbPixels[i];
-            final int data =
-                            (pixel & blueMask) |
-                            ((pixel & greenMask) >>> 6) |
-                            ((pixel & redMask) >>> 12) |
-                            ((pixel & alphaMask) >>> 18);
-            out[i - offset] = (byte)data;
-        }
+        PixelCodecs.active().unpack(argbPixels, offset, out, 0, numBytes);
 
         return out;
     }
 
+    /**
+     * Number of consecutive pixels kept together by the scattered pixel functions: one 64-byte cache line
+     * of ARGB pixels. Scattering whole blocks instead of single pixels keeps memory access sequential within
+     * a block, and only needs one permuted index per block.
+     */
+    public static final int SCATTER_BLOCK_SIZE = 16;
+
+    /**
+     * Writes a range of secret bytes to the pixel array, scattered by a permutation of pixel blocks: byte
+     * <code>i</code> is written to pixel <code>i % SCATTER_BLOCK_SIZE</code> of block
+     * <code>permutation.permute(i / SCATTER_BLOCK_SIZE)</code>, counting blocks from <code>offset</code>.
+     * Disjoint ranges touch disjoint pixels, so they can be written in parallel. Does NOT perform bounds checking.
+     *
+     * @param pixels 4-byte ARGB pixel array (will be modified)
+     * @param bytes secret bytes
+     * @param from first byte to write
+     * @param to end of the range (exclusive)
+     * @param offset first pixel of the first block
+     * @param permutation permutation of the blocks after <code>offset</code>
+     * @see #SCATTER_BLOCK_SIZE
+     */
+    public static final void writeBytes(final int[] pixels, final byte[] bytes, final int from, final int to, final int offset, final FeistelPermutation permutation) {
+        final PixelCodec codec = PixelCodecs.active();
+        int i = from;
+
+        while (i < to) {
+            final int block = i / SCATTER_BLOCK_SIZE;
+            final int end = Math.min(to, (block + 1) * SCATTER_BLOCK_SIZE);
+
+            // Pixel of byte i within the permuted block
+            final int shift = offset + (permutation.permute(block) - block) * SCATTER_BLOCK_SIZE;
+
+            codec.pack(bytes, i, pixels, i + shift, end - i);
+            i = end;
+        }
+    }
+
+    /**
+     * Extracts a range of hidden bytes scattered by a permutation of pixel blocks. The inverse of
+     * {@link #writeBytes(int[], byte[], int, int, int, FeistelPermutation)}. Does NOT perform bounds checking.
+     *
+     * @param argbPixels 4-byte ARGB pixel array
+     * @param out array to hold the extracted bytes, indexed like the stored bytes
+     * @param from first byte to extract
+     * @param to end of the range (exclusive)
+     * @param offset first pixel of the first block
+     * @param permutation permutation of the blocks after <code>offset</code>
+     */
+    public static final void extractBytes(final int[] argbPixels, final byte[] out, final int from, final int to, final int offset, final FeistelPermutation permutation) {
+        final PixelCodec codec = PixelCodecs.active();
+        int i = from;
+
+        while (i < to) {
+            final int block = i / SCATTER_BLOCK_SIZE;
+            final int end = Math.min(to, (block + 1) * SCATTER_BLOCK_SIZE);
+            final int shift = offset + (permutation.permute(block) - block) * SCATTER_BLOCK_SIZE;
+
+            codec.unpack(argbPixels, i + shift, out, i, end - i);
+            i = end;
+        }
+    }
+
+    /**
+     * A stored payload that can be read in pieces, so that a payload header can be read without extracting
+     * the whole payload.
+     */
+    public interface ByteSource {
+
+        /**
+         * Reads a range of stored payload bytes. The range is always within the available part of the payload.
+         *
+         * @param from first byte to read
+         * @param length number of bytes to read
+         * @return stored bytes
+         */
+        byte[] read(final int from, final int length);
+    }
+
+    /**
+     * AES block size, in bytes
+     */
+    private static final int CIPHER_BLOCK_SIZE = 16;
+
+    /**
+     * Reads the payload header (file name and MIME type) at the start of a stored payload. If the payload is
+     * encrypted, only the cipher blocks holding the header are decrypted: in CBC mode, a block only depends on
+     * the ciphertext block before it. The exact file size is found by decrypting the last block and reading
+     * its padding.
+     *
+     * @param stored stored payload
+     * @param storedSize size of the whole stored payload, in bytes
+     * @param available number of leading payload bytes that <code>stored</code> can read
+     * @param keySpec key specification, or null if the payload is not encrypted
+     * @param ivSpec initialization vector specification, or null if the payload is not encrypted
+     * @param compressed true if the file data is compressed
+     * @return payload metadata
+     * @throws BadPaddingException if the last cipher block does not contain proper padding
+     */
+    public static final PayloadMetadata peekPayload(final ByteSource stored, final int storedSize, final int available, final SecretKeySpec keySpec, final IvParameterSpec ivSpec, final boolean compressed) throws NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, InvalidAlgorithmParameterException {
+        final Cipher cipher;
+
+        if (keySpec != null) {
+            cipher = Cipher.getInstance("AES/CBC/NoPadding");
+        } else {
+            cipher = null;
+        }
+
+        int seek = 0;
+        final int fileNameSize = intFromBytes(readPayload(stored, available, cipher, keySpec, ivSpec, seek, 4));
+        seek += 4;
+
+        if (fileNameSize < 0 || (long) seek + fileNameSize + 4 > available) {
+            throw new IllegalArgumentException("Illegal file name size in payload header!");
+        }
+
+        final String fileName = new String(readPayload(stored, available, cipher, keySpec, ivSpec, seek, fileNameSize), StandardCharsets.US_ASCII);
+        seek += fileNameSize;
+
+        final int mimeTypeSize = intFromBytes(readPayload(stored, available, cipher, keySpec, ivSpec, seek, 4));
+        seek += 4;
+
+        if (mimeTypeSize < 0 || (long) seek + mimeTypeSize > available) {
+            throw new IllegalArgumentException("Illegal MIME type size in payload header!");
+        }
+
+        final String mimeType = new String(readPayload(stored, available, cipher, keySpec, ivSpec, seek, mimeTypeSize), StandardCharsets.US_ASCII);
+        seek += mimeTypeSize;
+
+        final int plainSize;
+
+        if (cipher == null) {
+            plainSize = storedSize;
+        } else if (available == storedSize && storedSize % CIPHER_BLOCK_SIZE == 0) {
+            final byte[] lastBlock = readPayload(stored, available, cipher, keySpec, ivSpec, storedSize - CIPHER_BLOCK_SIZE, CIPHER_BLOCK_SIZE);
+            final int padding = lastBlock[CIPHER_BLOCK_SIZE - 1];
+
+            if (padding < 1 || padding > CIPHER_BLOCK_SIZE) {
+                throw new BadPaddingException("Given final block not properly padded");
+            }
+
+            plainSize = storedSize - padding;
+        } else {
+            // The last block is in another image
+            plainSize = -1;
+        }
+
+        final PayloadMetadata metadata = new PayloadMetadata();
+        metadata.fileName = fileName;
+        metadata.mimeType = mimeType;
+        metadata.size = (compressed || plainSize < seek) ? -1 : plainSize - seek;
+        metadata.storedSize = storedSize;
+        metadata.compressed = compressed;
+
+        return metadata;
+    }
+
+    /**
+     * Reads a range of plain payload bytes, decrypting only the cipher blocks that cover the range.
+     */
+    private static byte[] readPayload(final ByteSource stored, final int available, final Cipher cipher, final SecretKeySpec keySpec, final IvParameterSpec ivSpec, final int from, final int length) throws InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        if (cipher == null) {
+            return stored.read(from, length);
+        }
+
+        if (length == 0) {
+            return new byte[0];
+        }
+
+        final int firstBlock = from / CIPHER_BLOCK_SIZE;
+        final int blocks = (from + length - 1) / CIPHER_BLOCK_SIZE - firstBlock + 1;
+
+        if ((long) (firstBlock + blocks) * CIPHER_BLOCK_SIZE > available) {
+            throw new IllegalArgumentException("Payload header is larger than the payload!");
+        }
+
+        // The IV of a CBC block is the ciphertext block before it
+        final IvParameterSpec blockIV = (firstBlock == 0) ? ivSpec : createIV(stored.read((firstBlock - 1) * CIPHER_BLOCK_SIZE, CIPHER_BLOCK_SIZE));
+
+        cipher.init(Cipher.DECRYPT_MODE, keySpec, blockIV);
+
+        final byte[] plain = cipher.doFinal(stored.read(firstBlock * CIPHER_BLOCK_SIZE, blocks * CIPHER_BLOCK_SIZE));
+
+        return getSubarray(plain, length, from - firstBlock * CIPHER_BLOCK_SIZE);
+    }
+
     /**
      * Gets the Cryptopix version code of an image containing secret data.
      *
@@ -364,6 +556,17 @@ public class PackageFunctions {
      * @see Versions
      */
     public static final long versionCode(final ImageData secret) {
+        if (secret.pixels.length < COMPACT_VERSION_CODE_LENGTH) {
+            throw new IllegalArgumentException("Image has less than " + COMPACT_VERSION_CODE_LENGTH + " pixels!");
+        }
+
+        final byte[] prefix = extractBytes(secret.pixels, COMPACT_VERSION_CODE_LENGTH, 0);
+
+        // An 8-byte version code starts with zero bytes, so it never starts with the compact magic
+        if ((prefix[0] & 0xFF) == COMPACT_MAGIC_BYTE && (prefix[1] & 0xFF) == COMPACT_MAGIC_BYTE) {
+            return intFromBytes(prefix) & 0xFFFFFFFFL;
+        }
+
         if (secret.pixels.length < 8) {
             throw new IllegalArgumentException("Image has less than 8 pixels!");
         }
@@ -372,6 +575,86 @@ public class PackageFunctions {
         return longFromBytes(headerBytes);
     }
 
+    /**
+     * Length of a compact version code, in bytes. Compact package headers start with the low 4 bytes of the
+     * version code instead of all 8; the first two of them are always {@link #COMPACT_MAGIC_BYTE}.
+     */
+    public static final int COMPACT_VERSION_CODE_LENGTH = 4;
+
+    /**
+     * The first two bytes of a compact version code
+     */
+    private static final int COMPACT_MAGIC_BYTE = 0xCA;
+
+    /**
+     * Returns the number of bytes in the variable-length encoding of a non-negative int.
+     *
+     * @param in non-negative int
+     * @return 1 to 5 bytes
+     * @see #varintToBytes(int)
+     */
+    public static final int varintSize(final int in) {
+        return (in < (1 << 7)) ? 1 : (in < (1 << 14)) ? 2 : (in < (1 << 21)) ? 3 : (in < (1 << 28)) ? 4 : 5;
+    }
+
+    /**
+     * Encodes a non-negative int with a variable number of bytes: 7 bits per byte, least significant group
+     * first, with the high bit set on every byte but the last. Small values take fewer bytes.
+     *
+     * @param in non-negative int
+     * @return 1 to 5 bytes
+     */
+    public static final byte[] varintToBytes(final int in) {
+        if (in < 0) {
+            throw new IllegalArgumentException("Varints cannot be negative!");
+        }
+
+        final byte[] out = new byte[varintSize(in)];
+        int value = in;
+
+        for (int i = 0; i < out.length - 1; i++) {
+            out[i] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out[out.length - 1] = (byte) value;
+
+        return out;
+    }
+
+    /**
+     * Decodes a variable-length int.
+     *
+     * @param bytes bytes containing the varint
+     * @param offset first byte of the varint
+     * @return decoded value; it takes {@link #varintSize(int)} bytes if the encoding was the shortest possible
+     * @throws IllegalArgumentException if the varint is longer than 5 bytes, runs past the end of the array,
+     *          or does not fit in a non-negative int
+     * @see #varintToBytes(int)
+     */
+    public static final int varintFromBytes(final byte[] bytes, final int offset) {
+        long value = 0;
+
+        for (int i = 0; i < 5; i++) {
+            if (offset + i >= bytes.length) {
+                throw new IllegalArgumentException("Varint runs past the end of the data!");
+            }
+
+            final int b = bytes[offset + i] & 0xFF;
+            value |= ((long) (b & 0x7F)) << (7 * i);
+
+            if ((b & 0x80) == 0) {
+                if (value > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Varint is too large!");
+                }
+
+                return (int) value;
+            }
+        }
+
+        throw new IllegalArgumentException("Varint is too long!");
+    }
+
     /**
      * Converts an int to an array of bytes. The byte array is indexed starting from the most
      * significant byte in the int.
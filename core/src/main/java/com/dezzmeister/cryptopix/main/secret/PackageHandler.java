@@ -67,6 +67,15 @@ public interface PackageHandler extends Serializable {
      */
     PackageHeader extractHeader(final ImageData secret);
 
+    /**
+     * Returns the largest number of leading pixels a package header can occupy in this version. An image
+     * containing at least this many leading pixels is always enough for {@link #extractHeader(ImageData)},
+     * so callers can read just those pixels instead of decoding the whole image.
+     *
+     * @return maximum package header size, in pixels
+     */
+    int maxHeaderSize();
+
     /**
      * Hides the given data in the image, accounting for the options provided. This function returns a
      * new {@link ImageData} instance with a new pixel array, to keep the original intact.
@@ -88,6 +97,35 @@ public interface PackageHandler extends Serializable {
      */
     Payload decode(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException;
 
+    /**
+     * Reads the file name, MIME type and size of the secret data without decoding the file. Only the first
+     * cipher blocks of the payload are extracted and decrypted, so this is much cheaper than
+     * {@link #decode(ImageData, PackageHeader, String)} for large files; a password-protected package still
+     * needs the password to be checked and the key to be derived. The payload is not checked for corruption.
+     *
+     * @param secret image containing secret data
+     * @param header package header for image
+     * @param password optional password (if the secret data is password-protected)
+     * @return payload metadata
+     */
+    PayloadMetadata peekMetadata(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException;
+
+    /**
+     * Opens the secret data without decoding the file. The password is checked and the payload header is
+     * read as in {@link #peekMetadata(ImageData, PackageHeader, String)}, but the file is only decrypted and
+     * inflated when {@link Payload#data()} is first called, or as {@link Payload#openStream()} is read.
+     * Callers that stop after the file name and MIME type never pay for the file. The payload refers to the
+     * pixels of <code>secret</code> until the file is decoded, so they must not be modified until then.
+     *
+     * Versions that already read their payloads in small pieces may decode the file immediately.
+     *
+     * @param secret image containing secret data
+     * @param header package header for image
+     * @param password optional password (if the secret data is password-protected)
+     * @return secret data, decoded on demand
+     */
+    Payload openPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException;
+
     /**
      * Creates an empty Payload. The user can fill this payload with necessary file data and call
      * {@link #encodeSecret(ImageData, Payload, EncodingOptions)}.
@@ -0,0 +1,54 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import java.io.Serializable;
+
+/**
+ * Secret package header info. Headers may change between different versions of Cryptopix, so this
+ * is an interface. Version-specific classes should implement this for backwards compatibility.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface PackageHeader extends Serializable {
+
+    /**
+     * Returns true if this header describes a package encrypted with a password.
+     *
+     * @return true if a password is required to open the package represented by this header
+     */
+    boolean isPasswordProtected();
+
+    /**
+     * Returns the number of leading pixels occupied by this header. An image containing only these
+     * pixels is enough for {@link PackageHandler#extractHeader(com.dezzmeister.cryptopix.main.images.ImageData)}
+     * to extract this header again, so they can be cached instead of the whole image.
+     *
+     * @return number of pixels in the package header
+     */
+    int headerSize();
+
+    /**
+     * Returns the hash of the stored payload, as recorded in the header. Two packages with the same
+     * payload hash contain the same stored payload.
+     *
+     * @return payload hash
+     */
+    byte[] payloadHash();
+
+    /**
+     * Returns the size of the payload described by this header, in bytes as stored in the image
+     * (after compression and encryption).
+     *
+     * @return stored payload size
+     */
+    int payloadSize();
+
+    /**
+     * Returns the number of leading pixels that hold the whole package, header and payload. An image
+     * containing only these pixels is enough for {@link PackageHandler#getImageState(com.dezzmeister.cryptopix.main.images.ImageData, PackageHeader)}
+     * and {@link PackageHandler#decode(com.dezzmeister.cryptopix.main.images.ImageData, PackageHeader, String)}.
+     *
+     * @return number of pixels in the package
+     */
+    int packageSize();
+}
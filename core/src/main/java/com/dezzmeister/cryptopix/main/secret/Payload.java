@@ -1,5 +1,8 @@
 package com.dezzmeister.cryptopix.main.secret;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * Contains unencrypted file data, extracted from an image containing a secret.
  *
@@ -29,6 +32,16 @@ public interface Payload {
      */
     byte[] data();
 
+    /**
+     * Opens the raw file data as a stream. A payload returned by
+     * {@link PackageHandler#openPayload(com.dezzmeister.cryptopix.main.images.ImageData, PackageHeader, String)}
+     * decrypts and inflates the file as the stream is read, without holding the whole file in memory.
+     *
+     * @return stream of file data
+     * @throws IOException if the file data cannot be read
+     */
+    InputStream openStream() throws IOException;
+
     /**
      * Sets the file name.
      *
@@ -0,0 +1,182 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-memory cache of decoded payloads, so that opening a recent secret again doesn't repeat key
+ * derivation, decryption and decompression. Entries are keyed by the package's header and the password
+ * used to decode it (see {@link #key(PackageHeader, String)}), and are evicted in least-recently-used
+ * order once the total size of the cached files exceeds the budget.
+ *
+ * Cached payloads contain decrypted data; owners should {@link #clear()} the cache whenever decoded
+ * data is deleted or memory is tight.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PayloadCache {
+
+    /**
+     * Identifies a decoded payload. Passwords are hashed into the key, never stored.
+     */
+    public static final class Key {
+        private final byte[] digest;
+
+        private Key(final byte[] _digest) {
+            digest = _digest;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return (other instanceof Key) && Arrays.equals(digest, ((Key) other).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(digest);
+        }
+    }
+
+    /**
+     * Shortest payload hash, in bytes, that is trusted to identify a payload
+     */
+    public static final int MIN_IDENTITY_HASH_LENGTH = 16;
+
+    /**
+     * Maximum total size of cached payloads, in bytes
+     */
+    private final long maxBytes;
+
+    /**
+     * Cached payloads, in access order (least recently used first)
+     */
+    private final LinkedHashMap<Key, Payload> entries = new LinkedHashMap<Key, Payload>(16, 0.75f, true);
+
+    /**
+     * Total size of cached payloads, in bytes
+     */
+    private long totalBytes = 0;
+
+    /**
+     * Creates an empty cache with the given budget.
+     *
+     * @param _maxBytes maximum total size of cached payloads, in bytes
+     */
+    public PayloadCache(final long _maxBytes) {
+        maxBytes = _maxBytes;
+    }
+
+    /**
+     * Creates a cache key for the package described by a header, decoded with the given password. The key
+     * binds the package format (every version has its own header class), the header and payload sizes, the
+     * payload hash and the password.
+     *
+     * Only payload hashes of at least {@link #MIN_IDENTITY_HASH_LENGTH} bytes (MD5) identify a payload. The
+     * CRC-32C and xxHash64 tree roots can be forged, so two different images could share a key; packages
+     * checked with them get no key, and are never cached.
+     *
+     * @param header package header
+     * @param password password used to decode the package, or null
+     * @return cache key, or null if the package can't be cached
+     * @throws NoSuchAlgorithmException if SHA-256 is not supported on this device
+     */
+    public static final Key key(final PackageHeader header, final String password) throws NoSuchAlgorithmException {
+        final byte[] payloadHash = header.payloadHash();
+
+        if (payloadHash.length < MIN_IDENTITY_HASH_LENGTH) {
+            return null;
+        }
+
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(header.getClass().getName().getBytes(StandardCharsets.US_ASCII));
+        digest.update(PackageFunctions.intToBytes(header.headerSize()));
+        digest.update(PackageFunctions.intToBytes(header.payloadSize()));
+        digest.update(PackageFunctions.intToBytes(header.packageSize()));
+        digest.update(payloadHash);
+
+        if (password != null) {
+            digest.update((byte) 1);
+            digest.update(password.getBytes(StandardCharsets.US_ASCII));
+        } else {
+            digest.update((byte) 0);
+        }
+
+        return new Key(digest.digest());
+    }
+
+    /**
+     * Returns a cached payload and marks it as recently used. The payload is shared and must not be modified.
+     *
+     * @param key cache key, or null
+     * @return cached payload, or null
+     */
+    public synchronized Payload get(final Key key) {
+        if (key == null) {
+            return null;
+        }
+
+        return entries.get(key);
+    }
+
+    /**
+     * Caches a decoded payload, evicting the least recently used payloads until the cache fits its budget.
+     * Payloads larger than the whole budget are not cached.
+     *
+     * @param key cache key, or null to not cache the payload
+     * @param payload decoded payload (must not be modified afterwards)
+     */
+    public synchronized void put(final Key key, final Payload payload) {
+        final long size = sizeOf(payload);
+
+        if (key == null || size > maxBytes) {
+            return;
+        }
+
+        final Payload previous = entries.put(key, payload);
+
+        if (previous != null) {
+            totalBytes -= sizeOf(previous);
+        }
+
+        totalBytes += size;
+
+        final Iterator<Map.Entry<Key, Payload>> eldest = entries.entrySet().iterator();
+
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= sizeOf(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Removes every cached payload.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Returns the total size of the cached payloads.
+     *
+     * @return size of cached payloads, in bytes
+     */
+    public synchronized long sizeBytes() {
+        return totalBytes;
+    }
+
+    private static long sizeOf(final Payload payload) {
+        final byte[] data = payload.data();
+        final long dataSize = (data == null) ? 0 : data.length;
+        final long nameSize = (payload.fileName() == null) ? 0 : 2L * payload.fileName().length();
+        final long mimeSize = (payload.mimeType() == null) ? 0 : 2L * payload.mimeType().length();
+
+        return dataSize + nameSize + mimeSize;
+    }
+}
@@ -0,0 +1,40 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import java.io.Serializable;
+
+/**
+ * The payload header of a package: the file name, MIME type and sizes, without the file itself. Obtained
+ * with {@link PackageHandler#peekMetadata(com.dezzmeister.cryptopix.main.images.ImageData, PackageHeader, String)},
+ * which only decrypts the cipher blocks that hold these fields.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PayloadMetadata implements Serializable {
+
+    /**
+     * Original name of the file, including the extension
+     */
+    public String fileName = null;
+
+    /**
+     * MIME type of the file
+     */
+    public String mimeType = null;
+
+    /**
+     * Size of the file, in bytes, or -1 if it cannot be known without decoding the file (the file is
+     * compressed, or part of the payload is in another image)
+     */
+    public int size = -1;
+
+    /**
+     * Size of the payload as stored in the image (after compression and encryption), in bytes
+     */
+    public int storedSize = -1;
+
+    /**
+     * True if the file data is compressed
+     */
+    public boolean compressed = false;
+}
@@ -0,0 +1,49 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+/**
+ * Kernels that hide bytes in the low two bits of each ARGB channel, one byte per pixel, and read them back.
+ * {@link PackageFunctions} packs every pixel through the codec chosen by {@link PixelCodecs}.
+ *
+ * Implementations are found with {@link java.util.ServiceLoader}, and must give exactly the same pixels and
+ * bytes as {@link ScalarPixelCodec}; they may only be faster. None of the methods check bounds.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface PixelCodec {
+
+    /**
+     * Returns true if this codec can run on the current platform. Unsupported codecs are never chosen, so
+     * this method must not fail if the classes the codec depends on are missing.
+     *
+     * @return true if the codec can be used
+     */
+    boolean isSupported();
+
+    /**
+     * @return short name of the codec, for logging and benchmarks
+     */
+    String name();
+
+    /**
+     * Writes secret bytes to consecutive pixels.
+     *
+     * @param bytes secret bytes
+     * @param byteOffset first byte to write
+     * @param pixels 4-byte ARGB pixel array (will be modified)
+     * @param pixelOffset pixel to write the first byte to
+     * @param length number of bytes to write
+     */
+    void pack(final byte[] bytes, final int byteOffset, final int[] pixels, final int pixelOffset, final int length);
+
+    /**
+     * Extracts secret bytes from consecutive pixels.
+     *
+     * @param pixels 4-byte ARGB pixel array
+     * @param pixelOffset pixel holding the first byte
+     * @param out array to hold the extracted bytes
+     * @param byteOffset index in <code>out</code> of the first byte
+     * @param length number of bytes to extract
+     */
+    void unpack(final int[] pixels, final int pixelOffset, final byte[] out, final int byteOffset, final int length);
+}
@@ -0,0 +1,75 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Chooses the {@link PixelCodec} used by {@link PackageFunctions}. The first supported codec found by
+ * {@link ServiceLoader} is used, or {@link ScalarPixelCodec} if there is none; the Android app has none, so
+ * it always packs pixels with the scalar codec. Setting the system property {@value #CODEC_PROPERTY} to a
+ * codec name only allows that codec.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class PixelCodecs {
+
+    /**
+     * System property naming the only codec that may be chosen, e.g. <code>scalar</code>
+     */
+    public static final String CODEC_PROPERTY = "cryptopix.pixelCodec";
+
+    /**
+     * The reference codec
+     */
+    public static final PixelCodec SCALAR = new ScalarPixelCodec();
+
+    private static volatile PixelCodec active = load();
+
+    private PixelCodecs() {
+
+    }
+
+    /**
+     * @return the codec used to pack and unpack pixels
+     */
+    public static PixelCodec active() {
+        return active;
+    }
+
+    /**
+     * Replaces the codec used to pack and unpack pixels, e.g. to compare codecs in a benchmark.
+     *
+     * @param codec supported codec
+     */
+    public static void setActive(final PixelCodec codec) {
+        if (!codec.isSupported()) {
+            throw new IllegalArgumentException("Pixel codec " + codec.name() + " is not supported!");
+        }
+
+        active = codec;
+    }
+
+    private static PixelCodec load() {
+        final String wanted = System.getProperty(CODEC_PROPERTY);
+
+        if (wanted == null || !wanted.equals(SCALAR.name())) {
+            try {
+                final Iterator<PixelCodec> codecs = ServiceLoader.load(PixelCodec.class, PixelCodecs.class.getClassLoader()).iterator();
+
+                while (codecs.hasNext()) {
+                    final PixelCodec codec = codecs.next();
+
+                    if ((wanted == null || wanted.equals(codec.name())) && codec.isSupported()) {
+                        return codec;
+                    }
+                }
+            } catch (ServiceConfigurationError | LinkageError e) {
+                // A codec that can't be loaded is as good as an unsupported one
+            }
+        }
+
+        return SCALAR;
+    }
+}
@@ -0,0 +1,49 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+/**
+ * The reference {@link PixelCodec}: one pixel at a time, in plain Java. Runs everywhere, and is used
+ * whenever no faster codec is supported.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class ScalarPixelCodec implements PixelCodec {
+
+    @Override
+    public boolean isSupported() {
+        return true;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public void pack(final byte[] bytes, final int byteOffset, final int[] pixels, final int pixelOffset, final int length) {
+        for (int i = 0; i < length; i++) {
+            final int index = i + pixelOffset;
+            final int secret = ((int) bytes[i + byteOffset]) & 0xFF;
+
+            final int alpha = (secret & 0xC0) << 18;
+            final int red = (secret & 0x30) << 12;
+            final int green = (secret & 0x0C) << 6;
+            final int blue = secret & 0x03;
+
+            pixels[index] = (pixels[index] & 0xFCFCFCFC) | alpha | red | green | blue;
+        }
+    }
+
+    @Override
+    public void unpack(final int[] pixels, final int pixelOffset, final byte[] out, final int byteOffset, final int length) {
+        for (int i = 0; i < length; i++) {
+            final int pixel = pixels[i + pixelOffset];
+            final int data =
+                            (pixel & 0x00000003) |
+                            ((pixel & 0x00000300) >>> 6) |
+                            ((pixel & 0x00030000) >>> 12) |
+                            ((pixel & 0x03000000) >>> 18);
+            out[i + byteOffset] = (byte)data;
+        }
+    }
+}
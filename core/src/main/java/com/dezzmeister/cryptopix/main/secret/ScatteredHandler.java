@@ -0,0 +1,21 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+/**
+ * Implemented by package handlers that scatter the payload over the whole carrier instead of writing it
+ * contiguously after the package header. The package header stays in the leading pixels, so
+ * {@link PackageHeader#headerSize()} keeps its meaning, but the payload can be anywhere after it.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface ScatteredHandler extends PackageHandler {
+
+    /**
+     * Returns the pixel holding a byte of the stored payload.
+     *
+     * @param header package header for an image
+     * @param index index of the byte in the stored payload
+     * @return index of the pixel holding that byte
+     */
+    int payloadPixel(final PackageHeader header, final int index);
+}
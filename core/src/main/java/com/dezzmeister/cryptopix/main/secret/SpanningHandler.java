@@ -0,0 +1,58 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Implemented by package handlers that can split one payload across several carrier images. Every
+ * carrier holds one numbered segment of the set, and every segment header carries the set id, so that
+ * the segments can be put back together from any order of images.
+ *
+ * {@link #decode(ImageData, PackageHeader, String)} only works on a set of one segment; larger sets
+ * must be decoded with {@link #decodeSpanned(List, String, int)}.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface SpanningHandler extends PackageHandler {
+
+    /**
+     * Hides the given data across several images. The payload is compressed and encrypted once, then split
+     * into one segment per carrier (in proportion to each carrier's capacity), and the carriers are encoded in
+     * parallel. This function returns new {@link ImageData} instances, to keep the originals intact.
+     *
+     * @param carriers original images, one per segment
+     * @param secretData secret data to hide in the images
+     * @param options options to use when hiding data
+     * @param threads number of carriers to encode at once (at least 1)
+     * @return images containing the segments, in the same order as the carriers
+     * @throws SizeLimitExceededException if the package is larger than all of the carriers together
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the carriers
+     */
+    ImageData[] encodeSpanned(final List<ImageData> carriers, final Payload secretData, final EncodingOptions options, final int threads) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException, InterruptedException;
+
+    /**
+     * Decodes a payload split across several images. The images may be given in any order, but must hold
+     * every segment of exactly one set. Segments are extracted and checked in parallel.
+     *
+     * @param segments images containing the segments of one set
+     * @param password optional password (if the secret data is password-protected)
+     * @param threads number of segments to extract at once (at least 1)
+     * @return decoded secret data
+     * @throws IOException if a segment is missing, corrupted or belongs to another set
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the segments
+     */
+    Payload decodeSpanned(final List<ImageData> segments, final String password, final int threads) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException, InterruptedException;
+}
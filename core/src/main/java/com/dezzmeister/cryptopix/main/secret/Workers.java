@@ -0,0 +1,164 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread pools shared by every codec path that splits its work over several threads. Pools are created the
+ * first time they are used and live as long as the process; their threads are daemons, so they never keep
+ * it alive.
+ *
+ * Work that is already running on a pool thread (or in a task wrapped with {@link #marked(Runnable)}) is not
+ * split again: {@link #runAll(List)} runs it on the calling thread. Nested parallel work, such as hashing a
+ * payload while scanning many images, therefore never needs more threads than the outer level already has.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class Workers {
+
+    /**
+     * True on threads that are running pooled work
+     */
+    private static final ThreadLocal<Boolean> pooled = new ThreadLocal<Boolean>();
+
+    private Workers() {
+
+    }
+
+    /**
+     * One thread per processor, for work that never blocks
+     */
+    private static final class ComputeHolder {
+        static final ExecutorService POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new WorkerFactory("cryptopix-compute-"));
+    }
+
+    /**
+     * Threads as needed, for steps that wait on each other
+     */
+    private static final class BlockingHolder {
+        static final ExecutorService POOL = Executors.newCachedThreadPool(new WorkerFactory("cryptopix-blocking-"));
+    }
+
+    /**
+     * @return shared pool with one thread per processor, for work that never blocks
+     */
+    public static ExecutorService compute() {
+        return ComputeHolder.POOL;
+    }
+
+    /**
+     * Returns a shared pool that starts a thread whenever none is idle, for tasks that wait on other tasks
+     * (e.g. the steps of a pipeline). Idle threads stop after a minute.
+     *
+     * @return shared pool for blocking tasks
+     */
+    public static ExecutorService blocking() {
+        return BlockingHolder.POOL;
+    }
+
+    /**
+     * @return true if the calling thread is running pooled work, so parallel work should stay on it
+     */
+    public static boolean isPooled() {
+        return Boolean.TRUE.equals(pooled.get());
+    }
+
+    /**
+     * Wraps a task so that parallel work inside it runs on its thread, for tasks run on an executor that
+     * is not one of these pools.
+     *
+     * @param task task to wrap
+     * @return task that runs <code>task</code> as pooled work
+     */
+    public static Runnable marked(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                final Boolean previous = pooled.get();
+                pooled.set(Boolean.TRUE);
+
+                try {
+                    task.run();
+                } finally {
+                    pooled.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs tasks on the {@link #compute()} pool and waits for all of them. The calling thread runs the last
+     * task itself. If the calling thread is already running pooled work, or there is only one task, every
+     * task runs on the calling thread. If a task fails, the tasks that have not finished are cancelled and
+     * the failure is rethrown.
+     *
+     * @param tasks tasks to run
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public static void runAll(final List<? extends Runnable> tasks) throws InterruptedException {
+        if (tasks.size() == 1 || isPooled()) {
+            for (final Runnable task : tasks) {
+                task.run();
+            }
+
+            return;
+        }
+
+        final List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size() - 1);
+
+        try {
+            for (int i = 0; i < tasks.size() - 1; i++) {
+                futures.add(compute().submit(tasks.get(i)));
+            }
+
+            marked(tasks.get(tasks.size() - 1)).run();
+
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new IllegalStateException(cause);
+        } finally {
+            for (final Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Makes daemon threads that run pooled work.
+     */
+    private static final class WorkerFactory implements ThreadFactory {
+
+        private final String prefix;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        WorkerFactory(final String _prefix) {
+            prefix = _prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(marked(runnable), prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
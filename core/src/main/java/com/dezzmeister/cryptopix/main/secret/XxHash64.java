@@ -0,0 +1,106 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+/**
+ * xxHash64, a fast non-cryptographic 64-bit hash. Reads input 32 bytes at a time, with four independent
+ * accumulators.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class XxHash64 {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private XxHash64() {
+
+    }
+
+    /**
+     * Hashes a range of bytes.
+     *
+     * @param bytes bytes to hash
+     * @param offset first byte to hash
+     * @param length number of bytes to hash
+     * @param seed hash seed
+     * @return 64-bit hash
+     */
+    public static long hash(final byte[] bytes, final int offset, final int length, final long seed) {
+        final int end = offset + length;
+        int i = offset;
+        long h;
+
+        if (length >= 32) {
+            long v1 = seed + PRIME_1 + PRIME_2;
+            long v2 = seed + PRIME_2;
+            long v3 = seed;
+            long v4 = seed - PRIME_1;
+
+            for (; i + 32 <= end; i += 32) {
+                v1 = round(v1, readLong(bytes, i));
+                v2 = round(v2, readLong(bytes, i + 8));
+                v3 = round(v3, readLong(bytes, i + 16));
+                v4 = round(v4, readLong(bytes, i + 24));
+            }
+
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + PRIME_5;
+        }
+
+        h += length;
+
+        for (; i + 8 <= end; i += 8) {
+            h ^= round(0, readLong(bytes, i));
+            h = Long.rotateLeft(h, 27) * PRIME_1 + PRIME_4;
+        }
+
+        if (i + 4 <= end) {
+            h ^= (readInt(bytes, i) & 0xFFFFFFFFL) * PRIME_1;
+            h = Long.rotateLeft(h, 23) * PRIME_2 + PRIME_3;
+            i += 4;
+        }
+
+        for (; i < end; i++) {
+            h ^= (bytes[i] & 0xFF) * PRIME_5;
+            h = Long.rotateLeft(h, 11) * PRIME_1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME_2;
+        h ^= h >>> 29;
+        h *= PRIME_3;
+        h ^= h >>> 32;
+
+        return h;
+    }
+
+    private static long round(final long acc, final long input) {
+        return Long.rotateLeft(acc + input * PRIME_2, 31) * PRIME_1;
+    }
+
+    private static long mergeRound(final long acc, final long value) {
+        return (acc ^ round(0, value)) * PRIME_1 + PRIME_4;
+    }
+
+    /**
+     * Reads a little-endian long.
+     */
+    private static long readLong(final byte[] bytes, final int i) {
+        return (readInt(bytes, i) & 0xFFFFFFFFL) | ((long) readInt(bytes, i + 4) << 32);
+    }
+
+    /**
+     * Reads a little-endian int.
+     */
+    private static int readInt(final byte[] bytes, final int i) {
+        return (bytes[i] & 0xFF) | ((bytes[i + 1] & 0xFF) << 8) | ((bytes[i + 2] & 0xFF) << 16) | ((bytes[i + 3] & 0xFF) << 24);
+    }
+}
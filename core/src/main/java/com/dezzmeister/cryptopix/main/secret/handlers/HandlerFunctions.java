@@ -0,0 +1,246 @@
+package com.dezzmeister.cryptopix.main.secret.handlers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.handlers.v1_0_0.LazyPayload_v1_0_0;
+import com.dezzmeister.cryptopix.main.secret.handlers.v1_0_0.Payload_v1_0_0;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
+
+/**
+ * Functions shared by the package handlers. Most formats store their payload as 1.0.0 does: a payload header
+ * (the file name and MIME type, each after a 4-byte length field) followed by the file data, which may be
+ * compressed, with the whole payload then optionally encrypted. These functions build, check and read payloads
+ * in that layout, whatever the package header around them looks like.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class HandlerFunctions {
+
+    /**
+     * The number of PBKDF2 iterations every format so far performs when generating an encryption key. A format
+     * that derives its keys differently must keep its own count: changing this one breaks every existing image.
+     */
+    public static final int PBKDF2_ITERATIONS = 5000;
+
+    /**
+     * The filename size field (4-byte field). An ASCII string containing the name of the file follows this field,
+     * and this field gives the length of the string.
+     */
+    public static final int PAYLOAD_FILENAME_SIZE = 4;
+
+    /**
+     * The MIME type size field (4-byte field). An ASCII string containing the MIME type of the file follows this field,
+     * and this field gives the length of the string.
+     */
+    public static final int PAYLOAD_MIMETYPE_SIZE = 4;
+
+    private HandlerFunctions() {
+
+    }
+
+    /**
+     * Packs the payload header of a secret file: its file name and MIME type.
+     *
+     * @param secretData secret file
+     * @return payload header bytes
+     */
+    public static byte[] payloadHeader(final Payload secretData) {
+        final byte[] fileName = secretData.fileName().getBytes(StandardCharsets.US_ASCII);
+        final byte[] mimeType = secretData.mimeType().getBytes(StandardCharsets.US_ASCII);
+
+        final ArrayList<byte[]> payloadHeaderFields = new ArrayList<byte[]>();
+        payloadHeaderFields.add(PackageFunctions.intToBytes(fileName.length));
+        payloadHeaderFields.add(fileName);
+        payloadHeaderFields.add(PackageFunctions.intToBytes(mimeType.length));
+        payloadHeaderFields.add(mimeType);
+
+        return PackageFunctions.packSequentialBinaryFields(payloadHeaderFields);
+    }
+
+    /**
+     * Splits a decrypted payload into file name, MIME type and file data, inflating the file data if it is
+     * compressed.
+     *
+     * @param unencryptedPayload payload, after decryption
+     * @param compressed true if the file data is compressed
+     * @return decoded secret data
+     * @throws IllegalArgumentException if the payload header is malformed
+     */
+    public static Payload readPayload(final byte[] unencryptedPayload, final boolean compressed) throws DataFormatException, IOException {
+        int seek = 0;
+
+        if (unencryptedPayload.length < PAYLOAD_FILENAME_SIZE + PAYLOAD_MIMETYPE_SIZE) {
+            throw new IllegalArgumentException("Payload is too small to contain a payload header!");
+        }
+
+        final int fileNameSize = PackageFunctions.intFromBytes(PackageFunctions.getSubarray(unencryptedPayload, PAYLOAD_FILENAME_SIZE, seek));
+        seek += PAYLOAD_FILENAME_SIZE;
+
+        if (fileNameSize < 0 || fileNameSize + seek + PAYLOAD_MIMETYPE_SIZE > unencryptedPayload.length) {
+            throw new IllegalArgumentException("Illegal file name size in payload header!");
+        }
+
+        final String fileName = new String(PackageFunctions.getSubarray(unencryptedPayload, fileNameSize, seek), StandardCharsets.US_ASCII);
+        seek += fileNameSize;
+
+        final int mimeTypeSize = PackageFunctions.intFromBytes(PackageFunctions.getSubarray(unencryptedPayload, PAYLOAD_MIMETYPE_SIZE, seek));
+        seek += PAYLOAD_MIMETYPE_SIZE;
+
+        if (mimeTypeSize < 0 || mimeTypeSize + seek > unencryptedPayload.length) {
+            throw new IllegalArgumentException("Illegal MIME type size in payload header!");
+        }
+
+        final String mimeType = new String(PackageFunctions.getSubarray(unencryptedPayload, mimeTypeSize, seek), StandardCharsets.US_ASCII);
+        seek += mimeTypeSize;
+
+        final byte[] rawFileData = PackageFunctions.getSubarray(unencryptedPayload, -1, seek);
+        final byte[] fileData = compressed ? PackageFunctions.decompress(rawFileData) : rawFileData;
+
+        final Payload payloadObject = emptyPayload();
+        payloadObject.setFileName(fileName);
+        payloadObject.setMimeType(mimeType);
+        payloadObject.setData(fileData);
+
+        return payloadObject;
+    }
+
+    /**
+     * @return an empty payload with the fields of a 1.0.0 payload, which every later format reuses
+     */
+    public static Payload emptyPayload() {
+        return new Payload_v1_0_0();
+    }
+
+    /**
+     * Checks a stored payload against the MD5 payload hash in its package header.
+     *
+     * @param storedPayload stored payload
+     * @param header package header
+     * @return state of the image, {@link EncodedImageState#UNSUPPORTED} if MD5 is not available
+     */
+    public static EncodedImageState md5State(final byte[] storedPayload, final PackageHeader header) {
+        final MessageDigest md5;
+
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+
+            return EncodedImageState.UNSUPPORTED;
+        }
+
+        return imageState(Arrays.equals(md5.digest(storedPayload), header.payloadHash()), header);
+    }
+
+    /**
+     * Returns the state of an image after its payload hash was checked.
+     *
+     * @param intact true if the payload matches its hash
+     * @param header package header
+     * @return state of the image
+     */
+    public static EncodedImageState imageState(final boolean intact, final PackageHeader header) {
+        if (!intact) {
+            return EncodedImageState.CORRUPTED;
+        }
+
+        return header.isPasswordProtected() ? EncodedImageState.SECRET_PASSWORD : EncodedImageState.SECRET_NO_PASSWORD;
+    }
+
+    /**
+     * Checks a password with {@link PackageHandler#isCorrectPassword(String, PackageHeader)} and derives the
+     * payload key from it.
+     *
+     * @param handler package handler for the image
+     * @param header package header
+     * @param password given password (may be null)
+     * @param salt salt to derive the key with
+     * @return payload key
+     * @throws SecurityException if the password is missing or wrong
+     */
+    public static SecretKeySpec passwordKey(final PackageHandler handler, final PackageHeader header, final String password, final byte[] salt) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        if (password == null) {
+            throw new SecurityException("A password is required!");
+        }
+
+        if (!handler.isCorrectPassword(password, header)) {
+            throw new SecurityException("Invalid password!");
+        }
+
+        return PackageFunctions.generateKey(password.getBytes(StandardCharsets.US_ASCII), salt, PBKDF2_ITERATIONS);
+    }
+
+    /**
+     * Reads a stored payload from consecutive pixels.
+     *
+     * @param secret image containing the payload
+     * @param dataOffset pixel holding the first payload byte
+     * @return stored payload
+     */
+    public static PackageFunctions.ByteSource pixelSource(final ImageData secret, final int dataOffset) {
+        return new PackageFunctions.ByteSource() {
+            @Override
+            public byte[] read(final int from, final int length) {
+                return PackageFunctions.extractBytes(secret.pixels, length, dataOffset + from);
+            }
+        };
+    }
+
+    /**
+     * Opens a stored payload, reading only its payload header.
+     *
+     * @param stored stored payload
+     * @param header package header
+     * @param keySpec payload key, or null if the payload is not encrypted
+     * @param initVector initialization vector, or null if the payload is not encrypted
+     * @param compressed true if the file data is compressed
+     * @return lazily decoded payload
+     */
+    public static LazyPayload_v1_0_0 openPayload(final PackageFunctions.ByteSource stored, final PackageHeader header, final SecretKeySpec keySpec, final byte[] initVector, final boolean compressed) throws NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        return LazyPayload_v1_0_0.open(stored, header.payloadSize(), keySpec, (keySpec == null) ? null : PackageFunctions.createIV(initVector), compressed);
+    }
+
+    /**
+     * Writes a package header to the trace sink: a dump of the header pixels, the given fields, and the payload
+     * hash. Byte array and null values are written as hex dumps. Callers should check that {@link TraceLevel#TRACE} is
+     * enabled first.
+     *
+     * @param tag trace tag of the handler
+     * @param label label for the header dump
+     * @param secret image containing the header
+     * @param header extracted package header
+     * @param fields alternating field labels and values
+     */
+    public static void traceHeader(final String tag, final String label, final ImageData secret, final PackageHeader header, final Object... fields) {
+        Trace.log(TraceLevel.TRACE, tag, label, Trace.hex(secret.pixels, header.headerSize(), 0));
+
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            final Object value = fields[i + 1];
+            Trace.log(TraceLevel.TRACE, tag, (String) fields[i], (value == null || value instanceof byte[]) ? Trace.hex((byte[]) value) : value);
+        }
+
+        Trace.log(TraceLevel.TRACE, tag, "Payload hash", Trace.hex(header.payloadHash()));
+    }
+}
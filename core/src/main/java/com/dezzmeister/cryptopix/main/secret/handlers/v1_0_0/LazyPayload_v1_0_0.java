@@ -0,0 +1,292 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_0_0;
+
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PayloadMetadata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A 1.0.0 payload that is decoded on demand. Only the payload header is read when the payload is opened;
+ * the file is decrypted and inflated on the first call to {@link #data()}, or as {@link #openStream()} is
+ * read. Until then, the payload keeps a reference to the stored payload (usually the pixels of the image)
+ * and the key. Both are released once the file has been decoded.
+ *
+ * {@link #data()} cannot throw checked exceptions, so a payload that turns out to be corrupted throws an
+ * {@link IllegalStateException} from it; {@link #openStream()} throws an {@link IOException} instead.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class LazyPayload_v1_0_0 extends Payload_v1_0_0 {
+
+    /**
+     * Number of stored bytes extracted and decrypted at a time when streaming
+     */
+    private static final int PIECE_SIZE = 1 << 16;
+
+    private final PayloadMetadata metadata;
+
+    /**
+     * Stored payload, or null once the file has been decoded
+     */
+    private PackageFunctions.ByteSource stored;
+
+    private SecretKeySpec keySpec;
+
+    private IvParameterSpec ivSpec;
+
+    /**
+     * Offset of the file data in the unencrypted payload, after the payload header
+     */
+    private final int bodyOffset;
+
+    /**
+     * Opens a stored payload, reading only its payload header.
+     *
+     * @param stored stored payload
+     * @param storedSize size of the stored payload, in bytes
+     * @param keySpec key specification, or null if the payload is not encrypted
+     * @param ivSpec initialization vector specification, or null if the payload is not encrypted
+     * @param compressed true if the file data is compressed
+     * @return payload with the file name and MIME type set
+     */
+    public static LazyPayload_v1_0_0 open(final PackageFunctions.ByteSource stored, final int storedSize, final SecretKeySpec keySpec, final IvParameterSpec ivSpec, final boolean compressed) throws NoSuchAlgorithmException, NoSuchPaddingException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, InvalidAlgorithmParameterException {
+        final PayloadMetadata metadata = PackageFunctions.peekPayload(stored, storedSize, storedSize, keySpec, ivSpec, compressed);
+
+        return new LazyPayload_v1_0_0(metadata, stored, keySpec, ivSpec);
+    }
+
+    private LazyPayload_v1_0_0(final PayloadMetadata _metadata, final PackageFunctions.ByteSource _stored, final SecretKeySpec _keySpec, final IvParameterSpec _ivSpec) {
+        metadata = _metadata;
+        stored = _stored;
+        keySpec = _keySpec;
+        ivSpec = _ivSpec;
+
+        fileName = metadata.fileName;
+        mimeType = metadata.mimeType;
+
+        // Both length fields, then one character per byte (undecodable ASCII bytes become one replacement character)
+        bodyOffset = 8 + fileName.length() + mimeType.length();
+    }
+
+    /**
+     * Returns the payload header that was read when the payload was opened.
+     *
+     * @return payload metadata
+     */
+    public PayloadMetadata metadata() {
+        return metadata;
+    }
+
+    /**
+     * Returns the file data, decoding it the first time.
+     *
+     * @return file data
+     * @throws IllegalStateException if the file data cannot be decoded
+     */
+    @Override
+    public synchronized byte[] data() {
+        if (stored != null) {
+            try {
+                data = decodeBody();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to decode payload!", e);
+            }
+
+            release();
+        }
+
+        return data;
+    }
+
+    @Override
+    public synchronized void setData(final byte[] _data) {
+        data = _data;
+        release();
+    }
+
+    @Override
+    public synchronized InputStream openStream() throws IOException {
+        if (stored == null) {
+            return super.openStream();
+        }
+
+        final InputStream body = new BodyInputStream(stored, metadata.storedSize, keySpec, ivSpec, bodyOffset);
+
+        return metadata.compressed ? new InflaterInputStream(body) : body;
+    }
+
+    private byte[] decodeBody() throws IOException {
+        // Nothing to decrypt or inflate, so copy the file straight out of the stored payload
+        if (keySpec == null && !metadata.compressed) {
+            return stored.read(bodyOffset, metadata.storedSize - bodyOffset);
+        }
+
+        final InputStream in = openStream();
+
+        try {
+            if (metadata.size >= 0) {
+                final byte[] out = new byte[metadata.size];
+                int count = 0;
+
+                while (count < out.length) {
+                    final int read = in.read(out, count, out.length - count);
+
+                    if (read < 0) {
+                        throw new EOFException("Payload ended early!");
+                    }
+
+                    count += read;
+                }
+
+                return out;
+            }
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(metadata.storedSize);
+            final byte[] buffer = new byte[PIECE_SIZE];
+            int read;
+
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void release() {
+        stored = null;
+        keySpec = null;
+        ivSpec = null;
+    }
+
+    /**
+     * Reads the file data out of a stored payload a piece at a time, decrypting each piece as it is read.
+     */
+    private static final class BodyInputStream extends InputStream {
+        private final PackageFunctions.ByteSource stored;
+        private final int storedSize;
+        private final Cipher cipher;
+
+        /**
+         * Number of stored bytes read so far
+         */
+        private int position = 0;
+
+        /**
+         * Number of unencrypted bytes left to skip before the file data
+         */
+        private int skip;
+
+        private byte[] piece = new byte[0];
+        private int pieceOffset = 0;
+        private boolean finished = false;
+
+        BodyInputStream(final PackageFunctions.ByteSource _stored, final int _storedSize, final SecretKeySpec keySpec, final IvParameterSpec ivSpec, final int _skip) throws IOException {
+            stored = _stored;
+            storedSize = _storedSize;
+            skip = _skip;
+
+            if (keySpec != null) {
+                try {
+                    cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+                    cipher.init(Cipher.DECRYPT_MODE, keySpec, ivSpec);
+                } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | InvalidAlgorithmParameterException e) {
+                    throw new IOException("Unable to decrypt payload!", e);
+                }
+            } else {
+                cipher = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+
+            return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            while (pieceOffset == piece.length || skip > 0) {
+                if (pieceOffset == piece.length && !nextPiece()) {
+                    return -1;
+                }
+
+                final int skipped = Math.min(skip, piece.length - pieceOffset);
+                pieceOffset += skipped;
+                skip -= skipped;
+            }
+
+            final int count = Math.min(length, piece.length - pieceOffset);
+            System.arraycopy(piece, pieceOffset, buffer, offset, count);
+            pieceOffset += count;
+
+            return count;
+        }
+
+        @Override
+        public void close() {
+            piece = new byte[0];
+            pieceOffset = 0;
+            finished = true;
+        }
+
+        /**
+         * Reads and decrypts the next piece of the stored payload.
+         *
+         * @return false at the end of the payload
+         */
+        private boolean nextPiece() throws IOException {
+            if (finished) {
+                return false;
+            }
+
+            byte[] next = null;
+
+            if (position < storedSize) {
+                final int size = Math.min(PIECE_SIZE, storedSize - position);
+                final byte[] in = stored.read(position, size);
+                position += size;
+
+                next = (cipher == null) ? in : cipher.update(in);
+            } else {
+                finished = true;
+
+                if (cipher != null) {
+                    try {
+                        next = cipher.doFinal();
+                    } catch (IllegalBlockSizeException | BadPaddingException e) {
+                        throw new IOException("Unable to decrypt payload!", e);
+                    }
+                }
+            }
+
+            // A block cipher has no output for input shorter than a block
+            piece = (next == null) ? new byte[0] : next;
+            pieceOffset = 0;
+
+            return true;
+        }
+    }
+}
@@ -58,4 +58,24 @@ public class PackageData_v1_0_0 implements PackageHeader {
     public boolean isPasswordProtected() {
         return hasPassword;
     }
+
+    @Override
+    public int headerSize() {
+        return dataOffset;
+    }
+
+    @Override
+    public byte[] payloadHash() {
+        return payloadHash;
+    }
+
+    @Override
+    public int payloadSize() {
+        return payloadSize;
+    }
+
+    @Override
+    public int packageSize() {
+        return dataOffset + payloadSize;
+    }
 }
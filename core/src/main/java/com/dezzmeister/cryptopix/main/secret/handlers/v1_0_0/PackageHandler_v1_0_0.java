@@ -9,9 +9,11 @@ import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.zip.DataFormatException;
 
 import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
@@ -19,12 +21,17 @@ import javax.crypto.spec.SecretKeySpec;
 
 import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
 import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodePipeline;
 import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
 import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
 import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
 import com.dezzmeister.cryptopix.main.secret.PackageHandler;
 import com.dezzmeister.cryptopix.main.secret.PackageHeader;
 import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.PayloadMetadata;
+import com.dezzmeister.cryptopix.main.secret.handlers.HandlerFunctions;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
 
 /**
  * Package handler for files generated with Cryptopix 1.0.0. The static members give the byte-length of
@@ -89,22 +96,12 @@ public class PackageHandler_v1_0_0 implements PackageHandler {
     private static final int MAX_PACKAGE_HEADER_LENGTH = MIN_PACKAGE_HEADER_LENGTH + SALT_LENGTH + INIT_VECTOR_LENGTH + HASH_LENGTH;
 
     /**
-     * The number of PBKDF2 iterations to perform when encrypting/decrypting data (not a binary field)
+     * Trace tag (not a binary field)
      */
-    private static final int PBKDF2_ITERATIONS = 5000;
+    private static final String TAG = "PackageHandler_v1_0_0";
 
     @Override
     public EncodedImageState getImageState(final ImageData secret, final PackageHeader header) {
-        final MessageDigest md5;
-
-        try {
-            md5 = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-
-            return EncodedImageState.UNSUPPORTED;
-        }
-
         final PackageData_v1_0_0 packageHeader;
 
         if (!(header instanceof PackageData_v1_0_0)) {
@@ -116,21 +113,12 @@ public class PackageHandler_v1_0_0 implements PackageHandler {
         // The payload data starts at packageHeader.dataOffset
         final byte[] data = PackageFunctions.extractBytes(secret.pixels, packageHeader.payloadSize, packageHeader.dataOffset);
 
-        final byte[] realHash = md5.digest(data);
-
-        System.out.println("FOOBI Real Hash: " + PackageFunctions.bts(realHash));
-        System.out.println("FOOBI Expected Hash: " + PackageFunctions.bts(packageHeader.payloadHash));
-        System.out.println("FOOBI Actual Damn Payload: " + PackageFunctions.bts(data));
-
-        if (Arrays.equals(realHash, packageHeader.payloadHash)) {
-            if (packageHeader.hasPassword) {
-                return EncodedImageState.SECRET_PASSWORD;
-            } else {
-                return EncodedImageState.SECRET_NO_PASSWORD;
-            }
-        } else {
-            return EncodedImageState.CORRUPTED;
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            Trace.log(TraceLevel.TRACE, TAG, "Expected hash", Trace.hex(packageHeader.payloadHash));
+            Trace.log(TraceLevel.TRACE, TAG, "Payload", Trace.hex(data));
         }
+
+        return HandlerFunctions.md5State(data, packageHeader);
     }
 
     @Override
@@ -218,113 +206,99 @@ public class PackageHandler_v1_0_0 implements PackageHandler {
         data.passwordHash = passwordHash;
         data.dataOffset = seek;
 
-        System.out.println("FOOBI Header: " + PackageFunctions.bts(PackageFunctions.extractBytes(secret.pixels, data.dataOffset, 0)));
-        System.out.println("FOOBI Salt: " + PackageFunctions.bts(data.salt));
-        System.out.println("FOOBI IV: " + PackageFunctions.bts(data.initVector));
-        System.out.println("FOOBI passwordHash: " + PackageFunctions.bts(data.passwordHash));
-        System.out.println("FOOBI payloadHash: " + PackageFunctions.bts(data.payloadHash));
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Extracted header", secret, data);
+        }
 
         return data;
     }
 
-    // Payload header field sizes
-
-    /**
-     * The filename size field (4-byte field). An ASCII string containing the name of the file follows this field,
-     * and this field gives the length of the string.
-     */
-    private static final int PAYLOAD_FILENAME_SIZE = 4;
-
-    /**
-     * The MIME type size field (4-byte field). An ASCII string containing the MIME type of the file follows this field,
-     * and this field gives the length of the string.
-     */
-    private static final int PAYLOAD_MIMETYPE_SIZE = 4;
+    @Override
+    public int maxHeaderSize() {
+        return MAX_PACKAGE_HEADER_LENGTH;
+    }
 
     @Override
     public ImageData encodeSecret(final ImageData original, final Payload secretData, final EncodingOptions options) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
         /**
-         * 1. Compress data (if compression option specified)
-         * 2. Generate key spec and iv spec (if password supplied)
+         * 1. Generate key spec and iv spec (if password supplied)
+         * 2. Compress data (if compression option specified)
          * 3. Encrypt data (if password supplied)
          * 4. Generate payload
          * 5. Generate package header
          * 6. Add payload to package
          * 7. Pack entire package into a byte array
          * 8. Stuff the byte array in the image
+         *
+         * Large files go through steps 2-4 and 8 in a pipeline instead (see EncodePipeline), and the package
+         * header is written last.
          */
-        byte[] fileData = secretData.data();
-
-        if (options.compress) {
-            fileData = PackageFunctions.compress(fileData);
-        }
-
-        final ArrayList<byte[]> payloadFields = new ArrayList<byte[]>();
-        final byte[] fileName = secretData.fileName().getBytes(StandardCharsets.US_ASCII);
-        final byte[] fileNameSizeField = PackageFunctions.intToBytes(fileName.length);
-        final byte[] mimeType = secretData.mimeType().getBytes(StandardCharsets.US_ASCII);
-        final byte[] mimeTypeSizeField = PackageFunctions.intToBytes(mimeType.length);
-
-        payloadFields.add(fileNameSizeField);
-        payloadFields.add(fileName);
-        payloadFields.add(mimeTypeSizeField);
-        payloadFields.add(mimeType);
-        payloadFields.add(fileData);
+        final byte[] payloadHeader = HandlerFunctions.payloadHeader(secretData);
 
         byte[] salt = null;
         byte[] passwordHash = null;
         SecretKeySpec keySpec = null;
         IvParameterSpec ivSpec = null;
 
-        final byte[] payload;
-
         if (options.password != null) {
             final byte[] password = options.password.getBytes(StandardCharsets.US_ASCII);
 
             salt = PackageFunctions.generateSalt();
             passwordHash = PackageFunctions.saltAndHashPassword(salt, password);
-            keySpec = PackageFunctions.generateKey(password, salt, PBKDF2_ITERATIONS);
+            keySpec = PackageFunctions.generateKey(password, salt, HandlerFunctions.PBKDF2_ITERATIONS);
             ivSpec = PackageFunctions.generateIV(INIT_VECTOR_LENGTH);
-
-            final byte[] rawPayload = PackageFunctions.packSequentialBinaryFields(payloadFields);
-            payload = PackageFunctions.encrypt(rawPayload, keySpec, ivSpec);
-        } else {
-            payload = PackageFunctions.packSequentialBinaryFields(payloadFields);
         }
 
-        final MessageDigest md5 = MessageDigest.getInstance("MD5");
-        final byte[] payloadHash = md5.digest(payload);
+        final byte[] fileData = secretData.data();
 
-        final int passwordFlag = (options.password != null) ? 1 : 0;
-        final int compressFlag = options.compress ? 1 : 0;
-        final byte flags = (byte)(((compressFlag << 1) | passwordFlag) & 0xFF);
+        if (EncodePipeline.isWorthwhile(fileData.length)) {
+            final int dataOffset = (options.password != null) ? MAX_PACKAGE_HEADER_LENGTH : MIN_PACKAGE_HEADER_LENGTH;
+            Cipher cipher = null;
 
-        final ArrayList<byte[]> packageFields = new ArrayList<byte[]>();
-        final byte[] versionCodeField = PackageFunctions.longToBytes(options.versionCode);
-        final byte[] payloadSizeField = PackageFunctions.intToBytes(payload.length);
-        final byte[] flagsField = {flags};
+            if (keySpec != null) {
+                cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+                cipher.init(Cipher.ENCRYPT_MODE, keySpec, ivSpec);
+            }
 
-        packageFields.add(versionCodeField);
-        packageFields.add(payloadHash);
-        packageFields.add(payloadSizeField);
-        packageFields.add(flagsField);
+            final int[] out = new int[original.pixels.length];
+            final EncodePipeline.Result result = EncodePipeline.run(payloadHeader, fileData, options.compress, cipher, original.pixels, out, dataOffset);
+            final byte[] header = PackageFunctions.packSequentialBinaryFields(packageHeaderFields(options, result.payloadHash, result.payloadSize, salt, ivSpec, passwordHash));
 
-        if (options.password != null) {
-            packageFields.add(salt);
-            packageFields.add(ivSpec.getIV());
-            packageFields.add(passwordHash);
+            if (Trace.isEnabled(TraceLevel.TRACE)) {
+                Trace.log(TraceLevel.TRACE, TAG, "Encoded header", Trace.hex(header));
+                Trace.log(TraceLevel.TRACE, TAG, "Payload hash", Trace.hex(result.payloadHash));
+            }
+
+            // Everything but the payload still has to be copied from the carrier
+            final int end = dataOffset + result.payloadSize;
+            System.arraycopy(original.pixels, 0, out, 0, dataOffset);
+            System.arraycopy(original.pixels, end, out, end, out.length - end);
+
+            PackageFunctions.writeBytes(out, header, 0);
+
+            return new ImageData(out, original.width, original.height);
         }
 
+        final byte[] storedFileData = options.compress ? PackageFunctions.compress(fileData) : fileData;
+        final byte[] rawPayload = PackageFunctions.packSequentialBinaryFields(Arrays.asList(payloadHeader, storedFileData));
+        final byte[] payload = (keySpec != null) ? PackageFunctions.encrypt(rawPayload, keySpec, ivSpec) : rawPayload;
+
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+        final byte[] payloadHash = md5.digest(payload);
+
+        final List<byte[]> packageFields = packageHeaderFields(options, payloadHash, payload.length, salt, ivSpec, passwordHash);
         packageFields.add(payload);
 
         final byte[] completeSecretPackage = PackageFunctions.packSequentialBinaryFields(packageFields);
 
-        System.out.println("FOOBI Encoded: " + PackageFunctions.bts(completeSecretPackage));
-        System.out.println("FOOBI Salt: " + PackageFunctions.bts(salt));
-        System.out.println("FOOBI IV: " + PackageFunctions.bts(ivSpec.getIV()));
-        System.out.println("FOOBI passwordHash: " + PackageFunctions.bts(passwordHash));
-        System.out.println("FOOBI payloadHash: " + PackageFunctions.bts(payloadHash));
-        System.out.println("FOOBI Actual Payload: " + PackageFunctions.bts(payload));
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            Trace.log(TraceLevel.TRACE, TAG, "Encoded package", Trace.hex(completeSecretPackage));
+            Trace.log(TraceLevel.TRACE, TAG, "Salt", Trace.hex(salt));
+            Trace.log(TraceLevel.TRACE, TAG, "IV", Trace.hex((ivSpec == null) ? null : ivSpec.getIV()));
+            Trace.log(TraceLevel.TRACE, TAG, "Password hash", Trace.hex(passwordHash));
+            Trace.log(TraceLevel.TRACE, TAG, "Payload hash", Trace.hex(payloadHash));
+            Trace.log(TraceLevel.TRACE, TAG, "Payload", Trace.hex(payload));
+        }
 
         final int[] out = new int[original.pixels.length];
         System.arraycopy(original.pixels, 0, out, 0, out.length);
@@ -355,67 +329,92 @@ public class PackageHandler_v1_0_0 implements PackageHandler {
         final byte[] rawPayload = PackageFunctions.extractBytes(secret.pixels, packageData.payloadSize, packageData.dataOffset);
         final byte[] unencryptedPayload;
 
-        System.out.println("FOOBI Decoded: " + PackageFunctions.bts(PackageFunctions.extractBytes(secret.pixels, 0, packageData.dataOffset)));
-        System.out.println("FOOBI Salt: " + PackageFunctions.bts(packageData.salt));
-        System.out.println("FOOBI IV: " + PackageFunctions.bts(packageData.initVector));
-        System.out.println("FOOBI passwordHash: " + PackageFunctions.bts(packageData.passwordHash));
-        System.out.println("FOOBI payloadHash: " + PackageFunctions.bts(packageData.payloadHash));
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Decoding header", secret, packageData);
+        }
 
         if (packageData.hasPassword) {
-            final byte[] passwordBytes = password.getBytes(StandardCharsets.US_ASCII);
-
-            if (!PackageFunctions.isCorrectPassword(passwordBytes, packageData.salt, packageData.passwordHash)) {
-                throw new SecurityException("Invalid password!");
-            }
-
-            final IvParameterSpec ivSpec = PackageFunctions.createIV(packageData.initVector);
-            final SecretKeySpec keySpec = PackageFunctions.generateKey(passwordBytes, packageData.salt, PBKDF2_ITERATIONS);
-
-            unencryptedPayload = PackageFunctions.decrypt(rawPayload, keySpec, ivSpec);
+            final SecretKeySpec keySpec = HandlerFunctions.passwordKey(this, packageData, password, packageData.salt);
+            unencryptedPayload = PackageFunctions.decrypt(rawPayload, keySpec, PackageFunctions.createIV(packageData.initVector));
         } else {
             unencryptedPayload = rawPayload;
         }
 
-        int seek = 0;
-        final byte[] fileNameSizeField = PackageFunctions.getSubarray(unencryptedPayload, PAYLOAD_FILENAME_SIZE, seek);
-        final int fileNameSize = PackageFunctions.intFromBytes(fileNameSizeField);
-        seek += PAYLOAD_FILENAME_SIZE;
+        return HandlerFunctions.readPayload(unencryptedPayload, packageData.compressed);
+    }
 
-        if (fileNameSize + seek > unencryptedPayload.length) {
-            throw new IllegalArgumentException("Illegal file name size in payload header!");
-        }
+    @Override
+    public PayloadMetadata peekMetadata(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        return lazyPayload(secret, header, password).metadata();
+    }
 
-        final byte[] fileNameField = PackageFunctions.getSubarray(unencryptedPayload, fileNameSize, seek);
-        final String fileName = new String(fileNameField, StandardCharsets.US_ASCII);
-        seek += fileNameSize;
+    @Override
+    public Payload openPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        return lazyPayload(secret, header, password);
+    }
 
-        final byte[] mimeTypeSizeField = PackageFunctions.getSubarray(unencryptedPayload, PAYLOAD_MIMETYPE_SIZE, seek);
-        final int mimeTypeSize = PackageFunctions.intFromBytes(mimeTypeSizeField);
-        seek += PAYLOAD_MIMETYPE_SIZE;
+    /**
+     * Checks the password and opens the payload, reading only the payload header.
+     */
+    private LazyPayload_v1_0_0 lazyPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        final PackageData_v1_0_0 packageData;
 
-        if (mimeTypeSize + seek > unencryptedPayload.length) {
-            throw new IllegalArgumentException("Illegal MIME type size in payload header!");
+        if (header instanceof PackageData_v1_0_0) {
+            packageData = (PackageData_v1_0_0) header;
+        } else {
+            throw new IllegalArgumentException("Wrong package header type!");
         }
 
-        final byte[] mimeTypeField = PackageFunctions.getSubarray(unencryptedPayload, mimeTypeSize, seek);
-        final String mimeType = new String(mimeTypeField, StandardCharsets.US_ASCII);
-        seek += mimeTypeSize;
+        if (packageData.payloadSize < 0 || (long) packageData.dataOffset + packageData.payloadSize > secret.pixels.length) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
 
-        final byte[] rawFileData = PackageFunctions.getSubarray(unencryptedPayload, -1, seek);
-        final byte[] fileData;
+        final SecretKeySpec keySpec = packageData.hasPassword ? HandlerFunctions.passwordKey(this, packageData, password, packageData.salt) : null;
 
-        if (packageData.compressed) {
-            fileData = PackageFunctions.decompress(rawFileData);
-        } else {
-            fileData = rawFileData;
+        return HandlerFunctions.openPayload(HandlerFunctions.pixelSource(secret, packageData.dataOffset), packageData, keySpec, packageData.initVector, packageData.compressed);
+    }
+
+    /**
+     * Lists the fields of a package header, in order.
+     *
+     * @param options encoding options
+     * @param payloadHash MD5 hash of the stored payload
+     * @param payloadSize size of the stored payload
+     * @param salt password salt, or null if there is no password
+     * @param ivSpec initialization vector, or null if there is no password
+     * @param passwordHash salted password hash, or null if there is no password
+     * @return package header fields (a new, modifiable list)
+     */
+    private static List<byte[]> packageHeaderFields(final EncodingOptions options, final byte[] payloadHash, final int payloadSize, final byte[] salt, final IvParameterSpec ivSpec, final byte[] passwordHash) {
+        final int passwordFlag = (options.password != null) ? 1 : 0;
+        final int compressFlag = options.compress ? 1 : 0;
+        final byte flags = (byte)(((compressFlag << 1) | passwordFlag) & 0xFF);
+
+        final List<byte[]> packageFields = new ArrayList<byte[]>();
+        packageFields.add(PackageFunctions.longToBytes(options.versionCode));
+        packageFields.add(payloadHash);
+        packageFields.add(PackageFunctions.intToBytes(payloadSize));
+        packageFields.add(new byte[] {flags});
+
+        if (options.password != null) {
+            packageFields.add(salt);
+            packageFields.add(ivSpec.getIV());
+            packageFields.add(passwordHash);
         }
 
-        final Payload payloadObject = getEmptyPayload();
-        payloadObject.setFileName(fileName);
-        payloadObject.setMimeType(mimeType);
-        payloadObject.setData(fileData);
+        return packageFields;
+    }
 
-        return payloadObject;
+    /**
+     * Writes the fields of a package header to the trace sink, with
+     * {@link HandlerFunctions#traceHeader(String, String, ImageData, PackageHeader, Object...)}.
+     *
+     * @param label label for the header dump
+     * @param secret image containing the header
+     * @param header extracted package header
+     */
+    private static void traceHeader(final String label, final ImageData secret, final PackageData_v1_0_0 header) {
+        HandlerFunctions.traceHeader(TAG, label, secret, header, "Salt", header.salt, "IV", header.initVector, "Password hash", header.passwordHash);
     }
 
     @Override
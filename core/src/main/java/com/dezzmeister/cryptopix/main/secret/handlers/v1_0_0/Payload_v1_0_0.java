@@ -2,6 +2,10 @@ package com.dezzmeister.cryptopix.main.secret.handlers.v1_0_0;
 
 import com.dezzmeister.cryptopix.main.secret.Payload;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * A payload in Cryptopix 1.0.0. Files contain a mime type, a file name, and the raw, uncompressed
  * and unencrypted data.
@@ -31,6 +35,11 @@ public class Payload_v1_0_0 implements Payload {
         return data;
     }
 
+    @Override
+    public InputStream openStream() throws IOException {
+        return new ByteArrayInputStream(data());
+    }
+
     @Override
     public void setFileName(final String _fileName) {
         fileName = _fileName;
@@ -0,0 +1,87 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_1_0;
+
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+
+/**
+ * Header data about an archive hidden in an image. The archive table and entry bodies follow the header.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageData_v1_1_0 implements PackageHeader {
+
+    /**
+     * A Cryptopix version code
+     */
+    public long cryptopixVersionCode = -1;
+
+    /**
+     * MD5 payload hash. The archive table and every entry body are hashed to produce this value
+     */
+    public byte[] payloadHash = null;
+
+    /**
+     * Size of the payload, in bytes (the archive table and every entry body)
+     */
+    public int payloadSize = -1;
+
+    /**
+     * True if the archive is encrypted with a password
+     */
+    public boolean hasPassword = false;
+
+    /**
+     * True if compression was requested. Each entry records whether it was actually compressed.
+     */
+    public boolean compressed = false;
+
+    /**
+     * Size of the archive table as stored in the image (after encryption), in bytes
+     */
+    public int tableSize = -1;
+
+    /**
+     * Salt (only exists if there is a password)
+     */
+    public byte[] salt = null;
+
+    /**
+     * 16-byte initialization vector for the archive table (only exists if there is a password)
+     */
+    public byte[] initVector = null;
+
+    /**
+     * SHA-256 password hash (only exists if there is a password)
+     */
+    public byte[] passwordHash = null;
+
+    /**
+     * The pixel at which payload data begins (the archive table, possibly encrypted)
+     */
+    public int dataOffset = -1;
+
+    @Override
+    public boolean isPasswordProtected() {
+        return hasPassword;
+    }
+
+    @Override
+    public int headerSize() {
+        return dataOffset;
+    }
+
+    @Override
+    public byte[] payloadHash() {
+        return payloadHash;
+    }
+
+    @Override
+    public int payloadSize() {
+        return payloadSize;
+    }
+
+    @Override
+    public int packageSize() {
+        return dataOffset + payloadSize;
+    }
+}
@@ -0,0 +1,602 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_1_0;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.ArchiveEntry;
+import com.dezzmeister.cryptopix.main.secret.ArchiveHandler;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.PayloadMetadata;
+import com.dezzmeister.cryptopix.main.secret.handlers.HandlerFunctions;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
+
+/**
+ * Package handler for archives generated with Cryptopix 1.1.0. Like 1.0.0, 1 byte of package data
+ * corresponds to 1 pixel, but the payload is an archive of several files: a table of entries followed
+ * by the entry bodies. Each entry is compressed and encrypted on its own, with its own initialization
+ * vector, so that any one entry can be extracted by seeking straight to its pixels.
+ *
+ * <pre>
+ * header:  version code | payload hash | payload size | flags | table size | [salt | table IV | password hash]
+ * payload: table (encrypted if there is a password) | entry bodies
+ * table:   entry count | entries
+ * entry:   name size | name | MIME type size | MIME type | body offset | stored size | size | entry flags | body hash | [body IV]
+ * </pre>
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageHandler_v1_1_0 implements ArchiveHandler {
+
+    /**
+     * Cryptopix version code length (8-byte field). The version code should be
+     * {@link com.dezzmeister.cryptopix.main.secret.Versions#VERSION_1_1_0 Versions.VERSION_1_1_0}.
+     */
+    private static final int VERSION_CODE_LENGTH = 8;
+
+    /**
+     * Number of bytes in the payload hash (128 bit MD5)
+     */
+    private static final int PAYLOAD_HASH_LENGTH = 16;
+
+    /**
+     * Number of bytes in the payload (4-byte field)
+     */
+    private static final int PAYLOAD_SIZE_LENGTH = 4;
+
+    /**
+     * Number of bytes determining various boolean values (1-byte field)
+     *
+     * The bits of this field determine the following values (starting from least significant):
+     * <li>
+     *     <ol>Whether a password is present</ol>
+     *     <ol>Whether compression was requested</ol>
+     * </li>
+     */
+    private static final int BOOLEAN_FLAGS_LENGTH = 1;
+
+    /**
+     * Number of bytes in the archive table, as stored (4-byte field)
+     */
+    private static final int TABLE_SIZE_LENGTH = 4;
+
+    /**
+     * Number of bytes in the optional salt (32-byte field)
+     */
+    private static final int SALT_LENGTH = 32;
+
+    /**
+     * Number of bytes in the optional initialization vectors (16-byte fields)
+     */
+    private static final int INIT_VECTOR_LENGTH = 16;
+
+    /**
+     * Number of bytes in the optional password hash (32-byte SHA-256 field)
+     */
+    private static final int HASH_LENGTH = 32;
+
+    /**
+     * Minimum byte-length of a package header, if no password is used (not a binary field)
+     */
+    private static final int MIN_PACKAGE_HEADER_LENGTH = VERSION_CODE_LENGTH + PAYLOAD_HASH_LENGTH + PAYLOAD_SIZE_LENGTH + BOOLEAN_FLAGS_LENGTH + TABLE_SIZE_LENGTH;
+
+    /**
+     * Maximum byte-length of a package header, if a password is used (not a binary field)
+     */
+    private static final int MAX_PACKAGE_HEADER_LENGTH = MIN_PACKAGE_HEADER_LENGTH + SALT_LENGTH + INIT_VECTOR_LENGTH + HASH_LENGTH;
+
+    /**
+     * Trace tag (not a binary field)
+     */
+    private static final String TAG = "PackageHandler_v1_1_0";
+
+    // Archive table field sizes
+
+    /**
+     * Number of entries in the archive (4-byte field)
+     */
+    private static final int ENTRY_COUNT_LENGTH = 4;
+
+    /**
+     * Any 4-byte field of an entry: the name and MIME type sizes, the body offset (relative to the first
+     * entry body), the stored size and the original size
+     */
+    private static final int ENTRY_INT_LENGTH = 4;
+
+    /**
+     * Entry flags (1-byte field). The least significant bit is set if the entry body is compressed.
+     */
+    private static final int ENTRY_FLAGS_LENGTH = 1;
+
+    /**
+     * MD5 hash of the stored entry body (16-byte field)
+     */
+    private static final int ENTRY_HASH_LENGTH = 16;
+
+    @Override
+    public EncodedImageState getImageState(final ImageData secret, final PackageHeader header) {
+        final PackageData_v1_1_0 packageHeader;
+
+        if (!(header instanceof PackageData_v1_1_0)) {
+            packageHeader = (PackageData_v1_1_0) extractHeader(secret);
+        } else {
+            packageHeader = (PackageData_v1_1_0) header;
+        }
+
+        if (packageHeader.payloadSize < 0 || (long) packageHeader.dataOffset + packageHeader.payloadSize > secret.pixels.length) {
+            return EncodedImageState.CORRUPTED;
+        }
+
+        return HandlerFunctions.md5State(PackageFunctions.extractBytes(secret.pixels, packageHeader.payloadSize, packageHeader.dataOffset), packageHeader);
+    }
+
+    @Override
+    public boolean isPasswordProtected(final ImageData secret, final PackageHeader data) {
+        if (data != null) {
+            return data.isPasswordProtected();
+        }
+
+        return extractHeader(secret).isPasswordProtected();
+    }
+
+    @Override
+    public boolean isCorrectPassword(final String password, final PackageHeader data) throws NoSuchAlgorithmException {
+        if ((!(data instanceof PackageData_v1_1_0)) || (!data.isPasswordProtected())) {
+            return false;
+        }
+
+        final PackageData_v1_1_0 header = (PackageData_v1_1_0) data;
+
+        final byte[] passwordBytes = password.getBytes(StandardCharsets.US_ASCII);
+
+        return PackageFunctions.isCorrectPassword(passwordBytes, header.salt, header.passwordHash);
+    }
+
+    @Override
+    public PackageHeader extractHeader(final ImageData secret) {
+        final int[] pixels = secret.pixels;
+
+        if (pixels.length < MIN_PACKAGE_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Image is too small!");
+        }
+
+        int seek = 0;
+        final long versionCode = PackageFunctions.versionCode(secret);
+
+        seek = VERSION_CODE_LENGTH;
+        final byte[] payloadHash = PackageFunctions.extractBytes(pixels, PAYLOAD_HASH_LENGTH, seek);
+
+        seek += PAYLOAD_HASH_LENGTH;
+        final int payloadSize = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, PAYLOAD_SIZE_LENGTH, seek));
+
+        seek += PAYLOAD_SIZE_LENGTH;
+        final int flags = ((int) PackageFunctions.extractBytes(pixels, BOOLEAN_FLAGS_LENGTH, seek)[0]) & 0xFF;
+        final boolean passwordFlag = (flags & 0x01) == 1;
+        final boolean compressedFlag = ((flags & 0x02) >>> 1) == 1;
+
+        seek += BOOLEAN_FLAGS_LENGTH;
+        final int tableSize = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, TABLE_SIZE_LENGTH, seek));
+
+        seek += TABLE_SIZE_LENGTH;
+
+        if (passwordFlag && pixels.length < MAX_PACKAGE_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Image is too small!");
+        }
+
+        final PackageData_v1_1_0 data = new PackageData_v1_1_0();
+
+        if (passwordFlag) {
+            data.salt = PackageFunctions.extractBytes(pixels, SALT_LENGTH, seek);
+
+            seek += SALT_LENGTH;
+            data.initVector = PackageFunctions.extractBytes(pixels, INIT_VECTOR_LENGTH, seek);
+
+            seek += INIT_VECTOR_LENGTH;
+            data.passwordHash = PackageFunctions.extractBytes(pixels, HASH_LENGTH, seek);
+
+            seek += HASH_LENGTH;
+        }
+
+        data.cryptopixVersionCode = versionCode;
+        data.payloadHash = payloadHash;
+        data.payloadSize = payloadSize;
+        data.hasPassword = passwordFlag;
+        data.compressed = compressedFlag;
+        data.tableSize = tableSize;
+        data.dataOffset = seek;
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Extracted header", secret, data);
+        }
+
+        return data;
+    }
+
+    @Override
+    public int maxHeaderSize() {
+        return MAX_PACKAGE_HEADER_LENGTH;
+    }
+
+    @Override
+    public ImageData encodeSecret(final ImageData original, final Payload secretData, final EncodingOptions options) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        return encodeArchive(original, Collections.singletonList(secretData), options);
+    }
+
+    @Override
+    public ImageData encodeArchive(final ImageData original, final List<Payload> entries, final EncodingOptions options) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        /**
+         * 1. Derive the key once (if password supplied)
+         * 2. Compress and encrypt each entry body on its own
+         * 3. Build the archive table and encrypt it
+         * 4. Hash the table and the bodies
+         * 5. Write the package header, the table and the bodies straight into a copy of the image
+         */
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("An archive needs at least one entry!");
+        }
+
+        byte[] salt = null;
+        byte[] passwordHash = null;
+        SecretKeySpec keySpec = null;
+
+        if (options.password != null) {
+            final byte[] password = options.password.getBytes(StandardCharsets.US_ASCII);
+
+            salt = PackageFunctions.generateSalt();
+            passwordHash = PackageFunctions.saltAndHashPassword(salt, password);
+            keySpec = PackageFunctions.generateKey(password, salt, HandlerFunctions.PBKDF2_ITERATIONS);
+        }
+
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+        final ArrayList<byte[]> bodies = new ArrayList<byte[]>(entries.size());
+        final ArrayList<byte[]> tableFields = new ArrayList<byte[]>();
+        tableFields.add(PackageFunctions.intToBytes(entries.size()));
+
+        int bodyOffset = 0;
+
+        for (final Payload entry : entries) {
+            final byte[] data = entry.data();
+            byte[] body = data;
+            boolean compressed = false;
+
+            if (options.compress) {
+                final byte[] deflated = PackageFunctions.compress(data);
+
+                if (deflated.length < data.length) {
+                    body = deflated;
+                    compressed = true;
+                }
+            }
+
+            IvParameterSpec ivSpec = null;
+
+            if (keySpec != null) {
+                ivSpec = PackageFunctions.generateIV(INIT_VECTOR_LENGTH);
+                body = PackageFunctions.encrypt(body, keySpec, ivSpec);
+            }
+
+            final byte[] fileName = entry.fileName().getBytes(StandardCharsets.US_ASCII);
+            final byte[] mimeType = entry.mimeType().getBytes(StandardCharsets.US_ASCII);
+
+            tableFields.add(PackageFunctions.intToBytes(fileName.length));
+            tableFields.add(fileName);
+            tableFields.add(PackageFunctions.intToBytes(mimeType.length));
+            tableFields.add(mimeType);
+            tableFields.add(PackageFunctions.intToBytes(bodyOffset));
+            tableFields.add(PackageFunctions.intToBytes(body.length));
+            tableFields.add(PackageFunctions.intToBytes(data.length));
+            tableFields.add(new byte[] {(byte) (compressed ? 1 : 0)});
+            tableFields.add(md5.digest(body));
+
+            if (ivSpec != null) {
+                tableFields.add(ivSpec.getIV());
+            }
+
+            bodies.add(body);
+            bodyOffset += body.length;
+        }
+
+        final byte[] rawTable = PackageFunctions.packSequentialBinaryFields(tableFields);
+        final IvParameterSpec tableIVSpec;
+        final byte[] table;
+
+        if (keySpec != null) {
+            tableIVSpec = PackageFunctions.generateIV(INIT_VECTOR_LENGTH);
+            table = PackageFunctions.encrypt(rawTable, keySpec, tableIVSpec);
+        } else {
+            tableIVSpec = null;
+            table = rawTable;
+        }
+
+        md5.update(table);
+
+        for (final byte[] body : bodies) {
+            md5.update(body);
+        }
+
+        final byte[] payloadHash = md5.digest();
+        final int payloadSize = table.length + bodyOffset;
+
+        final int passwordFlag = (options.password != null) ? 1 : 0;
+        final int compressFlag = options.compress ? 1 : 0;
+        final byte flags = (byte)(((compressFlag << 1) | passwordFlag) & 0xFF);
+
+        final ArrayList<byte[]> packageFields = new ArrayList<byte[]>();
+        packageFields.add(PackageFunctions.longToBytes(options.versionCode));
+        packageFields.add(payloadHash);
+        packageFields.add(PackageFunctions.intToBytes(payloadSize));
+        packageFields.add(new byte[] {flags});
+        packageFields.add(PackageFunctions.intToBytes(table.length));
+
+        if (options.password != null) {
+            packageFields.add(salt);
+            packageFields.add(tableIVSpec.getIV());
+            packageFields.add(passwordHash);
+        }
+
+        final byte[] packageHeader = PackageFunctions.packSequentialBinaryFields(packageFields);
+
+        if ((long) packageHeader.length + payloadSize > original.pixels.length) {
+            throw new SizeLimitExceededException("Secret package is larger than image!");
+        }
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            Trace.log(TraceLevel.TRACE, TAG, "Encoded header", Trace.hex(packageHeader));
+            Trace.log(TraceLevel.TRACE, TAG, "Archive table", Trace.hex(table));
+            Trace.log(TraceLevel.TRACE, TAG, "Payload hash", Trace.hex(payloadHash));
+        }
+
+        final int[] out = new int[original.pixels.length];
+        System.arraycopy(original.pixels, 0, out, 0, out.length);
+
+        PackageFunctions.writeBytes(out, packageHeader, 0);
+        PackageFunctions.writeBytes(out, table, packageHeader.length);
+
+        int seek = packageHeader.length + table.length;
+
+        for (final byte[] body : bodies) {
+            PackageFunctions.writeBytes(out, body, seek);
+            seek += body.length;
+        }
+
+        return new ImageData(out, original.width, original.height);
+    }
+
+    @Override
+    public Payload decode(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        final PackageData_v1_1_0 packageData = packageData(secret, header);
+
+        // Derive the key once for both the table and the entry
+        final SecretKeySpec keySpec = packageData.hasPassword ? HandlerFunctions.passwordKey(this, packageData, password, packageData.salt) : null;
+        final List<ArchiveEntry> entries = listEntries(secret, packageData, keySpec);
+
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("Archive has no entries!");
+        }
+
+        return extractEntry(secret, packageData, entries.get(0), keySpec);
+    }
+
+    @Override
+    public PayloadMetadata peekMetadata(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        // The table already describes the first entry, which is what decode returns
+        final List<ArchiveEntry> entries = listEntries(secret, header, password);
+
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("Archive has no entries!");
+        }
+
+        final ArchiveEntry entry = entries.get(0);
+
+        final PayloadMetadata metadata = new PayloadMetadata();
+        metadata.fileName = entry.fileName;
+        metadata.mimeType = entry.mimeType;
+        metadata.size = entry.size;
+        metadata.storedSize = entry.storedSize;
+        metadata.compressed = entry.compressed;
+
+        return metadata;
+    }
+
+    @Override
+    public Payload openPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        // Entries are extracted and checked against their hashes one at a time already
+        return decode(secret, header, password);
+    }
+
+    @Override
+    public List<ArchiveEntry> listEntries(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        final PackageData_v1_1_0 packageData = packageData(secret, header);
+        final SecretKeySpec keySpec = packageData.hasPassword ? HandlerFunctions.passwordKey(this, packageData, password, packageData.salt) : null;
+
+        return listEntries(secret, packageData, keySpec);
+    }
+
+    @Override
+    public Payload extractEntry(final ImageData secret, final PackageHeader header, final ArchiveEntry entry, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        final PackageData_v1_1_0 packageData = packageData(secret, header);
+        final SecretKeySpec keySpec = packageData.hasPassword ? HandlerFunctions.passwordKey(this, packageData, password, packageData.salt) : null;
+
+        return extractEntry(secret, packageData, entry, keySpec);
+    }
+
+    private static List<ArchiveEntry> listEntries(final ImageData secret, final PackageData_v1_1_0 packageData, final SecretKeySpec keySpec) throws NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        if (packageData.tableSize < 0 || packageData.tableSize > packageData.payloadSize) {
+            throw new IllegalArgumentException("Illegal archive table size in package header!");
+        }
+
+        final byte[] storedTable = PackageFunctions.extractBytes(secret.pixels, packageData.tableSize, packageData.dataOffset);
+        final byte[] table;
+
+        if (keySpec != null) {
+            table = PackageFunctions.decrypt(storedTable, keySpec, PackageFunctions.createIV(packageData.initVector));
+        } else {
+            table = storedTable;
+        }
+
+        final int bodiesOffset = packageData.dataOffset + packageData.tableSize;
+        final int bodiesSize = packageData.payloadSize - packageData.tableSize;
+
+        int seek = 0;
+        final int count = readInt(table, seek);
+        seek += ENTRY_COUNT_LENGTH;
+
+        if (count < 0) {
+            throw new IllegalArgumentException("Illegal entry count in archive table!");
+        }
+
+        final ArrayList<ArchiveEntry> entries = new ArrayList<ArchiveEntry>();
+
+        for (int i = 0; i < count; i++) {
+            final ArchiveEntry entry = new ArchiveEntry();
+
+            final int fileNameSize = readInt(table, seek);
+            seek += ENTRY_INT_LENGTH;
+            entry.fileName = readString(table, fileNameSize, seek);
+            seek += fileNameSize;
+
+            final int mimeTypeSize = readInt(table, seek);
+            seek += ENTRY_INT_LENGTH;
+            entry.mimeType = readString(table, mimeTypeSize, seek);
+            seek += mimeTypeSize;
+
+            final int bodyOffset = readInt(table, seek);
+            seek += ENTRY_INT_LENGTH;
+            entry.storedSize = readInt(table, seek);
+            seek += ENTRY_INT_LENGTH;
+            entry.size = readInt(table, seek);
+            seek += ENTRY_INT_LENGTH;
+
+            if (bodyOffset < 0 || entry.storedSize < 0 || entry.size < 0 || (long) bodyOffset + entry.storedSize > bodiesSize) {
+                throw new IllegalArgumentException("Illegal entry bounds in archive table!");
+            }
+
+            entry.offset = bodiesOffset + bodyOffset;
+            entry.compressed = (PackageFunctions.getSubarray(table, ENTRY_FLAGS_LENGTH, checkBounds(table, ENTRY_FLAGS_LENGTH, seek))[0] & 0x01) == 1;
+            seek += ENTRY_FLAGS_LENGTH;
+
+            entry.hash = PackageFunctions.getSubarray(table, ENTRY_HASH_LENGTH, checkBounds(table, ENTRY_HASH_LENGTH, seek));
+            seek += ENTRY_HASH_LENGTH;
+
+            if (packageData.hasPassword) {
+                entry.initVector = PackageFunctions.getSubarray(table, INIT_VECTOR_LENGTH, checkBounds(table, INIT_VECTOR_LENGTH, seek));
+                seek += INIT_VECTOR_LENGTH;
+            }
+
+            entries.add(entry);
+        }
+
+        return entries;
+    }
+
+    private Payload extractEntry(final ImageData secret, final PackageData_v1_1_0 packageData, final ArchiveEntry entry, final SecretKeySpec keySpec) throws NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        if (entry.offset < packageData.dataOffset + packageData.tableSize || (long) entry.offset + entry.storedSize > packageData.packageSize()) {
+            throw new IllegalArgumentException("Entry does not belong to this archive!");
+        }
+
+        final byte[] body = PackageFunctions.extractBytes(secret.pixels, entry.storedSize, entry.offset);
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+        if (!Arrays.equals(md5.digest(body), entry.hash)) {
+            throw new IOException("Archive entry " + entry.fileName + " is corrupted!");
+        }
+
+        byte[] data = body;
+
+        if (keySpec != null) {
+            data = PackageFunctions.decrypt(data, keySpec, PackageFunctions.createIV(entry.initVector));
+        }
+
+        if (entry.compressed) {
+            data = PackageFunctions.decompress(data);
+        }
+
+        final Payload payloadObject = getEmptyPayload();
+        payloadObject.setFileName(entry.fileName);
+        payloadObject.setMimeType(entry.mimeType);
+        payloadObject.setData(data);
+
+        return payloadObject;
+    }
+
+    @Override
+    public Payload getEmptyPayload() {
+        return HandlerFunctions.emptyPayload();
+    }
+
+    /**
+     * Checks the type of a package header and that the image is large enough for the package it describes.
+     *
+     * @param secret image containing an archive
+     * @param header package header for image
+     * @return the package header
+     */
+    private static PackageData_v1_1_0 packageData(final ImageData secret, final PackageHeader header) {
+        if (!(header instanceof PackageData_v1_1_0)) {
+            throw new IllegalArgumentException("Wrong package header type!");
+        }
+
+        final PackageData_v1_1_0 packageData = (PackageData_v1_1_0) header;
+
+        if (packageData.payloadSize < 0 || (long) packageData.dataOffset + packageData.payloadSize > secret.pixels.length) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Decoding header", secret, packageData);
+        }
+
+        return packageData;
+    }
+
+    private static int checkBounds(final byte[] table, final int length, final int seek) {
+        if (length < 0 || (long) seek + length > table.length) {
+            throw new IllegalArgumentException("Archive table ended early!");
+        }
+
+        return seek;
+    }
+
+    private static int readInt(final byte[] table, final int seek) {
+        return PackageFunctions.intFromBytes(PackageFunctions.getSubarray(table, ENTRY_INT_LENGTH, checkBounds(table, ENTRY_INT_LENGTH, seek)));
+    }
+
+    private static String readString(final byte[] table, final int length, final int seek) {
+        return new String(PackageFunctions.getSubarray(table, length, checkBounds(table, length, seek)), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes the fields of a package header to the trace sink, with
+     * {@link HandlerFunctions#traceHeader(String, String, ImageData, PackageHeader, Object...)}.
+     *
+     * @param label label for the header dump
+     * @param secret image containing the header
+     * @param header extracted package header
+     */
+    private static void traceHeader(final String label, final ImageData secret, final PackageData_v1_1_0 header) {
+        HandlerFunctions.traceHeader(TAG, label, secret, header, "Salt", header.salt, "Table IV", header.initVector, "Password hash", header.passwordHash);
+    }
+}
@@ -0,0 +1,103 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_2_0;
+
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+
+/**
+ * Header data about one segment of a payload split across several images. The segment's share of the
+ * payload follows the header.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageData_v1_2_0 implements PackageHeader {
+
+    /**
+     * A Cryptopix version code
+     */
+    public long cryptopixVersionCode = -1;
+
+    /**
+     * MD5 segment hash. The segment data after the header is hashed to produce this value
+     */
+    public byte[] payloadHash = null;
+
+    /**
+     * Size of the segment data in this image, in bytes
+     */
+    public int payloadSize = -1;
+
+    /**
+     * True if the payload is encrypted with a password
+     */
+    public boolean hasPassword = false;
+
+    /**
+     * True if the file data is compressed. Data is compressed before encryption.
+     */
+    public boolean compressed = false;
+
+    /**
+     * Random 16-byte id shared by every segment of a set
+     */
+    public byte[] setId = null;
+
+    /**
+     * Position of this segment in the set, starting at 0
+     */
+    public int segmentIndex = -1;
+
+    /**
+     * Number of segments in the set
+     */
+    public int segmentCount = -1;
+
+    /**
+     * Size of the whole payload (every segment together), in bytes
+     */
+    public int totalSize = -1;
+
+    /**
+     * Salt (only exists if there is a password)
+     */
+    public byte[] salt = null;
+
+    /**
+     * 16-byte initialization vector (only exists if there is a password)
+     */
+    public byte[] initVector = null;
+
+    /**
+     * SHA-256 password hash (only exists if there is a password)
+     */
+    public byte[] passwordHash = null;
+
+    /**
+     * The pixel at which segment data begins
+     */
+    public int dataOffset = -1;
+
+    @Override
+    public boolean isPasswordProtected() {
+        return hasPassword;
+    }
+
+    @Override
+    public int headerSize() {
+        return dataOffset;
+    }
+
+    @Override
+    public byte[] payloadHash() {
+        return payloadHash;
+    }
+
+    @Override
+    public int payloadSize() {
+        return payloadSize;
+    }
+
+    @Override
+    public int packageSize() {
+        return dataOffset + payloadSize;
+    }
+}
@@ -0,0 +1,702 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_2_0;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.PayloadMetadata;
+import com.dezzmeister.cryptopix.main.secret.SpanningHandler;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+import com.dezzmeister.cryptopix.main.secret.Workers;
+import com.dezzmeister.cryptopix.main.secret.handlers.HandlerFunctions;
+import com.dezzmeister.cryptopix.main.secret.handlers.v1_0_0.LazyPayload_v1_0_0;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
+
+/**
+ * Package handler for payloads split across several images with Cryptopix 1.2.0. The payload is built as in
+ * 1.0.0 (file name, MIME type and file data, compressed and encrypted once), then split into one segment per
+ * carrier. Each carrier gets a full package header describing its segment and the set it belongs to, so
+ * every segment can be validated on its own. 1 byte of package data corresponds to 1 pixel.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageHandler_v1_2_0 implements SpanningHandler {
+
+    /**
+     * Cryptopix version code length (8-byte field). The version code should be
+     * {@link com.dezzmeister.cryptopix.main.secret.Versions#VERSION_1_2_0 Versions.VERSION_1_2_0}.
+     */
+    private static final int VERSION_CODE_LENGTH = 8;
+
+    /**
+     * Number of bytes in the segment hash (128 bit MD5)
+     */
+    private static final int PAYLOAD_HASH_LENGTH = 16;
+
+    /**
+     * Number of bytes in the segment (4-byte field)
+     */
+    private static final int PAYLOAD_SIZE_LENGTH = 4;
+
+    /**
+     * Number of bytes determining various boolean values (1-byte field)
+     *
+     * The bits of this field determine the following values (starting from least significant):
+     * <li>
+     *     <ol>Whether a password is present</ol>
+     *     <ol>Whether the data is compressed</ol>
+     * </li>
+     */
+    private static final int BOOLEAN_FLAGS_LENGTH = 1;
+
+    /**
+     * Number of bytes in the set id (16-byte random field)
+     */
+    private static final int SET_ID_LENGTH = 16;
+
+    /**
+     * Number of bytes in the segment index (4-byte field)
+     */
+    private static final int SEGMENT_INDEX_LENGTH = 4;
+
+    /**
+     * Number of bytes in the segment count (4-byte field)
+     */
+    private static final int SEGMENT_COUNT_LENGTH = 4;
+
+    /**
+     * Number of bytes in the size of the whole payload (4-byte field)
+     */
+    private static final int TOTAL_SIZE_LENGTH = 4;
+
+    /**
+     * Number of bytes in the optional salt (32-byte field)
+     */
+    private static final int SALT_LENGTH = 32;
+
+    /**
+     * Number of bytes in the optional initialization vector (16-byte field)
+     */
+    private static final int INIT_VECTOR_LENGTH = 16;
+
+    /**
+     * Number of bytes in the optional password hash (32-byte SHA-256 field)
+     */
+    private static final int HASH_LENGTH = 32;
+
+    /**
+     * Minimum byte-length of a package header, if no password is used (not a binary field)
+     */
+    private static final int MIN_PACKAGE_HEADER_LENGTH = VERSION_CODE_LENGTH + PAYLOAD_HASH_LENGTH + PAYLOAD_SIZE_LENGTH + BOOLEAN_FLAGS_LENGTH +
+            SET_ID_LENGTH + SEGMENT_INDEX_LENGTH + SEGMENT_COUNT_LENGTH + TOTAL_SIZE_LENGTH;
+
+    /**
+     * Maximum byte-length of a package header, if a password is used (not a binary field)
+     */
+    private static final int MAX_PACKAGE_HEADER_LENGTH = MIN_PACKAGE_HEADER_LENGTH + SALT_LENGTH + INIT_VECTOR_LENGTH + HASH_LENGTH;
+
+    /**
+     * Trace tag (not a binary field)
+     */
+    private static final String TAG = "PackageHandler_v1_2_0";
+
+    @Override
+    public EncodedImageState getImageState(final ImageData secret, final PackageHeader header) {
+        final PackageData_v1_2_0 packageHeader;
+
+        if (!(header instanceof PackageData_v1_2_0)) {
+            packageHeader = (PackageData_v1_2_0) extractHeader(secret);
+        } else {
+            packageHeader = (PackageData_v1_2_0) header;
+        }
+
+        if (packageHeader.payloadSize < 0 || (long) packageHeader.dataOffset + packageHeader.payloadSize > secret.pixels.length) {
+            return EncodedImageState.CORRUPTED;
+        }
+
+        return HandlerFunctions.md5State(PackageFunctions.extractBytes(secret.pixels, packageHeader.payloadSize, packageHeader.dataOffset), packageHeader);
+    }
+
+    @Override
+    public boolean isPasswordProtected(final ImageData secret, final PackageHeader data) {
+        if (data != null) {
+            return data.isPasswordProtected();
+        }
+
+        return extractHeader(secret).isPasswordProtected();
+    }
+
+    @Override
+    public boolean isCorrectPassword(final String password, final PackageHeader data) throws NoSuchAlgorithmException {
+        if ((!(data instanceof PackageData_v1_2_0)) || (!data.isPasswordProtected())) {
+            return false;
+        }
+
+        final PackageData_v1_2_0 header = (PackageData_v1_2_0) data;
+
+        final byte[] passwordBytes = password.getBytes(StandardCharsets.US_ASCII);
+
+        return PackageFunctions.isCorrectPassword(passwordBytes, header.salt, header.passwordHash);
+    }
+
+    @Override
+    public PackageHeader extractHeader(final ImageData secret) {
+        final int[] pixels = secret.pixels;
+
+        if (pixels.length < MIN_PACKAGE_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Image is too small!");
+        }
+
+        final PackageData_v1_2_0 data = new PackageData_v1_2_0();
+        data.cryptopixVersionCode = PackageFunctions.versionCode(secret);
+
+        int seek = VERSION_CODE_LENGTH;
+        data.payloadHash = PackageFunctions.extractBytes(pixels, PAYLOAD_HASH_LENGTH, seek);
+
+        seek += PAYLOAD_HASH_LENGTH;
+        data.payloadSize = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, PAYLOAD_SIZE_LENGTH, seek));
+
+        seek += PAYLOAD_SIZE_LENGTH;
+        final int flags = ((int) PackageFunctions.extractBytes(pixels, BOOLEAN_FLAGS_LENGTH, seek)[0]) & 0xFF;
+        data.hasPassword = (flags & 0x01) == 1;
+        data.compressed = ((flags & 0x02) >>> 1) == 1;
+
+        seek += BOOLEAN_FLAGS_LENGTH;
+        data.setId = PackageFunctions.extractBytes(pixels, SET_ID_LENGTH, seek);
+
+        seek += SET_ID_LENGTH;
+        data.segmentIndex = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, SEGMENT_INDEX_LENGTH, seek));
+
+        seek += SEGMENT_INDEX_LENGTH;
+        data.segmentCount = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, SEGMENT_COUNT_LENGTH, seek));
+
+        seek += SEGMENT_COUNT_LENGTH;
+        data.totalSize = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, TOTAL_SIZE_LENGTH, seek));
+
+        seek += TOTAL_SIZE_LENGTH;
+
+        if (data.hasPassword) {
+            if (pixels.length < MAX_PACKAGE_HEADER_LENGTH) {
+                throw new IllegalArgumentException("Image is too small!");
+            }
+
+            data.salt = PackageFunctions.extractBytes(pixels, SALT_LENGTH, seek);
+
+            seek += SALT_LENGTH;
+            data.initVector = PackageFunctions.extractBytes(pixels, INIT_VECTOR_LENGTH, seek);
+
+            seek += INIT_VECTOR_LENGTH;
+            data.passwordHash = PackageFunctions.extractBytes(pixels, HASH_LENGTH, seek);
+
+            seek += HASH_LENGTH;
+        }
+
+        data.dataOffset = seek;
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Extracted header", secret, data);
+        }
+
+        return data;
+    }
+
+    @Override
+    public int maxHeaderSize() {
+        return MAX_PACKAGE_HEADER_LENGTH;
+    }
+
+    @Override
+    public ImageData encodeSecret(final ImageData original, final Payload secretData, final EncodingOptions options) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        final Package pkg = buildPackage(secretData, options);
+
+        if ((long) pkg.headerLength + pkg.payload.length > original.pixels.length) {
+            throw new SizeLimitExceededException("Secret package is larger than image!");
+        }
+
+        return encodeSegment(original, pkg, generateSetId(), 0, 1, 0, pkg.payload.length);
+    }
+
+    @Override
+    public ImageData[] encodeSpanned(final List<ImageData> carriers, final Payload secretData, final EncodingOptions options, final int threads) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException, InterruptedException {
+        /**
+         * 1. Build, compress and encrypt the payload once
+         * 2. Split the payload in proportion to the capacity of each carrier, so that every carrier does
+         *    about the same amount of work
+         * 3. Hash and write each segment into its own carrier, in parallel
+         */
+        if (carriers.isEmpty()) {
+            throw new IllegalArgumentException("At least one carrier is needed!");
+        }
+
+        final Package pkg = buildPackage(secretData, options);
+        final int count = carriers.size();
+        final long[] capacities = new long[count];
+        long totalCapacity = 0;
+
+        for (int i = 0; i < count; i++) {
+            capacities[i] = carriers.get(i).pixels.length - pkg.headerLength;
+
+            if (capacities[i] < 0) {
+                throw new SizeLimitExceededException("Carrier " + (i + 1) + " is too small for a package header!");
+            }
+
+            totalCapacity += capacities[i];
+        }
+
+        if (pkg.payload.length > totalCapacity) {
+            throw new SizeLimitExceededException("Secret package is larger than all carriers together!");
+        }
+
+        final int[] sizes = new int[count];
+        int assigned = 0;
+
+        for (int i = 0; i < count; i++) {
+            sizes[i] = (int) (pkg.payload.length * capacities[i] / totalCapacity);
+            assigned += sizes[i];
+        }
+
+        // Rounding down leaves fewer bytes than there are carriers; hand them out to carriers with room
+        for (int i = 0; assigned < pkg.payload.length; i = (i + 1) % count) {
+            if (sizes[i] < capacities[i]) {
+                sizes[i]++;
+                assigned++;
+            }
+        }
+
+        final byte[] setId = generateSetId();
+        final List<Callable<ImageData>> tasks = new ArrayList<Callable<ImageData>>(count);
+        int start = 0;
+
+        for (int i = 0; i < count; i++) {
+            final ImageData carrier = carriers.get(i);
+            final int index = i;
+            final int segmentStart = start;
+
+            tasks.add(new Callable<ImageData>() {
+                @Override
+                public ImageData call() throws Exception {
+                    return encodeSegment(carrier, pkg, setId, index, count, segmentStart, sizes[index]);
+                }
+            });
+
+            start += sizes[i];
+        }
+
+        return runAll(tasks, threads).toArray(new ImageData[count]);
+    }
+
+    @Override
+    public Payload decode(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        final PackageData_v1_2_0 packageData;
+
+        if (header instanceof PackageData_v1_2_0) {
+            packageData = (PackageData_v1_2_0) header;
+        } else {
+            throw new IllegalArgumentException("Wrong package header type!");
+        }
+
+        if (packageData.segmentCount != 1 || packageData.totalSize != packageData.payloadSize) {
+            throw new IllegalArgumentException("Image holds segment " + (packageData.segmentIndex + 1) + " of " + packageData.segmentCount + "; decode the whole set!");
+        }
+
+        if (packageData.payloadSize < 0 || (long) packageData.dataOffset + packageData.payloadSize > secret.pixels.length) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        final byte[] rawPayload = PackageFunctions.extractBytes(secret.pixels, packageData.payloadSize, packageData.dataOffset);
+
+        return decodePayload(rawPayload, packageData, password);
+    }
+
+    @Override
+    public PayloadMetadata peekMetadata(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        final PackageData_v1_2_0 packageData;
+
+        if (header instanceof PackageData_v1_2_0) {
+            packageData = (PackageData_v1_2_0) header;
+        } else {
+            throw new IllegalArgumentException("Wrong package header type!");
+        }
+
+        // The payload header is at the start of the payload, in the first segment
+        if (packageData.segmentIndex != 0) {
+            throw new IllegalArgumentException("Image holds segment " + (packageData.segmentIndex + 1) + " of " + packageData.segmentCount + "; peek at the first segment!");
+        }
+
+        if (packageData.payloadSize < 0 || packageData.payloadSize > packageData.totalSize || (long) packageData.dataOffset + packageData.payloadSize > secret.pixels.length) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        final SecretKeySpec keySpec = packageData.hasPassword ? HandlerFunctions.passwordKey(this, packageData, password, packageData.salt) : null;
+        final IvParameterSpec ivSpec = packageData.hasPassword ? PackageFunctions.createIV(packageData.initVector) : null;
+
+        return PackageFunctions.peekPayload(HandlerFunctions.pixelSource(secret, packageData.dataOffset), packageData.totalSize, packageData.payloadSize, keySpec, ivSpec, packageData.compressed);
+    }
+
+    @Override
+    public Payload openPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        final PackageData_v1_2_0 packageData;
+
+        if (header instanceof PackageData_v1_2_0) {
+            packageData = (PackageData_v1_2_0) header;
+        } else {
+            throw new IllegalArgumentException("Wrong package header type!");
+        }
+
+        if (packageData.segmentCount != 1 || packageData.totalSize != packageData.payloadSize) {
+            throw new IllegalArgumentException("Image holds segment " + (packageData.segmentIndex + 1) + " of " + packageData.segmentCount + "; decode the whole set!");
+        }
+
+        if (packageData.payloadSize < 0 || (long) packageData.dataOffset + packageData.payloadSize > secret.pixels.length) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        final SecretKeySpec keySpec = packageData.hasPassword ? HandlerFunctions.passwordKey(this, packageData, password, packageData.salt) : null;
+        final IvParameterSpec ivSpec = packageData.hasPassword ? PackageFunctions.createIV(packageData.initVector) : null;
+
+        return LazyPayload_v1_0_0.open(HandlerFunctions.pixelSource(secret, packageData.dataOffset), packageData.payloadSize, keySpec, ivSpec, packageData.compressed);
+    }
+
+    @Override
+    public Payload decodeSpanned(final List<ImageData> segments, final String password, final int threads) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException, InterruptedException {
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("At least one segment is needed!");
+        }
+
+        PackageData_v1_2_0 first = null;
+        ImageData[] images = null;
+        PackageData_v1_2_0[] headers = null;
+
+        for (final ImageData image : segments) {
+            // Anything else decodes to random header fields, including the segment count
+            if (image.pixels.length < VERSION_CODE_LENGTH || PackageFunctions.versionCode(image) != Versions.VERSION_1_2_0) {
+                throw new IOException("Image does not hold a segment!");
+            }
+
+            final PackageData_v1_2_0 segment = (PackageData_v1_2_0) extractHeader(image);
+
+            if (first == null) {
+                if (segment.segmentCount < 1 || segment.totalSize < 0) {
+                    throw new IOException("Illegal segment count in package header!");
+                }
+
+                if (segment.segmentCount > segments.size()) {
+                    throw new IOException("Only " + segments.size() + " of " + segment.segmentCount + " segments were given!");
+                }
+
+                first = segment;
+                images = new ImageData[segment.segmentCount];
+                headers = new PackageData_v1_2_0[segment.segmentCount];
+            } else if (!Arrays.equals(first.setId, segment.setId) || first.segmentCount != segment.segmentCount) {
+                throw new IOException("Segments belong to different sets!");
+            }
+
+            if (segment.segmentIndex < 0 || segment.segmentIndex >= segment.segmentCount) {
+                throw new IOException("Illegal segment index in package header!");
+            }
+
+            if (segment.payloadSize < 0 || (long) segment.dataOffset + segment.payloadSize > image.pixels.length) {
+                throw new IOException("Segment " + (segment.segmentIndex + 1) + " is larger than its image!");
+            }
+
+            // The same segment may be given twice (a copy of the image); keep the first one
+            if (images[segment.segmentIndex] == null) {
+                images[segment.segmentIndex] = image;
+                headers[segment.segmentIndex] = segment;
+            }
+        }
+
+        final int[] starts = new int[headers.length];
+        long total = 0;
+
+        for (int i = 0; i < headers.length; i++) {
+            if (headers[i] == null) {
+                throw new IOException("Segment " + (i + 1) + " of " + headers.length + " is missing!");
+            }
+
+            starts[i] = (int) total;
+            total += headers[i].payloadSize;
+        }
+
+        if (total != first.totalSize) {
+            throw new IOException("Segment sizes do not add up to the payload size!");
+        }
+
+        final byte[] rawPayload = new byte[first.totalSize];
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(headers.length);
+
+        for (int i = 0; i < headers.length; i++) {
+            final ImageData image = images[i];
+            final PackageData_v1_2_0 segment = headers[i];
+            final int start = starts[i];
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final byte[] data = PackageFunctions.extractBytes(image.pixels, segment.payloadSize, segment.dataOffset);
+
+                    if (!Arrays.equals(MessageDigest.getInstance("MD5").digest(data), segment.payloadHash)) {
+                        throw new IOException("Segment " + (segment.segmentIndex + 1) + " is corrupted!");
+                    }
+
+                    // Segments cover disjoint ranges, so they can be copied in concurrently
+                    System.arraycopy(data, 0, rawPayload, start, data.length);
+                    return null;
+                }
+            });
+        }
+
+        runAll(tasks, threads);
+
+        return decodePayload(rawPayload, first, password);
+    }
+
+    @Override
+    public Payload getEmptyPayload() {
+        return HandlerFunctions.emptyPayload();
+    }
+
+    /**
+     * A payload that has been compressed and encrypted, ready to be split into segments
+     */
+    private static final class Package {
+        byte[] payload;
+        byte flags;
+        long versionCode;
+        byte[] salt;
+        byte[] initVector;
+        byte[] passwordHash;
+        int headerLength;
+    }
+
+    /**
+     * Builds the payload (file name, MIME type and file data), compressing the file data and encrypting
+     * the whole payload as requested.
+     *
+     * @param secretData secret data
+     * @param options encoding options
+     * @return the finished payload and the header fields shared by every segment
+     */
+    private static Package buildPackage(final Payload secretData, final EncodingOptions options) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        byte[] fileData = secretData.data();
+
+        if (options.compress) {
+            fileData = PackageFunctions.compress(fileData);
+        }
+
+        final List<byte[]> payloadFields = Arrays.asList(HandlerFunctions.payloadHeader(secretData), fileData);
+
+        final Package pkg = new Package();
+        pkg.versionCode = options.versionCode;
+
+        if (options.password != null) {
+            final byte[] password = options.password.getBytes(StandardCharsets.US_ASCII);
+
+            pkg.salt = PackageFunctions.generateSalt();
+            pkg.passwordHash = PackageFunctions.saltAndHashPassword(pkg.salt, password);
+
+            final SecretKeySpec keySpec = PackageFunctions.generateKey(password, pkg.salt, HandlerFunctions.PBKDF2_ITERATIONS);
+            final IvParameterSpec ivSpec = PackageFunctions.generateIV(INIT_VECTOR_LENGTH);
+            pkg.initVector = ivSpec.getIV();
+
+            pkg.payload = PackageFunctions.encrypt(PackageFunctions.packSequentialBinaryFields(payloadFields), keySpec, ivSpec);
+            pkg.headerLength = MAX_PACKAGE_HEADER_LENGTH;
+        } else {
+            pkg.payload = PackageFunctions.packSequentialBinaryFields(payloadFields);
+            pkg.headerLength = MIN_PACKAGE_HEADER_LENGTH;
+        }
+
+        final int passwordFlag = (options.password != null) ? 1 : 0;
+        final int compressFlag = options.compress ? 1 : 0;
+        pkg.flags = (byte)(((compressFlag << 1) | passwordFlag) & 0xFF);
+
+        return pkg;
+    }
+
+    /**
+     * Writes one segment of a package into a copy of a carrier.
+     *
+     * @param carrier original image
+     * @param pkg package to take the segment from
+     * @param setId id shared by every segment of the set
+     * @param index position of this segment in the set
+     * @param count number of segments in the set
+     * @param start offset of the segment in the payload
+     * @param size size of the segment, in bytes
+     * @return image containing the segment
+     */
+    private static ImageData encodeSegment(final ImageData carrier, final Package pkg, final byte[] setId, final int index, final int count,
+                                           final int start, final int size) throws NoSuchAlgorithmException {
+        final byte[] segment = Arrays.copyOfRange(pkg.payload, start, start + size);
+        final byte[] segmentHash = MessageDigest.getInstance("MD5").digest(segment);
+
+        final ArrayList<byte[]> packageFields = new ArrayList<byte[]>();
+        packageFields.add(PackageFunctions.longToBytes(pkg.versionCode));
+        packageFields.add(segmentHash);
+        packageFields.add(PackageFunctions.intToBytes(size));
+        packageFields.add(new byte[] {pkg.flags});
+        packageFields.add(setId);
+        packageFields.add(PackageFunctions.intToBytes(index));
+        packageFields.add(PackageFunctions.intToBytes(count));
+        packageFields.add(PackageFunctions.intToBytes(pkg.payload.length));
+
+        if (pkg.salt != null) {
+            packageFields.add(pkg.salt);
+            packageFields.add(pkg.initVector);
+            packageFields.add(pkg.passwordHash);
+        }
+
+        final byte[] header = PackageFunctions.packSequentialBinaryFields(packageFields);
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            Trace.log(TraceLevel.TRACE, TAG, "Encoded header for segment " + index, Trace.hex(header));
+        }
+
+        final int[] out = new int[carrier.pixels.length];
+        System.arraycopy(carrier.pixels, 0, out, 0, out.length);
+
+        PackageFunctions.writeBytes(out, header, 0);
+        PackageFunctions.writeBytes(out, segment, header.length);
+
+        return new ImageData(out, carrier.width, carrier.height);
+    }
+
+    /**
+     * Decrypts a reassembled payload and splits it into file name, MIME type and file data.
+     *
+     * @param rawPayload payload, as stored in the images
+     * @param packageData header of any segment of the set
+     * @param password optional password
+     * @return decoded secret data
+     */
+    private Payload decodePayload(final byte[] rawPayload, final PackageData_v1_2_0 packageData, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        final byte[] unencryptedPayload;
+
+        if (packageData.hasPassword) {
+            final SecretKeySpec keySpec = HandlerFunctions.passwordKey(this, packageData, password, packageData.salt);
+            unencryptedPayload = PackageFunctions.decrypt(rawPayload, keySpec, PackageFunctions.createIV(packageData.initVector));
+        } else {
+            unencryptedPayload = rawPayload;
+        }
+
+        return HandlerFunctions.readPayload(unencryptedPayload, packageData.compressed);
+    }
+
+    /**
+     * Runs tasks on the shared {@link Workers#compute()} pool and waits for all of them. The tasks are split
+     * into at most <code>threads</code> contiguous runs, one per worker; a single run stays on the calling
+     * thread.
+     *
+     * @param tasks tasks to run
+     * @param threads largest number of threads to run tasks on, including the calling thread (at least 1)
+     * @return task results, in the same order as the tasks
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     * @throws IOException if a task fails with a checked exception other than {@link NoSuchAlgorithmException}
+     * @throws NoSuchAlgorithmException if a task could not create a digest
+     */
+    private static <T> List<T> runAll(final List<Callable<T>> tasks, final int threads) throws InterruptedException, IOException, NoSuchAlgorithmException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1!");
+        }
+
+        final int count = tasks.size();
+        final int workers = Math.max(1, Math.min(threads, count));
+        final int run = (count + workers - 1) / workers;
+        final List<T> results = new ArrayList<T>(Collections.<T>nCopies(count, null));
+        final List<Runnable> runs = new ArrayList<Runnable>(workers);
+
+        for (int i = 0; i < workers; i++) {
+            final int start = Math.min(count, i * run);
+            final int end = Math.min(count, start + run);
+
+            runs.add(new Runnable() {
+                @Override
+                public void run() {
+                    for (int task = start; task < end; task++) {
+                        try {
+                            results.set(task, tasks.get(task).call());
+                        } catch (RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            throw new TaskFailure(e);
+                        }
+                    }
+                }
+            });
+        }
+
+        try {
+            Workers.runAll(runs);
+        } catch (TaskFailure e) {
+            throw rethrow(e.getCause());
+        }
+
+        return results;
+    }
+
+    /**
+     * Carries a checked exception thrown by a task out of {@link Workers#runAll(List)}
+     */
+    private static final class TaskFailure extends RuntimeException {
+
+        TaskFailure(final Exception cause) {
+            super(cause);
+        }
+    }
+
+    private static IOException rethrow(final Throwable cause) throws IOException, NoSuchAlgorithmException {
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof NoSuchAlgorithmException) {
+            throw (NoSuchAlgorithmException) cause;
+        }
+
+        return new IOException(cause);
+    }
+
+    private static byte[] generateSetId() {
+        final byte[] setId = new byte[SET_ID_LENGTH];
+        new SecureRandom().nextBytes(setId);
+
+        return setId;
+    }
+
+    /**
+     * Writes the fields of a package header to the trace sink, with
+     * {@link HandlerFunctions#traceHeader(String, String, ImageData, PackageHeader, Object...)}.
+     *
+     * @param label label for the header dump
+     * @param secret image containing the header
+     * @param header extracted package header
+     */
+    private static void traceHeader(final String label, final ImageData secret, final PackageData_v1_2_0 header) {
+        HandlerFunctions.traceHeader(TAG, label, secret, header, "Set id", header.setId, "Segment", (header.segmentIndex + 1) + " of " + header.segmentCount,
+                "Salt", header.salt, "IV", header.initVector, "Password hash", header.passwordHash);
+    }
+}
@@ -0,0 +1,107 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_3_0;
+
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+
+import java.io.Serializable;
+
+/**
+ * Header data about a secret file hidden in an image, with the payload key wrapped in one key slot per
+ * password. The secret file will contain its own header.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageData_v1_3_0 implements PackageHeader {
+
+    /**
+     * The payload key, wrapped with a key derived from one password
+     */
+    public static class KeySlot implements Serializable {
+
+        /**
+         * Salt for this password
+         */
+        public byte[] salt = null;
+
+        /**
+         * SHA-256 hash of this password
+         */
+        public byte[] passwordHash = null;
+
+        /**
+         * 16-byte initialization vector used to wrap the payload key
+         */
+        public byte[] initVector = null;
+
+        /**
+         * The payload key, encrypted with the key derived from this password
+         */
+        public byte[] wrappedKey = null;
+    }
+
+    /**
+     * A Cryptopix version code
+     */
+    public long cryptopixVersionCode = -1;
+
+    /**
+     * MD5 payload hash. The payload after the header is hashed to produce this value, so changing the key
+     * slots doesn't change it
+     */
+    public byte[] payloadHash = null;
+
+    /**
+     * Size of the payload, in bytes (including the payload header)
+     */
+    public int payloadSize = -1;
+
+    /**
+     * True if the file is encrypted
+     */
+    public boolean hasPassword = false;
+
+    /**
+     * True if the data is compressed. Data can be compressed before encryption.
+     */
+    public boolean compressed = false;
+
+    /**
+     * 16-byte initialization vector for the payload (only exists if there is a password)
+     */
+    public byte[] initVector = null;
+
+    /**
+     * Key slots in use, one per password (empty if there is no password)
+     */
+    public KeySlot[] keySlots = new KeySlot[0];
+
+    /**
+     * The pixel at which payload data begins (the payload header, possibly encrypted)
+     */
+    public int dataOffset = -1;
+
+    @Override
+    public boolean isPasswordProtected() {
+        return hasPassword;
+    }
+
+    @Override
+    public int headerSize() {
+        return dataOffset;
+    }
+
+    @Override
+    public byte[] payloadHash() {
+        return payloadHash;
+    }
+
+    @Override
+    public int payloadSize() {
+        return payloadSize;
+    }
+
+    @Override
+    public int packageSize() {
+        return dataOffset + payloadSize;
+    }
+}
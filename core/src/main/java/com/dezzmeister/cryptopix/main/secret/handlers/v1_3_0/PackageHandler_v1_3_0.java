@@ -0,0 +1,563 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_3_0;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.KeySlotHandler;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.PayloadMetadata;
+import com.dezzmeister.cryptopix.main.secret.handlers.HandlerFunctions;
+import com.dezzmeister.cryptopix.main.secret.handlers.v1_0_0.LazyPayload_v1_0_0;
+import com.dezzmeister.cryptopix.main.secret.handlers.v1_3_0.PackageData_v1_3_0.KeySlot;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
+
+/**
+ * Package handler for files generated with Cryptopix 1.3.0. The payload is laid out as in 1.0.0, but it is
+ * encrypted with a random payload key instead of a key derived from the password. The payload key is stored
+ * in the package header once per password, wrapped with a key derived from that password. Every
+ * password-protected header has room for {@link #KEY_SLOTS} key slots, so the header never changes size and
+ * re-keying only rewrites the header pixels. 1 byte of package data corresponds to 1 pixel.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageHandler_v1_3_0 implements KeySlotHandler {
+
+    /**
+     * Cryptopix version code length (8-byte field). The version code should be
+     * {@link com.dezzmeister.cryptopix.main.secret.Versions#VERSION_1_3_0 Versions.VERSION_1_3_0}.
+     */
+    private static final int VERSION_CODE_LENGTH = 8;
+
+    /**
+     * Number of bytes in the payload hash (128 bit MD5)
+     */
+    private static final int PAYLOAD_HASH_LENGTH = 16;
+
+    /**
+     * Number of bytes in the payload (4-byte field)
+     */
+    private static final int PAYLOAD_SIZE_LENGTH = 4;
+
+    /**
+     * Number of bytes determining various boolean values (1-byte field)
+     *
+     * The bits of this field determine the following values (starting from least significant):
+     * <li>
+     *     <ol>Whether a password is present</ol>
+     *     <ol>Whether the data is compressed</ol>
+     * </li>
+     */
+    private static final int BOOLEAN_FLAGS_LENGTH = 1;
+
+    /**
+     * Number of bytes in the optional initialization vectors (16-byte fields)
+     */
+    private static final int INIT_VECTOR_LENGTH = 16;
+
+    /**
+     * Number of key slots in use (optional 1-byte field)
+     */
+    private static final int SLOT_COUNT_LENGTH = 1;
+
+    /**
+     * Number of key slots in a password-protected header (not a binary field)
+     */
+    private static final int KEY_SLOTS = 4;
+
+    /**
+     * Number of bytes in the salt of a key slot (32-byte field)
+     */
+    private static final int SALT_LENGTH = 32;
+
+    /**
+     * Number of bytes in the password hash of a key slot (32-byte SHA-256 field)
+     */
+    private static final int HASH_LENGTH = 32;
+
+    /**
+     * Number of bytes in the payload key (not a binary field)
+     */
+    private static final int KEY_LENGTH = 32;
+
+    /**
+     * Number of bytes in a wrapped payload key (48-byte field: the key, encrypted with PKCS5 padding)
+     */
+    private static final int WRAPPED_KEY_LENGTH = KEY_LENGTH + 16;
+
+    /**
+     * Number of bytes in a key slot: salt, password hash, initialization vector and wrapped key (not a binary field)
+     */
+    private static final int KEY_SLOT_LENGTH = SALT_LENGTH + HASH_LENGTH + INIT_VECTOR_LENGTH + WRAPPED_KEY_LENGTH;
+
+    /**
+     * Minimum byte-length of a package header, if no password is used (not a binary field)
+     */
+    private static final int MIN_PACKAGE_HEADER_LENGTH = VERSION_CODE_LENGTH + PAYLOAD_HASH_LENGTH + PAYLOAD_SIZE_LENGTH + BOOLEAN_FLAGS_LENGTH;
+
+    /**
+     * Maximum byte-length of a package header, if a password is used (not a binary field)
+     */
+    private static final int MAX_PACKAGE_HEADER_LENGTH = MIN_PACKAGE_HEADER_LENGTH + INIT_VECTOR_LENGTH + SLOT_COUNT_LENGTH + KEY_SLOTS * KEY_SLOT_LENGTH;
+
+    /**
+     * Trace tag (not a binary field)
+     */
+    private static final String TAG = "PackageHandler_v1_3_0";
+
+    @Override
+    public EncodedImageState getImageState(final ImageData secret, final PackageHeader header) {
+        final PackageData_v1_3_0 packageHeader;
+
+        if (!(header instanceof PackageData_v1_3_0)) {
+            packageHeader = (PackageData_v1_3_0) extractHeader(secret);
+        } else {
+            packageHeader = (PackageData_v1_3_0) header;
+        }
+
+        if (packageHeader.payloadSize < 0 || (long) packageHeader.dataOffset + packageHeader.payloadSize > secret.pixels.length) {
+            return EncodedImageState.CORRUPTED;
+        }
+
+        return HandlerFunctions.md5State(PackageFunctions.extractBytes(secret.pixels, packageHeader.payloadSize, packageHeader.dataOffset), packageHeader);
+    }
+
+    @Override
+    public boolean isPasswordProtected(final ImageData secret, final PackageHeader data) {
+        if (data != null) {
+            return data.isPasswordProtected();
+        }
+
+        return extractHeader(secret).isPasswordProtected();
+    }
+
+    @Override
+    public boolean isCorrectPassword(final String password, final PackageHeader data) throws NoSuchAlgorithmException {
+        if ((!(data instanceof PackageData_v1_3_0)) || (!data.isPasswordProtected())) {
+            return false;
+        }
+
+        return findSlot((PackageData_v1_3_0) data, password) >= 0;
+    }
+
+    @Override
+    public PackageHeader extractHeader(final ImageData secret) {
+        final int[] pixels = secret.pixels;
+
+        if (pixels.length < MIN_PACKAGE_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Image is too small!");
+        }
+
+        final PackageData_v1_3_0 data = new PackageData_v1_3_0();
+        data.cryptopixVersionCode = PackageFunctions.versionCode(secret);
+
+        int seek = VERSION_CODE_LENGTH;
+        data.payloadHash = PackageFunctions.extractBytes(pixels, PAYLOAD_HASH_LENGTH, seek);
+
+        seek += PAYLOAD_HASH_LENGTH;
+        data.payloadSize = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, PAYLOAD_SIZE_LENGTH, seek));
+
+        seek += PAYLOAD_SIZE_LENGTH;
+        final int flags = ((int) PackageFunctions.extractBytes(pixels, BOOLEAN_FLAGS_LENGTH, seek)[0]) & 0xFF;
+        data.hasPassword = (flags & 0x01) == 1;
+        data.compressed = ((flags & 0x02) >>> 1) == 1;
+
+        seek += BOOLEAN_FLAGS_LENGTH;
+
+        if (data.hasPassword) {
+            if (pixels.length < MAX_PACKAGE_HEADER_LENGTH) {
+                throw new IllegalArgumentException("Image is too small!");
+            }
+
+            data.initVector = PackageFunctions.extractBytes(pixels, INIT_VECTOR_LENGTH, seek);
+
+            seek += INIT_VECTOR_LENGTH;
+            final int slotCount = PackageFunctions.extractBytes(pixels, SLOT_COUNT_LENGTH, seek)[0] & 0xFF;
+
+            if (slotCount < 1 || slotCount > KEY_SLOTS) {
+                throw new IllegalArgumentException("Illegal key slot count in package header!");
+            }
+
+            seek += SLOT_COUNT_LENGTH;
+            data.keySlots = new KeySlot[slotCount];
+
+            for (int i = 0; i < slotCount; i++) {
+                final KeySlot slot = new KeySlot();
+                int slotSeek = seek + i * KEY_SLOT_LENGTH;
+
+                slot.salt = PackageFunctions.extractBytes(pixels, SALT_LENGTH, slotSeek);
+                slotSeek += SALT_LENGTH;
+                slot.passwordHash = PackageFunctions.extractBytes(pixels, HASH_LENGTH, slotSeek);
+                slotSeek += HASH_LENGTH;
+                slot.initVector = PackageFunctions.extractBytes(pixels, INIT_VECTOR_LENGTH, slotSeek);
+                slotSeek += INIT_VECTOR_LENGTH;
+                slot.wrappedKey = PackageFunctions.extractBytes(pixels, WRAPPED_KEY_LENGTH, slotSeek);
+
+                data.keySlots[i] = slot;
+            }
+
+            // Unused slots still take up space, so the header size doesn't depend on the number of passwords
+            seek += KEY_SLOTS * KEY_SLOT_LENGTH;
+        }
+
+        data.dataOffset = seek;
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Extracted header", secret, data);
+        }
+
+        return data;
+    }
+
+    @Override
+    public int maxHeaderSize() {
+        return MAX_PACKAGE_HEADER_LENGTH;
+    }
+
+    @Override
+    public int keySlotCapacity() {
+        return KEY_SLOTS;
+    }
+
+    @Override
+    public ImageData encodeSecret(final ImageData original, final Payload secretData, final EncodingOptions options) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        /**
+         * 1. Compress data (if compression option specified)
+         * 2. Generate a random payload key and encrypt the payload with it (if password supplied)
+         * 3. Wrap the payload key with a key derived from the password, in the first key slot
+         * 4. Generate the package header and stuff the header and payload in the image
+         */
+        byte[] fileData = secretData.data();
+
+        if (options.compress) {
+            fileData = PackageFunctions.compress(fileData);
+        }
+
+        final List<byte[]> payloadFields = Arrays.asList(HandlerFunctions.payloadHeader(secretData), fileData);
+
+        final PackageData_v1_3_0 header = new PackageData_v1_3_0();
+        header.cryptopixVersionCode = options.versionCode;
+        header.hasPassword = options.password != null;
+        header.compressed = options.compress;
+
+        final byte[] payload;
+
+        if (options.password != null) {
+            final byte[] payloadKey = new byte[KEY_LENGTH];
+            new SecureRandom().nextBytes(payloadKey);
+
+            final IvParameterSpec ivSpec = PackageFunctions.generateIV(INIT_VECTOR_LENGTH);
+            header.initVector = ivSpec.getIV();
+            header.keySlots = new KeySlot[] {createSlot(payloadKey, options.password)};
+
+            payload = PackageFunctions.encrypt(PackageFunctions.packSequentialBinaryFields(payloadFields), new SecretKeySpec(payloadKey, "AES"), ivSpec);
+        } else {
+            payload = PackageFunctions.packSequentialBinaryFields(payloadFields);
+        }
+
+        header.payloadHash = MessageDigest.getInstance("MD5").digest(payload);
+        header.payloadSize = payload.length;
+
+        final byte[] headerBytes = headerBytes(header);
+
+        if ((long) headerBytes.length + payload.length > original.pixels.length) {
+            throw new SizeLimitExceededException("Secret package is larger than image!");
+        }
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            Trace.log(TraceLevel.TRACE, TAG, "Encoded header", Trace.hex(headerBytes));
+            Trace.log(TraceLevel.TRACE, TAG, "Payload hash", Trace.hex(header.payloadHash));
+        }
+
+        final int[] out = new int[original.pixels.length];
+        System.arraycopy(original.pixels, 0, out, 0, out.length);
+
+        PackageFunctions.writeBytes(out, headerBytes, 0);
+        PackageFunctions.writeBytes(out, payload, headerBytes.length);
+
+        return new ImageData(out, original.width, original.height);
+    }
+
+    @Override
+    public Payload decode(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        final PackageData_v1_3_0 packageData = packageData(header);
+
+        if (packageData.payloadSize < 0 || (long) packageData.dataOffset + packageData.payloadSize > secret.pixels.length) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        final byte[] rawPayload = PackageFunctions.extractBytes(secret.pixels, packageData.payloadSize, packageData.dataOffset);
+        final byte[] unencryptedPayload;
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Decoding header", secret, packageData);
+        }
+
+        if (packageData.hasPassword) {
+            final byte[] payloadKey = unwrapKey(packageData, password);
+            unencryptedPayload = PackageFunctions.decrypt(rawPayload, new SecretKeySpec(payloadKey, "AES"), PackageFunctions.createIV(packageData.initVector));
+        } else {
+            unencryptedPayload = rawPayload;
+        }
+
+        return HandlerFunctions.readPayload(unencryptedPayload, packageData.compressed);
+    }
+
+    @Override
+    public PayloadMetadata peekMetadata(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        return lazyPayload(secret, header, password).metadata();
+    }
+
+    @Override
+    public Payload openPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        return lazyPayload(secret, header, password);
+    }
+
+    @Override
+    public PackageHeader addPassword(final ImageData secret, final PackageHeader header, final String password, final String newPassword) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        final PackageData_v1_3_0 packageData = passwordPackageData(header);
+
+        if (packageData.keySlots.length >= KEY_SLOTS) {
+            throw new SizeLimitExceededException("Every key slot is in use!");
+        }
+
+        final KeySlot[] keySlots = Arrays.copyOf(packageData.keySlots, packageData.keySlots.length + 1);
+        keySlots[keySlots.length - 1] = createSlot(unwrapKey(packageData, password), newPassword);
+
+        return rewriteHeader(secret, packageData, keySlots);
+    }
+
+    @Override
+    public PackageHeader changePassword(final ImageData secret, final PackageHeader header, final String oldPassword, final String newPassword) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        final PackageData_v1_3_0 packageData = passwordPackageData(header);
+        final int slot = findSlot(packageData, oldPassword);
+
+        if (slot < 0) {
+            throw new SecurityException("Invalid password!");
+        }
+
+        final KeySlot[] keySlots = packageData.keySlots.clone();
+        keySlots[slot] = createSlot(unwrapSlot(keySlots[slot], oldPassword), newPassword);
+
+        return rewriteHeader(secret, packageData, keySlots);
+    }
+
+    @Override
+    public PackageHeader removePassword(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException {
+        final PackageData_v1_3_0 packageData = passwordPackageData(header);
+        final int slot = findSlot(packageData, password);
+
+        if (slot < 0) {
+            throw new SecurityException("Invalid password!");
+        }
+
+        if (packageData.keySlots.length == 1) {
+            throw new IllegalArgumentException("The last password cannot be removed!");
+        }
+
+        final ArrayList<KeySlot> keySlots = new ArrayList<KeySlot>(Arrays.asList(packageData.keySlots));
+        keySlots.remove(slot);
+
+        return rewriteHeader(secret, packageData, keySlots.toArray(new KeySlot[keySlots.size()]));
+    }
+
+    @Override
+    public Payload getEmptyPayload() {
+        return HandlerFunctions.emptyPayload();
+    }
+
+    private static PackageData_v1_3_0 packageData(final PackageHeader header) {
+        if (header instanceof PackageData_v1_3_0) {
+            return (PackageData_v1_3_0) header;
+        } else {
+            throw new IllegalArgumentException("Wrong package header type!");
+        }
+    }
+
+    /**
+     * Checks the password and opens the payload, reading only the payload header.
+     */
+    private LazyPayload_v1_0_0 lazyPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        final PackageData_v1_3_0 packageData = packageData(header);
+
+        if (packageData.payloadSize < 0 || (long) packageData.dataOffset + packageData.payloadSize > secret.pixels.length) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        final SecretKeySpec keySpec = packageData.hasPassword ? new SecretKeySpec(unwrapKey(packageData, password), "AES") : null;
+
+        return HandlerFunctions.openPayload(HandlerFunctions.pixelSource(secret, packageData.dataOffset), packageData, keySpec, packageData.initVector, packageData.compressed);
+    }
+
+    private static PackageData_v1_3_0 passwordPackageData(final PackageHeader header) {
+        final PackageData_v1_3_0 packageData = packageData(header);
+
+        if (!packageData.hasPassword) {
+            throw new IllegalArgumentException("Package is not password-protected; encode it again with a password!");
+        }
+
+        return packageData;
+    }
+
+    /**
+     * Returns the key slot for a password.
+     *
+     * @param packageData package header
+     * @param password password
+     * @return index of the key slot, or -1 if the password is not a password of the package
+     */
+    private static int findSlot(final PackageData_v1_3_0 packageData, final String password) throws NoSuchAlgorithmException {
+        if (password == null) {
+            return -1;
+        }
+
+        final byte[] passwordBytes = password.getBytes(StandardCharsets.US_ASCII);
+
+        for (int i = 0; i < packageData.keySlots.length; i++) {
+            final KeySlot slot = packageData.keySlots[i];
+
+            if (PackageFunctions.isCorrectPassword(passwordBytes, slot.salt, slot.passwordHash)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static byte[] unwrapKey(final PackageData_v1_3_0 packageData, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        final int slot = findSlot(packageData, password);
+
+        if (slot < 0) {
+            throw new SecurityException("Invalid password!");
+        }
+
+        return unwrapSlot(packageData.keySlots[slot], password);
+    }
+
+    private static byte[] unwrapSlot(final KeySlot slot, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        final SecretKeySpec keySpec = PackageFunctions.generateKey(password.getBytes(StandardCharsets.US_ASCII), slot.salt, HandlerFunctions.PBKDF2_ITERATIONS);
+
+        return PackageFunctions.decrypt(slot.wrappedKey, keySpec, PackageFunctions.createIV(slot.initVector));
+    }
+
+    /**
+     * Wraps the payload key with a key derived from a password, with a new salt and initialization vector.
+     *
+     * @param payloadKey payload key
+     * @param password password
+     * @return new key slot
+     */
+    private static KeySlot createSlot(final byte[] payloadKey, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        final byte[] passwordBytes = password.getBytes(StandardCharsets.US_ASCII);
+        final KeySlot slot = new KeySlot();
+
+        slot.salt = PackageFunctions.generateSalt();
+        slot.passwordHash = PackageFunctions.saltAndHashPassword(slot.salt, passwordBytes);
+
+        final IvParameterSpec ivSpec = PackageFunctions.generateIV(INIT_VECTOR_LENGTH);
+        slot.initVector = ivSpec.getIV();
+        slot.wrappedKey = PackageFunctions.encrypt(payloadKey, PackageFunctions.generateKey(passwordBytes, slot.salt, HandlerFunctions.PBKDF2_ITERATIONS), ivSpec);
+
+        return slot;
+    }
+
+    /**
+     * Writes a package header with new key slots over the old one. The header size doesn't depend on the
+     * number of key slots, so only the header pixels change.
+     *
+     * @param secret image containing secret data (the header pixels will be modified)
+     * @param packageData current package header
+     * @param keySlots new key slots
+     * @return updated package header
+     */
+    private static PackageHeader rewriteHeader(final ImageData secret, final PackageData_v1_3_0 packageData, final KeySlot[] keySlots) {
+        final PackageData_v1_3_0 updated = new PackageData_v1_3_0();
+        updated.cryptopixVersionCode = packageData.cryptopixVersionCode;
+        updated.payloadHash = packageData.payloadHash;
+        updated.payloadSize = packageData.payloadSize;
+        updated.hasPassword = packageData.hasPassword;
+        updated.compressed = packageData.compressed;
+        updated.initVector = packageData.initVector;
+        updated.keySlots = keySlots;
+        updated.dataOffset = packageData.dataOffset;
+
+        final byte[] headerBytes = headerBytes(updated);
+
+        if (headerBytes.length != packageData.dataOffset) {
+            throw new IllegalStateException("Package header changed size!");
+        }
+
+        PackageFunctions.writeBytes(secret.pixels, headerBytes, 0);
+
+        return updated;
+    }
+
+    /**
+     * Packs the fields of a package header. Unused key slots are filled with zeros.
+     *
+     * @param header package header
+     * @return package header bytes
+     */
+    private static byte[] headerBytes(final PackageData_v1_3_0 header) {
+        final int passwordFlag = header.hasPassword ? 1 : 0;
+        final int compressFlag = header.compressed ? 1 : 0;
+        final byte flags = (byte)(((compressFlag << 1) | passwordFlag) & 0xFF);
+
+        final ArrayList<byte[]> packageFields = new ArrayList<byte[]>();
+        packageFields.add(PackageFunctions.longToBytes(header.cryptopixVersionCode));
+        packageFields.add(header.payloadHash);
+        packageFields.add(PackageFunctions.intToBytes(header.payloadSize));
+        packageFields.add(new byte[] {flags});
+
+        if (header.hasPassword) {
+            packageFields.add(header.initVector);
+            packageFields.add(new byte[] {(byte) header.keySlots.length});
+
+            for (final KeySlot slot : header.keySlots) {
+                packageFields.add(slot.salt);
+                packageFields.add(slot.passwordHash);
+                packageFields.add(slot.initVector);
+                packageFields.add(slot.wrappedKey);
+            }
+
+            packageFields.add(new byte[(KEY_SLOTS - header.keySlots.length) * KEY_SLOT_LENGTH]);
+        }
+
+        return PackageFunctions.packSequentialBinaryFields(packageFields);
+    }
+
+    /**
+     * Writes the fields of a package header to the trace sink, with
+     * {@link HandlerFunctions#traceHeader(String, String, ImageData, PackageHeader, Object...)}.
+     *
+     * @param label label for the header dump
+     * @param secret image containing the header
+     * @param header extracted package header
+     */
+    private static void traceHeader(final String label, final ImageData secret, final PackageData_v1_3_0 header) {
+        HandlerFunctions.traceHeader(TAG, label, secret, header, "IV", header.initVector, "Key slots", header.keySlots.length);
+    }
+}
@@ -0,0 +1,89 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_4_0;
+
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+
+/**
+ * Header data about a chunked secret file hidden in an image. The chunk slots follow the header, and the
+ * chunk table follows the last slot.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageData_v1_4_0 implements PackageHeader {
+
+    /**
+     * A Cryptopix version code
+     */
+    public long cryptopixVersionCode = -1;
+
+    /**
+     * MD5 hash of the chunk table. The table holds the hash of every stored chunk, so this covers the
+     * whole payload
+     */
+    public byte[] tableHash = null;
+
+    /**
+     * Size of the payload, in bytes (every chunk slot and the chunk table)
+     */
+    public int payloadSize = -1;
+
+    /**
+     * True if the file is encrypted with a password
+     */
+    public boolean hasPassword = false;
+
+    /**
+     * Number of chunks in the file
+     */
+    public int chunkCount = -1;
+
+    /**
+     * Size of the private part of the chunk table as stored (after encryption), in bytes
+     */
+    public int privateTableSize = -1;
+
+    /**
+     * Salt (only exists if there is a password)
+     */
+    public byte[] salt = null;
+
+    /**
+     * 16-byte initialization vector for the private part of the chunk table (only exists if there is a password)
+     */
+    public byte[] initVector = null;
+
+    /**
+     * SHA-256 password hash (only exists if there is a password)
+     */
+    public byte[] passwordHash = null;
+
+    /**
+     * The pixel at which the first chunk slot begins
+     */
+    public int dataOffset = -1;
+
+    @Override
+    public boolean isPasswordProtected() {
+        return hasPassword;
+    }
+
+    @Override
+    public int headerSize() {
+        return dataOffset;
+    }
+
+    @Override
+    public byte[] payloadHash() {
+        return tableHash;
+    }
+
+    @Override
+    public int payloadSize() {
+        return payloadSize;
+    }
+
+    @Override
+    public int packageSize() {
+        return dataOffset + payloadSize;
+    }
+}
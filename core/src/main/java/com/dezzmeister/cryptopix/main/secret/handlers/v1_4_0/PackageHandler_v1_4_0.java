@@ -0,0 +1,777 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_4_0;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.ChunkedHandler;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.PayloadMetadata;
+import com.dezzmeister.cryptopix.main.secret.handlers.HandlerFunctions;
+import com.dezzmeister.cryptopix.main.secret.handlers.v1_0_0.Payload_v1_0_0;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
+
+/**
+ * Package handler for files generated with Cryptopix 1.4.0. The file is split into chunks of
+ * {@link #CHUNK_SIZE} bytes, and every chunk but the last is stored in a fixed-size slot so that it can be
+ * rewritten without moving the chunks after it. The last slot is only as large as its chunk, and it can grow
+ * because only the chunk table follows it. If a password is used, every chunk is encrypted with its own
+ * initialization vector, which is stored at the start of its slot.
+ *
+ * The chunk table follows the last slot. Its public part holds the MD5 hash of every slot, and its private
+ * part (encrypted if a password is used) holds the file name, MIME type, file size, and the MD5 hash of every
+ * chunk before encryption. The package header holds the MD5 hash of the chunk table. Chunks are never
+ * compressed, because a compressed chunk could outgrow its slot. 1 byte of package data corresponds to 1 pixel.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageHandler_v1_4_0 implements ChunkedHandler {
+
+    /**
+     * Cryptopix version code length (8-byte field). The version code should be
+     * {@link com.dezzmeister.cryptopix.main.secret.Versions#VERSION_1_4_0 Versions.VERSION_1_4_0}.
+     */
+    private static final int VERSION_CODE_LENGTH = 8;
+
+    /**
+     * Number of bytes in the chunk table hash (128 bit MD5)
+     */
+    private static final int TABLE_HASH_LENGTH = 16;
+
+    /**
+     * Number of bytes in the payload (4-byte field)
+     */
+    private static final int PAYLOAD_SIZE_LENGTH = 4;
+
+    /**
+     * Number of bytes determining various boolean values (1-byte field)
+     *
+     * The bits of this field determine the following values (starting from least significant):
+     * <li>
+     *     <ol>Whether a password is present</ol>
+     * </li>
+     */
+    private static final int BOOLEAN_FLAGS_LENGTH = 1;
+
+    /**
+     * Number of chunks (4-byte field)
+     */
+    private static final int CHUNK_COUNT_LENGTH = 4;
+
+    /**
+     * Size of the private part of the chunk table (4-byte field)
+     */
+    private static final int PRIVATE_TABLE_SIZE_LENGTH = 4;
+
+    /**
+     * Number of bytes in the optional salt (32-byte field)
+     */
+    private static final int SALT_LENGTH = 32;
+
+    /**
+     * Number of bytes in the optional initialization vectors (16-byte fields)
+     */
+    private static final int INIT_VECTOR_LENGTH = 16;
+
+    /**
+     * Number of bytes in the optional password hash (32-byte SHA-256 field)
+     */
+    private static final int PASSWORD_HASH_LENGTH = 32;
+
+    /**
+     * Minimum byte-length of a package header, if no password is used (not a binary field)
+     */
+    private static final int MIN_PACKAGE_HEADER_LENGTH = VERSION_CODE_LENGTH + TABLE_HASH_LENGTH + PAYLOAD_SIZE_LENGTH + BOOLEAN_FLAGS_LENGTH + CHUNK_COUNT_LENGTH + PRIVATE_TABLE_SIZE_LENGTH;
+
+    /**
+     * Maximum byte-length of a package header, if a password is used (not a binary field)
+     */
+    private static final int MAX_PACKAGE_HEADER_LENGTH = MIN_PACKAGE_HEADER_LENGTH + SALT_LENGTH + INIT_VECTOR_LENGTH + PASSWORD_HASH_LENGTH;
+
+    /**
+     * Number of file bytes in a chunk. Every chunk but the last is full (not a binary field)
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Number of bytes in a chunk hash (128 bit MD5)
+     */
+    private static final int CHUNK_HASH_LENGTH = 16;
+
+    /**
+     * Trace tag (not a binary field)
+     */
+    private static final String TAG = "PackageHandler_v1_4_0";
+
+    // Private chunk table field sizes
+
+    /**
+     * The filename size field (4-byte field). An ASCII string containing the name of the file follows this field,
+     * and this field gives the length of the string.
+     */
+    private static final int PAYLOAD_FILENAME_SIZE = 4;
+
+    /**
+     * The MIME type size field (4-byte field). An ASCII string containing the MIME type of the file follows this field,
+     * and this field gives the length of the string.
+     */
+    private static final int PAYLOAD_MIMETYPE_SIZE = 4;
+
+    /**
+     * The file size field (4-byte field). The plain chunk hashes follow this field.
+     */
+    private static final int PAYLOAD_FILE_SIZE = 4;
+
+    @Override
+    public EncodedImageState getImageState(final ImageData secret, final PackageHeader header) {
+        final MessageDigest md5;
+
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+
+            return EncodedImageState.UNSUPPORTED;
+        }
+
+        final PackageData_v1_4_0 packageHeader;
+
+        if (!(header instanceof PackageData_v1_4_0)) {
+            packageHeader = (PackageData_v1_4_0) extractHeader(secret);
+        } else {
+            packageHeader = (PackageData_v1_4_0) header;
+        }
+
+        if (!hasValidSizes(secret, packageHeader)) {
+            return EncodedImageState.CORRUPTED;
+        }
+
+        final byte[] table = extractTable(secret, packageHeader);
+
+        if (!Arrays.equals(md5.digest(table), packageHeader.tableHash)) {
+            return EncodedImageState.CORRUPTED;
+        }
+
+        final int slotSize = slotSize(packageHeader.hasPassword);
+
+        for (int i = 0; i < packageHeader.chunkCount; i++) {
+            final int storedSize = (i == packageHeader.chunkCount - 1) ? lastSlotSize(packageHeader) : slotSize;
+            final byte[] slot = PackageFunctions.extractBytes(secret.pixels, storedSize, packageHeader.dataOffset + i * slotSize);
+            final byte[] slotHash = PackageFunctions.getSubarray(table, CHUNK_HASH_LENGTH, i * CHUNK_HASH_LENGTH);
+
+            if (!Arrays.equals(md5.digest(slot), slotHash)) {
+                return EncodedImageState.CORRUPTED;
+            }
+        }
+
+        if (packageHeader.hasPassword) {
+            return EncodedImageState.SECRET_PASSWORD;
+        } else {
+            return EncodedImageState.SECRET_NO_PASSWORD;
+        }
+    }
+
+    @Override
+    public boolean isPasswordProtected(final ImageData secret, final PackageHeader data) {
+        if (data != null) {
+            return data.isPasswordProtected();
+        }
+
+        return extractHeader(secret).isPasswordProtected();
+    }
+
+    @Override
+    public boolean isCorrectPassword(final String password, final PackageHeader data) throws NoSuchAlgorithmException {
+        if ((!(data instanceof PackageData_v1_4_0)) || (!data.isPasswordProtected()) || password == null) {
+            return false;
+        }
+
+        final PackageData_v1_4_0 packageData = (PackageData_v1_4_0) data;
+
+        return PackageFunctions.isCorrectPassword(password.getBytes(StandardCharsets.US_ASCII), packageData.salt, packageData.passwordHash);
+    }
+
+    @Override
+    public PackageHeader extractHeader(final ImageData secret) {
+        final int[] pixels = secret.pixels;
+
+        if (pixels.length < MIN_PACKAGE_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Image is too small!");
+        }
+
+        final PackageData_v1_4_0 data = new PackageData_v1_4_0();
+        data.cryptopixVersionCode = PackageFunctions.versionCode(secret);
+
+        int seek = VERSION_CODE_LENGTH;
+        data.tableHash = PackageFunctions.extractBytes(pixels, TABLE_HASH_LENGTH, seek);
+
+        seek += TABLE_HASH_LENGTH;
+        data.payloadSize = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, PAYLOAD_SIZE_LENGTH, seek));
+
+        seek += PAYLOAD_SIZE_LENGTH;
+        final int flags = ((int) PackageFunctions.extractBytes(pixels, BOOLEAN_FLAGS_LENGTH, seek)[0]) & 0xFF;
+        data.hasPassword = (flags & 0x01) == 1;
+
+        seek += BOOLEAN_FLAGS_LENGTH;
+        data.chunkCount = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, CHUNK_COUNT_LENGTH, seek));
+
+        seek += CHUNK_COUNT_LENGTH;
+        data.privateTableSize = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, PRIVATE_TABLE_SIZE_LENGTH, seek));
+
+        seek += PRIVATE_TABLE_SIZE_LENGTH;
+
+        if (data.hasPassword) {
+            if (pixels.length < MAX_PACKAGE_HEADER_LENGTH) {
+                throw new IllegalArgumentException("Image is too small!");
+            }
+
+            data.salt = PackageFunctions.extractBytes(pixels, SALT_LENGTH, seek);
+
+            seek += SALT_LENGTH;
+            data.initVector = PackageFunctions.extractBytes(pixels, INIT_VECTOR_LENGTH, seek);
+
+            seek += INIT_VECTOR_LENGTH;
+            data.passwordHash = PackageFunctions.extractBytes(pixels, PASSWORD_HASH_LENGTH, seek);
+
+            seek += PASSWORD_HASH_LENGTH;
+        }
+
+        data.dataOffset = seek;
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Extracted header", secret, data);
+        }
+
+        return data;
+    }
+
+    @Override
+    public int maxHeaderSize() {
+        return MAX_PACKAGE_HEADER_LENGTH;
+    }
+
+    @Override
+    public ImageData encodeSecret(final ImageData original, final Payload secretData, final EncodingOptions options) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        /**
+         * 1. Generate the key (if password supplied)
+         * 2. Write every chunk to its slot, followed by the chunk table
+         * 3. Write the package header
+         *
+         * The compression option is ignored; see the class documentation.
+         */
+        final PackageData_v1_4_0 header = new PackageData_v1_4_0();
+        header.cryptopixVersionCode = options.versionCode;
+        header.hasPassword = options.password != null;
+        header.chunkCount = 0;
+
+        final Contents contents = new Contents();
+        contents.header = header;
+        contents.fileName = secretData.fileName();
+        contents.mimeType = secretData.mimeType();
+        contents.plainHashes = new byte[0][];
+        contents.slotHashes = new byte[0][];
+
+        if (options.password != null) {
+            final byte[] passwordBytes = options.password.getBytes(StandardCharsets.US_ASCII);
+
+            header.salt = PackageFunctions.generateSalt();
+            header.passwordHash = PackageFunctions.saltAndHashPassword(header.salt, passwordBytes);
+            header.dataOffset = MAX_PACKAGE_HEADER_LENGTH;
+
+            contents.key = PackageFunctions.generateKey(passwordBytes, header.salt, HandlerFunctions.PBKDF2_ITERATIONS);
+        } else {
+            header.dataOffset = MIN_PACKAGE_HEADER_LENGTH;
+        }
+
+        final int[] out = new int[original.pixels.length];
+        System.arraycopy(original.pixels, 0, out, 0, out.length);
+
+        final ImageData encoded = new ImageData(out, original.width, original.height);
+        writeChunks(encoded, contents, secretData.data(), 0);
+
+        return encoded;
+    }
+
+    @Override
+    public Payload decode(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        final Contents contents = readContents(secret, header, password);
+        final PackageData_v1_4_0 packageData = contents.header;
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Decoding header", secret, packageData);
+        }
+
+        final byte[] fileData = new byte[contents.fileSize];
+
+        for (int i = 0; i < packageData.chunkCount; i++) {
+            final byte[] chunk = readChunk(secret, contents, i);
+            System.arraycopy(chunk, 0, fileData, i * CHUNK_SIZE, chunk.length);
+        }
+
+        final Payload payloadObject = getEmptyPayload();
+        payloadObject.setFileName(contents.fileName);
+        payloadObject.setMimeType(contents.mimeType);
+        payloadObject.setData(fileData);
+
+        return payloadObject;
+    }
+
+    @Override
+    public PayloadMetadata peekMetadata(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        // The chunk table holds the payload header; no chunk is read
+        final Contents contents = readContents(secret, header, password);
+
+        final PayloadMetadata metadata = new PayloadMetadata();
+        metadata.fileName = contents.fileName;
+        metadata.mimeType = contents.mimeType;
+        metadata.size = contents.fileSize;
+        metadata.storedSize = contents.header.payloadSize;
+        metadata.compressed = false;
+
+        return metadata;
+    }
+
+    @Override
+    public Payload openPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        // Chunks are read and checked against their hashes one at a time already
+        return decode(secret, header, password);
+    }
+
+    @Override
+    public PackageHeader update(final ImageData secret, final PackageHeader header, final byte[] data, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        final Contents contents = readContents(secret, header, password);
+
+        return writeChunks(secret, contents, data, 0);
+    }
+
+    @Override
+    public PackageHeader append(final ImageData secret, final PackageHeader header, final byte[] data, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        final Contents contents = readContents(secret, header, password);
+
+        // Only a partial last chunk has to be read; the appended data starts a new chunk otherwise
+        final int firstChunk = contents.fileSize / CHUNK_SIZE;
+        final int lastChunkSize = contents.fileSize % CHUNK_SIZE;
+
+        if (lastChunkSize == 0) {
+            return writeChunks(secret, contents, data, firstChunk);
+        }
+
+        final byte[] lastChunk;
+
+        try {
+            lastChunk = readChunk(secret, contents, firstChunk);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Last chunk is corrupted!");
+        }
+
+        final byte[] tail = new byte[lastChunkSize + data.length];
+        System.arraycopy(lastChunk, 0, tail, 0, lastChunkSize);
+        System.arraycopy(data, 0, tail, lastChunkSize, data.length);
+
+        return writeChunks(secret, contents, tail, firstChunk);
+    }
+
+    @Override
+    public Payload getEmptyPayload() {
+        // Payloads carry the same fields as a 1.0.0 payload
+        return new Payload_v1_0_0();
+    }
+
+    /**
+     * The decrypted chunk table of a package, and the key needed to read and write its chunks.
+     */
+    private static final class Contents {
+        PackageData_v1_4_0 header;
+        String fileName;
+        String mimeType;
+        int fileSize;
+
+        /**
+         * MD5 hash of every chunk before encryption. Used to find the chunks that changed
+         */
+        byte[][] plainHashes;
+
+        /**
+         * MD5 hash of every slot, as stored
+         */
+        byte[][] slotHashes;
+
+        /**
+         * Encryption key, or null if there is no password
+         */
+        SecretKeySpec key;
+    }
+
+    /**
+     * Reads and decrypts the chunk table of a package.
+     *
+     * @param secret image containing secret data
+     * @param header package header for image
+     * @param password optional password (if the secret data is password-protected)
+     * @return chunk table and key
+     */
+    private Contents readContents(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        if (!(header instanceof PackageData_v1_4_0)) {
+            throw new IllegalArgumentException("Wrong package header type!");
+        }
+
+        final PackageData_v1_4_0 packageData = (PackageData_v1_4_0) header;
+
+        if (!hasValidSizes(secret, packageData)) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        final Contents contents = new Contents();
+        contents.header = packageData;
+
+        if (packageData.hasPassword) {
+            if (!isCorrectPassword(password, packageData)) {
+                throw new SecurityException("Invalid password!");
+            }
+
+            contents.key = PackageFunctions.generateKey(password.getBytes(StandardCharsets.US_ASCII), packageData.salt, HandlerFunctions.PBKDF2_ITERATIONS);
+        }
+
+        final byte[] table = extractTable(secret, packageData);
+
+        if (!Arrays.equals(MessageDigest.getInstance("MD5").digest(table), packageData.tableHash)) {
+            throw new IllegalArgumentException("Chunk table is corrupted!");
+        }
+
+        final int publicSize = packageData.chunkCount * CHUNK_HASH_LENGTH;
+        final byte[] storedPrivate = PackageFunctions.getSubarray(table, -1, publicSize);
+        final byte[] privateTable;
+
+        if (packageData.hasPassword) {
+            privateTable = PackageFunctions.decrypt(storedPrivate, contents.key, PackageFunctions.createIV(packageData.initVector));
+        } else {
+            privateTable = storedPrivate;
+        }
+
+        int seek = 0;
+        final int fileNameSize = PackageFunctions.intFromBytes(PackageFunctions.getSubarray(privateTable, PAYLOAD_FILENAME_SIZE, seek));
+        seek += PAYLOAD_FILENAME_SIZE;
+
+        if (fileNameSize < 0 || fileNameSize + seek + PAYLOAD_MIMETYPE_SIZE > privateTable.length) {
+            throw new IllegalArgumentException("Illegal file name size in chunk table!");
+        }
+
+        contents.fileName = new String(PackageFunctions.getSubarray(privateTable, fileNameSize, seek), StandardCharsets.US_ASCII);
+        seek += fileNameSize;
+
+        final int mimeTypeSize = PackageFunctions.intFromBytes(PackageFunctions.getSubarray(privateTable, PAYLOAD_MIMETYPE_SIZE, seek));
+        seek += PAYLOAD_MIMETYPE_SIZE;
+
+        if (mimeTypeSize < 0 || mimeTypeSize + seek + PAYLOAD_FILE_SIZE > privateTable.length) {
+            throw new IllegalArgumentException("Illegal MIME type size in chunk table!");
+        }
+
+        contents.mimeType = new String(PackageFunctions.getSubarray(privateTable, mimeTypeSize, seek), StandardCharsets.US_ASCII);
+        seek += mimeTypeSize;
+
+        contents.fileSize = PackageFunctions.intFromBytes(PackageFunctions.getSubarray(privateTable, PAYLOAD_FILE_SIZE, seek));
+        seek += PAYLOAD_FILE_SIZE;
+
+        if (contents.fileSize < 0 || chunkCount(contents.fileSize) != packageData.chunkCount
+                || seek + (long) packageData.chunkCount * CHUNK_HASH_LENGTH != privateTable.length) {
+            throw new IllegalArgumentException("Illegal file size in chunk table!");
+        }
+
+        contents.plainHashes = new byte[packageData.chunkCount][];
+        contents.slotHashes = new byte[packageData.chunkCount][];
+
+        for (int i = 0; i < packageData.chunkCount; i++) {
+            contents.plainHashes[i] = PackageFunctions.getSubarray(privateTable, CHUNK_HASH_LENGTH, seek + i * CHUNK_HASH_LENGTH);
+            contents.slotHashes[i] = PackageFunctions.getSubarray(table, CHUNK_HASH_LENGTH, i * CHUNK_HASH_LENGTH);
+        }
+
+        return contents;
+    }
+
+    /**
+     * Reads, checks and decrypts one chunk.
+     *
+     * @param secret image containing secret data
+     * @param contents chunk table and key
+     * @param index chunk index
+     * @return chunk bytes
+     * @throws IOException if the chunk doesn't match its hash in the chunk table
+     */
+    private static byte[] readChunk(final ImageData secret, final Contents contents, final int index) throws NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, IOException {
+        final PackageData_v1_4_0 packageData = contents.header;
+        final int chunkSize = Math.min(CHUNK_SIZE, contents.fileSize - index * CHUNK_SIZE);
+        final int offset = packageData.dataOffset + index * slotSize(packageData.hasPassword);
+        final byte[] slot = PackageFunctions.extractBytes(secret.pixels, storedSize(packageData.hasPassword, chunkSize), offset);
+
+        if (!Arrays.equals(MessageDigest.getInstance("MD5").digest(slot), contents.slotHashes[index])) {
+            throw new IOException("Chunk " + index + " is corrupted!");
+        }
+
+        if (!packageData.hasPassword) {
+            return slot;
+        }
+
+        final byte[] initVector = PackageFunctions.getSubarray(slot, INIT_VECTOR_LENGTH, 0);
+        final byte[] encrypted = PackageFunctions.getSubarray(slot, -1, INIT_VECTOR_LENGTH);
+
+        return PackageFunctions.decrypt(encrypted, contents.key, PackageFunctions.createIV(initVector));
+    }
+
+    /**
+     * Writes the file from the given chunk onward, then the chunk table and the package header. A chunk is
+     * only written if its hash differs from the one in the chunk table, so unchanged chunks cost nothing but
+     * the hash. Nothing is written if the file doesn't fit.
+     *
+     * @param secret image to write to (will be modified)
+     * @param contents current chunk table and key
+     * @param tail file bytes from the start of chunk <code>firstChunk</code> to the end of the file
+     * @param firstChunk index of the first chunk in <code>tail</code>
+     * @return updated package header
+     */
+    private static PackageData_v1_4_0 writeChunks(final ImageData secret, final Contents contents, final byte[] tail, final int firstChunk) throws NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        final PackageData_v1_4_0 oldHeader = contents.header;
+        final long fileSize = (long) firstChunk * CHUNK_SIZE + tail.length;
+
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new SizeLimitExceededException("Secret package is larger than image!");
+        }
+
+        final int chunkCount = chunkCount((int) fileSize);
+        final int slotSize = slotSize(oldHeader.hasPassword);
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+
+        final byte[][] plainHashes = Arrays.copyOf(contents.plainHashes, chunkCount);
+        final byte[][] slotHashes = Arrays.copyOf(contents.slotHashes, chunkCount);
+        final boolean[] changed = new boolean[chunkCount];
+
+        for (int i = firstChunk; i < chunkCount; i++) {
+            final int start = (i - firstChunk) * CHUNK_SIZE;
+            md5.update(tail, start, Math.min(CHUNK_SIZE, tail.length - start));
+
+            final byte[] plainHash = md5.digest();
+            changed[i] = i >= contents.plainHashes.length || !Arrays.equals(plainHash, contents.plainHashes[i]);
+            plainHashes[i] = plainHash;
+        }
+
+        final ArrayList<byte[]> privateFields = new ArrayList<byte[]>();
+        final byte[] fileName = contents.fileName.getBytes(StandardCharsets.US_ASCII);
+        final byte[] mimeType = contents.mimeType.getBytes(StandardCharsets.US_ASCII);
+
+        privateFields.add(PackageFunctions.intToBytes(fileName.length));
+        privateFields.add(fileName);
+        privateFields.add(PackageFunctions.intToBytes(mimeType.length));
+        privateFields.add(mimeType);
+        privateFields.add(PackageFunctions.intToBytes((int) fileSize));
+        privateFields.addAll(Arrays.asList(plainHashes));
+
+        final PackageData_v1_4_0 header = new PackageData_v1_4_0();
+        header.cryptopixVersionCode = oldHeader.cryptopixVersionCode;
+        header.hasPassword = oldHeader.hasPassword;
+        header.chunkCount = chunkCount;
+        header.salt = oldHeader.salt;
+        header.passwordHash = oldHeader.passwordHash;
+        header.dataOffset = oldHeader.dataOffset;
+
+        final byte[] privateTable;
+
+        if (header.hasPassword) {
+            // The table is rewritten as a whole, so it gets a new initialization vector every time
+            final IvParameterSpec ivSpec = PackageFunctions.generateIV(INIT_VECTOR_LENGTH);
+            header.initVector = ivSpec.getIV();
+            privateTable = PackageFunctions.encrypt(PackageFunctions.packSequentialBinaryFields(privateFields), contents.key, ivSpec);
+        } else {
+            privateTable = PackageFunctions.packSequentialBinaryFields(privateFields);
+        }
+
+        final long slotsSize = (chunkCount == 0) ? 0 : (long) (chunkCount - 1) * slotSize + storedSize(header.hasPassword, (int) (fileSize - (long) (chunkCount - 1) * CHUNK_SIZE));
+        final long payloadSize = slotsSize + (long) chunkCount * CHUNK_HASH_LENGTH + privateTable.length;
+
+        if (header.dataOffset + payloadSize > secret.pixels.length) {
+            throw new SizeLimitExceededException("Secret package is larger than image!");
+        }
+
+        header.payloadSize = (int) payloadSize;
+        header.privateTableSize = privateTable.length;
+
+        int written = 0;
+
+        for (int i = firstChunk; i < chunkCount; i++) {
+            if (!changed[i]) {
+                continue;
+            }
+
+            final int start = (i - firstChunk) * CHUNK_SIZE;
+            final byte[] chunk = Arrays.copyOfRange(tail, start, Math.min(start + CHUNK_SIZE, tail.length));
+
+            final byte[] slot;
+
+            if (header.hasPassword) {
+                final IvParameterSpec ivSpec = PackageFunctions.generateIV(INIT_VECTOR_LENGTH);
+                final byte[] encrypted = PackageFunctions.encrypt(chunk, contents.key, ivSpec);
+
+                slot = new byte[INIT_VECTOR_LENGTH + encrypted.length];
+                System.arraycopy(ivSpec.getIV(), 0, slot, 0, INIT_VECTOR_LENGTH);
+                System.arraycopy(encrypted, 0, slot, INIT_VECTOR_LENGTH, encrypted.length);
+            } else {
+                slot = chunk;
+            }
+
+            slotHashes[i] = md5.digest(slot);
+            PackageFunctions.writeBytes(secret.pixels, slot, header.dataOffset + i * slotSize);
+            written++;
+        }
+
+        final ArrayList<byte[]> tableFields = new ArrayList<byte[]>(Arrays.asList(slotHashes));
+        tableFields.add(privateTable);
+
+        final byte[] table = PackageFunctions.packSequentialBinaryFields(tableFields);
+        header.tableHash = md5.digest(table);
+
+        PackageFunctions.writeBytes(secret.pixels, table, header.dataOffset + (int) slotsSize);
+        PackageFunctions.writeBytes(secret.pixels, headerBytes(header), 0);
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            Trace.log(TraceLevel.TRACE, TAG, "Chunks written", written + " of " + chunkCount);
+            Trace.log(TraceLevel.TRACE, TAG, "Table hash", Trace.hex(header.tableHash));
+        }
+
+        contents.header = header;
+        contents.fileSize = (int) fileSize;
+        contents.plainHashes = plainHashes;
+        contents.slotHashes = slotHashes;
+
+        return header;
+    }
+
+    /**
+     * Checks that the chunk slots and the chunk table described by a package header fit in the image.
+     */
+    private static boolean hasValidSizes(final ImageData secret, final PackageData_v1_4_0 header) {
+        if (header.chunkCount < 0 || header.privateTableSize < 0 || header.payloadSize < 0) {
+            return false;
+        }
+
+        if ((long) header.dataOffset + header.payloadSize > secret.pixels.length) {
+            return false;
+        }
+
+        final long tableSize = (long) header.chunkCount * CHUNK_HASH_LENGTH + header.privateTableSize;
+
+        if (header.chunkCount == 0) {
+            return tableSize == header.payloadSize;
+        }
+
+        final long lastSlotSize = header.payloadSize - tableSize - (long) (header.chunkCount - 1) * slotSize(header.hasPassword);
+
+        return lastSlotSize >= storedSize(header.hasPassword, 1) && lastSlotSize <= slotSize(header.hasPassword);
+    }
+
+    /**
+     * Returns the size of the last slot, which is only as large as the last chunk. The header must have valid sizes.
+     */
+    private static int lastSlotSize(final PackageData_v1_4_0 header) {
+        final int tableSize = header.chunkCount * CHUNK_HASH_LENGTH + header.privateTableSize;
+
+        return header.payloadSize - tableSize - (header.chunkCount - 1) * slotSize(header.hasPassword);
+    }
+
+    /**
+     * Extracts the stored chunk table: the slot hashes, followed by the private part. The header must have
+     * valid sizes.
+     */
+    private static byte[] extractTable(final ImageData secret, final PackageData_v1_4_0 header) {
+        final int tableSize = header.chunkCount * CHUNK_HASH_LENGTH + header.privateTableSize;
+
+        return PackageFunctions.extractBytes(secret.pixels, tableSize, header.dataOffset + header.payloadSize - tableSize);
+    }
+
+    /**
+     * Returns the number of chunks needed for a file.
+     */
+    private static int chunkCount(final int fileSize) {
+        return (int) (((long) fileSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    /**
+     * Returns the size of a full chunk slot.
+     */
+    private static int slotSize(final boolean hasPassword) {
+        return storedSize(hasPassword, CHUNK_SIZE);
+    }
+
+    /**
+     * Returns the stored size of a chunk. An encrypted chunk is stored with its initialization vector and up
+     * to one block of PKCS5 padding.
+     */
+    private static int storedSize(final boolean hasPassword, final int chunkSize) {
+        return hasPassword ? INIT_VECTOR_LENGTH + encryptedSize(chunkSize) : chunkSize;
+    }
+
+    /**
+     * Returns the size of an encrypted chunk (AES with PKCS5 padding always adds 1 to 16 bytes).
+     */
+    private static int encryptedSize(final int chunkSize) {
+        return (chunkSize / 16 + 1) * 16;
+    }
+
+    /**
+     * Packs the fields of a package header. The header size only depends on whether there is a password.
+     *
+     * @param header package header
+     * @return package header bytes
+     */
+    private static byte[] headerBytes(final PackageData_v1_4_0 header) {
+        final byte flags = (byte) (header.hasPassword ? 1 : 0);
+
+        final ArrayList<byte[]> packageFields = new ArrayList<byte[]>();
+        packageFields.add(PackageFunctions.longToBytes(header.cryptopixVersionCode));
+        packageFields.add(header.tableHash);
+        packageFields.add(PackageFunctions.intToBytes(header.payloadSize));
+        packageFields.add(new byte[] {flags});
+        packageFields.add(PackageFunctions.intToBytes(header.chunkCount));
+        packageFields.add(PackageFunctions.intToBytes(header.privateTableSize));
+
+        if (header.hasPassword) {
+            packageFields.add(header.salt);
+            packageFields.add(header.initVector);
+            packageFields.add(header.passwordHash);
+        }
+
+        return PackageFunctions.packSequentialBinaryFields(packageFields);
+    }
+
+    /**
+     * Writes the fields of a package header to the trace sink. Callers should check that
+     * {@link TraceLevel#TRACE} is enabled first.
+     *
+     * @param label label for the header dump
+     * @param secret image containing the header
+     * @param header extracted package header
+     */
+    private static void traceHeader(final String label, final ImageData secret, final PackageData_v1_4_0 header) {
+        Trace.log(TraceLevel.TRACE, TAG, label, Trace.hex(secret.pixels, header.dataOffset, 0));
+        Trace.log(TraceLevel.TRACE, TAG, "Chunks", header.chunkCount);
+        Trace.log(TraceLevel.TRACE, TAG, "Table hash", Trace.hex(header.tableHash));
+    }
+}
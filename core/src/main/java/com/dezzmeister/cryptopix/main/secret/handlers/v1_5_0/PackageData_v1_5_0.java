@@ -0,0 +1,94 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_5_0;
+
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+
+/**
+ * Header data about a secret file scattered over an image. The secret file will contain its own header.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageData_v1_5_0 implements PackageHeader {
+
+    /**
+     * A Cryptopix version code
+     */
+    public long cryptopixVersionCode = -1;
+
+    /**
+     * MD5 payload hash, of the payload bytes in order (not in pixel order)
+     */
+    public byte[] payloadHash = null;
+
+    /**
+     * Size of the payload, in bytes (including the payload header)
+     */
+    public int payloadSize = -1;
+
+    /**
+     * True if the file is encrypted with a password
+     */
+    public boolean hasPassword = false;
+
+    /**
+     * True if the data is compressed. Data can be compressed before encryption.
+     */
+    public boolean compressed = false;
+
+    /**
+     * Number of pixels in the carrier the payload was scattered over
+     */
+    public int imageSize = -1;
+
+    /**
+     * Random key of the permutation that scatters the payload
+     */
+    public byte[] scatterKey = null;
+
+    /**
+     * Salt (only exists if there is a password)
+     */
+    public byte[] salt = null;
+
+    /**
+     * 16-byte initialization vector (only exists if there is a password)
+     */
+    public byte[] initVector = null;
+
+    /**
+     * SHA-256 password hash (only exists if there is a password)
+     */
+    public byte[] passwordHash = null;
+
+    /**
+     * The first pixel that can hold payload data. The payload is scattered over this pixel and every pixel
+     * after it
+     */
+    public int dataOffset = -1;
+
+    @Override
+    public boolean isPasswordProtected() {
+        return hasPassword;
+    }
+
+    @Override
+    public int headerSize() {
+        return dataOffset;
+    }
+
+    @Override
+    public byte[] payloadHash() {
+        return payloadHash;
+    }
+
+    @Override
+    public int payloadSize() {
+        return payloadSize;
+    }
+
+    @Override
+    public int packageSize() {
+        // The payload may be anywhere in the image
+        return imageSize;
+    }
+}
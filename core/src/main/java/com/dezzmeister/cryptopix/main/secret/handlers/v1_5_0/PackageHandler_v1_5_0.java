@@ -0,0 +1,562 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_5_0;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.FeistelPermutation;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.PayloadMetadata;
+import com.dezzmeister.cryptopix.main.secret.ScatteredHandler;
+import com.dezzmeister.cryptopix.main.secret.Workers;
+import com.dezzmeister.cryptopix.main.secret.handlers.HandlerFunctions;
+import com.dezzmeister.cryptopix.main.secret.handlers.v1_0_0.LazyPayload_v1_0_0;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
+
+/**
+ * Package handler for files generated with Cryptopix 1.5.0. The package header and payload are laid out as
+ * in 1.0.0, with the carrier size and a random scatter key added to the header. The header is written to the
+ * leading pixels, but the payload is scattered over the rest of the carrier: it is split into blocks of
+ * {@link PackageFunctions#SCATTER_BLOCK_SIZE} bytes, and the blocks are placed by a {@link FeistelPermutation}
+ * of the pixel blocks after the header, keyed with the scatter key. Changes are spread over the whole carrier
+ * instead of filling the top rows.
+ *
+ * The scatter key is stored in the clear, because the payload has to be found to check its hash without a
+ * password. Scattering hides where the payload is changed, not what it holds; that is left to encryption.
+ * 1 byte of package data corresponds to 1 pixel.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageHandler_v1_5_0 implements ScatteredHandler {
+
+    /**
+     * Cryptopix version code length (8-byte field). The version code should be
+     * {@link com.dezzmeister.cryptopix.main.secret.Versions#VERSION_1_5_0 Versions.VERSION_1_5_0}.
+     */
+    private static final int VERSION_CODE_LENGTH = 8;
+
+    /**
+     * Number of bytes in the payload hash (128 bit MD5)
+     */
+    private static final int PAYLOAD_HASH_LENGTH = 16;
+
+    /**
+     * Number of bytes in the payload (4-byte field)
+     */
+    private static final int PAYLOAD_SIZE_LENGTH = 4;
+
+    /**
+     * Number of bytes determining various boolean values (1-byte field)
+     *
+     * The bits of this field determine the following values (starting from least significant):
+     * <li>
+     *     <ol>Whether a password is present</ol>
+     *     <ol>Whether the data is compressed</ol>
+     * </li>
+     */
+    private static final int BOOLEAN_FLAGS_LENGTH = 1;
+
+    /**
+     * Number of pixels in the carrier (4-byte field). The payload is scattered over the whole carrier, so
+     * it can only be found in an image of the same size.
+     */
+    private static final int IMAGE_SIZE_LENGTH = 4;
+
+    /**
+     * Number of bytes in the scatter key (16-byte field)
+     */
+    private static final int SCATTER_KEY_LENGTH = FeistelPermutation.KEY_LENGTH;
+
+    /**
+     * Number of bytes in the optional salt (32-byte field)
+     */
+    private static final int SALT_LENGTH = 32;
+
+    /**
+     * Number of bytes in the optional initialization vector (16-byte field)
+     */
+    private static final int INIT_VECTOR_LENGTH = 16;
+
+    /**
+     * Number of bytes in the optional password hash (32-byte SHA-256 field)
+     */
+    private static final int HASH_LENGTH = 32;
+
+    /**
+     * Minimum byte-length of a package header, if no password is used (not a binary field)
+     */
+    private static final int MIN_PACKAGE_HEADER_LENGTH = VERSION_CODE_LENGTH + PAYLOAD_HASH_LENGTH + PAYLOAD_SIZE_LENGTH + BOOLEAN_FLAGS_LENGTH + IMAGE_SIZE_LENGTH + SCATTER_KEY_LENGTH;
+
+    /**
+     * Maximum byte-length of a package header, if a password is used (not a binary field)
+     */
+    private static final int MAX_PACKAGE_HEADER_LENGTH = MIN_PACKAGE_HEADER_LENGTH + SALT_LENGTH + INIT_VECTOR_LENGTH + HASH_LENGTH;
+
+    /**
+     * Smallest range of payload bytes scattered or gathered by one thread (not a binary field). Smaller
+     * payloads are handled on the calling thread.
+     */
+    private static final int MIN_RANGE_SIZE = 1 << 16;
+
+    /**
+     * Trace tag (not a binary field)
+     */
+    private static final String TAG = "PackageHandler_v1_5_0";
+
+    @Override
+    public EncodedImageState getImageState(final ImageData secret, final PackageHeader header) {
+        final PackageData_v1_5_0 packageHeader;
+
+        if (!(header instanceof PackageData_v1_5_0)) {
+            packageHeader = (PackageData_v1_5_0) extractHeader(secret);
+        } else {
+            packageHeader = (PackageData_v1_5_0) header;
+        }
+
+        if (!fits(secret, packageHeader)) {
+            return EncodedImageState.CORRUPTED;
+        }
+
+        final byte[] data;
+
+        try {
+            data = gather(secret, packageHeader);
+        } catch (IOException e) {
+            e.printStackTrace();
+
+            return EncodedImageState.UNSUPPORTED;
+        }
+
+        return HandlerFunctions.md5State(data, packageHeader);
+    }
+
+    @Override
+    public boolean isPasswordProtected(final ImageData secret, final PackageHeader data) {
+        if (data != null) {
+            return data.isPasswordProtected();
+        }
+
+        return extractHeader(secret).isPasswordProtected();
+    }
+
+    @Override
+    public boolean isCorrectPassword(final String password, final PackageHeader data) throws NoSuchAlgorithmException {
+        if ((!(data instanceof PackageData_v1_5_0)) || (!data.isPasswordProtected()) || password == null) {
+            return false;
+        }
+
+        final PackageData_v1_5_0 header = (PackageData_v1_5_0) data;
+
+        return PackageFunctions.isCorrectPassword(password.getBytes(StandardCharsets.US_ASCII), header.salt, header.passwordHash);
+    }
+
+    @Override
+    public PackageHeader extractHeader(final ImageData secret) {
+        final int[] pixels = secret.pixels;
+
+        if (pixels.length < MIN_PACKAGE_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Image is too small!");
+        }
+
+        final PackageData_v1_5_0 data = new PackageData_v1_5_0();
+        data.cryptopixVersionCode = PackageFunctions.versionCode(secret);
+
+        int seek = VERSION_CODE_LENGTH;
+        data.payloadHash = PackageFunctions.extractBytes(pixels, PAYLOAD_HASH_LENGTH, seek);
+
+        seek += PAYLOAD_HASH_LENGTH;
+        data.payloadSize = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, PAYLOAD_SIZE_LENGTH, seek));
+
+        seek += PAYLOAD_SIZE_LENGTH;
+        final int flags = ((int) PackageFunctions.extractBytes(pixels, BOOLEAN_FLAGS_LENGTH, seek)[0]) & 0xFF;
+        data.hasPassword = (flags & 0x01) == 1;
+        data.compressed = ((flags & 0x02) >>> 1) == 1;
+
+        seek += BOOLEAN_FLAGS_LENGTH;
+        data.imageSize = PackageFunctions.intFromBytes(PackageFunctions.extractBytes(pixels, IMAGE_SIZE_LENGTH, seek));
+
+        seek += IMAGE_SIZE_LENGTH;
+        data.scatterKey = PackageFunctions.extractBytes(pixels, SCATTER_KEY_LENGTH, seek);
+
+        seek += SCATTER_KEY_LENGTH;
+
+        if (data.hasPassword) {
+            if (pixels.length < MAX_PACKAGE_HEADER_LENGTH) {
+                throw new IllegalArgumentException("Image is too small!");
+            }
+
+            data.salt = PackageFunctions.extractBytes(pixels, SALT_LENGTH, seek);
+
+            seek += SALT_LENGTH;
+            data.initVector = PackageFunctions.extractBytes(pixels, INIT_VECTOR_LENGTH, seek);
+
+            seek += INIT_VECTOR_LENGTH;
+            data.passwordHash = PackageFunctions.extractBytes(pixels, HASH_LENGTH, seek);
+
+            seek += HASH_LENGTH;
+        }
+
+        data.dataOffset = seek;
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Extracted header", secret, data);
+        }
+
+        return data;
+    }
+
+    @Override
+    public int maxHeaderSize() {
+        return MAX_PACKAGE_HEADER_LENGTH;
+    }
+
+    @Override
+    public int payloadPixel(final PackageHeader header, final int index) {
+        final PackageData_v1_5_0 packageData = packageData(header);
+
+        if (index < 0 || index >= packageData.payloadSize || packageData.payloadSize > capacity(packageData.imageSize, packageData.dataOffset)) {
+            throw new IllegalArgumentException("Index is outside of the payload!");
+        }
+
+        final int block = permutation(packageData).permute(index / PackageFunctions.SCATTER_BLOCK_SIZE);
+
+        return packageData.dataOffset + block * PackageFunctions.SCATTER_BLOCK_SIZE + index % PackageFunctions.SCATTER_BLOCK_SIZE;
+    }
+
+    @Override
+    public ImageData encodeSecret(final ImageData original, final Payload secretData, final EncodingOptions options) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        /**
+         * 1. Compress data (if compression option specified)
+         * 2. Encrypt data (if password supplied)
+         * 3. Generate the package header with a new scatter key, and write it to the leading pixels
+         * 4. Scatter the payload over the pixels after the header
+         */
+        byte[] fileData = secretData.data();
+
+        if (options.compress) {
+            fileData = PackageFunctions.compress(fileData);
+        }
+
+        final List<byte[]> payloadFields = Arrays.asList(HandlerFunctions.payloadHeader(secretData), fileData);
+
+        final PackageData_v1_5_0 header = new PackageData_v1_5_0();
+        header.cryptopixVersionCode = options.versionCode;
+        header.hasPassword = options.password != null;
+        header.compressed = options.compress;
+        header.scatterKey = new byte[SCATTER_KEY_LENGTH];
+        header.imageSize = original.pixels.length;
+
+        new SecureRandom().nextBytes(header.scatterKey);
+
+        final byte[] payload;
+
+        if (options.password != null) {
+            final byte[] password = options.password.getBytes(StandardCharsets.US_ASCII);
+
+            header.salt = PackageFunctions.generateSalt();
+            header.passwordHash = PackageFunctions.saltAndHashPassword(header.salt, password);
+
+            final IvParameterSpec ivSpec = PackageFunctions.generateIV(INIT_VECTOR_LENGTH);
+            final SecretKeySpec keySpec = PackageFunctions.generateKey(password, header.salt, HandlerFunctions.PBKDF2_ITERATIONS);
+            header.initVector = ivSpec.getIV();
+
+            payload = PackageFunctions.encrypt(PackageFunctions.packSequentialBinaryFields(payloadFields), keySpec, ivSpec);
+        } else {
+            payload = PackageFunctions.packSequentialBinaryFields(payloadFields);
+        }
+
+        header.payloadHash = MessageDigest.getInstance("MD5").digest(payload);
+        header.payloadSize = payload.length;
+
+        final byte[] headerBytes = headerBytes(header);
+        header.dataOffset = headerBytes.length;
+
+        if (payload.length > capacity(original.pixels.length, headerBytes.length)) {
+            throw new SizeLimitExceededException("Secret package is larger than image!");
+        }
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            Trace.log(TraceLevel.TRACE, TAG, "Encoded header", Trace.hex(headerBytes));
+            Trace.log(TraceLevel.TRACE, TAG, "Payload hash", Trace.hex(header.payloadHash));
+        }
+
+        final int[] out = new int[original.pixels.length];
+        System.arraycopy(original.pixels, 0, out, 0, out.length);
+
+        final ImageData encoded = new ImageData(out, original.width, original.height);
+
+        PackageFunctions.writeBytes(out, headerBytes, 0);
+        scatter(encoded, header, payload);
+
+        return encoded;
+    }
+
+    @Override
+    public Payload decode(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        final PackageData_v1_5_0 packageData = packageData(header);
+
+        if (!fits(secret, packageData)) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Decoding header", secret, packageData);
+        }
+
+        final byte[] unencryptedPayload;
+
+        if (packageData.hasPassword) {
+            final SecretKeySpec keySpec = HandlerFunctions.passwordKey(this, packageData, password, packageData.salt);
+            unencryptedPayload = PackageFunctions.decrypt(gather(secret, packageData), keySpec, PackageFunctions.createIV(packageData.initVector));
+        } else {
+            unencryptedPayload = gather(secret, packageData);
+        }
+
+        return HandlerFunctions.readPayload(unencryptedPayload, packageData.compressed);
+    }
+
+    @Override
+    public PayloadMetadata peekMetadata(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        return lazyPayload(secret, header, password).metadata();
+    }
+
+    @Override
+    public Payload openPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        return lazyPayload(secret, header, password);
+    }
+
+    @Override
+    public Payload getEmptyPayload() {
+        return HandlerFunctions.emptyPayload();
+    }
+
+    private static PackageData_v1_5_0 packageData(final PackageHeader header) {
+        if (header instanceof PackageData_v1_5_0) {
+            return (PackageData_v1_5_0) header;
+        } else {
+            throw new IllegalArgumentException("Wrong package header type!");
+        }
+    }
+
+    /**
+     * Checks the password and opens the payload, reading only the payload header.
+     */
+    private LazyPayload_v1_0_0 lazyPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        final PackageData_v1_5_0 packageData = packageData(header);
+
+        if (!fits(secret, packageData)) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        final SecretKeySpec keySpec = packageData.hasPassword ? HandlerFunctions.passwordKey(this, packageData, password, packageData.salt) : null;
+        final FeistelPermutation permutation = permutation(packageData);
+
+        // Only the blocks holding the requested bytes are located; the rest of the payload is never gathered
+        final PackageFunctions.ByteSource stored = new PackageFunctions.ByteSource() {
+            @Override
+            public byte[] read(final int from, final int length) {
+                final byte[] out = new byte[length];
+                int i = from;
+
+                while (i < from + length) {
+                    final int block = i / PackageFunctions.SCATTER_BLOCK_SIZE;
+                    final int end = Math.min(from + length, (block + 1) * PackageFunctions.SCATTER_BLOCK_SIZE);
+                    final int pixel = packageData.dataOffset + permutation.permute(block) * PackageFunctions.SCATTER_BLOCK_SIZE + i % PackageFunctions.SCATTER_BLOCK_SIZE;
+
+                    System.arraycopy(PackageFunctions.extractBytes(secret.pixels, end - i, pixel), 0, out, i - from, end - i);
+                    i = end;
+                }
+
+                return out;
+            }
+        };
+
+        return HandlerFunctions.openPayload(stored, packageData, keySpec, packageData.initVector, packageData.compressed);
+    }
+
+    /**
+     * Returns the number of payload bytes that can be scattered over an image: one per pixel, in whole
+     * blocks after the package header.
+     *
+     * @param imageSize number of pixels in the image
+     * @param headerSize number of pixels in the package header
+     * @return capacity in bytes
+     */
+    private static int capacity(final int imageSize, final int headerSize) {
+        final int blocks = Math.max(0, imageSize - headerSize) / PackageFunctions.SCATTER_BLOCK_SIZE;
+
+        return blocks * PackageFunctions.SCATTER_BLOCK_SIZE;
+    }
+
+    /**
+     * Checks that an image is the one a payload was scattered over, and that the payload fits in it.
+     */
+    private static boolean fits(final ImageData secret, final PackageData_v1_5_0 header) {
+        return header.imageSize == secret.pixels.length && header.payloadSize >= 0 && header.payloadSize <= capacity(header.imageSize, header.dataOffset);
+    }
+
+    /**
+     * Returns the permutation of the pixel blocks after the package header.
+     */
+    private static FeistelPermutation permutation(final PackageData_v1_5_0 header) {
+        return new FeistelPermutation(header.scatterKey, capacity(header.imageSize, header.dataOffset) / PackageFunctions.SCATTER_BLOCK_SIZE);
+    }
+
+    /**
+     * Scatters the payload over the pixels after the package header. Large payloads are split into ranges
+     * that are written in parallel; the ranges touch disjoint pixels.
+     *
+     * @param secret image to write to (will be modified)
+     * @param header package header
+     * @param payload stored payload
+     */
+    private static void scatter(final ImageData secret, final PackageData_v1_5_0 header, final byte[] payload) throws IOException {
+        if (payload.length == 0) {
+            return;
+        }
+
+        final FeistelPermutation permutation = permutation(header);
+
+        runRanges(payload.length, new Range() {
+            @Override
+            public void run(final int from, final int to) {
+                PackageFunctions.writeBytes(secret.pixels, payload, from, to, header.dataOffset, permutation);
+            }
+        });
+    }
+
+    /**
+     * Gathers the scattered payload, in parallel for large payloads.
+     *
+     * @param secret image containing secret data
+     * @param header package header
+     * @return stored payload
+     */
+    private static byte[] gather(final ImageData secret, final PackageData_v1_5_0 header) throws IOException {
+        final byte[] payload = new byte[header.payloadSize];
+
+        if (payload.length == 0) {
+            return payload;
+        }
+
+        final FeistelPermutation permutation = permutation(header);
+
+        runRanges(payload.length, new Range() {
+            @Override
+            public void run(final int from, final int to) {
+                PackageFunctions.extractBytes(secret.pixels, payload, from, to, header.dataOffset, permutation);
+            }
+        });
+
+        return payload;
+    }
+
+    private interface Range {
+        void run(final int from, final int to);
+    }
+
+    /**
+     * Splits <code>[0, size)</code> into one range per processor (no smaller than {@link #MIN_RANGE_SIZE})
+     * and runs them on the shared {@link Workers#compute()} pool. Ranges start on block boundaries, so no two
+     * threads write to the same block. A single range runs on the calling thread.
+     *
+     * @param size number of bytes
+     * @param range work to do on each range
+     * @throws InterruptedIOException if the calling thread is interrupted while waiting for the ranges
+     */
+    private static void runRanges(final int size, final Range range) throws InterruptedIOException {
+        final int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), size / MIN_RANGE_SIZE));
+
+        if (threads == 1) {
+            range.run(0, size);
+            return;
+        }
+
+        final List<Runnable> tasks = new ArrayList<Runnable>(threads);
+        final int blockSize = PackageFunctions.SCATTER_BLOCK_SIZE;
+        final int rangeSize = ((size + threads - 1) / threads + blockSize - 1) / blockSize * blockSize;
+
+        for (int i = 0; i < threads; i++) {
+            final int from = Math.min(size, i * rangeSize);
+            final int to = Math.min(size, from + rangeSize);
+
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    range.run(from, to);
+                }
+            });
+        }
+
+        try {
+            Workers.runAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scattering or gathering the payload!");
+        }
+    }
+
+    /**
+     * Packs the fields of a package header.
+     *
+     * @param header package header
+     * @return package header bytes
+     */
+    private static byte[] headerBytes(final PackageData_v1_5_0 header) {
+        final int passwordFlag = header.hasPassword ? 1 : 0;
+        final int compressFlag = header.compressed ? 1 : 0;
+        final byte flags = (byte)(((compressFlag << 1) | passwordFlag) & 0xFF);
+
+        final ArrayList<byte[]> packageFields = new ArrayList<byte[]>();
+        packageFields.add(PackageFunctions.longToBytes(header.cryptopixVersionCode));
+        packageFields.add(header.payloadHash);
+        packageFields.add(PackageFunctions.intToBytes(header.payloadSize));
+        packageFields.add(new byte[] {flags});
+        packageFields.add(PackageFunctions.intToBytes(header.imageSize));
+        packageFields.add(header.scatterKey);
+
+        if (header.hasPassword) {
+            packageFields.add(header.salt);
+            packageFields.add(header.initVector);
+            packageFields.add(header.passwordHash);
+        }
+
+        return PackageFunctions.packSequentialBinaryFields(packageFields);
+    }
+
+    /**
+     * Writes the fields of a package header to the trace sink, with
+     * {@link HandlerFunctions#traceHeader(String, String, ImageData, PackageHeader, Object...)}.
+     *
+     * @param label label for the header dump
+     * @param secret image containing the header
+     * @param header extracted package header
+     */
+    private static void traceHeader(final String label, final ImageData secret, final PackageData_v1_5_0 header) {
+        HandlerFunctions.traceHeader(TAG, label, secret, header, "Scatter key", header.scatterKey);
+    }
+}
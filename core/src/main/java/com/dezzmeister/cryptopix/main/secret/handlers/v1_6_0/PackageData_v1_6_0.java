@@ -0,0 +1,88 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_6_0;
+
+import com.dezzmeister.cryptopix.main.secret.IntegrityHash;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+
+/**
+ * Header data about a secret file with a compact package header. The secret file will contain its own header.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageData_v1_6_0 implements PackageHeader {
+
+    /**
+     * A Cryptopix version code
+     */
+    public long cryptopixVersionCode = -1;
+
+    /**
+     * Hash used to check the payload
+     */
+    public IntegrityHash integrityHash = IntegrityHash.MD5;
+
+    /**
+     * Payload hash: an MD5 hash or a hash tree root, depending on {@link #integrityHash}
+     */
+    public byte[] payloadHash = null;
+
+    /**
+     * Size of the payload, in bytes (including the payload header)
+     */
+    public int payloadSize = -1;
+
+    /**
+     * True if the file is encrypted with a password
+     */
+    public boolean hasPassword = false;
+
+    /**
+     * True if the data is compressed. Data can be compressed before encryption.
+     */
+    public boolean compressed = false;
+
+    /**
+     * 16-byte salt (only exists if there is a password)
+     */
+    public byte[] salt = null;
+
+    /**
+     * 16-byte initialization vector (only exists if there is a password)
+     */
+    public byte[] initVector = null;
+
+    /**
+     * The first 16 bytes of the SHA-256 password hash (only exists if there is a password)
+     */
+    public byte[] passwordHash = null;
+
+    /**
+     * The pixel at which payload data begins
+     */
+    public int dataOffset = -1;
+
+    @Override
+    public boolean isPasswordProtected() {
+        return hasPassword;
+    }
+
+    @Override
+    public int headerSize() {
+        return dataOffset;
+    }
+
+    @Override
+    public byte[] payloadHash() {
+        return payloadHash;
+    }
+
+    @Override
+    public int payloadSize() {
+        return payloadSize;
+    }
+
+    @Override
+    public int packageSize() {
+        return dataOffset + payloadSize;
+    }
+}
@@ -0,0 +1,437 @@
+package com.dezzmeister.cryptopix.main.secret.handlers.v1_6_0;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.Crc32C;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.HashTree;
+import com.dezzmeister.cryptopix.main.secret.HashTreeHandler;
+import com.dezzmeister.cryptopix.main.secret.IntegrityHash;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.PayloadMetadata;
+import com.dezzmeister.cryptopix.main.secret.handlers.HandlerFunctions;
+import com.dezzmeister.cryptopix.main.secret.handlers.v1_0_0.LazyPayload_v1_0_0;
+import com.dezzmeister.cryptopix.main.trace.Trace;
+import com.dezzmeister.cryptopix.main.trace.TraceLevel;
+
+/**
+ * Package handler for files generated with Cryptopix 1.6.0. The payload is laid out as in 1.0.0, but the
+ * package header is compact: it starts with a 4-byte version code instead of 8, the payload size is a
+ * variable-length int (see {@link PackageFunctions#varintToBytes(int)}), and the salt and password hash
+ * are 16 bytes each. A CRC-32C of the header follows the header fields, so a header that was damaged (or
+ * that matched the version code by chance) is rejected without hashing the payload. The payload is checked
+ * with MD5 or with a {@link HashTree}, as chosen by {@link EncodingOptions#integrityHash}.
+ * 1 byte of package data corresponds to 1 pixel.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PackageHandler_v1_6_0 implements HashTreeHandler {
+
+    /**
+     * Compact Cryptopix version code length (4-byte field). The version code should be
+     * {@link com.dezzmeister.cryptopix.main.secret.Versions#VERSION_1_6_0 Versions.VERSION_1_6_0}.
+     */
+    private static final int VERSION_CODE_LENGTH = PackageFunctions.COMPACT_VERSION_CODE_LENGTH;
+
+    /**
+     * Number of bytes determining various boolean values (1-byte field)
+     *
+     * The bits of this field determine the following values (starting from least significant):
+     * <li>
+     *     <ol>Whether a password is present</ol>
+     *     <ol>Whether the data is compressed</ol>
+     *     <ol>Two bits: the {@link IntegrityHash#code} of the payload hash</ol>
+     * </li>
+     * The remaining bits are reserved and must be zero.
+     */
+    private static final int BOOLEAN_FLAGS_LENGTH = 1;
+
+    /**
+     * Maximum number of bytes in the payload size (varint field)
+     */
+    private static final int MAX_PAYLOAD_SIZE_LENGTH = 5;
+
+    /**
+     * Minimum number of bytes in the payload hash (a CRC-32C hash tree root). The length of the field is the
+     * {@link IntegrityHash#width} of the payload hash.
+     */
+    private static final int MIN_PAYLOAD_HASH_LENGTH = IntegrityHash.CRC32C_TREE.width;
+
+    /**
+     * Maximum number of bytes in the payload hash (128 bit MD5)
+     */
+    private static final int MAX_PAYLOAD_HASH_LENGTH = IntegrityHash.MD5.width;
+
+    /**
+     * Number of bytes in the optional salt (16-byte field)
+     */
+    private static final int SALT_LENGTH = 16;
+
+    /**
+     * Number of bytes in the optional initialization vector (16-byte field)
+     */
+    private static final int INIT_VECTOR_LENGTH = 16;
+
+    /**
+     * Number of bytes in the optional password hash (16-byte field, the start of a SHA-256 hash)
+     */
+    private static final int HASH_LENGTH = 16;
+
+    /**
+     * Number of bytes in the header checksum (4-byte CRC-32C field). The checksum covers every header field
+     * before it.
+     */
+    private static final int HEADER_CHECKSUM_LENGTH = 4;
+
+    /**
+     * Minimum byte-length of a package header, if no password is used (not a binary field)
+     */
+    private static final int MIN_PACKAGE_HEADER_LENGTH = VERSION_CODE_LENGTH + BOOLEAN_FLAGS_LENGTH + 1 + MIN_PAYLOAD_HASH_LENGTH + HEADER_CHECKSUM_LENGTH;
+
+    /**
+     * Maximum byte-length of a package header, if a password is used (not a binary field)
+     */
+    private static final int MAX_PACKAGE_HEADER_LENGTH = VERSION_CODE_LENGTH + BOOLEAN_FLAGS_LENGTH + MAX_PAYLOAD_SIZE_LENGTH + MAX_PAYLOAD_HASH_LENGTH + SALT_LENGTH + INIT_VECTOR_LENGTH + HASH_LENGTH + HEADER_CHECKSUM_LENGTH;
+
+    /**
+     * Trace tag (not a binary field)
+     */
+    private static final String TAG = "PackageHandler_v1_6_0";
+
+    @Override
+    public EncodedImageState getImageState(final ImageData secret, final PackageHeader header) {
+        final PackageData_v1_6_0 packageHeader;
+
+        if (!(header instanceof PackageData_v1_6_0)) {
+            try {
+                packageHeader = (PackageData_v1_6_0) extractHeader(secret);
+            } catch (IllegalArgumentException e) {
+                // The header checksum doesn't match, so the payload hash can't be trusted either
+                return EncodedImageState.CORRUPTED;
+            }
+        } else {
+            packageHeader = (PackageData_v1_6_0) header;
+        }
+
+        if ((long) packageHeader.dataOffset + packageHeader.payloadSize > secret.pixels.length) {
+            return EncodedImageState.CORRUPTED;
+        }
+
+        if (packageHeader.integrityHash.isTree()) {
+            return HandlerFunctions.imageState(hashTree(secret, packageHeader).matches(packageHeader.payloadHash), packageHeader);
+        }
+
+        return HandlerFunctions.md5State(PackageFunctions.extractBytes(secret.pixels, packageHeader.payloadSize, packageHeader.dataOffset), packageHeader);
+    }
+
+    @Override
+    public HashTree hashTree(final ImageData secret, final PackageHeader header) {
+        final PackageData_v1_6_0 packageData = packageData(header);
+
+        if (!packageData.integrityHash.isTree()) {
+            throw new IllegalArgumentException("Package is not checked with a hash tree!");
+        }
+
+        if ((long) packageData.dataOffset + packageData.payloadSize > secret.pixels.length) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        return new HashTree(packageData.integrityHash, HandlerFunctions.pixelSource(secret, packageData.dataOffset), packageData.payloadSize);
+    }
+
+    @Override
+    public boolean isPasswordProtected(final ImageData secret, final PackageHeader data) {
+        if (data != null) {
+            return data.isPasswordProtected();
+        }
+
+        return extractHeader(secret).isPasswordProtected();
+    }
+
+    @Override
+    public boolean isCorrectPassword(final String password, final PackageHeader data) throws NoSuchAlgorithmException {
+        if ((!(data instanceof PackageData_v1_6_0)) || (!data.isPasswordProtected()) || password == null) {
+            return false;
+        }
+
+        final PackageData_v1_6_0 header = (PackageData_v1_6_0) data;
+        final byte[] hash = PackageFunctions.saltAndHashPassword(header.salt, password.getBytes(StandardCharsets.US_ASCII));
+
+        return MessageDigest.isEqual(Arrays.copyOf(hash, HASH_LENGTH), header.passwordHash);
+    }
+
+    /**
+     * Extracts the package header and checks the header checksum.
+     *
+     * @throws IllegalArgumentException if the image is too small, or the header is malformed or fails its checksum
+     */
+    @Override
+    public PackageHeader extractHeader(final ImageData secret) {
+        final int[] pixels = secret.pixels;
+
+        if (pixels.length < MIN_PACKAGE_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Image is too small!");
+        }
+
+        // Every header field is within the first MAX_PACKAGE_HEADER_LENGTH pixels
+        final byte[] bytes = PackageFunctions.extractBytes(pixels, Math.min(pixels.length, MAX_PACKAGE_HEADER_LENGTH), 0);
+
+        final PackageData_v1_6_0 data = new PackageData_v1_6_0();
+        data.cryptopixVersionCode = PackageFunctions.intFromBytes(PackageFunctions.getSubarray(bytes, VERSION_CODE_LENGTH, 0)) & 0xFFFFFFFFL;
+
+        int seek = VERSION_CODE_LENGTH;
+        final int flags = bytes[seek] & 0xFF;
+        data.hasPassword = (flags & 0x01) == 1;
+        data.compressed = ((flags & 0x02) >>> 1) == 1;
+        data.integrityHash = IntegrityHash.fromCode((flags & 0x0C) >>> 2);
+
+        if ((flags & ~0x0F) != 0) {
+            throw new IllegalArgumentException("Unknown flags in package header!");
+        }
+
+        seek += BOOLEAN_FLAGS_LENGTH;
+        data.payloadSize = PackageFunctions.varintFromBytes(bytes, seek);
+
+        seek += PackageFunctions.varintSize(data.payloadSize);
+        final int length = seek + data.integrityHash.width + (data.hasPassword ? SALT_LENGTH + INIT_VECTOR_LENGTH + HASH_LENGTH : 0) + HEADER_CHECKSUM_LENGTH;
+
+        if (length > bytes.length) {
+            throw new IllegalArgumentException("Image is too small!");
+        }
+
+        data.payloadHash = PackageFunctions.getSubarray(bytes, data.integrityHash.width, seek);
+        seek += data.integrityHash.width;
+
+        if (data.hasPassword) {
+            data.salt = PackageFunctions.getSubarray(bytes, SALT_LENGTH, seek);
+
+            seek += SALT_LENGTH;
+            data.initVector = PackageFunctions.getSubarray(bytes, INIT_VECTOR_LENGTH, seek);
+
+            seek += INIT_VECTOR_LENGTH;
+            data.passwordHash = PackageFunctions.getSubarray(bytes, HASH_LENGTH, seek);
+
+            seek += HASH_LENGTH;
+        }
+
+        final Crc32C crc = new Crc32C();
+        crc.update(bytes, 0, seek);
+
+        final int checksum = PackageFunctions.intFromBytes(PackageFunctions.getSubarray(bytes, HEADER_CHECKSUM_LENGTH, seek));
+        seek += HEADER_CHECKSUM_LENGTH;
+
+        if (checksum != (int) crc.getValue()) {
+            throw new IllegalArgumentException("Package header checksum does not match!");
+        }
+
+        data.dataOffset = seek;
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Extracted header", secret, data);
+        }
+
+        return data;
+    }
+
+    @Override
+    public int maxHeaderSize() {
+        return MAX_PACKAGE_HEADER_LENGTH;
+    }
+
+    @Override
+    public ImageData encodeSecret(final ImageData original, final Payload secretData, final EncodingOptions options) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, SizeLimitExceededException {
+        /**
+         * 1. Compress data (if compression option specified)
+         * 2. Encrypt data (if password supplied)
+         * 3. Generate the package header and its checksum
+         * 4. Stuff the header and payload in the image
+         */
+        byte[] fileData = secretData.data();
+
+        if (options.compress) {
+            fileData = PackageFunctions.compress(fileData);
+        }
+
+        final List<byte[]> payloadFields = Arrays.asList(HandlerFunctions.payloadHeader(secretData), fileData);
+
+        final PackageData_v1_6_0 header = new PackageData_v1_6_0();
+        header.cryptopixVersionCode = options.versionCode;
+        header.hasPassword = options.password != null;
+        header.compressed = options.compress;
+
+        final byte[] payload;
+
+        if (options.password != null) {
+            final byte[] password = options.password.getBytes(StandardCharsets.US_ASCII);
+
+            header.salt = Arrays.copyOf(PackageFunctions.generateSalt(), SALT_LENGTH);
+            header.passwordHash = Arrays.copyOf(PackageFunctions.saltAndHashPassword(header.salt, password), HASH_LENGTH);
+
+            final IvParameterSpec ivSpec = PackageFunctions.generateIV(INIT_VECTOR_LENGTH);
+            final SecretKeySpec keySpec = PackageFunctions.generateKey(password, header.salt, HandlerFunctions.PBKDF2_ITERATIONS);
+            header.initVector = ivSpec.getIV();
+
+            payload = PackageFunctions.encrypt(PackageFunctions.packSequentialBinaryFields(payloadFields), keySpec, ivSpec);
+        } else {
+            payload = PackageFunctions.packSequentialBinaryFields(payloadFields);
+        }
+
+        header.integrityHash = options.integrityHash;
+
+        if (header.integrityHash.isTree()) {
+            header.payloadHash = HashTree.root(header.integrityHash, payload);
+        } else {
+            header.payloadHash = MessageDigest.getInstance("MD5").digest(payload);
+        }
+        header.payloadSize = payload.length;
+
+        final byte[] headerBytes = headerBytes(header);
+        header.dataOffset = headerBytes.length;
+
+        if ((long) headerBytes.length + payload.length > original.pixels.length) {
+            throw new SizeLimitExceededException("Secret package is larger than image!");
+        }
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            Trace.log(TraceLevel.TRACE, TAG, "Encoded header", Trace.hex(headerBytes));
+            Trace.log(TraceLevel.TRACE, TAG, "Payload hash", Trace.hex(header.payloadHash));
+        }
+
+        final int[] out = new int[original.pixels.length];
+        System.arraycopy(original.pixels, 0, out, 0, out.length);
+
+        PackageFunctions.writeBytes(out, headerBytes, 0);
+        PackageFunctions.writeBytes(out, payload, headerBytes.length);
+
+        return new ImageData(out, original.width, original.height);
+    }
+
+    @Override
+    public Payload decode(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        final PackageData_v1_6_0 packageData = packageData(header);
+
+        if ((long) packageData.dataOffset + packageData.payloadSize > secret.pixels.length) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        final byte[] rawPayload = PackageFunctions.extractBytes(secret.pixels, packageData.payloadSize, packageData.dataOffset);
+        final byte[] unencryptedPayload;
+
+        if (Trace.isEnabled(TraceLevel.TRACE)) {
+            traceHeader("Decoding header", secret, packageData);
+        }
+
+        if (packageData.hasPassword) {
+            unencryptedPayload = PackageFunctions.decrypt(rawPayload, HandlerFunctions.passwordKey(this, packageData, password, packageData.salt), PackageFunctions.createIV(packageData.initVector));
+        } else {
+            unencryptedPayload = rawPayload;
+        }
+
+        return HandlerFunctions.readPayload(unencryptedPayload, packageData.compressed);
+    }
+
+    @Override
+    public PayloadMetadata peekMetadata(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        return lazyPayload(secret, header, password).metadata();
+    }
+
+    @Override
+    public Payload openPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException, DataFormatException, IOException {
+        return lazyPayload(secret, header, password);
+    }
+
+    @Override
+    public Payload getEmptyPayload() {
+        return HandlerFunctions.emptyPayload();
+    }
+
+    private static PackageData_v1_6_0 packageData(final PackageHeader header) {
+        if (header instanceof PackageData_v1_6_0) {
+            return (PackageData_v1_6_0) header;
+        } else {
+            throw new IllegalArgumentException("Wrong package header type!");
+        }
+    }
+
+    /**
+     * Checks the password and opens the payload, reading only the payload header.
+     */
+    private LazyPayload_v1_0_0 lazyPayload(final ImageData secret, final PackageHeader header, final String password) throws NoSuchAlgorithmException, InvalidKeySpecException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, InvalidAlgorithmParameterException, NoSuchPaddingException {
+        final PackageData_v1_6_0 packageData = packageData(header);
+
+        if ((long) packageData.dataOffset + packageData.payloadSize > secret.pixels.length) {
+            throw new IllegalArgumentException("Image is too small to contain specified payload!");
+        }
+
+        final SecretKeySpec keySpec = packageData.hasPassword ? HandlerFunctions.passwordKey(this, packageData, password, packageData.salt) : null;
+
+        return HandlerFunctions.openPayload(HandlerFunctions.pixelSource(secret, packageData.dataOffset), packageData, keySpec, packageData.initVector, packageData.compressed);
+    }
+
+    /**
+     * Packs the fields of a package header, followed by their checksum.
+     *
+     * @param header package header
+     * @return package header bytes
+     */
+    private static byte[] headerBytes(final PackageData_v1_6_0 header) {
+        final int passwordFlag = header.hasPassword ? 1 : 0;
+        final int compressFlag = header.compressed ? 1 : 0;
+        final byte flags = (byte)(((header.integrityHash.code << 2) | (compressFlag << 1) | passwordFlag) & 0xFF);
+
+        final ArrayList<byte[]> packageFields = new ArrayList<byte[]>();
+        packageFields.add(PackageFunctions.intToBytes((int) header.cryptopixVersionCode));
+        packageFields.add(new byte[] {flags});
+        packageFields.add(PackageFunctions.varintToBytes(header.payloadSize));
+        packageFields.add(header.payloadHash);
+
+        if (header.hasPassword) {
+            packageFields.add(header.salt);
+            packageFields.add(header.initVector);
+            packageFields.add(header.passwordHash);
+        }
+
+        final byte[] fields = PackageFunctions.packSequentialBinaryFields(packageFields);
+
+        final Crc32C crc = new Crc32C();
+        crc.update(fields);
+
+        packageFields.add(PackageFunctions.intToBytes((int) crc.getValue()));
+
+        return PackageFunctions.packSequentialBinaryFields(packageFields);
+    }
+
+    /**
+     * Writes the fields of a package header to the trace sink, with
+     * {@link HandlerFunctions#traceHeader(String, String, ImageData, PackageHeader, Object...)}.
+     *
+     * @param label label for the header dump
+     * @param secret image containing the header
+     * @param header extracted package header
+     */
+    private static void traceHeader(final String label, final ImageData secret, final PackageData_v1_6_0 header) {
+        HandlerFunctions.traceHeader(TAG, label, secret, header, "Salt", header.salt, "IV", header.initVector, "Password hash", header.passwordHash);
+    }
+}
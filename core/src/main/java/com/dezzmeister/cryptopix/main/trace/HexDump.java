@@ -0,0 +1,82 @@
+package com.dezzmeister.cryptopix.main.trace;
+
+/**
+ * A lazily formatted hex dump. Nothing is formatted until {@link #toString()} is called, and at most
+ * {@link Trace#hexLimit()} bytes are ever formatted. The dump can be backed either by a byte array or by
+ * a range of pixels containing secret bytes, in which case the bytes are extracted as they are formatted.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class HexDump {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Source bytes, or null if this dump is backed by pixels
+     */
+    private final byte[] bytes;
+
+    /**
+     * Source pixels, or null if this dump is backed by bytes
+     */
+    private final int[] pixels;
+
+    /**
+     * First byte (or pixel) in the dump
+     */
+    private final int offset;
+
+    /**
+     * Number of bytes in the dump (not all of these will be formatted)
+     */
+    private final int length;
+
+    HexDump(final byte[] _bytes, final int[] _pixels, final int _offset, final int _length) {
+        bytes = _bytes;
+        pixels = _pixels;
+        offset = _offset;
+        length = _length;
+    }
+
+    /**
+     * Returns the byte at the given index in this dump.
+     *
+     * @param i index, relative to {@link #offset}
+     * @return byte value (0-255)
+     */
+    private int byteAt(final int i) {
+        if (bytes != null) {
+            return ((int) bytes[offset + i]) & 0xFF;
+        }
+
+        final int pixel = pixels[offset + i];
+
+        return (pixel & 0x00000003) |
+                ((pixel & 0x00000300) >>> 6) |
+                ((pixel & 0x00030000) >>> 12) |
+                ((pixel & 0x03000000) >>> 18);
+    }
+
+    @Override
+    public String toString() {
+        if (bytes == null && pixels == null) {
+            return "null";
+        }
+
+        final int shown = Math.min(length, Trace.hexLimit());
+        final StringBuilder sb = new StringBuilder(shown * 2 + 24);
+
+        for (int i = 0; i < shown; i++) {
+            final int value = byteAt(i);
+            sb.append(HEX_DIGITS[value >>> 4]);
+            sb.append(HEX_DIGITS[value & 0x0F]);
+        }
+
+        if (shown < length) {
+            sb.append("... (").append(length).append(" bytes)");
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,166 @@
+package com.dezzmeister.cryptopix.main.trace;
+
+import java.io.PrintStream;
+
+/**
+ * Lightweight, pluggable trace logging for the encoding/decoding code. Tracing is off by default, and
+ * when it is off the logging methods return after a single field read. Arguments are only converted to
+ * strings once a message passes the level check, so expensive dumps should be passed as lazy objects
+ * (see {@link #hex(byte[])}) rather than pre-formatted strings. Call sites that would still have to
+ * allocate or extract data just to build their arguments should be guarded with {@link #isEnabled(TraceLevel)}.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class Trace {
+
+    /**
+     * Default maximum number of bytes formatted in a hex dump
+     */
+    public static final int DEFAULT_HEX_LIMIT = 64;
+
+    /**
+     * Most verbose level that is currently enabled, or null if tracing is off
+     */
+    private static volatile TraceLevel level = null;
+
+    /**
+     * Where trace messages are written
+     */
+    private static volatile TraceSink sink = new PrintStreamSink(System.out);
+
+    /**
+     * Maximum number of bytes formatted in a hex dump
+     */
+    private static volatile int hexLimit = DEFAULT_HEX_LIMIT;
+
+    private Trace() {
+
+    }
+
+    /**
+     * Enables tracing up to and including the given level. Pass null to turn tracing off.
+     *
+     * @param _level most verbose level to enable, or null to disable tracing
+     */
+    public static void setLevel(final TraceLevel _level) {
+        level = _level;
+    }
+
+    /**
+     * Sets the sink that trace messages are written to.
+     *
+     * @param _sink trace sink (cannot be null)
+     */
+    public static void setSink(final TraceSink _sink) {
+        if (_sink == null) {
+            throw new IllegalArgumentException("Trace sink cannot be null!");
+        }
+
+        sink = _sink;
+    }
+
+    /**
+     * Sets the maximum number of bytes formatted in a hex dump. Longer dumps are truncated and
+     * annotated with their full length.
+     *
+     * @param limit maximum number of bytes to format
+     */
+    public static void setHexLimit(final int limit) {
+        hexLimit = Math.max(0, limit);
+    }
+
+    /**
+     * Returns the maximum number of bytes formatted in a hex dump.
+     *
+     * @return hex dump limit
+     */
+    public static int hexLimit() {
+        return hexLimit;
+    }
+
+    /**
+     * Returns true if messages at the given level will be written.
+     *
+     * @param _level trace level
+     * @return true if the level is enabled
+     */
+    public static boolean isEnabled(final TraceLevel _level) {
+        final TraceLevel current = level;
+
+        return current != null && _level.ordinal() <= current.ordinal();
+    }
+
+    /**
+     * Writes a message at the given level.
+     *
+     * @param _level trace level
+     * @param tag source tag
+     * @param message message
+     */
+    public static void log(final TraceLevel _level, final String tag, final String message) {
+        if (isEnabled(_level)) {
+            sink.write(_level, tag, message);
+        }
+    }
+
+    /**
+     * Writes a labelled value at the given level. The value is only converted to a string if the level
+     * is enabled.
+     *
+     * @param _level trace level
+     * @param tag source tag
+     * @param label label for the value
+     * @param value value to write (formatted lazily)
+     */
+    public static void log(final TraceLevel _level, final String tag, final String label, final Object value) {
+        if (isEnabled(_level)) {
+            sink.write(_level, tag, label + ": " + value);
+        }
+    }
+
+    /**
+     * Returns a lazily formatted, size-capped hex dump of the given bytes.
+     *
+     * @param bytes bytes to dump (may be null)
+     * @return hex dump
+     */
+    public static HexDump hex(final byte[] bytes) {
+        return new HexDump(bytes, null, 0, (bytes == null) ? 0 : bytes.length);
+    }
+
+    /**
+     * Returns a lazily formatted, size-capped hex dump of secret bytes hidden in the given pixels.
+     * Only the bytes that are actually formatted are extracted from the pixels.
+     *
+     * @param pixels 4-byte ARGB pixels containing secret data
+     * @param numBytes number of bytes in the dump
+     * @param offset pixel offset of the first byte
+     * @return hex dump
+     */
+    public static HexDump hex(final int[] pixels, final int numBytes, final int offset) {
+        return new HexDump(null, pixels, offset, numBytes);
+    }
+
+    /**
+     * A trace sink that prints messages to a {@link PrintStream}.
+     */
+    public static final class PrintStreamSink implements TraceSink {
+
+        private final PrintStream out;
+
+        /**
+         * Creates a sink that prints to the given stream.
+         *
+         * @param _out output stream
+         */
+        public PrintStreamSink(final PrintStream _out) {
+            out = _out;
+        }
+
+        @Override
+        public void write(final TraceLevel level, final String tag, final String message) {
+            out.println(level + " " + tag + ": " + message);
+        }
+    }
+}
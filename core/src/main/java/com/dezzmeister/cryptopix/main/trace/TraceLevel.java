@@ -0,0 +1,16 @@
+package com.dezzmeister.cryptopix.main.trace;
+
+/**
+ * Verbosity levels for {@link Trace}. Levels are ordered from least to most verbose; enabling a level
+ * also enables every level before it.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public enum TraceLevel {
+    ERROR,
+    WARN,
+    INFO,
+    DEBUG,
+    TRACE
+}
@@ -0,0 +1,20 @@
+package com.dezzmeister.cryptopix.main.trace;
+
+/**
+ * Receives trace messages from {@link Trace}. A sink is only called once a message has passed the
+ * level check, so implementations can format eagerly.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public interface TraceSink {
+
+    /**
+     * Writes a single trace message.
+     *
+     * @param level level of the message
+     * @param tag short tag identifying the source of the message
+     * @param message formatted message
+     */
+    void write(final TraceLevel level, final String tag, final String message);
+}
@@ -0,0 +1,339 @@
+package com.dezzmeister.cryptopix.main.images;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks {@link PNGRows} against ImageIO. The test images are written here, so that every filter type can be
+ * forced and the image data can be split over many IDAT chunks; ImageIO only chooses filters adaptively.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PNGRowsTest {
+
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_PALETTE = 3;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    @Test
+    public void everyFilterMatchesImageIO() throws IOException {
+        for (final int colorType : new int[] {COLOR_TYPE_RGB, COLOR_TYPE_RGBA}) {
+            for (final int filter : new int[] {FILTER_NONE, FILTER_SUB, FILTER_UP, FILTER_AVERAGE, FILTER_PAETH}) {
+                final int[] filters = new int[HEIGHT];
+                Arrays.fill(filters, filter);
+
+                assertMatchesImageIO("color type " + colorType + ", filter " + filter, png(colorType, filters, 1 + filter * 10, 64));
+            }
+        }
+    }
+
+    @Test
+    public void mixedFiltersMatchImageIO() throws IOException {
+        final int[] filters = new int[HEIGHT];
+
+        for (int row = 0; row < HEIGHT; row++) {
+            filters[row] = row % 5;
+        }
+
+        assertMatchesImageIO("RGB", png(COLOR_TYPE_RGB, filters, 2, 64));
+        assertMatchesImageIO("RGBA", png(COLOR_TYPE_RGBA, filters, 3, 64));
+    }
+
+    @Test
+    public void inflatesAcrossIDATBoundaries() throws IOException {
+        final int[] filters = new int[HEIGHT];
+
+        for (int row = 0; row < HEIGHT; row++) {
+            filters[row] = (row * 3) % 5;
+        }
+
+        // Chunks of 1, 7 and 13 bytes end inside rows, pixels and the zlib header
+        for (final int chunkSize : new int[] {1, 7, 13, 1 << 20}) {
+            assertMatchesImageIO("IDAT chunks of " + chunkSize + " bytes", png(COLOR_TYPE_RGBA, filters, 4, chunkSize));
+        }
+    }
+
+    @Test
+    public void readsOnlyTheRowsNeeded() throws IOException {
+        final int[] filters = new int[HEIGHT];
+        Arrays.fill(filters, FILTER_PAETH);
+
+        final byte[] png = png(COLOR_TYPE_RGB, filters, 5, 64);
+        final ImageData all = PNGRows.readLeadingRows(new ByteArrayInputStream(png), Integer.MAX_VALUE);
+
+        assertEquals(HEIGHT, all.height);
+
+        for (final int count : new int[] {1, WIDTH, WIDTH + 1, 5 * WIDTH - 1}) {
+            final ImageData leading = PNGRows.readLeadingRows(new ByteArrayInputStream(png), count);
+            final int rows = (count + WIDTH - 1) / WIDTH;
+
+            assertEquals(WIDTH, leading.width);
+            assertEquals(rows, leading.height);
+            assertEquals(Arrays.toString(Arrays.copyOf(all.pixels, rows * WIDTH)), Arrays.toString(leading.pixels));
+        }
+
+        // Only the IDAT chunks holding the leading rows need to be in the stream
+        final ImageData first = PNGRows.readLeadingRows(new ByteArrayInputStream(png, 0, png.length / 2), WIDTH);
+        assertEquals(1, first.height);
+    }
+
+    @Test
+    public void unsupportedLayoutsReturnNull() throws IOException {
+        final Random random = new Random(6);
+        final int[] filters = new int[HEIGHT];
+
+        // 16 bits per sample
+        final byte[][] wide = new byte[HEIGHT][WIDTH * 6];
+
+        for (final byte[] row : wide) {
+            random.nextBytes(row);
+        }
+
+        final byte[] sixteenBit = png(WIDTH, HEIGHT, 16, COLOR_TYPE_RGB, 6, wide, filters, 64, null);
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(sixteenBit)));
+        assertNull(PNGRows.readLeadingRows(new ByteArrayInputStream(sixteenBit), 1));
+
+        // Palette
+        final byte[][] indices = new byte[HEIGHT][WIDTH];
+        final byte[] palette = new byte[256 * 3];
+        random.nextBytes(palette);
+
+        for (final byte[] row : indices) {
+            random.nextBytes(row);
+        }
+
+        final byte[] indexed = png(WIDTH, HEIGHT, 8, COLOR_TYPE_PALETTE, 1, indices, filters, 64, palette);
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(indexed)));
+        assertNull(PNGRows.readLeadingRows(new ByteArrayInputStream(indexed), 1));
+
+        // Interlaced
+        final byte[] interlaced = interlacedPNG();
+        assertEquals("interlace method", 1, interlaced[28]);
+        assertNull(PNGRows.readLeadingRows(new ByteArrayInputStream(interlaced), 1));
+
+        // Not a PNG
+        assertNull(PNGRows.readLeadingRows(new ByteArrayInputStream("GIF89a, not a PNG".getBytes(StandardCharsets.US_ASCII)), 1));
+    }
+
+    @Test
+    public void truncatedImageDataIsAnError() throws IOException {
+        final int[] filters = new int[HEIGHT];
+        final byte[] png = png(COLOR_TYPE_RGB, filters, 7, 1 << 20);
+
+        try {
+            PNGRows.readLeadingRows(new ByteArrayInputStream(png, 0, png.length / 2), Integer.MAX_VALUE);
+            fail("Read rows past the end of the stream");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static void assertMatchesImageIO(final String message, final byte[] png) throws IOException {
+        final BufferedImage expected = ImageIO.read(new ByteArrayInputStream(png));
+        final ImageData actual = PNGRows.readLeadingRows(new ByteArrayInputStream(png), WIDTH * HEIGHT);
+
+        assertNotNull(message, actual);
+        assertEquals(message, WIDTH, actual.width);
+        assertEquals(message, HEIGHT, actual.height);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(message + " at (" + x + ", " + y + ")", Integer.toHexString(expected.getRGB(x, y)), Integer.toHexString(actual.pixels[y * WIDTH + x]));
+            }
+        }
+    }
+
+    /**
+     * Writes an 8-bit RGB or RGBA image of random pixels.
+     */
+    private static byte[] png(final int colorType, final int[] filters, final long seed, final int chunkSize) throws IOException {
+        final int bytesPerPixel = (colorType == COLOR_TYPE_RGBA) ? 4 : 3;
+        final Random random = new Random(seed);
+        final byte[][] rows = new byte[HEIGHT][WIDTH * bytesPerPixel];
+
+        for (final byte[] row : rows) {
+            random.nextBytes(row);
+        }
+
+        return png(WIDTH, HEIGHT, 8, colorType, bytesPerPixel, rows, filters, chunkSize, null);
+    }
+
+    /**
+     * Writes a non-interlaced PNG image, filtering each row with the given filter type and splitting the
+     * compressed image data into IDAT chunks of at most <code>chunkSize</code> bytes. An ancillary chunk
+     * comes before the image data.
+     */
+    private static byte[] png(final int width, final int height, final int bitDepth, final int colorType, final int bytesPerPixel,
+                              final byte[][] rows, final int[] filters, final int chunkSize, final byte[] palette) throws IOException {
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        byte[] previous = new byte[rows[0].length];
+
+        for (int y = 0; y < height; y++) {
+            raw.write(filters[y]);
+            raw.write(filter(filters[y], rows[y], previous, bytesPerPixel));
+            previous = rows[y];
+        }
+
+        final Deflater deflater = new Deflater();
+        deflater.setInput(raw.toByteArray());
+        deflater.finish();
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        deflater.end();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(out);
+        data.write(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.write(new byte[] {(byte) bitDepth, (byte) colorType, 0, 0, 0});
+
+        chunk(data, "IHDR", header.toByteArray());
+        chunk(data, "tEXt", "Comment\0PNGRowsTest".getBytes(StandardCharsets.US_ASCII));
+
+        if (palette != null) {
+            chunk(data, "PLTE", palette);
+        }
+
+        final byte[] imageData = compressed.toByteArray();
+
+        for (int from = 0; from < imageData.length; from += chunkSize) {
+            chunk(data, "IDAT", Arrays.copyOfRange(imageData, from, Math.min(imageData.length, from + chunkSize)));
+        }
+
+        chunk(data, "IEND", new byte[0]);
+
+        return out.toByteArray();
+    }
+
+    private static byte[] filter(final int type, final byte[] row, final byte[] previous, final int bytesPerPixel) {
+        final byte[] out = new byte[row.length];
+
+        for (int i = 0; i < row.length; i++) {
+            final int left = (i >= bytesPerPixel) ? (row[i - bytesPerPixel] & 0xFF) : 0;
+            final int up = previous[i] & 0xFF;
+            final int upLeft = (i >= bytesPerPixel) ? (previous[i - bytesPerPixel] & 0xFF) : 0;
+            final int predictor;
+
+            switch (type) {
+                case FILTER_SUB:
+                    predictor = left;
+                    break;
+                case FILTER_UP:
+                    predictor = up;
+                    break;
+                case FILTER_AVERAGE:
+                    predictor = (left + up) >>> 1;
+                    break;
+                case FILTER_PAETH:
+                    predictor = paeth(left, up, upLeft);
+                    break;
+                default:
+                    predictor = 0;
+                    break;
+            }
+
+            out[i] = (byte) (row[i] - predictor);
+        }
+
+        return out;
+    }
+
+    private static int paeth(final int a, final int b, final int c) {
+        final int p = a + b - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+
+        if (pa <= pb && pa <= pc) {
+            return a;
+        } else if (pb <= pc) {
+            return b;
+        } else {
+            return c;
+        }
+    }
+
+    private static void chunk(final DataOutputStream out, final String type, final byte[] data) throws IOException {
+        final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Writes an interlaced RGB image with ImageIO.
+     */
+    private static byte[] interlacedPNG() throws IOException {
+        final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(8);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+
+        try {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            stream.close();
+            writer.dispose();
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,308 @@
+package com.dezzmeister.cryptopix.main.scan;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+import com.dezzmeister.cryptopix.main.secret.Workers;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ImageScanner}, with images held in memory. Sources are names, so that a failing result
+ * says which image it was.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ImageScannerTest {
+
+    private static final int WIDTH = 100;
+
+    private static final int HEIGHT = 60;
+
+    private static final int PAYLOAD_SIZE = 2_000;
+
+    private final Map<String, ImageData> images = new ConcurrentHashMap<String, ImageData>();
+
+    /**
+     * Number of reads by every reader
+     */
+    private final AtomicInteger reads = new AtomicInteger();
+
+    /**
+     * Most pixels returned by a single read
+     */
+    private final AtomicInteger largest = new AtomicInteger();
+
+    private final MemoryReader reader = new MemoryReader();
+
+    @Test
+    public void classifiesEveryImage() throws Exception {
+        addImages();
+
+        final Map<String, ScanResult<String>> results = scan(new ImageScanner<String>(reader, 3));
+
+        assertEquals(images.size() + 1, results.size());
+        assertEquals(EncodedImageState.NO_SECRET, results.get("plain").state);
+        assertEquals(EncodedImageState.SECRET_PASSWORD, results.get("v1_0_0").state);
+        assertEquals(EncodedImageState.SECRET_NO_PASSWORD, results.get("v1_6_0").state);
+        assertEquals(EncodedImageState.CORRUPTED, results.get("corrupted").state);
+
+        assertEquals(Versions.VERSION_1_0_0, results.get("v1_0_0").versionCode);
+        assertTrue(results.get("v1_0_0").isPasswordProtected());
+        assertEquals(-1, results.get("plain").versionCode);
+        assertNull(results.get("plain").header);
+
+        for (final ScanResult<String> result : results.values()) {
+            if (result.source.equals("missing")) {
+                assertEquals(EncodedImageState.NO_SECRET, result.state);
+                assertTrue(result.error instanceof IOException);
+                assertFalse(result.verified);
+            } else {
+                assertNull(result.source, result.error);
+                assertTrue(result.source, result.verified);
+            }
+        }
+    }
+
+    @Test
+    public void imagesWithoutSecretsCostOneProbe() throws Exception {
+        images.put("plain", carrier(1));
+
+        final ScanResult<String> result = new ImageScanner<String>(reader, 1).probe("plain");
+
+        assertEquals(EncodedImageState.NO_SECRET, result.state);
+        assertEquals(1, reads.get());
+        assertTrue(largest.get() < WIDTH * HEIGHT);
+    }
+
+    @Test
+    public void sharedExecutorIsNotShutDown() throws Exception {
+        addImages();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final AtomicInteger pooled = new AtomicInteger();
+
+        try {
+            final ImageScanner<String> scanner = new ImageScanner<String>(new MemoryReader() {
+                @Override
+                public ImageData readLeadingPixels(final String source, final int count) throws IOException {
+                    if (Workers.isPooled()) {
+                        pooled.incrementAndGet();
+                    }
+
+                    return super.readLeadingPixels(source, count);
+                }
+            }, executor);
+
+            final Map<String, ScanResult<String>> first = scan(scanner);
+            final Map<String, ScanResult<String>> second = scan(scanner);
+
+            assertFalse(executor.isShutdown());
+            assertEquals(EncodedImageState.CORRUPTED, first.get("corrupted").state);
+            assertEquals(EncodedImageState.CORRUPTED, second.get("corrupted").state);
+
+            // Probes on a foreign executor are marked, so their payload hashes are not split further
+            assertEquals(pooled.get(), reads.get());
+            assertTrue(pooled.get() > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void unverifiedScansTrustTheHeader() throws Exception {
+        addImages();
+
+        final ImageScanner<String> scanner = new ImageScanner<String>(reader, 2);
+        scanner.setVerify(false);
+
+        final Map<String, ScanResult<String>> results = scan(scanner);
+
+        assertEquals(EncodedImageState.SECRET_NO_PASSWORD, results.get("corrupted").state);
+        assertFalse(results.get("corrupted").verified);
+        assertTrue(largest.get() < WIDTH * HEIGHT);
+    }
+
+    @Test
+    public void cachedResultsAreNotReadAgain() throws Exception {
+        addImages();
+
+        final MemoryCache cache = new MemoryCache();
+        final ImageScanner<String> scanner = new ImageScanner<String>(reader, 2);
+        scanner.setCache(cache);
+
+        scan(scanner);
+
+        // Unreadable images are not cached, so that they are tried again
+        assertEquals(images.size(), cache.results.size());
+
+        reads.set(0);
+        final Map<String, ScanResult<String>> results = scan(scanner);
+
+        assertEquals(1, reads.get());
+        assertEquals(EncodedImageState.SECRET_PASSWORD, results.get("v1_0_0").state);
+    }
+
+    @Test
+    public void unverifiedCacheEntriesNeedAVerifiedScan() throws Exception {
+        addImages();
+
+        final MemoryCache cache = new MemoryCache();
+        final ImageScanner<String> scanner = new ImageScanner<String>(reader, 2);
+        scanner.setCache(cache);
+        scanner.setVerify(false);
+
+        assertEquals(EncodedImageState.SECRET_NO_PASSWORD, scanner.probe("corrupted").state);
+
+        scanner.setVerify(true);
+        final ScanResult<String> verified = scanner.probe("corrupted");
+
+        assertEquals(EncodedImageState.CORRUPTED, verified.state);
+        assertTrue(verified.verified);
+        assertTrue(cache.results.get("corrupted").verified);
+    }
+
+    @Test
+    public void rejectsBadArguments() {
+        try {
+            new ImageScanner<String>(reader, 0);
+            fail("Created a scanner without threads");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        try {
+            new ImageScanner<String>(reader, (ExecutorService) null);
+            fail("Created a scanner without an executor");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private Map<String, ScanResult<String>> scan(final ImageScanner<String> scanner) throws InterruptedException {
+        final Map<String, ScanResult<String>> results = new ConcurrentHashMap<String, ScanResult<String>>();
+        final List<String> sources = new ArrayList<String>(images.keySet());
+        sources.add("missing");
+
+        final AtomicInteger delivered = new AtomicInteger();
+
+        scanner.scan(sources, new ScanListener<String>() {
+            @Override
+            public void onResult(final ScanResult<String> result) {
+                results.put(result.source, result);
+                delivered.incrementAndGet();
+            }
+        });
+
+        // Every source is delivered exactly once
+        assertEquals(sources.size(), delivered.get());
+        assertEquals(sources.size(), results.size());
+
+        return results;
+    }
+
+    private void addImages() throws Exception {
+        images.put("plain", carrier(1));
+        images.put("v1_0_0", encode(Versions.VERSION_1_0_0, "scan", 2));
+        images.put("v1_6_0", encode(Versions.VERSION_1_6_0, null, 3));
+
+        final ImageData corrupted = encode(Versions.VERSION_1_6_0, null, 4);
+        final int headerSize = Versions.getHandler(Versions.VERSION_1_6_0).extractHeader(corrupted).headerSize();
+        corrupted.pixels[headerSize + PAYLOAD_SIZE / 2] ^= 0x01;
+        images.put("corrupted", corrupted);
+    }
+
+    private static ImageData encode(final long versionCode, final String password, final long seed) throws Exception {
+        final PackageHandler handler = Versions.getHandler(versionCode);
+        final byte[] data = new byte[PAYLOAD_SIZE];
+        new Random(seed).nextBytes(data);
+
+        final Payload payload = handler.getEmptyPayload();
+        payload.setFileName("secret.bin");
+        payload.setMimeType("application/octet-stream");
+        payload.setData(data);
+
+        final EncodingOptions options = new EncodingOptions();
+        options.versionCode = versionCode;
+        options.password = password;
+
+        return handler.encodeSecret(carrier(seed), payload, options);
+    }
+
+    private static ImageData carrier(final long seed) {
+        final Random random = new Random(seed);
+        final int[] pixels = new int[WIDTH * HEIGHT];
+
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x01000000);
+        }
+
+        return new ImageData(pixels, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Reads whole rows from {@link #images}
+     */
+    private class MemoryReader implements LeadingPixelReader<String> {
+
+        @Override
+        public ImageData readLeadingPixels(final String source, final int count) throws IOException {
+            reads.incrementAndGet();
+
+            final ImageData image = images.get(source);
+
+            if (image == null) {
+                throw new IOException("No image named " + source);
+            }
+
+            final int rows = (int) Math.min(image.height, ((long) count + image.width - 1) / image.width);
+            final int size = rows * image.width;
+
+            while (true) {
+                final int current = largest.get();
+
+                if (size <= current || largest.compareAndSet(current, size)) {
+                    break;
+                }
+            }
+
+            return new ImageData(Arrays.copyOf(image.pixels, size), image.width, rows);
+        }
+    }
+
+    private static class MemoryCache implements ScanCache<String> {
+
+        final Map<String, ScanResult<String>> results = new ConcurrentHashMap<String, ScanResult<String>>();
+
+        @Override
+        public ScanResult<String> get(final String source) {
+            return results.get(source);
+        }
+
+        @Override
+        public void put(final ScanResult<String> result) {
+            results.put(result.source, result);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.dezzmeister.cryptopix.main.scan;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ScanIndex}: replaying the log, dropping damaged records, compaction, and recognizing
+ * files that were touched or moved.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ScanIndexTest {
+
+    /**
+     * Modification time of every test file, so that changes are never lost to timestamp granularity
+     */
+    private static final long MODIFIED = 1_500_000_000_000L;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resultsSurviveReopening() throws Exception {
+        final File log = folder.newFile("index.log");
+        final File plain = image("plain.png", 1);
+        final File secret = image("secret.png", 2);
+
+        final ImageData encoded = encode();
+        final PackageHeader header = Versions.getHandler(Versions.VERSION_1_0_0).extractHeader(encoded);
+        final int[] headerPixels = Arrays.copyOf(encoded.pixels, header.headerSize());
+
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            index.put(new ScanResult<File>(plain, EncodedImageState.NO_SECRET, -1, null, null, true, null));
+            index.put(new ScanResult<File>(secret, EncodedImageState.SECRET_PASSWORD, Versions.VERSION_1_0_0, header, headerPixels, true, null));
+        }
+
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            assertEquals(2, index.size());
+
+            final ScanResult<File> none = index.get(plain);
+            assertEquals(EncodedImageState.NO_SECRET, none.state);
+            assertNull(none.header);
+
+            final ScanResult<File> found = index.get(secret);
+            assertEquals(EncodedImageState.SECRET_PASSWORD, found.state);
+            assertEquals(Versions.VERSION_1_0_0, found.versionCode);
+            assertTrue(found.verified);
+            assertArrayEquals(headerPixels, found.headerPixels);
+            assertEquals(header.payloadSize(), found.header.payloadSize());
+            assertArrayEquals(header.payloadHash(), found.header.payloadHash());
+        }
+    }
+
+    @Test
+    public void tornRecordIsTruncated() throws Exception {
+        final File log = folder.newFile("index.log");
+        final File[] images = {image("a.png", 1), image("b.png", 2), image("c.png", 3)};
+
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            for (final File image : images) {
+                index.put(result(image));
+            }
+        }
+
+        final long intactLength = log.length();
+
+        // A crash in the middle of an append leaves part of a record: its length and a few body bytes
+        try (final FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write(new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 5});
+        }
+
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            assertEquals(3, index.size());
+            assertEquals(intactLength, log.length());
+
+            index.put(result(image("d.png", 4)));
+        }
+
+        // Records appended after the truncation are replayed too
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            assertEquals(4, index.size());
+        }
+    }
+
+    @Test
+    public void recordsFailingTheirChecksumAreDropped() throws Exception {
+        final File log = folder.newFile("index.log");
+        final File[] images = {image("a.png", 1), image("b.png", 2), image("c.png", 3)};
+        final long[] ends = new long[images.length];
+
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            for (int i = 0; i < images.length; i++) {
+                index.put(result(images[i]));
+                ends[i] = log.length();
+            }
+        }
+
+        // Flip a bit in the body of the second record, after its length field
+        try (final RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            final long offset = ends[0] + 10;
+            raf.seek(offset);
+            final int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0x01);
+        }
+
+        // Nothing after a damaged record can be trusted
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            assertEquals(1, index.size());
+            assertEquals(ends[0], log.length());
+            assertNotNull(index.get(images[0]));
+            assertNull(index.get(images[1]));
+            assertNull(index.get(images[2]));
+        }
+    }
+
+    @Test
+    public void compactionKeepsTheLatestLiveEntries() throws Exception {
+        final File log = folder.newFile("index.log");
+        final File kept = image("kept.png", 1);
+        final File deleted = image("deleted.png", 2);
+
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            index.put(result(deleted));
+
+            for (int i = 0; i < 10; i++) {
+                index.put(new ScanResult<File>(kept, (i % 2 == 0) ? EncodedImageState.NO_SECRET : EncodedImageState.CORRUPTED, -1, null, null, true, null));
+            }
+
+            final long before = log.length();
+            assertTrue(deleted.delete());
+
+            index.compact();
+
+            assertTrue(log.length() < before);
+            assertFalse(new File(log.getPath() + ".tmp").exists());
+            assertEquals(1, index.size());
+
+            // The log is still open for appends after compacting
+            index.put(result(image("new.png", 3)));
+        }
+
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            assertEquals(2, index.size());
+            assertEquals(EncodedImageState.CORRUPTED, index.get(kept).state);
+        }
+    }
+
+    @Test
+    public void staleLogsAreCompactedOnOpen() throws Exception {
+        final File log = folder.newFile("index.log");
+        final File image = image("a.png", 1);
+        final long oneRecord;
+
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            final long empty = log.length();
+            index.put(result(image));
+            oneRecord = log.length() - empty;
+
+            for (int i = 0; i < 299; i++) {
+                index.put(result(image));
+            }
+        }
+
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            assertEquals(1, index.size());
+            assertTrue("Log holds " + log.length() + " bytes", log.length() < 2 * oneRecord + 8);
+            assertFalse(new File(log.getPath() + ".tmp").exists());
+        }
+    }
+
+    @Test
+    public void touchedAndMovedFilesAreRecognized() throws Exception {
+        final File log = folder.newFile("index.log");
+        final File image = image("a.png", 1);
+
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            index.put(new ScanResult<File>(image, EncodedImageState.CORRUPTED, -1, null, null, true, null));
+
+            // Touched: same path and content, new modification time
+            assertTrue(image.setLastModified(MODIFIED + 60_000));
+            assertEquals(EncodedImageState.CORRUPTED, index.get(image).state);
+
+            // Moved: same content under a new path
+            final File moved = new File(folder.getRoot(), "moved.png");
+            assertTrue(image.renameTo(moved));
+
+            final ScanResult<File> found = index.get(moved);
+            assertEquals(EncodedImageState.CORRUPTED, found.state);
+            assertEquals(moved, found.source);
+
+            // Edited: same size, different content
+            write(moved, 99);
+            assertNull(index.get(moved));
+        }
+
+        // The new identities were logged, so they are known without fingerprinting after reopening
+        try (final ScanIndex index = ScanIndex.open(log)) {
+            assertEquals(2, index.size());
+        }
+    }
+
+    private static ScanResult<File> result(final File image) {
+        return new ScanResult<File>(image, EncodedImageState.NO_SECRET, -1, null, null, true, null);
+    }
+
+    /**
+     * Creates a file of random bytes. Only its identity matters to the index, so it need not be a real image.
+     */
+    private File image(final String name, final long seed) throws IOException {
+        final File file = folder.newFile(name);
+        write(file, seed);
+
+        return file;
+    }
+
+    private static void write(final File file, final long seed) throws IOException {
+        final byte[] data = new byte[10_000];
+        new Random(seed).nextBytes(data);
+
+        try (final FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+
+        assertTrue(file.setLastModified(MODIFIED));
+    }
+
+    private static ImageData encode() throws Exception {
+        final PackageHandler handler = Versions.getHandler(Versions.VERSION_1_0_0);
+        final Random random = new Random(5);
+        final int[] pixels = new int[80 * 50];
+
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x01000000);
+        }
+
+        final Payload payload = handler.getEmptyPayload();
+        payload.setFileName("secret.bin");
+        payload.setMimeType("application/octet-stream");
+        payload.setData(new byte[1_000]);
+
+        final EncodingOptions options = new EncodingOptions();
+        options.versionCode = Versions.VERSION_1_0_0;
+        options.password = "index";
+
+        return handler.encodeSecret(new ImageData(pixels, 80, 50), payload, options);
+    }
+}
@@ -0,0 +1,116 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks listing and selective extraction of multi-file archives. Single-file archives are covered by
+ * {@link RoundTripTest}.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ArchiveHandlerTest {
+
+    private static final String PASSWORD = "archive";
+
+    private static final int[] SIZES = {5000, 20000, 0};
+
+    private static final Compressibility[] COMPRESSIBILITY = {Compressibility.RANDOM, Compressibility.TEXT, Compressibility.ZEROS};
+
+    private final ArchiveHandler handler = (ArchiveHandler) Versions.getHandler(Versions.VERSION_1_1_0);
+
+    @Test
+    public void listsEveryEntry() throws Exception {
+        final List<Payload> files = files();
+        final ImageData encoded = encode(files, null);
+        final List<ArchiveEntry> entries = handler.listEntries(encoded, handler.extractHeader(encoded), null);
+
+        assertEquals(files.size(), entries.size());
+
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(files.get(i).fileName(), entries.get(i).fileName);
+            assertEquals(files.get(i).mimeType(), entries.get(i).mimeType);
+            assertEquals(files.get(i).data().length, entries.get(i).size);
+        }
+
+        // Random data doesn't get smaller, so it is stored as is
+        assertFalse(entries.get(0).compressed);
+        assertTrue(entries.get(1).compressed);
+    }
+
+    @Test
+    public void extractsEachEntryOnItsOwn() throws Exception {
+        for (final String password : new String[] {null, PASSWORD}) {
+            final List<Payload> files = files();
+            final ImageData encoded = encode(files, password);
+            final PackageHeader header = handler.extractHeader(encoded);
+            final List<ArchiveEntry> entries = handler.listEntries(encoded, header, password);
+
+            // Extract in reverse, so that no entry depends on the ones before it
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                final Payload extracted = handler.extractEntry(encoded, header, entries.get(i), password);
+
+                assertEquals(files.get(i).fileName(), extracted.fileName());
+                assertArrayEquals(files.get(i).data(), extracted.data());
+            }
+
+            assertEquals(files.get(0).fileName(), handler.decode(encoded, header, password).fileName());
+        }
+    }
+
+    @Test
+    public void corruptedEntryDoesNotAffectOthers() throws Exception {
+        final List<Payload> files = files();
+        final ImageData encoded = encode(files, PASSWORD);
+        final PackageHeader header = handler.extractHeader(encoded);
+        final List<ArchiveEntry> entries = handler.listEntries(encoded, header, PASSWORD);
+
+        encoded.pixels[entries.get(0).offset] ^= 0x01;
+
+        try {
+            handler.extractEntry(encoded, header, entries.get(0), PASSWORD);
+            fail("Corrupted entry was extracted");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertArrayEquals(files.get(1).data(), handler.extractEntry(encoded, header, entries.get(1), PASSWORD).data());
+        assertEquals(EncodedImageState.CORRUPTED, handler.getImageState(encoded, header));
+    }
+
+    @Test(expected = SecurityException.class)
+    public void wrongPasswordIsRejected() throws Exception {
+        final ImageData encoded = encode(files(), PASSWORD);
+
+        handler.listEntries(encoded, handler.extractHeader(encoded), PASSWORD + "!");
+    }
+
+    private List<Payload> files() {
+        final ArrayList<Payload> files = new ArrayList<Payload>();
+
+        for (int i = 0; i < SIZES.length; i++) {
+            final Payload payload = TestCorpus.payload(handler, TestCorpus.data(SIZES[i], COMPRESSIBILITY[i], i));
+            payload.setFileName("entry-" + i + ".bin");
+            files.add(payload);
+        }
+
+        return files;
+    }
+
+    private ImageData encode(final List<Payload> files, final String password) throws Exception {
+        return handler.encodeArchive(TestCorpus.carrier(256, 192, 7), files, TestCorpus.options(Versions.VERSION_1_1_0, password, true));
+    }
+}
@@ -0,0 +1,97 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.PackageException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link AsyncPackageHandler} composes, and that every failure arrives as a
+ * {@link PackageException} of the right kind.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class AsyncPackageHandlerTest {
+
+    private static final String PASSWORD = "async";
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    private final AsyncPackageHandler async = new AsyncPackageHandler(executor);
+
+    private final byte[] data = TestCorpus.data(10_000, Compressibility.TEXT, 1);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void encodeThenDecodeComposes() {
+        for (final long versionCode : new long[] {Versions.VERSION_1_0_0, Versions.VERSION_1_6_0}) {
+            final Payload decoded = encode(versionCode, PASSWORD, 200).thenCompose(new Function<ImageData, CompletableFuture<Payload>>() {
+                @Override
+                public CompletableFuture<Payload> apply(final ImageData encoded) {
+                    return async.decode(encoded, PASSWORD);
+                }
+            }).join();
+
+            assertArrayEquals(data, decoded.data());
+        }
+    }
+
+    @Test
+    public void imagesAreClassifiedTogether() {
+        final ImageData blank = TestCorpus.carrier(200, 200, 2);
+        final ImageData plain = encode(Versions.VERSION_1_0_0, null, 200).join();
+        final ImageData locked = encode(Versions.VERSION_1_5_0, PASSWORD, 200).join();
+        final ImageData damaged = encode(Versions.VERSION_1_6_0, null, 200).join();
+        damaged.pixels[PackageFunctions.COMPACT_VERSION_CODE_LENGTH + 2] ^= 0x01;
+
+        final List<EncodedImageState> states = async.classifyAll(Arrays.asList(blank, plain, locked, damaged)).join();
+
+        assertEquals(Arrays.asList(EncodedImageState.NO_SECRET, EncodedImageState.SECRET_NO_PASSWORD, EncodedImageState.SECRET_PASSWORD, EncodedImageState.CORRUPTED), states);
+    }
+
+    @Test
+    public void failuresHaveKinds() {
+        final ImageData locked = encode(Versions.VERSION_1_0_0, PASSWORD, 200).join();
+
+        assertKind(PackageException.Kind.WRONG_PASSWORD, async.decode(locked, PASSWORD + "!"));
+        assertKind(PackageException.Kind.WRONG_PASSWORD, async.decode(locked, null));
+        assertKind(PackageException.Kind.NO_SECRET, async.decode(TestCorpus.carrier(200, 200, 3), null));
+        assertKind(PackageException.Kind.TOO_LARGE, encode(Versions.VERSION_1_0_0, null, 50));
+        assertKind(PackageException.Kind.UNSUPPORTED, encode(0xCACA9990L, null, 200));
+    }
+
+    private CompletableFuture<ImageData> encode(final long versionCode, final String password, final int size) {
+        final Payload payload = TestCorpus.payload(Versions.getHandler(Versions.VERSION_1_0_0), data);
+
+        return async.encode(TestCorpus.carrier(size, size, 4), payload, TestCorpus.options(versionCode, password, false));
+    }
+
+    private static void assertKind(final PackageException.Kind kind, final CompletableFuture<?> future) {
+        try {
+            future.join();
+            fail("Expected a " + kind + " failure");
+        } catch (CompletionException e) {
+            assertEquals(PackageException.class, e.getCause().getClass());
+            assertEquals(kind, PackageException.from(e).kind());
+        }
+    }
+}
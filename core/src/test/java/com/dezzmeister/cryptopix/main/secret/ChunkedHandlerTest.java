@@ -0,0 +1,142 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks in-place updates of chunked packages. Encoding and decoding whole files is covered by
+ * {@link RoundTripTest}.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ChunkedHandlerTest {
+
+    private static final String PASSWORD = "chunked";
+
+    private static final int PAYLOAD_SIZE = 200_000;
+
+    private final ChunkedHandler handler = (ChunkedHandler) Versions.getHandler(Versions.VERSION_1_4_0);
+
+    @Test
+    public void editOnlyRewritesChangedChunks() throws Exception {
+        for (final String password : new String[] {null, PASSWORD}) {
+            final byte[] data = TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 1);
+            final ImageData encoded = encode(data, password);
+            final PackageHeader before = handler.extractHeader(encoded);
+            final int[] original = encoded.pixels.clone();
+
+            final byte[] edited = data.clone();
+            edited[PAYLOAD_SIZE / 2] ^= 0x55;
+
+            handler.update(encoded, before, edited, password);
+
+            final PackageHeader after = handler.extractHeader(encoded);
+
+            // One chunk, the chunk table and the header; the rest of the payload is untouched
+            assertTrue(changedPixels(original, encoded.pixels) < 2 * 4096 + (PAYLOAD_SIZE / 4096 + 1) * 32 + 256);
+            assertEquals(before.payloadSize(), after.payloadSize());
+            assertEquals(expectedState(password), handler.getImageState(encoded, after));
+            assertArrayEquals(edited, handler.decode(encoded, after, password).data());
+        }
+    }
+
+    @Test
+    public void repeatedAppendsDecode() throws Exception {
+        for (final String password : new String[] {null, PASSWORD}) {
+            final byte[] log = TestCorpus.data(PAYLOAD_SIZE, Compressibility.TEXT, 2);
+            final ImageData encoded = encode(Arrays.copyOf(log, 100), password);
+            PackageHeader header = handler.extractHeader(encoded);
+
+            // Appends that fill the last chunk, cross chunk boundaries, and add nothing
+            final int[] sizes = {900, 3096, 10_000, 0, 1, 5000};
+            int end = 100;
+
+            for (final int size : sizes) {
+                final int[] beforeAppend = encoded.pixels.clone();
+
+                header = handler.append(encoded, header, Arrays.copyOfRange(log, end, end + size), password);
+                end += size;
+
+                // The last chunk, the new chunks, the chunk table and the header
+                assertTrue(changedPixels(beforeAppend, encoded.pixels) < size + 2 * 4096 + (end / 4096 + 1) * 32 + 256);
+            }
+
+            header = handler.extractHeader(encoded);
+
+            assertEquals(expectedState(password), handler.getImageState(encoded, header));
+            assertArrayEquals(Arrays.copyOf(log, end), handler.decode(encoded, header, password).data());
+        }
+    }
+
+    @Test
+    public void updateCanShrinkAndGrow() throws Exception {
+        final byte[] data = TestCorpus.data(PAYLOAD_SIZE, Compressibility.TEXT, 3);
+        final ImageData encoded = encode(data, PASSWORD);
+
+        final byte[] shorter = Arrays.copyOf(data, 5000);
+        PackageHeader header = handler.update(encoded, handler.extractHeader(encoded), shorter, PASSWORD);
+
+        assertEquals(EncodedImageState.SECRET_PASSWORD, handler.getImageState(encoded, handler.extractHeader(encoded)));
+        assertArrayEquals(shorter, handler.decode(encoded, handler.extractHeader(encoded), PASSWORD).data());
+
+        header = handler.update(encoded, header, new byte[0], PASSWORD);
+        assertEquals(0, handler.decode(encoded, header, PASSWORD).data().length);
+
+        header = handler.update(encoded, header, data, PASSWORD);
+        assertArrayEquals(data, handler.decode(encoded, handler.extractHeader(encoded), PASSWORD).data());
+    }
+
+    @Test
+    public void failedUpdateLeavesPackageIntact() throws Exception {
+        final byte[] data = TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 4);
+        final ImageData encoded = encode(data, PASSWORD);
+        final int[] original = encoded.pixels.clone();
+
+        try {
+            handler.append(encoded, handler.extractHeader(encoded), new byte[encoded.pixels.length], PASSWORD);
+        } catch (SizeLimitExceededException e) {
+            // Expected
+        }
+
+        assertArrayEquals(original, encoded.pixels);
+    }
+
+    @Test(expected = SecurityException.class)
+    public void wrongPasswordCannotUpdate() throws Exception {
+        final byte[] data = TestCorpus.data(1000, Compressibility.TEXT, 5);
+        final ImageData encoded = encode(data, PASSWORD);
+
+        handler.update(encoded, handler.extractHeader(encoded), data, PASSWORD + "!");
+    }
+
+    private ImageData encode(final byte[] data, final String password) throws Exception {
+        return handler.encodeSecret(TestCorpus.carrier(600, 500, 6), TestCorpus.payload(handler, data),
+                TestCorpus.options(Versions.VERSION_1_4_0, password, false));
+    }
+
+    private static EncodedImageState expectedState(final String password) {
+        return (password != null) ? EncodedImageState.SECRET_PASSWORD : EncodedImageState.SECRET_NO_PASSWORD;
+    }
+
+    private static int changedPixels(final int[] before, final int[] after) {
+        int changed = 0;
+
+        for (int i = 0; i < before.length; i++) {
+            if (before[i] != after[i]) {
+                changed++;
+            }
+        }
+
+        return changed;
+    }
+}
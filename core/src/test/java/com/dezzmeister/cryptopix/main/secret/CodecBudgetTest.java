@@ -0,0 +1,374 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Enforces allocation and throughput budgets on the codec hot paths. Allocation is measured with the
+ * per-thread allocated-bytes counter and expressed in full-payload copies, so that a change that adds
+ * another payload-sized <code>byte[]</code> to a path fails here even though every round trip still
+ * works. Throughput is measured relative to a calibration loop over the same pixels, so the floors
+ * hold on slow and fast machines alike; they still depend on wall-clock time, so they only run when
+ * the {@link #THROUGHPUT_PROPERTY} system property is true (<code>gradlew :core:test -PthroughputTests</code>).
+ *
+ * Budgets are ceilings: when a change removes a copy, lower the matching budget in the same change.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class CodecBudgetTest {
+
+    private static final int WIDTH = 2048;
+    private static final int HEIGHT = 2048;
+
+    /**
+     * Large enough that the payload-sized buffers dominate every fixed cost (providers, digests, headers)
+     */
+    private static final int PAYLOAD_SIZE = 3 << 20;
+
+    private static final String PASSWORD = "budget";
+
+    /**
+     * Fixed allocation allowed on top of the payload copies (cipher and digest instances, header fields, strings)
+     */
+    private static final long FIXED_OVERHEAD = 512 * 1024;
+
+    /**
+     * System property that turns on the throughput floors
+     */
+    private static final String THROUGHPUT_PROPERTY = "cryptopix.throughputTests";
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @BeforeClass
+    public static void checkAllocationCounters() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        Assume.assumeTrue("Per-thread allocation counters are not available on this JVM", bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue("Per-thread allocation counters are not supported on this JVM", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    // Allocation budgets, in full-payload copies. Each budget is less than one copy above what the path
+    // allocates today: extraction and inflation each produce one, decryption produces two (the cipher
+    // buffers its output internally), and slicing the file data out of the payload produces another.
+
+    @Test
+    public void decodeAllocation() throws Exception {
+        assertCopies("decode", 2, encoded(null, false, Compressibility.RANDOM), new Step() {
+            @Override
+            public Object run(final Encoded in) throws Exception {
+                return in.handler.decode(in.image, in.header, null);
+            }
+        });
+    }
+
+    @Test
+    public void decodePasswordAllocation() throws Exception {
+        assertCopies("decode with password", 4, encoded(PASSWORD, false, Compressibility.RANDOM), new Step() {
+            @Override
+            public Object run(final Encoded in) throws Exception {
+                return in.handler.decode(in.image, in.header, PASSWORD);
+            }
+        });
+    }
+
+    @Test
+    public void decodeCompressedAllocation() throws Exception {
+        assertCopies("decode compressed", 5, encoded(null, true, Compressibility.TEXT), new Step() {
+            @Override
+            public Object run(final Encoded in) throws Exception {
+                return in.handler.decode(in.image, in.header, null);
+            }
+        });
+    }
+
+    @Test
+    public void imageStateAllocation() throws Exception {
+        assertCopies("getImageState", 1, encoded(null, false, Compressibility.RANDOM), new Step() {
+            @Override
+            public Object run(final Encoded in) {
+                return in.handler.getImageState(in.image, in.header);
+            }
+        });
+    }
+
+    @Test
+    public void extractHeaderAllocation() throws Exception {
+        assertCopies("extractHeader", 0, encoded(PASSWORD, false, Compressibility.RANDOM), new Step() {
+            @Override
+            public Object run(final Encoded in) {
+                return in.handler.extractHeader(in.image);
+            }
+        });
+    }
+
+    @Test
+    public void encodeAllocation() throws Exception {
+        final Encoded in = encoded(null, false, Compressibility.RANDOM);
+        final long carrierBytes = 4L * in.original.pixels.length;
+
+        // The sequential encoder runs on the calling thread, so only its counter is read
+        EncodePipeline.forced = false;
+
+        try {
+            // Encoding always copies the carrier once, so that the original stays intact
+            assertBudget("encode", carrierBytes + 2L * PAYLOAD_SIZE + FIXED_OVERHEAD, in, new Step() {
+                @Override
+                public Object run(final Encoded in) throws Exception {
+                    return in.handler.encodeSecret(in.original, in.payload, TestCorpus.options(Versions.VERSION_1_0_0, null, false));
+                }
+            });
+        } finally {
+            EncodePipeline.forced = null;
+        }
+    }
+
+    @Test
+    public void encodePipelineAllocation() throws Exception {
+        final Encoded in = encoded(PASSWORD, false, Compressibility.RANDOM);
+        final long carrierBytes = 4L * in.original.pixels.length;
+
+        // The steps allocate on pool threads, so every thread's counter is read. Blocks are sliced from the file
+        // data and written to the pixels as they are; only encryption copies them, twice (the cipher copies its
+        // input before encrypting it).
+        EncodePipeline.forced = true;
+
+        try {
+            assertAllThreadsBudget("pipelined encode", carrierBytes + 2L * PAYLOAD_SIZE + FIXED_OVERHEAD, in, new Step() {
+                @Override
+                public Object run(final Encoded in) throws Exception {
+                    return in.handler.encodeSecret(in.original, in.payload, TestCorpus.options(Versions.VERSION_1_0_0, PASSWORD, false));
+                }
+            });
+        } finally {
+            EncodePipeline.forced = null;
+        }
+    }
+
+    // Throughput floors, relative to the calibration loop
+
+    @Test
+    public void extractThroughput() throws Exception {
+        assumeThroughputTests();
+        final Encoded in = encoded(null, false, Compressibility.RANDOM);
+
+        assertThroughput("extractBytes", 4, in, new Step() {
+            @Override
+            public Object run(final Encoded in) {
+                return PackageFunctions.extractBytes(in.image.pixels, PAYLOAD_SIZE, in.header.headerSize());
+            }
+        });
+    }
+
+    @Test
+    public void writeThroughput() throws Exception {
+        assumeThroughputTests();
+        final Encoded in = encoded(null, false, Compressibility.RANDOM);
+        final int[] target = in.image.pixels.clone();
+
+        assertThroughput("writeBytes", 4, in, new Step() {
+            @Override
+            public Object run(final Encoded in) {
+                PackageFunctions.writeBytes(target, in.payload.data(), in.header.headerSize());
+                return target;
+            }
+        });
+    }
+
+    @Test
+    public void decodeThroughput() throws Exception {
+        assumeThroughputTests();
+        final Encoded in = encoded(null, false, Compressibility.RANDOM);
+
+        assertThroughput("decode", 6, in, new Step() {
+            @Override
+            public Object run(final Encoded in) throws Exception {
+                return in.handler.decode(in.image, in.header, null);
+            }
+        });
+    }
+
+    /**
+     * A step of the codec, run repeatedly on the same encoded image
+     */
+    private interface Step {
+        Object run(final Encoded in) throws Exception;
+    }
+
+    /**
+     * An encoded image, with everything needed to encode it again
+     */
+    private static final class Encoded {
+        PackageHandler handler;
+        ImageData original;
+        Payload payload;
+        ImageData image;
+        PackageHeader header;
+    }
+
+    private static Encoded encoded(final String password, final boolean compress, final Compressibility compressibility) throws Exception {
+        final Encoded out = new Encoded();
+        out.handler = Versions.getHandler(Versions.VERSION_1_0_0);
+        out.original = TestCorpus.carrier(WIDTH, HEIGHT, 42);
+        out.payload = TestCorpus.payload(out.handler, TestCorpus.data(PAYLOAD_SIZE, compressibility, 42));
+        out.image = out.handler.encodeSecret(out.original, out.payload, TestCorpus.options(Versions.VERSION_1_0_0, password, compress));
+        out.header = out.handler.extractHeader(out.image);
+
+        // A budget on a broken path means nothing
+        assertArrayEquals(out.payload.data(), out.handler.decode(out.image, out.header, password).data());
+
+        return out;
+    }
+
+    private static void assertCopies(final String name, final int copies, final Encoded in, final Step step) throws Exception {
+        assertBudget(name, (long) copies * PAYLOAD_SIZE + FIXED_OVERHEAD, in, step);
+    }
+
+    private static void assertBudget(final String name, final long budget, final Encoded in, final Step step) throws Exception {
+        final long allocated = measure(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                final long threadId = Thread.currentThread().getId();
+                final long before = threads.getThreadAllocatedBytes(threadId);
+                step.run(in);
+
+                return threads.getThreadAllocatedBytes(threadId) - before;
+            }
+        });
+
+        assertTrue(String.format("%s allocated %d bytes (%.2f payload copies), budget is %d bytes (%.2f payload copies)",
+                name, allocated, (double) allocated / PAYLOAD_SIZE, budget, (double) budget / PAYLOAD_SIZE), allocated <= budget);
+    }
+
+    private static void assumeThroughputTests() {
+        Assume.assumeTrue("Throughput floors are off; set " + THROUGHPUT_PROPERTY + " to run them", Boolean.getBoolean(THROUGHPUT_PROPERTY));
+    }
+
+    /**
+     * Like {@link #assertBudget}, but counts what every thread allocated while the step ran. Threads that
+     * started during the step count from zero; other work running at the same time counts too, so only
+     * paths that hand their work to other threads are measured this way.
+     */
+    private static void assertAllThreadsBudget(final String name, final long budget, final Encoded in, final Step step) throws Exception {
+        final long allocated = measure(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                final Map<Long, Long> before = allocatedByThread();
+                step.run(in);
+
+                long total = 0;
+
+                for (final Map.Entry<Long, Long> thread : allocatedByThread().entrySet()) {
+                    final Long previous = before.get(thread.getKey());
+                    total += thread.getValue() - ((previous == null) ? 0 : previous);
+                }
+
+                return total;
+            }
+        });
+
+        assertTrue(String.format("%s allocated %d bytes (%.2f payload copies), budget is %d bytes (%.2f payload copies)",
+                name, allocated, (double) allocated / PAYLOAD_SIZE, budget, (double) budget / PAYLOAD_SIZE), allocated <= budget);
+    }
+
+    /**
+     * @return bytes allocated so far by each live thread, by thread ID
+     */
+    private static Map<Long, Long> allocatedByThread() {
+        final long[] ids = threads.getAllThreadIds();
+        final long[] allocated = threads.getThreadAllocatedBytes(ids);
+        final Map<Long, Long> out = new HashMap<Long, Long>();
+
+        for (int i = 0; i < ids.length; i++) {
+            // -1 for threads that ended since the IDs were read
+            if (allocated[i] >= 0) {
+                out.put(ids[i], allocated[i]);
+            }
+        }
+
+        return out;
+    }
+
+    private static void assertThroughput(final String name, final double maxRatio, final Encoded in, final Step step) throws Exception {
+        final int[] pixels = in.image.pixels;
+
+        final long calibration = measure(new Callable<Long>() {
+            @Override
+            public Long call() {
+                final long start = System.nanoTime();
+                sink ^= calibrationLoop(pixels, in.header.headerSize(), PAYLOAD_SIZE);
+
+                return System.nanoTime() - start;
+            }
+        });
+
+        final long elapsed = measure(new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                final long start = System.nanoTime();
+                sink ^= step.run(in).hashCode();
+
+                return System.nanoTime() - start;
+            }
+        });
+
+        final double ratio = (double) elapsed / Math.max(1, calibration);
+
+        assertTrue(String.format("%s took %.1fx the calibration loop (%d ns vs %d ns), floor is %.1fx",
+                name, ratio, elapsed, calibration, maxRatio), ratio <= maxRatio);
+    }
+
+    /**
+     * Prevents the calibration loop and the measured steps from being optimized away
+     */
+    private static volatile long sink;
+
+    /**
+     * Touches every payload pixel once with about as much work as unpacking it, without allocating.
+     */
+    private static long calibrationLoop(final int[] pixels, final int offset, final int length) {
+        long sum = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            final int pixel = pixels[i] & 0x03030303;
+            sum += (pixel >>> 18) | (pixel >>> 12) | (pixel >>> 6) | pixel;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Runs a measurement a few times after warming up, and returns the smallest result. The minimum
+     * is the least noisy estimate for both time and allocation.
+     */
+    private static long measure(final Callable<Long> measurement) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            measurement.call();
+        }
+
+        long best = Long.MAX_VALUE;
+
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            best = Math.min(best, measurement.call());
+        }
+
+        return best;
+    }
+}
@@ -0,0 +1,116 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the compact 1.6.0 package header: its size, its checksum and the variable-length ints it is built
+ * from. Decoding is covered by {@link RoundTripTest}.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class CompactHeaderTest {
+
+    private static final String PASSWORD = "compact";
+
+    /**
+     * The pixel bits holding each bit of a byte, from least significant
+     */
+    private static final int[] PIXEL_BITS = {0, 1, 8, 9, 16, 17, 24, 25};
+
+    private final PackageHandler handler = Versions.getHandler(Versions.VERSION_1_6_0);
+
+    private final PackageHandler original = Versions.getHandler(Versions.VERSION_1_0_0);
+
+    private final byte[] data = TestCorpus.data(1000, Compressibility.TEXT, 1);
+
+    @Test
+    public void headerIsSmallerThanOriginalHeader() throws Exception {
+        for (final String password : new String[] {null, PASSWORD}) {
+            final int compact = handler.extractHeader(encode(handler, Versions.VERSION_1_6_0, password)).headerSize();
+            final int old = original.extractHeader(encode(original, Versions.VERSION_1_0_0, password)).headerSize();
+
+            assertTrue(compact + " >= " + old, compact < old);
+            assertTrue(compact <= handler.maxHeaderSize());
+        }
+    }
+
+    @Test
+    public void damagedHeaderIsRejected() throws Exception {
+        final ImageData encoded = encode(handler, Versions.VERSION_1_6_0, PASSWORD);
+        final int headerSize = handler.extractHeader(encoded).headerSize();
+
+        // Past the version code, every header bit is covered by the checksum
+        for (int i = PackageFunctions.COMPACT_VERSION_CODE_LENGTH; i < headerSize; i++) {
+            for (int bit = 0; bit < PIXEL_BITS.length; bit++) {
+                final ImageData damaged = new ImageData(encoded.pixels.clone(), encoded.width, encoded.height);
+                damaged.pixels[i] ^= 1 << PIXEL_BITS[bit];
+
+                try {
+                    handler.extractHeader(damaged);
+                    fail("Accepted a damaged header at byte " + i + ", bit " + bit);
+                } catch (IllegalArgumentException e) {
+                    // Expected
+                }
+
+                assertEquals(EncodedImageState.CORRUPTED, handler.getImageState(damaged, null));
+            }
+        }
+    }
+
+    @Test
+    public void varintsRoundTrip() {
+        final int[] values = {0, 1, 127, 128, 16383, 16384, (1 << 21) - 1, 1 << 21, (1 << 28) - 1, 1 << 28, Integer.MAX_VALUE};
+        final int[] sizes = {1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5};
+
+        for (int i = 0; i < values.length; i++) {
+            final byte[] bytes = PackageFunctions.varintToBytes(values[i]);
+
+            assertEquals(sizes[i], bytes.length);
+            assertEquals(sizes[i], PackageFunctions.varintSize(values[i]));
+            assertEquals(values[i], PackageFunctions.varintFromBytes(bytes, 0));
+        }
+    }
+
+    @Test
+    public void malformedVarintsAreRejected() {
+        final byte[][] malformed = {
+                {(byte) 0x80},
+                {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x08},
+                {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01}
+        };
+
+        for (final byte[] bytes : malformed) {
+            try {
+                PackageFunctions.varintFromBytes(bytes, 0);
+                fail("Accepted a malformed varint");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void versionCodesAreRecognized() throws Exception {
+        final ImageData compact = encode(handler, Versions.VERSION_1_6_0, null);
+        final ImageData old = encode(original, Versions.VERSION_1_0_0, null);
+
+        assertEquals(Versions.VERSION_1_6_0, PackageFunctions.versionCode(compact));
+        assertEquals(Versions.VERSION_1_0_0, PackageFunctions.versionCode(old));
+
+        assertArrayEquals(data, handler.decode(compact, handler.extractHeader(compact), null).data());
+    }
+
+    private ImageData encode(final PackageHandler packageHandler, final long versionCode, final String password) throws Exception {
+        return packageHandler.encodeSecret(TestCorpus.carrier(64, 64, 2), TestCorpus.payload(packageHandler, data),
+                TestCorpus.options(versionCode, password, true));
+    }
+}
@@ -0,0 +1,51 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link Crc32C} against the standard check value and against a byte-at-a-time CRC.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class Crc32CTest {
+
+    @Test
+    public void matchesCheckValue() {
+        final Crc32C crc = new Crc32C();
+        crc.update("123456789".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(0xE3069283L, crc.getValue());
+
+        crc.reset();
+        assertEquals(0L, crc.getValue());
+    }
+
+    @Test
+    public void slicingMatchesByteAtATime() {
+        final Random random = new Random(1);
+
+        for (int length = 0; length < 100; length++) {
+            final byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+
+            final int offset = length / 3;
+
+            final Crc32C sliced = new Crc32C();
+            sliced.update(bytes, offset, length - offset);
+
+            final Crc32C single = new Crc32C();
+
+            for (int i = offset; i < length; i++) {
+                single.update(bytes[i]);
+            }
+
+            assertEquals("length " + length, single.getValue(), sliced.getValue());
+        }
+    }
+}
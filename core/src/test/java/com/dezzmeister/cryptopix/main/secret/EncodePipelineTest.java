@@ -0,0 +1,120 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link EncodePipeline} stores exactly the payload that the sequential encoder stores, and
+ * writes it to the same pixels.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class EncodePipelineTest {
+
+    private static final int OFFSET = 61;
+
+    private final byte[] payloadHeader = {0, 0, 0, 3, 'a', '.', 'b', 0, 0, 0, 1, 'c'};
+
+    private final SecretKeySpec keySpec = new SecretKeySpec(TestCorpus.data(16, Compressibility.RANDOM, 1), "AES");
+
+    private final IvParameterSpec ivSpec = new IvParameterSpec(TestCorpus.data(16, Compressibility.RANDOM, 2));
+
+    @Test
+    public void matchesSequentialEncoder() throws Exception {
+        final ImageData carrier = TestCorpus.carrier(1000, 1000, 3);
+
+        for (final int size : new int[] {0, 1, EncodePipeline.BLOCK_SIZE, 3 * EncodePipeline.BLOCK_SIZE + 7}) {
+            for (final Compressibility compressibility : Compressibility.values()) {
+                final byte[] fileData = TestCorpus.data(size, compressibility, size);
+
+                for (final boolean compress : new boolean[] {false, true}) {
+                    for (final boolean encrypt : new boolean[] {false, true}) {
+                        final String name = size + "B " + compressibility + (compress ? " compressed" : "") + (encrypt ? " encrypted" : "");
+
+                        final byte[] stored = sequentialPayload(fileData, compress, encrypt);
+                        final int[] expected = carrier.pixels.clone();
+                        PackageFunctions.writeBytes(expected, stored, OFFSET);
+
+                        final int[] out = new int[carrier.pixels.length];
+                        final EncodePipeline.Result result = EncodePipeline.run(payloadHeader, fileData, compress, encrypt ? cipher() : null, carrier.pixels, out, OFFSET);
+
+                        assertEquals(name, stored.length, result.payloadSize);
+                        assertArrayEquals(name, MessageDigest.getInstance("MD5").digest(stored), result.payloadHash);
+                        assertArrayEquals(name, Arrays.copyOfRange(expected, OFFSET, OFFSET + stored.length), Arrays.copyOfRange(out, OFFSET, OFFSET + stored.length));
+
+                        // Pixels outside the payload are left to the caller
+                        assertEquals(name, 0, out[OFFSET - 1]);
+                        assertEquals(name, 0, out[OFFSET + stored.length]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tooLargePayloadStopsEveryStep() throws Exception {
+        final ImageData carrier = TestCorpus.carrier(100, 100, 4);
+        final byte[] fileData = TestCorpus.data(EncodePipeline.BLOCK_SIZE * EncodePipeline.QUEUE_CAPACITY * 4, Compressibility.RANDOM, 5);
+
+        try {
+            EncodePipeline.run(payloadHeader, fileData, true, cipher(), carrier.pixels, new int[carrier.pixels.length], OFFSET);
+            fail("Encoded a payload larger than the image");
+        } catch (SizeLimitExceededException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void largeFilesRoundTrip() throws Exception {
+        final PackageHandler handler = Versions.getHandler(Versions.VERSION_1_0_0);
+        final byte[] data = TestCorpus.data(2 * EncodePipeline.MIN_PIPELINED_SIZE, Compressibility.TEXT, 6);
+
+        // Both paths, whatever the number of processors
+        for (final boolean pipelined : new boolean[] {true, false}) {
+            EncodePipeline.forced = pipelined;
+
+            try {
+                for (final String password : new String[] {null, "pipeline"}) {
+                    final String name = (pipelined ? "pipelined" : "sequential") + ((password != null) ? " with password" : "");
+                    final ImageData encoded = handler.encodeSecret(TestCorpus.carrier(1000, 1000, 7), TestCorpus.payload(handler, data),
+                            TestCorpus.options(Versions.VERSION_1_0_0, password, true));
+                    final PackageHeader header = handler.extractHeader(encoded);
+
+                    assertEquals(name, (password != null) ? EncodedImageState.SECRET_PASSWORD : EncodedImageState.SECRET_NO_PASSWORD, handler.getImageState(encoded, header));
+                    assertArrayEquals(name, data, handler.decode(encoded, header, password).data());
+                }
+            } finally {
+                EncodePipeline.forced = null;
+            }
+        }
+    }
+
+    private byte[] sequentialPayload(final byte[] fileData, final boolean compress, final boolean encrypt) throws Exception {
+        final byte[] stored = compress ? PackageFunctions.compress(fileData) : fileData;
+        final byte[] payload = PackageFunctions.packSequentialBinaryFields(Arrays.asList(payloadHeader, stored));
+
+        return encrypt ? PackageFunctions.encrypt(payload, keySpec, ivSpec) : payload;
+    }
+
+    private Cipher cipher() throws Exception {
+        final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, keySpec, ivSpec);
+
+        return cipher;
+    }
+}
@@ -0,0 +1,79 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link FeistelPermutation} is a keyed bijection for sizes that are and aren't powers of two.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class FeistelPermutationTest {
+
+    private static final int[] SIZES = {1, 2, 3, 5, 255, 256, 1000, 65_537, 1_000_000};
+
+    @Test
+    public void everyIndexIsHitOnce() {
+        for (final int size : SIZES) {
+            final FeistelPermutation permutation = new FeistelPermutation(key(1), size);
+            final BitSet seen = new BitSet(size);
+
+            for (int i = 0; i < size; i++) {
+                final int image = permutation.permute(i);
+
+                assertTrue(image >= 0 && image < size);
+                assertFalse("Index " + image + " was hit twice for size " + size, seen.get(image));
+
+                seen.set(image);
+            }
+
+            assertEquals(size, seen.cardinality());
+        }
+    }
+
+    @Test
+    public void keysGiveDifferentPermutations() {
+        final FeistelPermutation first = new FeistelPermutation(key(3), 100_000);
+        final FeistelPermutation second = new FeistelPermutation(key(4), 100_000);
+        int same = 0;
+
+        for (int i = 0; i < 100_000; i++) {
+            if (first.permute(i) == second.permute(i)) {
+                same++;
+            }
+        }
+
+        // Two random permutations agree on about one index
+        assertTrue(same < 20);
+    }
+
+    @Test
+    public void consecutiveIndicesAreSpread() {
+        final int size = 1_000_000;
+        final FeistelPermutation permutation = new FeistelPermutation(key(5), size);
+        final int[] buckets = new int[10];
+
+        for (int i = 0; i < 10_000; i++) {
+            buckets[permutation.permute(i) / (size / buckets.length)]++;
+        }
+
+        for (final int bucket : buckets) {
+            assertTrue(bucket > 800 && bucket < 1200);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortKeysAreRejected() {
+        new FeistelPermutation(new byte[FeistelPermutation.KEY_LENGTH - 1], 10);
+    }
+
+    private static byte[] key(final long seed) {
+        return TestCorpus.data(FeistelPermutation.KEY_LENGTH, TestCorpus.Compressibility.RANDOM, seed);
+    }
+}
@@ -0,0 +1,140 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks tree-hashed 1.6.0 packages, and that hash trees give the same root however they are computed.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class HashTreeTest {
+
+    private static final IntegrityHash[] TREE_HASHES = {IntegrityHash.CRC32C_TREE, IntegrityHash.XXHASH64_TREE};
+
+    /**
+     * Spans several leaves, with a short last leaf
+     */
+    private static final int PAYLOAD_SIZE = 10 * HashTree.LEAF_SIZE + 123;
+
+    private final HashTreeHandler handler = (HashTreeHandler) Versions.getHandler(Versions.VERSION_1_6_0);
+
+    @Test
+    public void xxHash64MatchesReferenceValues() {
+        assertEquals(0xEF46DB3751D8E999L, xxHash64(""));
+        assertEquals(0x44BC2CF5AD770999L, xxHash64("abc"));
+        assertEquals(0xFBCEA83C8A378BF1L, xxHash64("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    public void treeHashedPackagesRoundTrip() throws Exception {
+        final byte[] data = TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 1);
+
+        for (final IntegrityHash hash : TREE_HASHES) {
+            for (final String password : new String[] {null, "tree"}) {
+                final ImageData encoded = encode(data, password, hash);
+                final PackageHeader header = handler.extractHeader(encoded);
+                final EncodedImageState expectedState = (password != null) ? EncodedImageState.SECRET_PASSWORD : EncodedImageState.SECRET_NO_PASSWORD;
+
+                assertEquals(hash.width, header.payloadHash().length);
+                assertEquals(expectedState, handler.getImageState(encoded, header));
+                assertArrayEquals(data, handler.decode(encoded, header, password).data());
+
+                encoded.pixels[header.headerSize() + PAYLOAD_SIZE / 2] ^= 0x01;
+                assertEquals(EncodedImageState.CORRUPTED, handler.getImageState(encoded, header));
+            }
+        }
+    }
+
+    @Test
+    public void rootDoesNotDependOnThreadCount() {
+        final byte[] payload = TestCorpus.data(PAYLOAD_SIZE * 4, Compressibility.RANDOM, 2);
+
+        for (final IntegrityHash hash : TREE_HASHES) {
+            final byte[] root = new HashTree(hash, source(payload), payload.length, 1).root();
+
+            for (final int threads : new int[] {2, 3, 8}) {
+                assertArrayEquals(root, new HashTree(hash, source(payload), payload.length, threads).root());
+            }
+
+            assertArrayEquals(root, HashTree.root(hash, payload));
+        }
+    }
+
+    @Test
+    public void rehashingChangedRangeMatchesFullHash() {
+        final byte[] payload = TestCorpus.data(PAYLOAD_SIZE, Compressibility.TEXT, 3);
+
+        for (final IntegrityHash hash : TREE_HASHES) {
+            final byte[] current = payload.clone();
+            final HashTree tree = new HashTree(hash, source(current), current.length);
+            final byte[] before = tree.root();
+
+            // Straddles the boundary between the second and third leaves
+            final int from = 2 * HashTree.LEAF_SIZE - 10;
+            final int to = from + 20;
+
+            for (int i = from; i < to; i++) {
+                current[i] ^= 0x5A;
+            }
+
+            final long untouched = tree.leafHash(0);
+            tree.rehash(from, to);
+
+            assertFalse(Arrays.equals(before, tree.root()));
+            assertEquals(untouched, tree.leafHash(0));
+            assertArrayEquals(HashTree.root(hash, current), tree.root());
+            assertTrue(new HashTree(hash, source(current), current.length).matches(tree.root()));
+        }
+    }
+
+    @Test
+    public void handlerTreeMatchesHeader() throws Exception {
+        final byte[] data = TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 4);
+        final ImageData encoded = encode(data, null, IntegrityHash.XXHASH64_TREE);
+        final PackageHeader header = handler.extractHeader(encoded);
+
+        final HashTree tree = handler.hashTree(encoded, header);
+        assertTrue(tree.matches(header.payloadHash()));
+        assertEquals((header.payloadSize() + HashTree.LEAF_SIZE - 1) / HashTree.LEAF_SIZE, tree.leafCount());
+
+        final int changed = header.payloadSize() - 1;
+        encoded.pixels[header.headerSize() + changed] ^= 0x01;
+
+        tree.rehash(changed, changed + 1);
+        assertFalse(tree.matches(header.payloadHash()));
+    }
+
+    private ImageData encode(final byte[] data, final String password, final IntegrityHash hash) throws Exception {
+        final EncodingOptions options = TestCorpus.options(Versions.VERSION_1_6_0, password, false);
+        options.integrityHash = hash;
+
+        return handler.encodeSecret(TestCorpus.carrier(1000, 1000, 5), TestCorpus.payload(handler, data), options);
+    }
+
+    private static PackageFunctions.ByteSource source(final byte[] payload) {
+        return new PackageFunctions.ByteSource() {
+            @Override
+            public byte[] read(final int from, final int length) {
+                return Arrays.copyOfRange(payload, from, from + length);
+            }
+        };
+    }
+
+    private static long xxHash64(final String text) {
+        final byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+
+        return XxHash64.hash(bytes, 0, bytes.length, 0);
+    }
+}
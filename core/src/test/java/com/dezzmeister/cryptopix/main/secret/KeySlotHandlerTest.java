@@ -0,0 +1,112 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks adding, changing and removing passwords of key-slot packages. Packages with one password are
+ * covered by {@link RoundTripTest}.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class KeySlotHandlerTest {
+
+    private static final String PASSWORD = "first";
+
+    private static final int PAYLOAD_SIZE = 1 << 20;
+
+    private final KeySlotHandler handler = (KeySlotHandler) Versions.getHandler(Versions.VERSION_1_3_0);
+
+    private final byte[] data = TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 1);
+
+    @Test
+    public void everyPasswordDecodes() throws Exception {
+        final ImageData encoded = encode();
+        PackageHeader header = handler.extractHeader(encoded);
+
+        for (int i = 1; i < handler.keySlotCapacity(); i++) {
+            header = handler.addPassword(encoded, header, PASSWORD, "password " + i);
+        }
+
+        // Re-read the header from the pixels, to check what was written
+        header = handler.extractHeader(encoded);
+
+        assertEquals(EncodedImageState.SECRET_PASSWORD, handler.getImageState(encoded, header));
+        assertArrayEquals(data, handler.decode(encoded, header, PASSWORD).data());
+
+        for (int i = 1; i < handler.keySlotCapacity(); i++) {
+            assertTrue(handler.isCorrectPassword("password " + i, header));
+            assertArrayEquals(data, handler.decode(encoded, header, "password " + i).data());
+        }
+    }
+
+    @Test
+    public void rekeyingOnlyRewritesTheHeader() throws Exception {
+        final ImageData encoded = encode();
+        final PackageHeader before = handler.extractHeader(encoded);
+        final int[] original = encoded.pixels.clone();
+
+        handler.changePassword(encoded, before, PASSWORD, "second");
+
+        final PackageHeader after = handler.extractHeader(encoded);
+
+        assertEquals(before.headerSize(), after.headerSize());
+        assertTrue(Arrays.equals(Arrays.copyOfRange(original, after.headerSize(), original.length),
+                Arrays.copyOfRange(encoded.pixels, after.headerSize(), encoded.pixels.length)));
+
+        assertFalse(handler.isCorrectPassword(PASSWORD, after));
+        assertArrayEquals(data, handler.decode(encoded, after, "second").data());
+    }
+
+    @Test
+    public void removedPasswordNoLongerDecodes() throws Exception {
+        final ImageData encoded = encode();
+        PackageHeader header = handler.addPassword(encoded, handler.extractHeader(encoded), PASSWORD, "second");
+
+        header = handler.removePassword(encoded, header, PASSWORD);
+        header = handler.extractHeader(encoded);
+
+        assertFalse(handler.isCorrectPassword(PASSWORD, header));
+        assertArrayEquals(data, handler.decode(encoded, header, "second").data());
+    }
+
+    @Test(expected = SizeLimitExceededException.class)
+    public void slotsAreLimited() throws Exception {
+        final ImageData encoded = encode();
+        PackageHeader header = handler.extractHeader(encoded);
+
+        for (int i = 0; i < handler.keySlotCapacity(); i++) {
+            header = handler.addPassword(encoded, header, PASSWORD, "password " + i);
+        }
+    }
+
+    @Test(expected = SecurityException.class)
+    public void wrongPasswordCannotAddPasswords() throws Exception {
+        final ImageData encoded = encode();
+
+        handler.addPassword(encoded, handler.extractHeader(encoded), PASSWORD + "!", "second");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lastPasswordCannotBeRemoved() throws Exception {
+        final ImageData encoded = encode();
+
+        handler.removePassword(encoded, handler.extractHeader(encoded), PASSWORD);
+    }
+
+    private ImageData encode() throws Exception {
+        return handler.encodeSecret(TestCorpus.carrier(1100, 1000, 2), TestCorpus.payload(handler, data),
+                TestCorpus.options(Versions.VERSION_1_3_0, PASSWORD, false));
+    }
+}
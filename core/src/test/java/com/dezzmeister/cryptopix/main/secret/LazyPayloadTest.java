@@ -0,0 +1,75 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that payloads from {@link PackageHandler#openPayload(ImageData, PackageHeader, String)} only decode
+ * the file when it is used. Decoding every version is covered by {@link RoundTripTest}.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class LazyPayloadTest {
+
+    private static final String PASSWORD = "lazy";
+
+    private static final int PAYLOAD_SIZE = 100_000;
+
+    private final PackageHandler handler = Versions.getHandler(Versions.VERSION_1_0_0);
+
+    @Test
+    public void openingDoesNotDecodeTheFile() throws Exception {
+        final byte[] data = TestCorpus.data(PAYLOAD_SIZE, Compressibility.TEXT, 1);
+        final ImageData encoded = encode(data);
+        final PackageHeader header = handler.extractHeader(encoded);
+
+        // Corrupt a block in the middle of the file; opening only reads the first and last blocks
+        encoded.pixels[header.headerSize() + header.payloadSize() / 2] ^= 0x01;
+
+        final Payload opened = handler.openPayload(encoded, header, PASSWORD);
+        assertEquals("secret-" + PAYLOAD_SIZE + ".bin", opened.fileName());
+
+        try {
+            TestCorpus.readAll(opened.openStream());
+            fail("Streamed a corrupted file");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        try {
+            opened.data();
+            fail("Decoded a corrupted file");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void decodedFileNoLongerDependsOnTheImage() throws Exception {
+        final byte[] data = TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 2);
+        final ImageData encoded = encode(data);
+        final Payload opened = handler.openPayload(encoded, handler.extractHeader(encoded), PASSWORD);
+
+        assertArrayEquals(data, opened.data());
+
+        Arrays.fill(encoded.pixels, 0);
+
+        assertArrayEquals(data, opened.data());
+        assertArrayEquals(data, TestCorpus.readAll(opened.openStream()));
+    }
+
+    private ImageData encode(final byte[] data) throws Exception {
+        return handler.encodeSecret(TestCorpus.carrier(400, 300, 3), TestCorpus.payload(handler, data),
+                TestCorpus.options(Versions.VERSION_1_0_0, PASSWORD, true));
+    }
+}
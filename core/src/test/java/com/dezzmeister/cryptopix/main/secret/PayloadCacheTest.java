@@ -0,0 +1,156 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.secret.handlers.v1_0_0.PackageData_v1_0_0;
+import com.dezzmeister.cryptopix.main.secret.handlers.v1_6_0.PackageData_v1_6_0;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link PayloadCache}: what identifies a cached payload, and which payloads are kept within the
+ * budget.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PayloadCacheTest {
+
+    private static final byte[] MD5_HASH = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+
+    @Test
+    public void keysBindTheWholeHeader() throws Exception {
+        final PayloadCache.Key key = PayloadCache.key(header_v1_0_0(100, 1000), "pw");
+
+        assertEquals(key, PayloadCache.key(header_v1_0_0(100, 1000), "pw"));
+        assertNotEquals(key, PayloadCache.key(header_v1_0_0(100, 1000), "pw2"));
+        assertNotEquals(key, PayloadCache.key(header_v1_0_0(100, 1000), null));
+        assertNotEquals(key, PayloadCache.key(header_v1_0_0(100, 1001), "pw"));
+        assertNotEquals(key, PayloadCache.key(header_v1_0_0(101, 1000), "pw"));
+        assertNotEquals(key, PayloadCache.key(header_v1_6_0(IntegrityHash.MD5, MD5_HASH, 100, 1000), "pw"));
+    }
+
+    @Test
+    public void forgeableRootsAreNeverCached() throws Exception {
+        final PayloadCache cache = new PayloadCache(1 << 20);
+
+        for (final IntegrityHash hash : new IntegrityHash[] {IntegrityHash.CRC32C_TREE, IntegrityHash.XXHASH64_TREE}) {
+            final PackageData_v1_6_0 header = header_v1_6_0(hash, new byte[hash.width], 20, 1000);
+            final PayloadCache.Key key = PayloadCache.key(header, "pw");
+
+            assertNull(hash.name(), key);
+
+            cache.put(key, payload(100));
+            assertNull(hash.name(), cache.get(key));
+            assertEquals(0, cache.sizeBytes());
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBytes() throws Exception {
+        final PayloadCache cache = new PayloadCache(300);
+        final PayloadCache.Key a = key(1);
+        final PayloadCache.Key b = key(2);
+        final PayloadCache.Key c = key(3);
+        final Payload payloadA = payload(100);
+        final Payload payloadB = payload(100);
+
+        cache.put(a, payloadA);
+        cache.put(b, payloadB);
+        cache.put(c, payload(100));
+        assertEquals(300, cache.sizeBytes());
+
+        // Touch a, so that b is the least recently used
+        assertSame(payloadA, cache.get(a));
+
+        cache.put(key(4), payload(150));
+
+        assertSame(payloadA, cache.get(a));
+        assertNull(cache.get(b));
+        assertNull(cache.get(c));
+        assertEquals(250, cache.sizeBytes());
+    }
+
+    @Test
+    public void replacingAKeyReplacesItsSize() throws Exception {
+        final PayloadCache cache = new PayloadCache(1000);
+        final Payload replacement = payload(40);
+
+        cache.put(key(1), payload(100));
+        cache.put(key(1), replacement);
+
+        assertSame(replacement, cache.get(key(1)));
+        assertEquals(40, cache.sizeBytes());
+    }
+
+    @Test
+    public void rejectsPayloadsLargerThanTheBudget() throws Exception {
+        final PayloadCache cache = new PayloadCache(100);
+        final Payload kept = payload(60);
+
+        cache.put(key(1), kept);
+        cache.put(key(2), payload(101));
+
+        assertNull(cache.get(key(2)));
+        assertSame(kept, cache.get(key(1)));
+        assertEquals(60, cache.sizeBytes());
+
+        final Payload named = payload(90);
+        named.setFileName("abcdef");
+        cache.put(key(3), named);
+
+        // The name counts towards the size: 90 + 2 * 6 bytes don't fit
+        assertNull(cache.get(key(3)));
+    }
+
+    @Test
+    public void clearEmptiesTheCache() throws Exception {
+        final PayloadCache cache = new PayloadCache(1000);
+        cache.put(key(1), payload(100));
+        cache.put(key(2), payload(200));
+
+        cache.clear();
+
+        assertNull(cache.get(key(1)));
+        assertNull(cache.get(key(2)));
+        assertEquals(0, cache.sizeBytes());
+
+        cache.put(key(1), payload(10));
+        assertEquals(10, cache.sizeBytes());
+    }
+
+    private static PayloadCache.Key key(final int id) throws Exception {
+        return PayloadCache.key(header_v1_0_0(100, id), null);
+    }
+
+    private static PackageData_v1_0_0 header_v1_0_0(final int dataOffset, final int payloadSize) {
+        final PackageData_v1_0_0 header = new PackageData_v1_0_0();
+        header.payloadHash = MD5_HASH.clone();
+        header.payloadSize = payloadSize;
+        header.dataOffset = dataOffset;
+
+        return header;
+    }
+
+    private static PackageData_v1_6_0 header_v1_6_0(final IntegrityHash hash, final byte[] payloadHash, final int dataOffset, final int payloadSize) {
+        final PackageData_v1_6_0 header = new PackageData_v1_6_0();
+        header.integrityHash = hash;
+        header.payloadHash = payloadHash;
+        header.payloadSize = payloadSize;
+        header.dataOffset = dataOffset;
+
+        return header;
+    }
+
+    private static Payload payload(final int size) {
+        final Payload payload = Versions.getHandler(Versions.VERSION_1_0_0).getEmptyPayload();
+        payload.setFileName("");
+        payload.setMimeType("");
+        payload.setData(new byte[size]);
+
+        return payload;
+    }
+}
@@ -0,0 +1,212 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Encodes every payload in the generated corpus into every carrier it fits in, for every supported
+ * version and option combination, and checks that it decodes back to the same file.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+@RunWith(Parameterized.class)
+public class RoundTripTest {
+
+    /**
+     * Versions covered by the corpus. New handlers should be added here.
+     */
+    private static final long[] VERSIONS = {
+            Versions.VERSION_1_0_0,
+            Versions.VERSION_1_1_0,
+            Versions.VERSION_1_2_0,
+            Versions.VERSION_1_3_0,
+            Versions.VERSION_1_4_0,
+            Versions.VERSION_1_5_0,
+            Versions.VERSION_1_6_0
+    };
+
+    private static final int[][] CARRIERS = {
+            {32, 32},
+            {256, 192},
+            {1000, 1000}
+    };
+
+    private static final int[] PAYLOAD_SIZES = {0, 1, 1000, 100_000};
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    private final long versionCode;
+    private final int width;
+    private final int height;
+    private final int payloadSize;
+    private final Compressibility compressibility;
+    private final String password;
+    private final boolean compress;
+
+    public RoundTripTest(final String name, final long _versionCode, final int _width, final int _height, final int _payloadSize,
+                         final Compressibility _compressibility, final String _password, final boolean _compress) {
+        versionCode = _versionCode;
+        width = _width;
+        height = _height;
+        payloadSize = _payloadSize;
+        compressibility = _compressibility;
+        password = _password;
+        compress = _compress;
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> corpus() {
+        final ArrayList<Object[]> cases = new ArrayList<Object[]>();
+
+        for (final long versionCode : VERSIONS) {
+            for (final int[] carrier : CARRIERS) {
+                for (final int payloadSize : PAYLOAD_SIZES) {
+                    // Leave room for the largest header and the payload header
+                    if (payloadSize + 512 > carrier[0] * carrier[1]) {
+                        continue;
+                    }
+
+                    for (final Compressibility compressibility : Compressibility.values()) {
+                        for (final String password : new String[] {null, PASSWORD}) {
+                            for (final boolean compress : new boolean[] {false, true}) {
+                                final String name = Long.toHexString(versionCode) + " " + carrier[0] + "x" + carrier[1] + " " +
+                                        payloadSize + "B " + compressibility + (password != null ? " password" : "") +
+                                        (compress ? " compressed" : "");
+
+                                cases.add(new Object[] {name, versionCode, carrier[0], carrier[1], payloadSize, compressibility, password, compress});
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return cases;
+    }
+
+    private long seed() {
+        return (versionCode * 31 + width * 7919L + payloadSize) * 31 + compressibility.ordinal();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        final PackageHandler handler = Versions.getHandler(versionCode);
+        final ImageData original = TestCorpus.carrier(width, height, seed());
+        final byte[] data = TestCorpus.data(payloadSize, compressibility, seed());
+        final Payload payload = TestCorpus.payload(handler, data);
+
+        final ImageData encoded = handler.encodeSecret(original, payload, TestCorpus.options(versionCode, password, compress));
+
+        assertEquals(width, encoded.width);
+        assertEquals(height, encoded.height);
+        assertEquals(versionCode, PackageFunctions.versionCode(encoded));
+
+        final PackageHeader header = handler.extractHeader(encoded);
+        final EncodedImageState expectedState = (password != null) ? EncodedImageState.SECRET_PASSWORD : EncodedImageState.SECRET_NO_PASSWORD;
+
+        assertEquals(password != null, header.isPasswordProtected());
+        assertEquals(expectedState, handler.getImageState(encoded, header));
+
+        if (password != null) {
+            assertTrue(handler.isCorrectPassword(PASSWORD, header));
+            assertFalse(handler.isCorrectPassword(PASSWORD + "!", header));
+        }
+
+        final Payload decoded = handler.decode(encoded, header, password);
+
+        assertEquals(payload.fileName(), decoded.fileName());
+        assertEquals(payload.mimeType(), decoded.mimeType());
+        assertArrayEquals(data, decoded.data());
+    }
+
+    @Test
+    public void peekMatchesDecode() throws Exception {
+        final PackageHandler handler = Versions.getHandler(versionCode);
+        final ImageData original = TestCorpus.carrier(width, height, seed());
+        final byte[] data = TestCorpus.data(payloadSize, compressibility, seed());
+        final Payload payload = TestCorpus.payload(handler, data);
+
+        final ImageData encoded = handler.encodeSecret(original, payload, TestCorpus.options(versionCode, password, compress));
+        final PackageHeader header = handler.extractHeader(encoded);
+        final PayloadMetadata metadata = handler.peekMetadata(encoded, header, password);
+
+        assertEquals(payload.fileName(), metadata.fileName);
+        assertEquals(payload.mimeType(), metadata.mimeType);
+        assertTrue(metadata.storedSize >= 0 && metadata.storedSize <= header.payloadSize());
+
+        // The size of a compressed file is only known after inflating it
+        if (metadata.compressed) {
+            assertTrue(metadata.size == data.length || metadata.size == -1);
+        } else {
+            assertEquals(data.length, metadata.size);
+        }
+
+        if (password != null) {
+            try {
+                handler.peekMetadata(encoded, header, PASSWORD + "!");
+                fail("Peeked with the wrong password");
+            } catch (SecurityException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void openedPayloadDecodesOnDemand() throws Exception {
+        final PackageHandler handler = Versions.getHandler(versionCode);
+        final ImageData original = TestCorpus.carrier(width, height, seed());
+        final byte[] data = TestCorpus.data(payloadSize, compressibility, seed());
+        final Payload payload = TestCorpus.payload(handler, data);
+
+        final ImageData encoded = handler.encodeSecret(original, payload, TestCorpus.options(versionCode, password, compress));
+        final Payload opened = handler.openPayload(encoded, handler.extractHeader(encoded), password);
+
+        assertEquals(payload.fileName(), opened.fileName());
+        assertEquals(payload.mimeType(), opened.mimeType());
+        assertArrayEquals(data, TestCorpus.readAll(opened.openStream()));
+        assertArrayEquals(data, opened.data());
+
+        // Once decoded, the stream reads the decoded file
+        assertArrayEquals(data, TestCorpus.readAll(opened.openStream()));
+    }
+
+    @Test
+    public void corruptedPayloadIsDetected() throws Exception {
+        final PackageHandler handler = Versions.getHandler(versionCode);
+        final ImageData original = TestCorpus.carrier(width, height, seed());
+        final Payload payload = TestCorpus.payload(handler, TestCorpus.data(payloadSize, compressibility, seed()));
+
+        final ImageData encoded = handler.encodeSecret(original, payload, TestCorpus.options(versionCode, password, compress));
+        final PackageHeader header = handler.extractHeader(encoded);
+
+        // Flip one hidden bit in the first payload pixel
+        final int firstPayloadPixel = (handler instanceof ScatteredHandler) ? ((ScatteredHandler) handler).payloadPixel(header, 0) : header.headerSize();
+        encoded.pixels[firstPayloadPixel] ^= 0x01;
+
+        assertEquals(EncodedImageState.CORRUPTED, handler.getImageState(encoded, handler.extractHeader(encoded)));
+    }
+
+    @Test
+    public void carrierIsNotASecret() {
+        final ImageData original = TestCorpus.carrier(width, height, seed());
+
+        assertNotEquals(versionCode, PackageFunctions.versionCode(original));
+        assertFalse(Versions.isSupported(PackageFunctions.versionCode(original)));
+    }
+}
@@ -0,0 +1,102 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks where scattered packages are written. Round trips are covered by {@link RoundTripTest}.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class ScatteredHandlerTest {
+
+    private static final String PASSWORD = "scattered";
+
+    private static final int WIDTH = 1000;
+
+    private static final int HEIGHT = 800;
+
+    private final ScatteredHandler handler = (ScatteredHandler) Versions.getHandler(Versions.VERSION_1_5_0);
+
+    @Test
+    public void smallPayloadTouchesEveryPartOfTheImage() throws Exception {
+        final ImageData original = TestCorpus.carrier(WIDTH, HEIGHT, 1);
+        final ImageData encoded = encode(original, TestCorpus.data(20_000, Compressibility.RANDOM, 2), null);
+        final PackageHeader header = handler.extractHeader(encoded);
+
+        // Count the payload pixels in each tenth of the rows
+        final int[] bands = new int[10];
+
+        for (int i = 0; i < header.payloadSize(); i++) {
+            final int pixel = handler.payloadPixel(header, i);
+
+            assertTrue(pixel >= header.headerSize());
+            bands[(pixel / WIDTH) * bands.length / HEIGHT]++;
+        }
+
+        // The scatter key is random, and pixels move in blocks, so each band only holds about 125 blocks
+        // (give or take 11); half of that is far enough out that a uniform scatter never misses it
+        for (final int band : bands) {
+            assertTrue(band > header.payloadSize() / bands.length / 2);
+        }
+
+        // Nothing but the header is written contiguously
+        int changedLeading = 0;
+
+        for (int i = header.headerSize(); i < header.headerSize() + 1000; i++) {
+            if (original.pixels[i] != encoded.pixels[i]) {
+                changedLeading++;
+            }
+        }
+
+        assertTrue(changedLeading < 100);
+    }
+
+    @Test
+    public void largePayloadIsScatteredInParallel() throws Exception {
+        // Large enough to be split into ranges on a multi-core machine
+        final byte[] data = TestCorpus.data(600_000, Compressibility.RANDOM, 3);
+        final ImageData encoded = encode(TestCorpus.carrier(WIDTH, HEIGHT, 4), data, PASSWORD);
+        final PackageHeader header = handler.extractHeader(encoded);
+
+        assertEquals(EncodedImageState.SECRET_PASSWORD, handler.getImageState(encoded, header));
+        assertArrayEquals(data, handler.decode(encoded, header, PASSWORD).data());
+    }
+
+    @Test
+    public void headerPixelsAreEnoughForTheHeader() throws Exception {
+        final ImageData encoded = encode(TestCorpus.carrier(WIDTH, HEIGHT, 5), TestCorpus.data(5000, Compressibility.TEXT, 6), PASSWORD);
+        final int headerSize = handler.extractHeader(encoded).headerSize();
+
+        final int[] leading = new int[headerSize];
+        System.arraycopy(encoded.pixels, 0, leading, 0, headerSize);
+
+        // A header restored from the leading pixels still locates the payload in the full image
+        final PackageHeader restored = handler.extractHeader(new ImageData(leading, headerSize, 1));
+
+        assertEquals(EncodedImageState.SECRET_PASSWORD, handler.getImageState(encoded, restored));
+        assertEquals(encoded.pixels.length, restored.packageSize());
+    }
+
+    @Test
+    public void resizedImageIsCorrupted() throws Exception {
+        final ImageData encoded = encode(TestCorpus.carrier(WIDTH, HEIGHT, 7), TestCorpus.data(5000, Compressibility.TEXT, 8), null);
+        final int[] cropped = new int[encoded.pixels.length - WIDTH];
+        System.arraycopy(encoded.pixels, 0, cropped, 0, cropped.length);
+
+        final ImageData image = new ImageData(cropped, WIDTH, HEIGHT - 1);
+
+        assertEquals(EncodedImageState.CORRUPTED, handler.getImageState(image, handler.extractHeader(image)));
+    }
+
+    private ImageData encode(final ImageData carrier, final byte[] data, final String password) throws Exception {
+        return handler.encodeSecret(carrier, TestCorpus.payload(handler, data), TestCorpus.options(Versions.VERSION_1_5_0, password, false));
+    }
+}
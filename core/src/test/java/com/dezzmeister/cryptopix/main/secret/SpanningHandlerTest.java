@@ -0,0 +1,154 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.exceptions.SizeLimitExceededException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.TestCorpus.Compressibility;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks payloads split across several carriers. Sets of one segment are covered by {@link RoundTripTest}.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class SpanningHandlerTest {
+
+    private static final String PASSWORD = "spanning";
+
+    /**
+     * Larger than any one carrier, so the payload only fits across the whole set
+     */
+    private static final int PAYLOAD_SIZE = 150_000;
+
+    private static final int THREADS = 4;
+
+    private final SpanningHandler handler = (SpanningHandler) Versions.getHandler(Versions.VERSION_1_2_0);
+
+    @Test
+    public void decodesFromAnyOrder() throws Exception {
+        for (final String password : new String[] {null, PASSWORD}) {
+            final byte[] data = TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 1);
+            final ImageData[] segments = encode(data, password);
+
+            final List<ImageData> shuffled = new ArrayList<ImageData>(Arrays.asList(segments));
+            Collections.shuffle(shuffled, new Random(2));
+
+            assertArrayEquals(data, handler.decodeSpanned(shuffled, password, THREADS).data());
+
+            for (final ImageData segment : segments) {
+                final PackageHeader header = handler.extractHeader(segment);
+                final EncodedImageState expectedState = (password != null) ? EncodedImageState.SECRET_PASSWORD : EncodedImageState.SECRET_NO_PASSWORD;
+
+                assertEquals(expectedState, handler.getImageState(segment, header));
+            }
+        }
+    }
+
+    @Test
+    public void firstSegmentCanBePeeked() throws Exception {
+        for (final String password : new String[] {null, PASSWORD}) {
+            final ImageData[] segments = encode(TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 6), password);
+            final PayloadMetadata metadata = handler.peekMetadata(segments[0], handler.extractHeader(segments[0]), password);
+
+            assertEquals("secret-" + PAYLOAD_SIZE + ".bin", metadata.fileName);
+            assertEquals("application/octet-stream", metadata.mimeType);
+
+            // The last cipher block is in another image, so the size of an encrypted file is unknown
+            assertEquals((password != null) ? -1 : PAYLOAD_SIZE, metadata.size);
+
+            try {
+                handler.peekMetadata(segments[1], handler.extractHeader(segments[1]), password);
+                fail("Peeked at a segment without the payload header");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void everyCarrierGetsASegment() throws Exception {
+        final ImageData[] segments = encode(TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 3), null);
+
+        for (final ImageData segment : segments) {
+            // Split in proportion to capacity, so no carrier is left empty
+            assertTrue(handler.extractHeader(segment).payloadSize() > PAYLOAD_SIZE / 8);
+        }
+    }
+
+    @Test
+    public void missingSegmentIsReported() throws Exception {
+        final ImageData[] segments = encode(TestCorpus.data(PAYLOAD_SIZE, Compressibility.TEXT, 4), null);
+
+        assertFails(Arrays.asList(segments[0], segments[1], segments[3]));
+    }
+
+    @Test
+    public void segmentsFromDifferentSetsAreRejected() throws Exception {
+        final byte[] data = TestCorpus.data(PAYLOAD_SIZE, Compressibility.TEXT, 5);
+        final ImageData[] first = encode(data, null);
+        final ImageData[] second = encode(data, null);
+
+        assertFails(Arrays.asList(first[0], first[1], second[2], first[3]));
+    }
+
+    @Test
+    public void corruptedSegmentIsReported() throws Exception {
+        final ImageData[] segments = encode(TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 6), PASSWORD);
+        segments[2].pixels[handler.extractHeader(segments[2]).headerSize()] ^= 0x01;
+
+        assertFails(Arrays.asList(segments));
+    }
+
+    @Test
+    public void foreignImagesAreRejected() throws Exception {
+        final ImageData[] segments = encode(TestCorpus.data(PAYLOAD_SIZE, Compressibility.RANDOM, 8), null);
+        final PackageHandler v1_0_0 = Versions.getHandler(Versions.VERSION_1_0_0);
+        final ImageData encoded = v1_0_0.encodeSecret(TestCorpus.carrier(128, 128, 14), TestCorpus.payload(v1_0_0, new byte[1_000]), TestCorpus.options(Versions.VERSION_1_0_0, null, false));
+
+        // The pixels of a plain carrier decode to any segment count; none of them may be trusted
+        for (long seed = 20; seed < 40; seed++) {
+            assertFails(Arrays.asList(TestCorpus.carrier(256, 192, seed), segments[0], segments[1], segments[2], segments[3]));
+        }
+
+        assertFails(Arrays.asList(encoded, segments[0], segments[1], segments[2], segments[3]));
+        assertFails(Arrays.asList(segments[0], segments[1], encoded, segments[2], segments[3]));
+    }
+
+    @Test(expected = SizeLimitExceededException.class)
+    public void payloadLargerThanTheSetIsRejected() throws Exception {
+        encode(TestCorpus.data(4 * PAYLOAD_SIZE, Compressibility.RANDOM, 7), null);
+    }
+
+    private ImageData[] encode(final byte[] data, final String password) throws Exception {
+        final List<ImageData> carriers = Arrays.asList(
+                TestCorpus.carrier(256, 192, 10),
+                TestCorpus.carrier(200, 200, 11),
+                TestCorpus.carrier(320, 160, 12),
+                TestCorpus.carrier(192, 192, 13)
+        );
+
+        return handler.encodeSpanned(carriers, TestCorpus.payload(handler, data), TestCorpus.options(Versions.VERSION_1_2_0, password, false), THREADS);
+    }
+
+    private void assertFails(final List<ImageData> segments) throws Exception {
+        try {
+            handler.decodeSpanned(segments, PASSWORD, THREADS);
+            fail("Incomplete set was decoded");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates deterministic carriers and payloads for the codec regression tests. Everything is seeded,
+ * so a failing case can be reproduced from its name alone.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+final class TestCorpus {
+
+    /**
+     * How well a generated payload compresses
+     */
+    enum Compressibility {
+        RANDOM,
+        TEXT,
+        ZEROS
+    }
+
+    private static final String WORDS = "the quick brown fox jumps over a lazy dog while cryptopix hides secrets in pixels ";
+
+    private TestCorpus() {}
+
+    /**
+     * Creates a carrier image filled with random opaque pixels.
+     *
+     * @param width width of the image
+     * @param height height of the image
+     * @param seed random seed
+     * @return carrier image
+     */
+    static ImageData carrier(final int width, final int height, final long seed) {
+        final Random random = new Random(seed);
+        final int[] pixels = new int[width * height];
+
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x01000000);
+        }
+
+        return new ImageData(pixels, width, height);
+    }
+
+    /**
+     * Creates payload file data of the given size and compressibility.
+     *
+     * @param size number of bytes
+     * @param compressibility how well the data should compress
+     * @param seed random seed
+     * @return file data
+     */
+    static byte[] data(final int size, final Compressibility compressibility, final long seed) {
+        final byte[] out = new byte[size];
+
+        switch (compressibility) {
+            case RANDOM:
+                new Random(seed).nextBytes(out);
+                break;
+            case TEXT:
+                final byte[] words = WORDS.getBytes(StandardCharsets.US_ASCII);
+                final Random random = new Random(seed);
+
+                for (int i = 0; i < size; i++) {
+                    out[i] = words[(i + random.nextInt(3)) % words.length];
+                }
+                break;
+            case ZEROS:
+                break;
+        }
+
+        return out;
+    }
+
+    /**
+     * Creates a payload for the given handler.
+     *
+     * @param handler package handler
+     * @param data file data
+     * @return payload
+     */
+    static Payload payload(final PackageHandler handler, final byte[] data) {
+        final Payload payload = handler.getEmptyPayload();
+        payload.setFileName("secret-" + data.length + ".bin");
+        payload.setMimeType("application/octet-stream");
+        payload.setData(data);
+
+        return payload;
+    }
+
+    /**
+     * Creates encoding options for the given version.
+     *
+     * @param versionCode Cryptopix version code
+     * @param password password, or null
+     * @param compress true to compress the payload
+     * @return encoding options
+     */
+    static EncodingOptions options(final long versionCode, final String password, final boolean compress) {
+        final EncodingOptions options = new EncodingOptions();
+        options.versionCode = versionCode;
+        options.password = password;
+        options.compress = compress;
+
+        return options;
+    }
+
+    /**
+     * Reads a stream to the end and closes it.
+     *
+     * @param in stream to read
+     * @return every byte in the stream
+     * @throws IOException if the stream cannot be read
+     */
+    static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+
+        try {
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+
+        return out.toByteArray();
+    }
+}
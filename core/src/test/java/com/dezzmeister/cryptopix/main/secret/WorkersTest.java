@@ -0,0 +1,124 @@
+package com.dezzmeister.cryptopix.main.secret;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link Workers}: every task runs exactly once, failures reach the caller, and nested parallel
+ * work stays on the thread that is already pooled.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class WorkersTest {
+
+    @Test
+    public void runsEveryTaskOnce() throws Exception {
+        final AtomicInteger[] counts = new AtomicInteger[64];
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        for (int i = 0; i < counts.length; i++) {
+            final AtomicInteger count = counts[i] = new AtomicInteger();
+
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    count.incrementAndGet();
+                }
+            });
+        }
+
+        Workers.runAll(tasks);
+
+        for (final AtomicInteger count : counts) {
+            assertEquals(1, count.get());
+        }
+
+        assertFalse(Workers.isPooled());
+    }
+
+    @Test
+    public void nestedWorkStaysOnThePooledThread() throws Exception {
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        final Thread[] outer = new Thread[1];
+
+        Workers.compute().submit(new Runnable() {
+            @Override
+            public void run() {
+                outer[0] = Thread.currentThread();
+
+                final List<Runnable> tasks = new ArrayList<Runnable>();
+
+                for (int i = 0; i < 16; i++) {
+                    tasks.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            threads.add(Thread.currentThread());
+                        }
+                    });
+                }
+
+                try {
+                    Workers.runAll(tasks);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }).get();
+
+        assertEquals(1, threads.size());
+        assertSame(outer[0], threads.iterator().next());
+    }
+
+    @Test
+    public void markedTasksArePooledOnlyWhileRunning() throws Exception {
+        final boolean[] inside = new boolean[1];
+
+        Workers.marked(new Runnable() {
+            @Override
+            public void run() {
+                inside[0] = Workers.isPooled();
+            }
+        }).run();
+
+        assertTrue(inside[0]);
+        assertFalse(Workers.isPooled());
+    }
+
+    @Test
+    public void failuresAreRethrown() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        for (int i = 0; i < 4; i++) {
+            final int index = i;
+
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    if (index == 1) {
+                        throw new IllegalArgumentException("Task " + index + " failed!");
+                    }
+                }
+            });
+        }
+
+        try {
+            Workers.runAll(tasks);
+            fail("A failed task was ignored");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Task 1 failed!", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.dezzmeister.cryptopix.jvm;
+
+import com.dezzmeister.cryptopix.main.exceptions.PackageException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the decoded body of a secret file as {@link ByteBuffer}s, reading the pixels only as fast as
+ * the subscriber asks for buffers. Each subscriber gets its own stream from
+ * {@link PackageHandler#openPayload(ImageData, PackageHeader, String)}, which extracts, decrypts and inflates
+ * the payload a piece at a time for the handlers that support it, so a slow subscriber never forces the
+ * whole file into memory.
+ *
+ * Buffers are read on the given executor, one subscriber signal at a time. Every buffer is new, so
+ * subscribers may keep them. After each full buffer the next one is read ahead, so that the end of the body
+ * is signalled as soon as it is reached, without waiting for more demand. Failures are passed to
+ * {@link Flow.Subscriber#onError(Throwable)} as {@link PackageException}s.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class PayloadPublisher implements Flow.Publisher<ByteBuffer> {
+
+    /**
+     * Default number of bytes in each buffer
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final PackageHandler handler;
+
+    private final ImageData secret;
+
+    private final PackageHeader header;
+
+    private final String password;
+
+    private final Executor executor;
+
+    private final int bufferSize;
+
+    /**
+     * Creates a publisher of {@link #DEFAULT_BUFFER_SIZE} buffers.
+     *
+     * @param _handler package handler for the image
+     * @param _secret image containing secret data
+     * @param _header package header for the image
+     * @param _password password, or null if the secret is not password-protected
+     * @param _executor executor to read buffers on
+     */
+    public PayloadPublisher(final PackageHandler _handler, final ImageData _secret, final PackageHeader _header, final String _password, final Executor _executor) {
+        this(_handler, _secret, _header, _password, _executor, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a publisher.
+     *
+     * @param _handler package handler for the image
+     * @param _secret image containing secret data
+     * @param _header package header for the image
+     * @param _password password, or null if the secret is not password-protected
+     * @param _executor executor to read buffers on
+     * @param _bufferSize largest number of bytes in a buffer
+     */
+    public PayloadPublisher(final PackageHandler _handler, final ImageData _secret, final PackageHeader _header, final String _password, final Executor _executor, final int _bufferSize) {
+        if (_bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1!");
+        }
+
+        handler = _handler;
+        secret = _secret;
+        header = _header;
+        password = _password;
+        executor = _executor;
+        bufferSize = _bufferSize;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber cannot be null!");
+        }
+
+        final BodySubscription subscription = new BodySubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Reads the body for one subscriber. Requests add to the demand and schedule a drain on the executor if
+     * none is running; the drain emits buffers until the demand runs out, the body ends, or the subscriber
+     * cancels.
+     */
+    private final class BodySubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+
+        private final AtomicLong demand = new AtomicLong();
+
+        /**
+         * Number of times a drain was asked for since the running drain started
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private volatile boolean cancelled = false;
+
+        /**
+         * Set when request() was called with a non-positive count
+         */
+        private volatile boolean badRequest = false;
+
+        /**
+         * Only touched by the drain
+         */
+        private InputStream body = null;
+
+        /**
+         * Buffer read ahead of demand, or null. Only touched by the drain.
+         */
+        private byte[] next = null;
+
+        /**
+         * Number of bytes in {@link #next}
+         */
+        private int nextCount = 0;
+
+        private boolean done = false;
+
+        BodySubscription(final Flow.Subscriber<? super ByteBuffer> _subscriber) {
+            subscriber = _subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                badRequest = true;
+            } else {
+                long current;
+                long updated;
+
+                do {
+                    current = demand.get();
+                    updated = (current + n < 0) ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, updated));
+            }
+
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+
+            do {
+                emit();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Emits as many buffers as the subscriber asked for.
+         */
+        private void emit() {
+            if (done) {
+                return;
+            }
+
+            if (cancelled) {
+                finish();
+                return;
+            }
+
+            if (badRequest) {
+                finish();
+                subscriber.onError(new IllegalArgumentException("Requested a non-positive number of buffers!"));
+                return;
+            }
+
+            try {
+                if (body == null && demand.get() > 0) {
+                    // Not every handler checks for a missing password before using it
+                    if (password == null && header.isPasswordProtected()) {
+                        throw new PackageException(PackageException.Kind.WRONG_PASSWORD, "A password is required!");
+                    }
+
+                    body = handler.openPayload(secret, header, password).openStream();
+                }
+
+                while (demand.get() > 0 && !cancelled && !badRequest) {
+                    if (next == null) {
+                        readAhead();
+                    }
+
+                    final byte[] buffer = next;
+                    final int count = nextCount;
+                    next = null;
+
+                    if (count > 0) {
+                        demand.decrementAndGet();
+                        subscriber.onNext(ByteBuffer.wrap(buffer, 0, count));
+                    }
+
+                    if (count < buffer.length) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+
+                    if (cancelled) {
+                        break;
+                    }
+
+                    // The body may end exactly on a buffer boundary; find out now, so that completion doesn't wait
+                    // for a request the subscriber has no reason to make
+                    readAhead();
+
+                    if (nextCount == 0) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                }
+            } catch (Exception e) {
+                finish();
+                subscriber.onError(PackageException.from(e));
+                return;
+            }
+
+            if (cancelled || badRequest) {
+                // Signalled while emitting; handle it now rather than waiting for the next request
+                emit();
+            }
+        }
+
+        /**
+         * Reads the next buffer into {@link #next}.
+         */
+        private void readAhead() throws IOException {
+            next = new byte[bufferSize];
+            nextCount = readFully(next);
+        }
+
+        /**
+         * Reads until the buffer is full or the body ends.
+         *
+         * @return number of bytes read
+         */
+        private int readFully(final byte[] buffer) throws IOException {
+            int count = 0;
+
+            while (count < buffer.length) {
+                final int read = body.read(buffer, count, buffer.length - count);
+
+                if (read < 0) {
+                    break;
+                }
+
+                count += read;
+            }
+
+            return count;
+        }
+
+        /**
+         * Stops the subscription for good. No signals follow, except the one the caller is about to send.
+         */
+        private void finish() {
+            done = true;
+            next = null;
+
+            if (body != null) {
+                try {
+                    body.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+
+                body = null;
+            }
+        }
+    }
+}
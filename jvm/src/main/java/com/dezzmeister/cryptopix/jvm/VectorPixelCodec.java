@@ -0,0 +1,125 @@
+package com.dezzmeister.cryptopix.jvm;
+
+import com.dezzmeister.cryptopix.main.secret.PixelCodec;
+import com.dezzmeister.cryptopix.main.secret.PixelCodecs;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link PixelCodec} written against the Vector API (<code>jdk.incubator.vector</code>). Packs and unpacks as
+ * many pixels per step as the platform's preferred vector holds, and leaves the remaining pixels to the
+ * scalar codec. Registered with {@link java.util.ServiceLoader}, so {@link PixelCodecs} chooses it whenever
+ * this module is on the class path and the JVM runs with <code>--add-modules jdk.incubator.vector</code>.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class VectorPixelCodec implements PixelCodec {
+
+    /**
+     * Fewest int lanes worth vectorizing for. The bytes of a step are loaded as a byte vector with one lane
+     * per pixel, and the smallest byte vector is 64 bits wide.
+     */
+    private static final int MIN_LANES = 8;
+
+    /**
+     * Reports whether the Vector API can be used. Only loads {@link Kernels} (and with it the incubator
+     * module) when it is called.
+     */
+    @Override
+    public boolean isSupported() {
+        try {
+            return Kernels.INTS.length() >= MIN_LANES;
+        } catch (LinkageError e) {
+            // jdk.incubator.vector is not in the boot layer
+            return false;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+
+    @Override
+    public void pack(final byte[] bytes, final int byteOffset, final int[] pixels, final int pixelOffset, final int length) {
+        final int vectorized = Kernels.pack(bytes, byteOffset, pixels, pixelOffset, length);
+
+        PixelCodecs.SCALAR.pack(bytes, byteOffset + vectorized, pixels, pixelOffset + vectorized, length - vectorized);
+    }
+
+    @Override
+    public void unpack(final int[] pixels, final int pixelOffset, final byte[] out, final int byteOffset, final int length) {
+        final int vectorized = Kernels.unpack(pixels, pixelOffset, out, byteOffset, length);
+
+        PixelCodecs.SCALAR.unpack(pixels, pixelOffset + vectorized, out, byteOffset + vectorized, length - vectorized);
+    }
+
+    /**
+     * The vector kernels. Kept apart from the codec so that a missing incubator module only fails
+     * {@link #isSupported()}.
+     */
+    private static final class Kernels {
+
+        /**
+         * One lane per pixel
+         */
+        static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+        /**
+         * One lane per secret byte, as many lanes as {@link #INTS}
+         */
+        static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, INTS.length() * 8)));
+
+        /**
+         * Packs whole vectors of pixels.
+         *
+         * @return number of bytes packed (a multiple of the vector length)
+         */
+        static int pack(final byte[] bytes, final int byteOffset, final int[] pixels, final int pixelOffset, final int length) {
+            final int bound = INTS.loopBound(length);
+
+            for (int i = 0; i < bound; i += INTS.length()) {
+                // Sign extension doesn't matter, only the low 8 bits are masked in
+                final IntVector secret = (IntVector) ByteVector.fromArray(BYTES, bytes, byteOffset + i).convertShape(VectorOperators.B2I, INTS, 0);
+
+                final IntVector alpha = secret.and(0xC0).lanewise(VectorOperators.LSHL, 18);
+                final IntVector red = secret.and(0x30).lanewise(VectorOperators.LSHL, 12);
+                final IntVector green = secret.and(0x0C).lanewise(VectorOperators.LSHL, 6);
+                final IntVector blue = secret.and(0x03);
+
+                IntVector.fromArray(INTS, pixels, pixelOffset + i)
+                        .and(0xFCFCFCFC)
+                        .or(alpha).or(red).or(green).or(blue)
+                        .intoArray(pixels, pixelOffset + i);
+            }
+
+            return bound;
+        }
+
+        /**
+         * Unpacks whole vectors of pixels.
+         *
+         * @return number of bytes unpacked (a multiple of the vector length)
+         */
+        static int unpack(final int[] pixels, final int pixelOffset, final byte[] out, final int byteOffset, final int length) {
+            final int bound = INTS.loopBound(length);
+
+            for (int i = 0; i < bound; i += INTS.length()) {
+                final IntVector pixel = IntVector.fromArray(INTS, pixels, pixelOffset + i);
+                final IntVector data = pixel.and(0x00000003)
+                        .or(pixel.and(0x00000300).lanewise(VectorOperators.LSHR, 6))
+                        .or(pixel.and(0x00030000).lanewise(VectorOperators.LSHR, 12))
+                        .or(pixel.and(0x03000000).lanewise(VectorOperators.LSHR, 18));
+
+                ((ByteVector) data.convertShape(VectorOperators.I2B, BYTES, 0)).intoArray(out, byteOffset + i);
+            }
+
+            return bound;
+        }
+    }
+}
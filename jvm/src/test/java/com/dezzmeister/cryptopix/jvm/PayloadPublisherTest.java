@@ -0,0 +1,224 @@
+package com.dezzmeister.cryptopix.jvm;
+
+import com.dezzmeister.cryptopix.main.exceptions.PackageException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PayloadPublisher}: bodies arrive whole and in order, no more buffers are sent than were
+ * requested, and failures end the stream with an error.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class PayloadPublisherTest {
+
+    private static final String PASSWORD = "flow";
+
+    private static final int BUFFER_SIZE = 10_000;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final byte[] data = new byte[250_000];
+
+    public PayloadPublisherTest() {
+        new Random(2).nextBytes(data);
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void publishesWholeBody() throws Exception {
+        for (final long versionCode : new long[] {Versions.VERSION_1_0_0, Versions.VERSION_1_1_0, Versions.VERSION_1_5_0, Versions.VERSION_1_6_0}) {
+            for (final boolean compress : new boolean[] {false, true}) {
+                final CollectingSubscriber subscriber = new CollectingSubscriber(1);
+                publisher(versionCode, PASSWORD, compress, PASSWORD).subscribe(subscriber);
+                subscriber.await();
+
+                final String name = Long.toHexString(versionCode) + (compress ? " compressed" : "");
+                assertNull(name, subscriber.error);
+                assertTrue(name, subscriber.completed);
+                assertArrayEquals(name, data, subscriber.body.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void honorsDemand() throws Exception {
+        final CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        publisher(Versions.VERSION_1_0_0, null, true, null).subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        Thread.sleep(200);
+
+        assertEquals(2, subscriber.buffers.get());
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.await();
+
+        assertTrue(subscriber.completed);
+        assertEquals((data.length + BUFFER_SIZE - 1) / BUFFER_SIZE, subscriber.buffers.get());
+        assertArrayEquals(data, subscriber.body.toByteArray());
+    }
+
+    @Test
+    public void completesOnBufferBoundaryWithoutMoreDemand() throws Exception {
+        assertEquals(0, data.length % BUFFER_SIZE);
+
+        final CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        publisher(Versions.VERSION_1_0_0, null, false, null).subscribe(subscriber);
+        subscriber.subscription.request(data.length / BUFFER_SIZE);
+        subscriber.await();
+
+        assertTrue(subscriber.completed);
+        assertArrayEquals(data, subscriber.body.toByteArray());
+    }
+
+    @Test
+    public void stopsWhenCancelled() throws Exception {
+        final CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        publisher(Versions.VERSION_1_0_0, null, false, null).subscribe(subscriber);
+
+        subscriber.subscription.request(3);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+        Thread.sleep(200);
+
+        assertTrue(subscriber.buffers.get() <= 3);
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void failuresEndTheStream() throws Exception {
+        final Flow.Publisher<ByteBuffer> locked = publisher(Versions.VERSION_1_0_0, PASSWORD, false, PASSWORD + "!");
+        final Flow.Publisher<ByteBuffer> missing = publisher(Versions.VERSION_1_0_0, PASSWORD, false, null);
+
+        for (final Flow.Publisher<ByteBuffer> publisher : Arrays.asList(locked, missing)) {
+            final CollectingSubscriber subscriber = new CollectingSubscriber(1);
+            publisher.subscribe(subscriber);
+            subscriber.await();
+
+            assertFalse(subscriber.completed);
+            assertEquals(PackageException.Kind.WRONG_PASSWORD, ((PackageException) subscriber.error).kind());
+        }
+
+        final CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        publisher(Versions.VERSION_1_0_0, null, false, null).subscribe(subscriber);
+        subscriber.subscription.request(0);
+        subscriber.await();
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    private Flow.Publisher<ByteBuffer> publisher(final long versionCode, final String encodePassword, final boolean compress, final String decodePassword) throws Exception {
+        final PackageHandler handler = Versions.getHandler(versionCode);
+        final EncodingOptions options = new EncodingOptions();
+        options.versionCode = versionCode;
+        options.password = encodePassword;
+        options.compress = compress;
+
+        final Payload payload = handler.getEmptyPayload();
+        payload.setFileName("flow.bin");
+        payload.setMimeType("application/octet-stream");
+        payload.setData(data);
+
+        final int[] carrier = new int[600 * 500];
+        final Random random = new Random(3);
+
+        for (int i = 0; i < carrier.length; i++) {
+            carrier[i] = random.nextInt();
+        }
+
+        final ImageData secret = handler.encodeSecret(new ImageData(carrier, 600, 500), payload, options);
+
+        return new PayloadPublisher(handler, secret, handler.extractHeader(secret), decodePassword, executor, BUFFER_SIZE);
+    }
+
+    /**
+     * Appends every buffer to {@link #body}, asking for <code>perBuffer</code> more after each one.
+     */
+    private static final class CollectingSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+        private final int perBuffer;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        final AtomicInteger buffers = new AtomicInteger();
+
+        volatile Flow.Subscription subscription;
+
+        volatile boolean completed = false;
+
+        volatile Throwable error = null;
+
+        CollectingSubscriber(final int _perBuffer) {
+            perBuffer = _perBuffer;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription _subscription) {
+            subscription = _subscription;
+
+            if (perBuffer > 0) {
+                subscription.request(perBuffer);
+            }
+        }
+
+        @Override
+        public void onNext(final ByteBuffer buffer) {
+            buffers.incrementAndGet();
+            body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+
+            if (perBuffer > 0) {
+                subscription.request(perBuffer);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable _error) {
+            error = _error;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Timed out", done.await(30, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.dezzmeister.cryptopix.jvm;
+
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.PixelCodec;
+import com.dezzmeister.cryptopix.main.secret.PixelCodecs;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Differential tests of {@link VectorPixelCodec} against the scalar reference codec. Every length from empty
+ * to a few vectors is packed and unpacked at unaligned offsets, so both the vector loop and the scalar tail
+ * are covered.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class VectorPixelCodecTest {
+
+    private static final int MAX_LENGTH = 200;
+
+    private final PixelCodec vector = new VectorPixelCodec();
+
+    private final Random random = new Random(1);
+
+    @Before
+    public void requireVectorSupport() {
+        Assume.assumeTrue("Vector API is not available", vector.isSupported());
+    }
+
+    @Test
+    public void isChosenByDefault() {
+        Assume.assumeTrue(System.getProperty(PixelCodecs.CODEC_PROPERTY) == null);
+
+        assertEquals(vector.name(), PixelCodecs.active().name());
+    }
+
+    @Test
+    public void packMatchesScalar() {
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            final int byteOffset = random.nextInt(16);
+            final int pixelOffset = random.nextInt(16);
+            final byte[] bytes = randomBytes(byteOffset + length + random.nextInt(16));
+            final int[] pixels = randomPixels(pixelOffset + length + random.nextInt(16));
+
+            final int[] expected = pixels.clone();
+            PixelCodecs.SCALAR.pack(bytes, byteOffset, expected, pixelOffset, length);
+
+            vector.pack(bytes, byteOffset, pixels, pixelOffset, length);
+            assertArrayEquals("length " + length, expected, pixels);
+        }
+    }
+
+    @Test
+    public void unpackMatchesScalar() {
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            final int byteOffset = random.nextInt(16);
+            final int pixelOffset = random.nextInt(16);
+            final int[] pixels = randomPixels(pixelOffset + length + random.nextInt(16));
+            final byte[] expected = randomBytes(byteOffset + length + random.nextInt(16));
+            final byte[] out = expected.clone();
+
+            PixelCodecs.SCALAR.unpack(pixels, pixelOffset, expected, byteOffset, length);
+
+            vector.unpack(pixels, pixelOffset, out, byteOffset, length);
+            assertArrayEquals("length " + length, expected, out);
+        }
+    }
+
+    @Test
+    public void packagesDecodeWithEitherCodec() throws Exception {
+        final byte[] data = randomBytes(100_000);
+        final int[] carrier = randomPixels(400 * 300);
+        final PixelCodec previous = PixelCodecs.active();
+
+        for (final long versionCode : new long[] {Versions.VERSION_1_0_0, Versions.VERSION_1_5_0}) {
+            final PackageHandler handler = Versions.getHandler(versionCode);
+            final EncodingOptions options = new EncodingOptions();
+            options.versionCode = versionCode;
+
+            try {
+                for (final PixelCodec encoder : new PixelCodec[] {PixelCodecs.SCALAR, vector}) {
+                    PixelCodecs.setActive(encoder);
+                    final ImageData encoded = handler.encodeSecret(new ImageData(carrier, 400, 300), payload(handler, data), options);
+
+                    for (final PixelCodec decoder : new PixelCodec[] {PixelCodecs.SCALAR, vector}) {
+                        PixelCodecs.setActive(decoder);
+                        assertArrayEquals(encoder.name() + " to " + decoder.name(), data, handler.decode(encoded, handler.extractHeader(encoded), null).data());
+                    }
+                }
+            } finally {
+                PixelCodecs.setActive(previous);
+            }
+        }
+    }
+
+    private static Payload payload(final PackageHandler handler, final byte[] data) {
+        final Payload payload = handler.getEmptyPayload();
+        payload.setFileName("vector.bin");
+        payload.setMimeType("application/octet-stream");
+        payload.setData(data);
+
+        return payload;
+    }
+
+    private byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+
+        return bytes;
+    }
+
+    private int[] randomPixels(final int length) {
+        final int[] pixels = new int[length];
+
+        for (int i = 0; i < length; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        return pixels;
+    }
+}
@@ -0,0 +1,50 @@
+package com.dezzmeister.cryptopix.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A small pool of copy buffers shared by every request. Requests run on virtual threads, which are never
+ * reused, so thread-local buffers would be allocated once per request; the pool keeps a few warm instead.
+ * When it is empty a new buffer is allocated, and buffers returned to a full pool are dropped.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+final class BufferPool {
+
+    private final int bufferSize;
+
+    private final BlockingQueue<byte[]> buffers;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param _bufferSize size of every buffer, in bytes
+     * @param _capacity largest number of idle buffers kept
+     */
+    BufferPool(final int _bufferSize, final int _capacity) {
+        bufferSize = _bufferSize;
+        buffers = new ArrayBlockingQueue<byte[]>(_capacity);
+    }
+
+    /**
+     * Takes an idle buffer, or allocates one if there are none.
+     *
+     * @return buffer of the pool's size
+     */
+    byte[] acquire() {
+        final byte[] buffer = buffers.poll();
+
+        return (buffer != null) ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not use it afterwards.
+     *
+     * @param buffer buffer from {@link #acquire()}
+     */
+    void release(final byte[] buffer) {
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,210 @@
+package com.dezzmeister.cryptopix.server;
+
+import com.dezzmeister.cryptopix.main.exceptions.PackageException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.AsyncPackageHandler;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects classify requests for small images into batches. Classifying a small image takes well under a
+ * millisecond, so with one task per request most of the time goes to handing work between threads; here each
+ * batch is split into one slice per processor, and each slice is a single task on a pool of platform threads.
+ * This also bounds the CPU time spent classifying, however many connections are open.
+ *
+ * A batch is started as soon as {@link #MAX_BATCH_SIZE} requests are waiting, or {@link #LINGER_NANOS} after
+ * its first request arrived.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+final class ClassifyBatcher {
+
+    /**
+     * Largest number of requests in a batch
+     */
+    static final int MAX_BATCH_SIZE = 64;
+
+    /**
+     * Longest time the first request of a batch waits for others
+     */
+    static final long LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    /**
+     * A classify request waiting for its batch.
+     */
+    static final class Request {
+
+        final ImageData image;
+
+        final CompletableFuture<EncodedImageState> state = new CompletableFuture<EncodedImageState>();
+
+        /**
+         * Time the request was queued
+         */
+        final long queuedAt = System.nanoTime();
+
+        /**
+         * Time the request's batch started, or 0
+         */
+        volatile long startedAt = 0;
+
+        /**
+         * Number of requests in the request's batch
+         */
+        volatile int batchSize = 0;
+
+        Request(final ImageData _image) {
+            image = _image;
+        }
+    }
+
+    /**
+     * Classifies on the calling thread; the batcher chooses the threads
+     */
+    private final AsyncPackageHandler direct = new AsyncPackageHandler(Runnable::run);
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+
+    private final ExecutorService workers;
+
+    private final int slices;
+
+    private final Thread batcher;
+
+    private volatile boolean stopped = false;
+
+    /**
+     * Creates a batcher and starts its thread.
+     *
+     * @param _threads number of threads to classify on
+     */
+    ClassifyBatcher(final int _threads) {
+        slices = _threads;
+        workers = Executors.newFixedThreadPool(_threads);
+        batcher = Thread.ofVirtual().name("classify-batcher").start(new Runnable() {
+            @Override
+            public void run() {
+                batchLoop();
+            }
+        });
+    }
+
+    /**
+     * Queues an image to be classified in the next batch.
+     *
+     * @param image image that may contain secret data
+     * @return the request, whose future completes with the image state
+     */
+    Request submit(final ImageData image) {
+        final Request request = new Request(image);
+
+        if (stopped) {
+            request.state.completeExceptionally(new PackageException(PackageException.Kind.IO, "Server is stopping!"));
+        } else {
+            queue.add(request);
+        }
+
+        return request;
+    }
+
+    /**
+     * Stops the batcher. Requests that have not started are failed.
+     */
+    void stop() {
+        stopped = true;
+        batcher.interrupt();
+        workers.shutdownNow();
+
+        for (Request request = queue.poll(); request != null; request = queue.poll()) {
+            request.state.completeExceptionally(new PackageException(PackageException.Kind.IO, "Server is stopping!"));
+        }
+    }
+
+    private void batchLoop() {
+        final List<Request> batch = new ArrayList<Request>(MAX_BATCH_SIZE);
+
+        try {
+            while (!stopped) {
+                batch.add(queue.take());
+
+                final long deadline = batch.get(0).queuedAt + LINGER_NANOS;
+
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+
+                    final long remaining = deadline - System.nanoTime();
+
+                    if (batch.size() >= MAX_BATCH_SIZE || remaining <= 0) {
+                        break;
+                    }
+
+                    final Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+                    if (next == null) {
+                        break;
+                    }
+
+                    batch.add(next);
+                }
+
+                dispatch(new ArrayList<Request>(batch));
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (final Request request : batch) {
+                request.state.completeExceptionally(new PackageException(PackageException.Kind.IO, "Server is stopping!"));
+            }
+        }
+    }
+
+    /**
+     * Splits a batch into one slice per thread and classifies every slice as one task.
+     */
+    private void dispatch(final List<Request> batch) {
+        final long startedAt = System.nanoTime();
+        final int sliceCount = Math.min(slices, batch.size());
+
+        for (final Request request : batch) {
+            request.startedAt = startedAt;
+            request.batchSize = batch.size();
+        }
+
+        for (int slice = 0; slice < sliceCount; slice++) {
+            final int from = (int) ((long) batch.size() * slice / sliceCount);
+            final int to = (int) ((long) batch.size() * (slice + 1) / sliceCount);
+            final List<Request> requests = batch.subList(from, to);
+
+            try {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (final Request request : requests) {
+                            classify(request);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                for (final Request request : requests) {
+                    request.state.completeExceptionally(PackageException.from(e));
+                }
+            }
+        }
+    }
+
+    private void classify(final Request request) {
+        try {
+            request.state.complete(direct.classify(request.image).join());
+        } catch (RuntimeException e) {
+            request.state.completeExceptionally(PackageException.from(e));
+        }
+    }
+}
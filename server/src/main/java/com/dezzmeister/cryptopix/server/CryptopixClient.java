@@ -0,0 +1,145 @@
+package com.dezzmeister.cryptopix.server;
+
+import com.dezzmeister.cryptopix.main.exceptions.PackageException;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client for a {@link CryptopixServer} on this machine. Images are sent as encoded image files (PNG, BMP...),
+ * not pixels. Failed requests throw a {@link PackageException} with the kind the server reported.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class CryptopixClient {
+
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private final String base;
+
+    /**
+     * Creates a client for the server at the given address.
+     *
+     * @param address loopback address of the server
+     */
+    public CryptopixClient(final InetSocketAddress address) {
+        base = "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    /**
+     * Finds the state of an image.
+     *
+     * @param image image file bytes
+     * @return image state
+     * @throws IOException if the server cannot be reached
+     * @throws InterruptedException if interrupted while waiting for the server
+     */
+    public EncodedImageState classify(final byte[] image) throws IOException, InterruptedException {
+        return EncodedImageState.valueOf(text(send("/classify", null, null, image)).trim());
+    }
+
+    /**
+     * Reads the package header of an image, and the payload metadata if the password is given or the image
+     * is not password-protected.
+     *
+     * @param image image file bytes
+     * @param password password, or null
+     * @return field names and values, in the order the server sent them
+     * @throws IOException if the server cannot be reached
+     * @throws InterruptedException if interrupted while waiting for the server
+     */
+    public Map<String, String> peek(final byte[] image, final String password) throws IOException, InterruptedException {
+        final Map<String, String> fields = new LinkedHashMap<String, String>();
+
+        for (final String line : text(send("/peek", null, password, image)).split("\n")) {
+            final int split = line.indexOf('=');
+
+            if (split > 0) {
+                fields.put(line.substring(0, split), line.substring(split + 1));
+            }
+        }
+
+        return fields;
+    }
+
+    /**
+     * Decodes the secret file in an image.
+     *
+     * @param image image file bytes
+     * @param password password, or null
+     * @return the server's reply; the body is the file
+     * @throws IOException if the server cannot be reached
+     * @throws InterruptedException if interrupted while waiting for the server
+     */
+    public HttpResponse<byte[]> decode(final byte[] image, final String password) throws IOException, InterruptedException {
+        return send("/decode", null, password, image);
+    }
+
+    /**
+     * Hides a file in a carrier image.
+     *
+     * @param carrier carrier image file bytes
+     * @param fileName name of the secret file
+     * @param mimeType MIME type of the secret file
+     * @param data secret file contents
+     * @param options version code, password and compression; a version code of -1 means the server's default
+     * @return the server's reply; the body is a PNG image
+     * @throws IOException if the server cannot be reached
+     * @throws InterruptedException if interrupted while waiting for the server
+     */
+    public HttpResponse<byte[]> encode(final byte[] carrier, final String fileName, final String mimeType, final byte[] data, final EncodingOptions options) throws IOException, InterruptedException {
+        final StringBuilder query = new StringBuilder("?name=").append(URLEncoder.encode(fileName, StandardCharsets.UTF_8))
+                .append("&mime=").append(URLEncoder.encode(mimeType, StandardCharsets.UTF_8))
+                .append("&compress=").append(options.compress);
+
+        if (options.versionCode != -1) {
+            query.append("&version=").append(Long.toHexString(options.versionCode));
+        }
+
+        final byte[] body = new byte[carrier.length + data.length];
+        System.arraycopy(carrier, 0, body, 0, carrier.length);
+        System.arraycopy(data, 0, body, carrier.length, data.length);
+
+        return send("/encode" + query, Integer.toString(carrier.length), options.password, body);
+    }
+
+    private HttpResponse<byte[]> send(final String path, final String carrierLength, final String password, final byte[] body) throws IOException, InterruptedException {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path)).POST(HttpRequest.BodyPublishers.ofByteArray(body));
+
+        if (carrierLength != null) {
+            request.header(CryptopixServer.CARRIER_LENGTH_HEADER, carrierLength);
+        }
+
+        if (password != null) {
+            request.header(CryptopixServer.PASSWORD_HEADER, password);
+        }
+
+        final HttpResponse<byte[]> response = http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        final String error = response.headers().firstValue(CryptopixServer.ERROR_HEADER).orElse(null);
+
+        if (error != null) {
+            throw new PackageException(PackageException.Kind.valueOf(error), text(response).trim());
+        }
+
+        if (response.statusCode() != 200) {
+            throw new IOException("Server replied " + response.statusCode());
+        }
+
+        return response;
+    }
+
+    private static String text(final HttpResponse<byte[]> response) {
+        return new String(response.body(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,530 @@
+package com.dezzmeister.cryptopix.server;
+
+import com.dezzmeister.cryptopix.cli.ImageIOCodec;
+import com.dezzmeister.cryptopix.main.exceptions.PackageException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.AsyncPackageHandler;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.KeyCache;
+import com.dezzmeister.cryptopix.main.secret.PackageFunctions;
+import com.dezzmeister.cryptopix.main.secret.PackageHandler;
+import com.dezzmeister.cryptopix.main.secret.PackageHeader;
+import com.dezzmeister.cryptopix.main.secret.Payload;
+import com.dezzmeister.cryptopix.main.secret.PayloadMetadata;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.imageio.ImageIO;
+
+/**
+ * A long-lived local daemon that encodes, decodes, classifies and peeks at images over HTTP, so that callers
+ * that handle one image at a time don't pay for JVM startup and crypto provider initialization on every image.
+ * The server only listens on the loopback interface and never makes outgoing connections.
+ *
+ * <pre>
+ * POST /classify                  body: image             reply: image state
+ * POST /peek                      body: image             reply: header and payload metadata, as name=value lines
+ * POST /decode                    body: image             reply: the secret file, after its payload hash is checked
+ * POST /encode?name=&amp;mime=&amp;version=&amp;compress=
+ *                                 body: carrier + file    reply: PNG image with the secret file
+ * </pre>
+ *
+ * Passwords are sent in the {@link #PASSWORD_HEADER} header. For <code>/encode</code>, the body is the carrier
+ * image followed by the file, and {@link #CARRIER_LENGTH_HEADER} gives the size of the carrier. Failed requests
+ * have the {@link PackageException.Kind} in {@link #ERROR_HEADER} and the message as the body. Every reply has a
+ * <code>Server-Timing</code> header with the time spent in each phase of the request. The <code>password</code>
+ * phase only checks the salted password hash; the key is derived in <code>peek</code> and <code>open</code>, so
+ * the time spent in the KDF is part of those phases.
+ *
+ * Every request runs on its own virtual thread. Classify requests for small images are batched by a
+ * {@link ClassifyBatcher}. Crypto providers and ImageIO plugins are loaded when the server starts, derived keys
+ * are kept in a {@link KeyCache} (installed for the whole process while the server runs), and copy buffers are
+ * pooled.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public final class CryptopixServer implements AutoCloseable {
+
+    /**
+     * Port used when none is given on the command line
+     */
+    public static final int DEFAULT_PORT = 7351;
+
+    /**
+     * Request header with the password
+     */
+    public static final String PASSWORD_HEADER = "X-Cryptopix-Password";
+
+    /**
+     * Request header with the size of the carrier image at the start of an encode request body
+     */
+    public static final String CARRIER_LENGTH_HEADER = "X-Cryptopix-Carrier-Length";
+
+    /**
+     * Response header with the kind of failure
+     */
+    public static final String ERROR_HEADER = "X-Cryptopix-Error";
+
+    /**
+     * Response header with the version code of the image, in hex
+     */
+    public static final String VERSION_HEADER = "X-Cryptopix-Version";
+
+    /**
+     * Response header with the name of a decoded file
+     */
+    public static final String FILE_NAME_HEADER = "X-Cryptopix-File-Name";
+
+    /**
+     * Response header with the number of requests in a classify request's batch
+     */
+    public static final String BATCH_SIZE_HEADER = "X-Cryptopix-Batch-Size";
+
+    /**
+     * Largest image, in pixels, that is classified in a batch. Larger images are classified on their own thread.
+     */
+    static final int MAX_BATCHED_PIXELS = 1 << 20;
+
+    /**
+     * Number of derived keys kept
+     */
+    private static final int MAX_CACHED_KEYS = 256;
+
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    private final HttpServer server;
+
+    private final ExecutorService requestExecutor;
+
+    private final ClassifyBatcher batcher;
+
+    private final KeyCache keyCache = new KeyCache(MAX_CACHED_KEYS);
+
+    private final BufferPool buffers = new BufferPool(COPY_BUFFER_SIZE, 64);
+
+    /**
+     * Runs handlers on the request's own thread
+     */
+    private final AsyncPackageHandler direct = new AsyncPackageHandler(Runnable::run);
+
+    /**
+     * Starts a server on a loopback port.
+     *
+     * @param port port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public CryptopixServer(final int port) throws IOException {
+        warmUp();
+        PackageFunctions.setKeyCache(keyCache);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        batcher = new ClassifyBatcher(Runtime.getRuntime().availableProcessors());
+
+        server.setExecutor(requestExecutor);
+        server.createContext("/classify", new Route() {
+            @Override
+            void handle(final HttpExchange exchange, final RequestTiming timing) throws Exception {
+                classify(exchange, timing);
+            }
+        });
+        server.createContext("/peek", new Route() {
+            @Override
+            void handle(final HttpExchange exchange, final RequestTiming timing) throws Exception {
+                peek(exchange, timing);
+            }
+        });
+        server.createContext("/decode", new Route() {
+            @Override
+            void handle(final HttpExchange exchange, final RequestTiming timing) throws Exception {
+                decode(exchange, timing);
+            }
+        });
+        server.createContext("/encode", new Route() {
+            @Override
+            void handle(final HttpExchange exchange, final RequestTiming timing) throws Exception {
+                encode(exchange, timing);
+            }
+        });
+        server.start();
+    }
+
+    public static void main(final String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Usage: [--port N]");
+                System.exit(2);
+            }
+        }
+
+        final CryptopixServer server = new CryptopixServer(port);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.close();
+            }
+        }));
+
+        System.out.println("Listening on http://" + server.address().getHostString() + ":" + server.address().getPort());
+    }
+
+    /**
+     * Returns the address the server is listening on.
+     *
+     * @return loopback address and port
+     */
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    /**
+     * Returns the cache of derived keys.
+     *
+     * @return key cache
+     */
+    public KeyCache keyCache() {
+        return keyCache;
+    }
+
+    /**
+     * Stops the server, failing requests that are waiting for a batch, and removes and clears the key cache.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        batcher.stop();
+        requestExecutor.shutdownNow();
+        PackageFunctions.setKeyCache(null);
+        keyCache.clear();
+    }
+
+    private void classify(final HttpExchange exchange, final RequestTiming timing) throws Exception {
+        final ImageData image = readImage(exchange.getRequestBody());
+        timing.mark("read");
+
+        final EncodedImageState state;
+
+        if (image.pixels.length <= MAX_BATCHED_PIXELS) {
+            final ClassifyBatcher.Request request = batcher.submit(image);
+            state = request.state.join();
+            timing.add("queue", request.startedAt - request.queuedAt);
+            timing.mark("classify");
+            exchange.getResponseHeaders().set(BATCH_SIZE_HEADER, Integer.toString(request.batchSize));
+        } else {
+            state = direct.classify(image).join();
+            timing.mark("classify");
+        }
+
+        if (state != EncodedImageState.NO_SECRET) {
+            exchange.getResponseHeaders().set(VERSION_HEADER, Long.toHexString(PackageFunctions.versionCode(image)));
+        }
+
+        sendText(exchange, timing, state.name() + "\n");
+    }
+
+    private void peek(final HttpExchange exchange, final RequestTiming timing) throws Exception {
+        final ImageData image = readImage(exchange.getRequestBody());
+        timing.mark("read");
+
+        final PackageHandler handler = handlerFor(image);
+        final PackageHeader header = handler.extractHeader(image);
+        timing.mark("header");
+
+        final String password = exchange.getRequestHeaders().getFirst(PASSWORD_HEADER);
+        final StringBuilder out = new StringBuilder();
+        field(out, "version", Long.toHexString(PackageFunctions.versionCode(image)));
+        field(out, "passwordProtected", header.isPasswordProtected());
+        field(out, "payloadSize", header.payloadSize());
+
+        // Without the password, only the package header can be read
+        if (!header.isPasswordProtected() || password != null) {
+            checkPassword(handler, header, password);
+            timing.mark("password");
+
+            final PayloadMetadata metadata = handler.peekMetadata(image, header, password);
+            timing.mark("peek");
+
+            field(out, "fileName", metadata.fileName);
+            field(out, "mimeType", metadata.mimeType);
+            field(out, "size", metadata.size);
+            field(out, "storedSize", metadata.storedSize);
+            field(out, "compressed", metadata.compressed);
+        }
+
+        exchange.getResponseHeaders().set(VERSION_HEADER, Long.toHexString(PackageFunctions.versionCode(image)));
+        sendText(exchange, timing, out.toString());
+    }
+
+    private void decode(final HttpExchange exchange, final RequestTiming timing) throws Exception {
+        final ImageData image = readImage(exchange.getRequestBody());
+        timing.mark("read");
+
+        final PackageHandler handler = handlerFor(image);
+        final PackageHeader header = handler.extractHeader(image);
+        timing.mark("header");
+
+        // The file is streamed, so a bad payload has to be caught before the reply starts
+        final EncodedImageState state = handler.getImageState(image, header);
+        timing.mark("verify");
+
+        if (state == EncodedImageState.CORRUPTED) {
+            throw new PackageException(PackageException.Kind.CORRUPTED, "Secret data is corrupted!");
+        } else if (state == EncodedImageState.NO_SECRET) {
+            throw new PackageException(PackageException.Kind.NO_SECRET, "Image does not contain a secret!");
+        }
+
+        final String password = exchange.getRequestHeaders().getFirst(PASSWORD_HEADER);
+        checkPassword(handler, header, password);
+        timing.mark("password");
+
+        final Payload payload = handler.openPayload(image, header, password);
+        final InputStream body = payload.openStream();
+        timing.mark("open");
+
+        // The file is decrypted and inflated as it is sent, so only the phases before it can be reported
+        try (final InputStream in = body) {
+            exchange.getResponseHeaders().set("Content-Type", (payload.mimeType() != null) ? payload.mimeType() : "application/octet-stream");
+            exchange.getResponseHeaders().set(FILE_NAME_HEADER, (payload.fileName() != null) ? payload.fileName() : "");
+            exchange.getResponseHeaders().set(VERSION_HEADER, Long.toHexString(PackageFunctions.versionCode(image)));
+            exchange.getResponseHeaders().set(RequestTiming.HEADER, timing.header());
+            exchange.sendResponseHeaders(200, 0);
+
+            final byte[] buffer = buffers.acquire();
+
+            try (final OutputStream out = exchange.getResponseBody()) {
+                int read;
+
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                buffers.release(buffer);
+            }
+        }
+    }
+
+    private void encode(final HttpExchange exchange, final RequestTiming timing) throws Exception {
+        final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        final String carrierLength = exchange.getRequestHeaders().getFirst(CARRIER_LENGTH_HEADER);
+        final byte[] body = exchange.getRequestBody().readAllBytes();
+        final int carrierSize;
+
+        try {
+            carrierSize = Integer.parseInt(carrierLength);
+        } catch (NumberFormatException e) {
+            throw new PackageException(PackageException.Kind.UNSUPPORTED, "Missing or invalid " + CARRIER_LENGTH_HEADER + " header!");
+        }
+
+        if (carrierSize < 0 || carrierSize > body.length) {
+            throw new PackageException(PackageException.Kind.UNSUPPORTED, "Carrier is longer than the request body!");
+        }
+
+        final ImageData carrier = readImage(new ByteArrayInputStream(body, 0, carrierSize));
+        timing.mark("read");
+
+        final EncodingOptions options = new EncodingOptions();
+        options.versionCode = query.containsKey("version") ? parseVersion(query.get("version")) : Versions.THIS_VERSION;
+        options.password = exchange.getRequestHeaders().getFirst(PASSWORD_HEADER);
+        options.compress = Boolean.parseBoolean(query.get("compress"));
+
+        final PackageHandler handler = Versions.getHandler(options.versionCode);
+
+        if (handler == null) {
+            throw new PackageException(PackageException.Kind.UNSUPPORTED, "Version " + Long.toHexString(options.versionCode) + " is not supported!");
+        }
+
+        final Payload payload = handler.getEmptyPayload();
+        payload.setFileName(query.containsKey("name") ? query.get("name") : "payload.bin");
+        payload.setMimeType(query.containsKey("mime") ? query.get("mime") : "application/octet-stream");
+        payload.setData(Arrays.copyOfRange(body, carrierSize, body.length));
+
+        final ImageData encoded = handler.encodeSecret(carrier, payload, options);
+        timing.mark("encode");
+
+        final ByteArrayOutputStream png = new ByteArrayOutputStream(4 * encoded.pixels.length / 3);
+        ImageIOCodec.writePNG(encoded, png);
+        timing.mark("png");
+
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        exchange.getResponseHeaders().set(VERSION_HEADER, Long.toHexString(options.versionCode));
+        send(exchange, timing, 200, png.toByteArray());
+    }
+
+    private static long parseVersion(final String version) {
+        try {
+            return Long.parseLong(version, 16);
+        } catch (NumberFormatException e) {
+            throw new PackageException(PackageException.Kind.UNSUPPORTED, "Invalid version code: " + version);
+        }
+    }
+
+    private static ImageData readImage(final InputStream in) throws IOException {
+        try {
+            return ImageIOCodec.read(in);
+        } catch (IOException e) {
+            throw new PackageException(PackageException.Kind.UNSUPPORTED, e);
+        }
+    }
+
+    private static PackageHandler handlerFor(final ImageData image) {
+        final PackageHandler handler = (image.pixels.length < 8) ? null : Versions.getHandler(PackageFunctions.versionCode(image));
+
+        if (handler == null) {
+            throw new PackageException(PackageException.Kind.NO_SECRET, "Image does not contain a secret!");
+        }
+
+        return handler;
+    }
+
+    private static void checkPassword(final PackageHandler handler, final PackageHeader header, final String password) throws Exception {
+        if (!header.isPasswordProtected()) {
+            return;
+        }
+
+        if (password == null) {
+            throw new PackageException(PackageException.Kind.WRONG_PASSWORD, "A password is required!");
+        }
+
+        if (!handler.isCorrectPassword(password, header)) {
+            throw new PackageException(PackageException.Kind.WRONG_PASSWORD, "Incorrect password!");
+        }
+    }
+
+    private static void field(final StringBuilder out, final String name, final Object value) {
+        out.append(name).append('=').append(value).append('\n');
+    }
+
+    private static Map<String, String> parseQuery(final String rawQuery) {
+        final Map<String, String> query = new HashMap<String, String>();
+
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+
+        for (final String pair : rawQuery.split("&")) {
+            final int split = pair.indexOf('=');
+            final String name = (split < 0) ? pair : pair.substring(0, split);
+            final String value = (split < 0) ? "" : pair.substring(split + 1);
+
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+
+        return query;
+    }
+
+    private static void sendText(final HttpExchange exchange, final RequestTiming timing, final String text) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        send(exchange, timing, 200, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(final HttpExchange exchange, final RequestTiming timing, final int status, final byte[] body) throws IOException {
+        exchange.getResponseHeaders().set(RequestTiming.HEADER, timing.header());
+        exchange.sendResponseHeaders(status, (body.length == 0) ? -1 : body.length);
+
+        try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Maps a failure to an HTTP status.
+     */
+    private static int status(final PackageException.Kind kind) {
+        switch (kind) {
+            case NO_SECRET:
+                return 404;
+            case WRONG_PASSWORD:
+                return 403;
+            case CORRUPTED:
+                return 422;
+            case TOO_LARGE:
+                return 413;
+            case UNSUPPORTED:
+                return 400;
+            default:
+                return 500;
+        }
+    }
+
+    /**
+     * Loads the crypto providers and image plugins that requests will need, so that the first request doesn't
+     * pay for it.
+     */
+    private static void warmUp() throws IOException {
+        try {
+            Versions.getHandler(Versions.THIS_VERSION);
+            Cipher.getInstance("AES/CBC/PKCS5Padding");
+            Cipher.getInstance("AES/CBC/NoPadding");
+            SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+            MessageDigest.getInstance("MD5");
+            MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IOException("Unable to load crypto providers", e);
+        }
+
+        ImageIO.getImageReadersByFormatName("png").hasNext();
+        ImageIO.getImageWritersByFormatName("png").hasNext();
+    }
+
+    /**
+     * Times a request and turns its failures into error replies.
+     */
+    private abstract static class Route implements HttpHandler {
+
+        abstract void handle(final HttpExchange exchange, final RequestTiming timing) throws Exception;
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            final RequestTiming timing = new RequestTiming();
+
+            try {
+                if (!exchange.getRequestMethod().equals("POST")) {
+                    exchange.getResponseHeaders().set("Allow", "POST");
+                    send(exchange, timing, 405, new byte[0]);
+                    return;
+                }
+
+                handle(exchange, timing);
+            } catch (Exception e) {
+                final PackageException failure = PackageException.from(e);
+                final String message = (failure.getMessage() != null) ? failure.getMessage() : failure.kind().name();
+
+                // Headers are already sent if a streamed body failed; closing the exchange cuts the reply short
+                if (exchange.getResponseCode() == -1) {
+                    exchange.getResponseHeaders().set(ERROR_HEADER, failure.kind().name());
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                    send(exchange, timing, status(failure.kind()), (message + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
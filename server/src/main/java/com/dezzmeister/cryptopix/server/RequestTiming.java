@@ -0,0 +1,73 @@
+package com.dezzmeister.cryptopix.server;
+
+import java.util.Locale;
+
+/**
+ * Times the phases of one request and renders them as a <code>Server-Timing</code> header, for example
+ * <code>read;dur=1.42, decode;dur=8.07, total;dur=9.61</code>. Durations are in milliseconds. Only phases that
+ * end before the response headers are sent can be reported; streamed bodies are timed by the client.
+ *
+ * Used by one request thread at a time.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+final class RequestTiming {
+
+    /**
+     * Name of the header the timings are sent in
+     */
+    static final String HEADER = "Server-Timing";
+
+    private final long start = System.nanoTime();
+
+    private final StringBuilder phases = new StringBuilder();
+
+    private long last = start;
+
+    /**
+     * Ends the current phase. The phase started when the previous one ended, or when the request arrived.
+     *
+     * @param name phase name (a token, without spaces)
+     */
+    void mark(final String name) {
+        final long now = System.nanoTime();
+        append(name, now - last);
+        last = now;
+    }
+
+    /**
+     * Adds a phase that was timed elsewhere, such as time spent waiting in a batch. Does not end the current
+     * phase.
+     *
+     * @param name phase name (a token, without spaces)
+     * @param nanos duration of the phase
+     */
+    void add(final String name, final long nanos) {
+        append(name, nanos);
+    }
+
+    /**
+     * Returns the header value: every phase so far, and the total time since the request arrived.
+     *
+     * @return <code>Server-Timing</code> header value
+     */
+    String header() {
+        final StringBuilder out = new StringBuilder(phases);
+        appendTo(out, "total", System.nanoTime() - start);
+
+        return out.toString();
+    }
+
+    private void append(final String name, final long nanos) {
+        appendTo(phases, name, nanos);
+    }
+
+    private static void appendTo(final StringBuilder out, final String name, final long nanos) {
+        if (out.length() > 0) {
+            out.append(", ");
+        }
+
+        out.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.2f", nanos / 1e6));
+    }
+}
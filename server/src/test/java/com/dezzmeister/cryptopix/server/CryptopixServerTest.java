@@ -0,0 +1,214 @@
+package com.dezzmeister.cryptopix.server;
+
+import com.dezzmeister.cryptopix.cli.ImageIOCodec;
+import com.dezzmeister.cryptopix.main.exceptions.PackageException;
+import com.dezzmeister.cryptopix.main.images.ImageData;
+import com.dezzmeister.cryptopix.main.secret.EncodedImageState;
+import com.dezzmeister.cryptopix.main.secret.EncodingOptions;
+import com.dezzmeister.cryptopix.main.secret.Versions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link CryptopixServer}, through a {@link CryptopixClient} on the loopback interface.
+ *
+ * @author Joe Desmond
+ * @since 1.0.0
+ */
+public class CryptopixServerTest {
+
+    private static final String PASSWORD = "daemon";
+
+    private final Random random = new Random(4);
+
+    private final byte[] data = new byte[20_000];
+
+    private CryptopixServer server;
+
+    private CryptopixClient client;
+
+    private byte[] carrier;
+
+    @Before
+    public void start() throws IOException {
+        random.nextBytes(data);
+        carrier = png(200, 150);
+        server = new CryptopixServer(0);
+        client = new CryptopixClient(server.address());
+    }
+
+    @After
+    public void stop() {
+        server.close();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        for (final long versionCode : new long[] {Versions.VERSION_1_0_0, Versions.VERSION_1_5_0, Versions.VERSION_1_6_0}) {
+            final HttpResponse<byte[]> encoded = client.encode(carrier, "notes.txt", "text/plain", data, options(versionCode, PASSWORD));
+            final byte[] secret = encoded.body();
+
+            assertTiming(encoded, "encode");
+            assertEquals(EncodedImageState.SECRET_PASSWORD, client.classify(secret));
+
+            final Map<String, String> locked = client.peek(secret, null);
+            assertEquals("true", locked.get("passwordProtected"));
+            assertEquals(null, locked.get("fileName"));
+
+            final Map<String, String> metadata = client.peek(secret, PASSWORD);
+            assertEquals(Long.toHexString(versionCode), metadata.get("version"));
+            assertEquals("notes.txt", metadata.get("fileName"));
+            assertEquals("text/plain", metadata.get("mimeType"));
+
+            final HttpResponse<byte[]> decoded = client.decode(secret, PASSWORD);
+            assertArrayEquals(data, decoded.body());
+            assertEquals("notes.txt", decoded.headers().firstValue(CryptopixServer.FILE_NAME_HEADER).orElse(null));
+            assertTiming(decoded, "password");
+            assertTiming(decoded, "open");
+        }
+    }
+
+    @Test
+    public void failuresHaveKinds() throws Exception {
+        final byte[] secret = client.encode(carrier, "notes.txt", "text/plain", data, options(Versions.VERSION_1_0_0, PASSWORD)).body();
+
+        assertEquals(EncodedImageState.NO_SECRET, client.classify(carrier));
+        assertKind(PackageException.Kind.WRONG_PASSWORD, secret, PASSWORD + "!");
+        assertKind(PackageException.Kind.WRONG_PASSWORD, secret, null);
+        assertKind(PackageException.Kind.NO_SECRET, carrier, null);
+        assertKind(PackageException.Kind.UNSUPPORTED, "not an image".getBytes(StandardCharsets.US_ASCII), null);
+
+        try {
+            client.encode(png(20, 20), "notes.txt", "text/plain", data, options(Versions.VERSION_1_0_0, null));
+            fail("Encoded a file larger than the carrier");
+        } catch (PackageException e) {
+            assertEquals(PackageException.Kind.TOO_LARGE, e.kind());
+        }
+
+        try {
+            client.encode(carrier, "notes.txt", "text/plain", data, options(0xBADC0DEL, null));
+            fail("Encoded with an unknown version");
+        } catch (PackageException e) {
+            assertEquals(PackageException.Kind.UNSUPPORTED, e.kind());
+        }
+    }
+
+    @Test
+    public void invalidVersionIsABadRequest() throws Exception {
+        final HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + server.address().getHostString() + ":" + server.address().getPort() + "/encode?version=xyz"))
+                .header(CryptopixServer.CARRIER_LENGTH_HEADER, Integer.toString(carrier.length))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(carrier))
+                .build();
+        final HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(400, response.statusCode());
+        assertEquals(PackageException.Kind.UNSUPPORTED.name(), response.headers().firstValue(CryptopixServer.ERROR_HEADER).orElse(null));
+    }
+
+    @Test
+    public void corruptedPayloadsAreNotSent() throws Exception {
+        final ImageData secret = ImageIOCodec.read(new ByteArrayInputStream(client.encode(carrier, "notes.txt", "text/plain", data, options(Versions.VERSION_1_0_0, null)).body()));
+
+        // Flip a bit in the middle of the payload, well past the package header
+        secret.pixels[secret.pixels.length / 2 - 5_000] ^= 1;
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIOCodec.writePNG(secret, out);
+
+        assertKind(PackageException.Kind.CORRUPTED, out.toByteArray(), null);
+    }
+
+    @Test
+    public void repeatedDecodesReuseDerivedKeys() throws Exception {
+        final byte[] secret = client.encode(carrier, "notes.txt", "text/plain", data, options(Versions.VERSION_1_0_0, PASSWORD)).body();
+
+        client.decode(secret, PASSWORD);
+        final long hits = server.keyCache().hits();
+        client.decode(secret, PASSWORD);
+
+        assertTrue(server.keyCache().hits() > hits);
+    }
+
+    @Test
+    public void classifiesInBatches() throws Exception {
+        final ClassifyBatcher batcher = new ClassifyBatcher(2);
+        final ImageData image = ImageIOCodec.read(new ByteArrayInputStream(carrier));
+
+        try {
+            final List<ClassifyBatcher.Request> requests = new ArrayList<ClassifyBatcher.Request>();
+
+            for (int i = 0; i < 10; i++) {
+                requests.add(batcher.submit(image));
+            }
+
+            int largest = 0;
+
+            for (final ClassifyBatcher.Request request : requests) {
+                assertEquals(EncodedImageState.NO_SECRET, request.state.join());
+                largest = Math.max(largest, request.batchSize);
+            }
+
+            assertTrue(largest > 1);
+        } finally {
+            batcher.stop();
+        }
+    }
+
+    private void assertKind(final PackageException.Kind kind, final byte[] image, final String password) throws Exception {
+        try {
+            client.decode(image, password);
+            fail("Decoded " + kind);
+        } catch (PackageException e) {
+            assertEquals(kind, e.kind());
+        }
+    }
+
+    private static void assertTiming(final HttpResponse<byte[]> response, final String phase) {
+        final String timing = response.headers().firstValue("Server-Timing").orElse("");
+
+        assertTrue(timing, timing.contains(phase + ";dur="));
+        assertTrue(timing, timing.contains("total;dur="));
+    }
+
+    private static EncodingOptions options(final long versionCode, final String password) {
+        final EncodingOptions options = new EncodingOptions();
+        options.versionCode = versionCode;
+        options.password = password;
+        options.compress = true;
+
+        return options;
+    }
+
+    private byte[] png(final int width, final int height) throws IOException {
+        final int[] pixels = new int[width * height];
+
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIOCodec.writePNG(new ImageData(pixels, width, height), out);
+
+        return out.toByteArray();
+    }
+}